@@ -43,8 +43,8 @@ import java.io.PrintStream;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -71,6 +71,8 @@ import org.w3c.dom.NodeList;
 public abstract class AbstractPolicy implements PolicyTreeElement
 {
 
+    private static final long serialVersionUID = -4827798035995428807L;
+
     // atributes associated with this policy
     private URI idAttr;
     private String version;
@@ -176,7 +178,7 @@ public abstract class AbstractPolicy implements PolicyTreeElement
             this.obligations = Collections.EMPTY_SET;
         else
             this.obligations = Collections.
-                unmodifiableSet(new HashSet(obligations));
+                unmodifiableSet(new LinkedHashSet(obligations));
 
         if (parameters == null)
             this.parameters = Collections.EMPTY_LIST;
@@ -254,7 +256,7 @@ public abstract class AbstractPolicy implements PolicyTreeElement
         metaData = new PolicyMetaData(root.getNamespaceURI(), defaultVersion);
 
         // now read the remaining policy elements
-        obligations = new HashSet();
+        obligations = new LinkedHashSet();
         parameters = new ArrayList();
         children = root.getChildNodes();
 
@@ -442,6 +444,7 @@ public abstract class AbstractPolicy implements PolicyTreeElement
         //https://issues.jboss.org/browse/SECURITY-574
         if( target == null)
            throw new RuntimeException("No Target found in policy with id="+idAttr);
+        recordDependency(context);
         return target.match(context);
     }
 
@@ -488,6 +491,8 @@ public abstract class AbstractPolicy implements PolicyTreeElement
      * @return the result of evaluation
      */
     public Result evaluate(EvaluationCtx context) {
+        recordDependency(context);
+
         // evaluate
         Result result = combiningAlg.combine(context, parameters,
                                              childElements);
@@ -516,6 +521,17 @@ public abstract class AbstractPolicy implements PolicyTreeElement
         return result;
     }
 
+    /**
+     * Records that this policy was consulted, if the context records the
+     * dependencies of its evaluation.
+     *
+     * @param context the representation of the request
+     */
+    private void recordDependency(EvaluationCtx context) {
+        if (context instanceof BasicEvaluationCtx)
+            ((BasicEvaluationCtx)context).recordPolicy(idAttr, version);
+    }
+
     /**
      * Routine used by <code>Policy</code> and <code>PolicySet</code> to
      * encode some common elements.
@@ -0,0 +1,301 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.security.xacml.sunxacml;
+
+import java.net.URI;
+import java.util.HashSet;
+import java.util.Set;
+
+
+/**
+ * Records the request data that an evaluation reads, so that a decision
+ * can be reused for requests that only differ in the data it did not read,
+ * and the policies that it consults, so that a decision can be dropped
+ * when one of them changes.
+ * <p>
+ * Every designator lookup is recorded, whether the value was in the request
+ * or had to be found by the <code>AttributeFinder</code>, and so are the
+ * lookups that the finder modules themselves make through the context.
+ * A decision that depends on more than its designators, because it used an
+ * <code>AttributeSelector</code> or a resource scope, is marked as depending
+ * on the whole request. Values that do not come from the request, such as
+ * the current time generated by the PDP, are not part of the dependencies.
+ * <p>
+ * A policy is recorded when its target is matched or it is evaluated. A
+ * policy reference is recorded by the id it refers to without a version,
+ * since the policy it resolves to depends on the versions that are known.
+ * <p>
+ * The resources of a scoped request can be evaluated concurrently, so
+ * instances are safe for concurrent use.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since Oct 18, 2026
+ */
+public class AttributeDependencies
+{
+    // the designators looked up so far
+    private final Set<Designator> designators = new HashSet<Designator>();
+
+    // the policies consulted so far
+    private final Set<PolicyDependency> policies =
+        new HashSet<PolicyDependency>();
+
+    // whether designators are recorded
+    private final boolean recordDesignators;
+
+    // whether the decision may depend on anything in the request
+    private boolean wholeRequest = false;
+
+    /**
+     * Creates an instance that records both designators and policies.
+     */
+    public AttributeDependencies() {
+        this(true);
+    }
+
+    /**
+     * Creates an instance that only records designators if asked to.
+     *
+     * @param recordDesignators whether designators are recorded, or only
+     *                          the policies that are consulted
+     */
+    public AttributeDependencies(boolean recordDesignators) {
+        this.recordDesignators = recordDesignators;
+    }
+
+    /**
+     * Records that a designator was looked up.
+     *
+     * @param designatorType the type of the designator, as defined in
+     *                       <code>AttributeDesignator</code>
+     * @param category the subject category, or null for the other types
+     * @param id the attribute id
+     * @param type the data type
+     * @param issuer the issuer, or null
+     */
+    public synchronized void addDesignator(int designatorType, URI category,
+                                           URI id, URI type, URI issuer) {
+        if (recordDesignators && (! wholeRequest))
+            designators.add(new Designator(designatorType, category, id,
+                                           type, issuer));
+    }
+
+    /**
+     * Records that a policy was consulted.
+     *
+     * @param id the policy or policy set id
+     * @param version the version, or null for a reference to the id
+     */
+    public synchronized void addPolicy(URI id, String version) {
+        policies.add(new PolicyDependency(id, version));
+    }
+
+    /**
+     * Returns whether designators are recorded.
+     *
+     * @return false if only policies are recorded
+     */
+    public boolean isRecordingDesignators() {
+        return recordDesignators;
+    }
+
+    /**
+     * Records that the decision may depend on anything in the request.
+     */
+    public synchronized void setWholeRequest() {
+        wholeRequest = true;
+        designators.clear();
+    }
+
+    /**
+     * Returns whether the decision may depend on anything in the request,
+     * in which case there are no designators.
+     *
+     * @return true if the whole request was read
+     */
+    public synchronized boolean isWholeRequest() {
+        return wholeRequest;
+    }
+
+    /**
+     * Returns the designators that were looked up.
+     *
+     * @return a copy of the designators
+     */
+    public synchronized Set<Designator> getDesignators() {
+        return new HashSet<Designator>(designators);
+    }
+
+    /**
+     * Returns the policies that were consulted.
+     *
+     * @return a copy of the policies
+     */
+    public synchronized Set<PolicyDependency> getPolicies() {
+        return new HashSet<PolicyDependency>(policies);
+    }
+
+    /**
+     * A policy or policy set that was consulted, or a reference to one.
+     */
+    public static final class PolicyDependency
+    {
+        private final URI id;
+        private final String version;
+
+        /**
+         * Creates a dependency on a policy.
+         *
+         * @param id the policy or policy set id
+         * @param version the version, or null for a reference to the id
+         */
+        public PolicyDependency(URI id, String version) {
+            this.id = id;
+            this.version = version;
+        }
+
+        public URI getId() {
+            return id;
+        }
+
+        /**
+         * Returns the version of the policy.
+         *
+         * @return the version or null for a reference
+         */
+        public String getVersion() {
+            return version;
+        }
+
+        /**
+         * Returns whether a decision with this dependency may change
+         * when the given policy changes.
+         *
+         * @param changed a policy that changed
+         *
+         * @return true if this is the policy or a reference to its id
+         */
+        public boolean dependsOn(PolicyDependency changed) {
+            return id.equals(changed.id) &&
+                ((version == null) || version.equals(changed.version));
+        }
+
+        public int hashCode() {
+            return 31 * id.hashCode() +
+                (version == null ? 0 : version.hashCode());
+        }
+
+        public boolean equals(Object o) {
+            if (! (o instanceof PolicyDependency))
+                return false;
+
+            PolicyDependency other = (PolicyDependency)o;
+            return id.equals(other.id) &&
+                (version == null ? other.version == null :
+                 version.equals(other.version));
+        }
+
+        public String toString() {
+            return id + (version == null ? "" : "|" + version);
+        }
+    }
+
+    /**
+     * A designator that was looked up.
+     */
+    public static final class Designator
+    {
+        private final int designatorType;
+        private final URI category;
+        private final URI id;
+        private final URI type;
+        private final URI issuer;
+
+        private Designator(int designatorType, URI category, URI id,
+                           URI type, URI issuer) {
+            this.designatorType = designatorType;
+            this.category = category;
+            this.id = id;
+            this.type = type;
+            this.issuer = issuer;
+        }
+
+        /**
+         * Returns the type of the designator, as defined in
+         * <code>AttributeDesignator</code>.
+         *
+         * @return the designator type
+         */
+        public int getDesignatorType() {
+            return designatorType;
+        }
+
+        /**
+         * Returns the subject category, which is only set for subject
+         * designators.
+         *
+         * @return the category or null
+         */
+        public URI getCategory() {
+            return category;
+        }
+
+        public URI getId() {
+            return id;
+        }
+
+        public URI getType() {
+            return type;
+        }
+
+        public URI getIssuer() {
+            return issuer;
+        }
+
+        public int hashCode() {
+            int hash = designatorType;
+            hash = 31 * hash + id.hashCode();
+            hash = 31 * hash + type.hashCode();
+            hash = 31 * hash + (category == null ? 0 : category.hashCode());
+            return 31 * hash + (issuer == null ? 0 : issuer.hashCode());
+        }
+
+        public boolean equals(Object o) {
+            if (! (o instanceof Designator))
+                return false;
+
+            Designator other = (Designator)o;
+            return (designatorType == other.designatorType) &&
+                id.equals(other.id) && type.equals(other.type) &&
+                (category == null ? other.category == null :
+                 category.equals(other.category)) &&
+                (issuer == null ? other.issuer == null :
+                 issuer.equals(other.issuer));
+        }
+
+        public String toString() {
+            return designatorType + "|" +
+                (category == null ? "" : category.toString()) + "|" + id +
+                "|" + type + "|" + (issuer == null ? "" : issuer.toString());
+        }
+    }
+}
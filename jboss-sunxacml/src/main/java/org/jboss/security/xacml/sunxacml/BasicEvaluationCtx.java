@@ -63,6 +63,7 @@ import org.jboss.security.xacml.sunxacml.ctx.Attribute;
 import org.jboss.security.xacml.sunxacml.ctx.RequestCtx;
 import org.jboss.security.xacml.sunxacml.ctx.Subject;
 import org.jboss.security.xacml.sunxacml.finder.AttributeFinder;
+import org.jboss.security.xacml.sunxacml.finder.PolicyFinder;
 import org.w3c.dom.Node;
 
 
@@ -80,6 +81,12 @@ import org.w3c.dom.Node;
  * constant). The default behavior is for these environment values to be
  * cached, so that (for example) the current time remains constant over the
  * course of an evaluation.
+ * <p>
+ * The values returned by the AttributeFinder are remembered for the lifetime
+ * of this context, so an attribute that is referenced by many rules but is
+ * not in the Request is only looked up once. Empty bags are remembered as
+ * well, but Indeterminate results are not. The remembered values are
+ * dropped when the resource-id changes.
  *
  * @since 1.2
  * @author Seth Proctor
@@ -110,6 +117,36 @@ public class BasicEvaluationCtx implements EvaluationCtx
     private DateTimeAttribute currentDateTime;
     private boolean useCachedEnvValues;
 
+    // the values returned by the finder, keyed on the designator
+    private final HashMap finderResults = new HashMap();
+
+    // the values returned by the finder for subject designators, which may
+    // be shared with the contexts of other requests for the same subjects
+    private final Map subjectResults;
+
+    // the context this one was created from for one of its resources, or
+    // null if this context represents a request
+    private final BasicEvaluationCtx parent;
+
+    // where the request data read by the evaluation is recorded, or null
+    private final AttributeDependencies dependencies;
+
+    // the dependencies of the policy references being evaluated, innermost
+    // last, which are only used by the thread evaluating this context
+    private List<AttributeDependencies> captures = null;
+
+    // the results of the policies that references resolve to, remembered
+    // by the PDP, or null if they are not remembered
+    private SubDecisionCache subDecisions = null;
+
+    // the finder of the PDP evaluating this context, which resolves the
+    // policy references, or null if they use their own finder
+    private PolicyFinder policyFinder = null;
+
+    // the number of finder lookups that were answered from finderResults
+    // or subjectResults, guarded by finderResults
+    private int savedLookupCount;
+
     // the logger we'll use for all messages
     private static final Logger logger =
         Logger.getLogger(BasicEvaluationCtx.class.getName());
@@ -183,8 +220,74 @@ public class BasicEvaluationCtx implements EvaluationCtx
      */
     public BasicEvaluationCtx(RequestCtx request, AttributeFinder finder,
                               boolean cacheEnvValues) throws ParsingException {
+        this(request, finder, cacheEnvValues, null);
+    }
+
+    /**
+     * Constructs a new <code>BasicEvaluationCtx</code> based on the given
+     * request, and supports looking outside the original request for attribute
+     * values using the <code>AttributeFinder</code>. The values that the
+     * finder returns for subject designators are kept in the given map
+     * instead of in this context, so that the contexts of several requests
+     * with the same subjects can share them. This assumes that the
+     * attribute finder modules look subject attributes up from the subject
+     * data of the request only.
+     *
+     * @param request the request
+     * @param finder an <code>AttributeFinder</code> to use in looking for
+     *               attributes that aren't in the request
+     * @param cacheEnvValues whether or not to cache the current time, date,
+     *                       and dateTime so they are constant for the scope
+     *                       of this evaluation
+     * @param subjectResults a map shared by the contexts of requests with
+     *                       the same subjects, or null to keep the subject
+     *                       values in this context
+     *
+     * @throws ParsingException if a required attribute is missing, or if there
+     *                          are any problems dealing with the request data
+     */
+    public BasicEvaluationCtx(RequestCtx request, AttributeFinder finder,
+                              boolean cacheEnvValues, Map subjectResults)
+        throws ParsingException
+    {
+        this(request, finder, cacheEnvValues, subjectResults, null);
+    }
+
+    /**
+     * Constructs a new <code>BasicEvaluationCtx</code> based on the given
+     * request, that records the request data read and the policies consulted
+     * by the evaluation in the given <code>AttributeDependencies</code>. A
+     * context that records designators does not use the subject values of
+     * the shared map,
+     * since the lookups the finder made to produce them would not be
+     * recorded.
+     *
+     * @param request the request
+     * @param finder an <code>AttributeFinder</code> to use in looking for
+     *               attributes that aren't in the request
+     * @param cacheEnvValues whether or not to cache the current time, date,
+     *                       and dateTime so they are constant for the scope
+     *                       of this evaluation
+     * @param subjectResults a map shared by the contexts of requests with
+     *                       the same subjects, or null to keep the subject
+     *                       values in this context
+     * @param dependencies where the data read is recorded, or null
+     *
+     * @throws ParsingException if a required attribute is missing, or if there
+     *                          are any problems dealing with the request data
+     */
+    public BasicEvaluationCtx(RequestCtx request, AttributeFinder finder,
+                              boolean cacheEnvValues, Map subjectResults,
+                              AttributeDependencies dependencies)
+        throws ParsingException
+    {
         // keep track of the finder
         this.finder = finder;
+        this.subjectResults = ((dependencies == null) ||
+                               (! dependencies.isRecordingDesignators())) ?
+            subjectResults : null;
+        this.parent = null;
+        this.dependencies = dependencies;
 
         // remember the root of the DOM tree for XPath queries
         requestRoot = request.getDocumentRoot();
@@ -211,6 +314,56 @@ public class BasicEvaluationCtx implements EvaluationCtx
         // finally, set up the environment data, which is also generic
         environmentMap = new HashMap();
         mapAttributes(request.getEnvironmentAttributesAsList(), environmentMap);
+
+        // the resources of a scoped request are found from its resource-id
+        if ((dependencies != null) && (scope != SCOPE_IMMEDIATE))
+            dependencies.setWholeRequest();
+    }
+
+    /**
+     * Private constructor for a child context that evaluates one of the
+     * resources of the parent's request.
+     */
+    private BasicEvaluationCtx(BasicEvaluationCtx parent,
+                               AttributeValue resourceId) {
+        this.parent = parent;
+        this.finder = parent.finder;
+        this.subjectResults = parent.subjectResults;
+        this.dependencies = parent.dependencies;
+        this.subDecisions = parent.subDecisions;
+        this.policyFinder = parent.policyFinder;
+        this.requestRoot = parent.requestRoot;
+        this.useCachedEnvValues = parent.useCachedEnvValues;
+        this.scope = parent.scope;
+        this.resourceId = resourceId;
+
+        // the attribute maps are never modified once they are set up, so
+        // only the resource-id entry needs a copy
+        this.subjectMap = parent.subjectMap;
+        this.actionMap = parent.actionMap;
+        this.environmentMap = parent.environmentMap;
+        this.resourceMap = new HashMap(parent.resourceMap);
+        resourceMap.put(RESOURCE_ID, resourceIdAttributes(resourceId));
+    }
+
+    /**
+     * Creates a context for one of the resources of the request, when the
+     * scope is Children or Descendants. Unlike <code>setResourceId</code>,
+     * this leaves this context unchanged, so that the contexts of several
+     * resources can be evaluated concurrently.
+     * <p>
+     * The child shares the request data and the current date and time of
+     * this context. It also shares the values the attribute finder returns
+     * for subject, action and environment designators, which assumes that
+     * those do not depend on the resource. Values for resource designators
+     * are only remembered by the child.
+     *
+     * @param resourceId the resource-id of the child
+     *
+     * @return a context for the resource
+     */
+    public BasicEvaluationCtx createChildContext(AttributeValue resourceId) {
+        return new BasicEvaluationCtx(this, resourceId);
     }
 
     /**
@@ -296,7 +449,7 @@ public class BasicEvaluationCtx implements EvaluationCtx
         
         // see if a resource-scope attribute was included
         if (resourceMap.containsKey(RESOURCE_SCOPE)) {
-            Set set = (Set)(resourceMap.get(RESOURCE_SCOPE));
+            List set = (List)(resourceMap.get(RESOURCE_SCOPE));
 
             // make sure there's only one value for resource-scope
             if (set.size() > 1) {
@@ -305,7 +458,7 @@ public class BasicEvaluationCtx implements EvaluationCtx
                 throw new ParsingException("too many resource-scope attrs");
             }
 
-            Attribute attr = (Attribute)(set.iterator().next());
+            Attribute attr = (Attribute)(set.get(0));
             AttributeValue attrValue = attr.getValue();
 
             // scope must be a string, so throw an exception otherwise
@@ -329,6 +482,32 @@ public class BasicEvaluationCtx implements EvaluationCtx
             // by default, the scope is always Immediate
             scope = SCOPE_IMMEDIATE;
         }
+
+        // the resource finder needs the parent resource of a scoped request
+        if ((scope != SCOPE_IMMEDIATE) && resourceMap.containsKey(RESOURCE_ID))
+            resourceId = ((Attribute)(((List)(resourceMap.get(RESOURCE_ID))).
+                                      get(0))).getValue();
+    }
+
+    /**
+     * Private helper that returns the resource-id entry of the resource
+     * map for the given value, keeping the issuer of the request's
+     * resource-id attribute.
+     */
+    private List resourceIdAttributes(AttributeValue value) {
+        List attrList = (List)(resourceMap.get(RESOURCE_ID));
+        Attribute attr;
+        if ((attrList == null) || attrList.isEmpty())
+            attr = new Attribute(URI.create(RESOURCE_ID), null, null, value);
+        else {
+            Attribute old = (Attribute)(attrList.get(0));
+            attr = new Attribute(old.getId(), old.getIssuer(),
+                                 old.getIssueInstant(), value);
+        }
+
+        List list = new ArrayList();
+        list.add(attr);
+        return list;
     }
 
     /**
@@ -393,16 +572,150 @@ public class BasicEvaluationCtx implements EvaluationCtx
     public void setResourceId(AttributeValue resourceId) {
         this.resourceId = resourceId;
 
-        // there will always be exactly one value for this attribute
-        Set attrSet = (Set)(resourceMap.get(RESOURCE_ID));
-        Attribute attr = (Attribute)(attrSet.iterator().next());
-        
-        // remove the old value...
-        attrSet.remove(attr);
+        // replace the resource-id attribute with one for the new value
+        resourceMap.put(RESOURCE_ID, resourceIdAttributes(resourceId));
+
+        // values found for the previous resource may not apply to this one
+        synchronized (finderResults) {
+            finderResults.clear();
+        }
+    }
+
+    /**
+     * Returns where the request data read by the evaluation is recorded.
+     *
+     * @return the dependencies or null
+     */
+    public AttributeDependencies getAttributeDependencies() {
+        return dependencies;
+    }
+
+    /**
+     * Returns the results of the policies that references resolve to,
+     * which the PDP remembers for the values the policies read.
+     *
+     * @return the remembered results, or null if they are not remembered
+     */
+    SubDecisionCache getSubDecisions() {
+        return subDecisions;
+    }
+
+    /**
+     * Sets the results of the policies that references resolve to. This
+     * is set by the <code>PDP</code> from its configuration.
+     *
+     * @param subDecisions the remembered results, or null
+     */
+    void setSubDecisions(SubDecisionCache subDecisions) {
+        this.subDecisions = subDecisions;
+    }
+
+    /**
+     * Returns the policy finder of the PDP evaluating this context. Policy
+     * references are resolved with it, so that the policies an evaluation
+     * sees all come from the same finder.
+     *
+     * @return the finder, or null if references use their own finder
+     */
+    public PolicyFinder getPolicyFinder() {
+        return policyFinder;
+    }
+
+    /**
+     * Sets the policy finder that resolves policy references. This is set
+     * by the <code>PDP</code> from its configuration.
+     *
+     * @param policyFinder the finder, or null
+     */
+    void setPolicyFinder(PolicyFinder policyFinder) {
+        this.policyFinder = policyFinder;
+    }
+
+    /**
+     * Starts recording what the evaluation reads into another instance as
+     * well, until <code>endCapture</code> is called. Captures may be nested.
+     *
+     * @param capture where the data read is recorded
+     */
+    void startCapture(AttributeDependencies capture) {
+        if (captures == null)
+            captures = new ArrayList<AttributeDependencies>();
+        captures.add(capture);
+    }
+
+    /**
+     * Stops recording into an instance passed to <code>startCapture</code>.
+     *
+     * @param capture the innermost capture
+     */
+    void endCapture(AttributeDependencies capture) {
+        captures.remove(captures.size() - 1);
+    }
+
+    /**
+     * Records that a policy was consulted.
+     *
+     * @param id the policy or policy set id
+     * @param version the version, or null for a reference to the id
+     */
+    void recordPolicy(URI id, String version) {
+        if (dependencies != null)
+            dependencies.addPolicy(id, version);
+        if (captures != null) {
+            for (AttributeDependencies capture : captures)
+                capture.addPolicy(id, version);
+        }
+    }
+
+    /**
+     * Records that a designator was looked up, when its values are reused
+     * rather than looked up again.
+     *
+     * @param designator the designator
+     */
+    void recordDesignator(AttributeDependencies.Designator designator) {
+        recordDesignator(designator.getDesignatorType(),
+                         designator.getCategory(), designator.getId(),
+                         designator.getType(), designator.getIssuer());
+    }
+
+    /**
+     * Records that a designator was looked up.
+     */
+    private void recordDesignator(int designatorType, URI category, URI id,
+                                  URI type, URI issuer) {
+        if (dependencies != null)
+            dependencies.addDesignator(designatorType, category, id, type,
+                                       issuer);
+        if (captures != null) {
+            for (AttributeDependencies capture : captures)
+                capture.addDesignator(designatorType, category, id, type,
+                                      issuer);
+        }
+    }
+
+    /**
+     * Records that the evaluation may depend on anything in the request.
+     */
+    private void recordWholeRequest() {
+        if (dependencies != null)
+            dependencies.setWholeRequest();
+        if (captures != null) {
+            for (AttributeDependencies capture : captures)
+                capture.setWholeRequest();
+        }
+    }
 
-        // ...and insert the new value
-        attrSet.add(new Attribute(attr.getId(), attr.getIssuer(),
-                                  attr.getIssueInstant(), resourceId));
+    /**
+     * Returns the number of AttributeFinder lookups that were answered with
+     * a value previously returned by the finder for this context.
+     *
+     * @return the number of lookups saved
+     */
+    public int getSavedLookupCount() {
+        synchronized (finderResults) {
+            return savedLookupCount;
+        }
     }
 
     /**
@@ -421,6 +734,10 @@ public class BasicEvaluationCtx implements EvaluationCtx
      * @return the current time
      */
     public synchronized TimeAttribute getCurrentTime() {
+        // children use the moment of their parent
+        if (parent != null)
+            return parent.getCurrentTime();
+
         long millis = dateTimeHelper();
 
         if (useCachedEnvValues)
@@ -445,6 +762,10 @@ public class BasicEvaluationCtx implements EvaluationCtx
      * @return the current date
      */
     public synchronized DateAttribute getCurrentDate() {
+        // children use the moment of their parent
+        if (parent != null)
+            return parent.getCurrentDate();
+
         long millis = dateTimeHelper();
 
         if (useCachedEnvValues)
@@ -469,6 +790,10 @@ public class BasicEvaluationCtx implements EvaluationCtx
      * @return the current dateTime
      */
     public synchronized DateTimeAttribute getCurrentDateTime() {
+        // children use the moment of their parent
+        if (parent != null)
+            return parent.getCurrentDateTime();
+
         long millis = dateTimeHelper();
 
         if (useCachedEnvValues)
@@ -538,6 +863,9 @@ public class BasicEvaluationCtx implements EvaluationCtx
      */
     public EvaluationResult getSubjectAttribute(URI type, URI id, URI issuer,
                                                 URI category) {
+        recordDesignator(AttributeDesignator.SUBJECT_TARGET, category, id,
+                         type, issuer);
+
         // This is the same as the other three lookups except that this
         // has an extra level of indirection that needs to be handled first
         Map map = (Map)(subjectMap.get(category));
@@ -566,6 +894,9 @@ public class BasicEvaluationCtx implements EvaluationCtx
      */
     public EvaluationResult getResourceAttribute(URI type, URI id,
                                                  URI issuer) {
+        recordDesignator(AttributeDesignator.RESOURCE_TARGET, null, id, type,
+                         issuer);
+
         return getGenericAttributes(type, id, issuer, resourceMap, null,
                                     AttributeDesignator.RESOURCE_TARGET);
     }
@@ -582,6 +913,9 @@ public class BasicEvaluationCtx implements EvaluationCtx
      * Indeterminate result
      */
     public EvaluationResult getActionAttribute(URI type, URI id, URI issuer) {
+        recordDesignator(AttributeDesignator.ACTION_TARGET, null, id, type,
+                         issuer);
+
         return getGenericAttributes(type, id, issuer, actionMap, null,
                                     AttributeDesignator.ACTION_TARGET);
     }
@@ -599,6 +933,9 @@ public class BasicEvaluationCtx implements EvaluationCtx
      */
     public EvaluationResult getEnvironmentAttribute(URI type, URI id,
                                                     URI issuer) {
+        recordDesignator(AttributeDesignator.ENVIRONMENT_TARGET, null, id,
+                         type, issuer);
+
         return getGenericAttributes(type, id, issuer, environmentMap, null,
                                     AttributeDesignator.ENVIRONMENT_TARGET);
     }
@@ -611,13 +948,39 @@ public class BasicEvaluationCtx implements EvaluationCtx
                                                   Map map, URI category,
                                                   int designatorType) {
         // try to find the id
-        List attrSet = (List)(map.get(id.toString()));
-        if (attrSet == null) {
+        List attributes = getRequestValues(type, id, issuer, map);
+        if (attributes == null) {
             // the request didn't have an attribute with that id, so we should
             // try asking the attribute finder
             return callHelper(type, id, issuer, category, designatorType);
         }
 
+        // see if we found any acceptable attributes
+        if (attributes.size() == 0) {
+            // we failed to find any that matched the type/issuer, or all the
+            // Attribute types were empty...so ask the finder
+            if (logger.isLoggable(Level.FINE))
+                logger.fine("Attribute not in request: " + id.toString() +
+                            " ... querying AttributeFinder");
+
+            return callHelper(type, id, issuer, category, designatorType);
+        }
+                
+        // if we got here, then we found at least one useful AttributeValue
+        return new EvaluationResult(new BagAttribute(type, attributes));
+    }
+
+    /**
+     * Private helper that returns the values of the attributes with an id
+     * and the given type and issuer in a section of the request, or null
+     * if the request has no attribute with that id.
+     */
+    private static List getRequestValues(URI type, URI id, URI issuer,
+                                         Map map) {
+        List attrSet = (List)(map.get(id.toString()));
+        if (attrSet == null)
+            return null;
+
         // now go through each, considering each Attribute object
         List attributes = new ArrayList();
         Iterator it = attrSet.iterator();
@@ -636,31 +999,108 @@ public class BasicEvaluationCtx implements EvaluationCtx
                 attributes.addAll(attr.getValues());
             }
         }
+        return attributes;
+    }
 
-        // see if we found any acceptable attributes
-        if (attributes.size() == 0) {
-            // we failed to find any that matched the type/issuer, or all the
-            // Attribute types were empty...so ask the finder
-            if (logger.isLoggable(Level.FINE))
-                logger.fine("Attribute not in request: " + id.toString() +
-                            " ... querying AttributeFinder");
+    /**
+     * Returns the values of a designator if they are in the request or the
+     * attribute finder already returned them for this context, without
+     * calling the finder and without recording the designator.
+     *
+     * @param designator the designator
+     *
+     * @return the values, or null if only the finder could tell them
+     */
+    EvaluationResult getResolvedAttribute(AttributeDependencies.Designator
+                                          designator) {
+        int adType = designator.getDesignatorType();
+        URI type = designator.getType();
+        URI id = designator.getId();
+        URI issuer = designator.getIssuer();
+        URI category = designator.getCategory();
+
+        Map map;
+        switch (adType) {
+        case AttributeDesignator.SUBJECT_TARGET:
+            map = (Map)(subjectMap.get(category));
+            break;
+        case AttributeDesignator.RESOURCE_TARGET:
+            map = resourceMap;
+            break;
+        case AttributeDesignator.ACTION_TARGET:
+            map = actionMap;
+            break;
+        default:
+            map = environmentMap;
+        }
+        if (map != null) {
+            List attributes = getRequestValues(type, id, issuer, map);
+            if ((attributes != null) && (attributes.size() > 0))
+                return new EvaluationResult(new BagAttribute(type,
+                                                             attributes));
+        }
 
-            return callHelper(type, id, issuer, category, designatorType);
+        if (finder == null)
+            return new EvaluationResult(BagAttribute.createEmptyBag(type));
+        if ((adType == AttributeDesignator.ENVIRONMENT_TARGET) &&
+            (! useCachedEnvValues))
+            return null;
+
+        Map results = getFinderResults(adType);
+        synchronized (results) {
+            return (EvaluationResult)(results.get(new FinderKey(adType,
+                category, id, type, issuer)));
         }
-                
-        // if we got here, then we found at least one useful AttributeValue
-        return new EvaluationResult(new BagAttribute(type, attributes));
+    }
+
+    /**
+     * Private helper that returns the map of the values returned by the
+     * finder for a type of designator.
+     */
+    private Map getFinderResults(int adType) {
+        if ((adType == AttributeDesignator.SUBJECT_TARGET) &&
+            (subjectResults != null))
+            return subjectResults;
+        if ((adType != AttributeDesignator.RESOURCE_TARGET) &&
+            (parent != null))
+            return parent.finderResults;
+        return finderResults;
     }
 
     /**
      * Private helper that calls the finder if it's non-null, or else returns
-     * an empty bag
+     * an empty bag. The results of the finder are remembered, except for
+     * generated environment values that are not supposed to be cached.
      */
     private EvaluationResult callHelper(URI type, URI id, URI issuer,
                                         URI category, int adType) {
         if (finder != null) {
-            return finder.findAttribute(type, id, issuer, category,
-                                        this, adType);
+            if ((adType == AttributeDesignator.ENVIRONMENT_TARGET) &&
+                (! useCachedEnvValues))
+                return finder.findAttribute(type, id, issuer, category,
+                                            this, adType);
+
+            Map results = getFinderResults(adType);
+            FinderKey key = new FinderKey(adType, category, id, type, issuer);
+            EvaluationResult result;
+            synchronized (results) {
+                result = (EvaluationResult)(results.get(key));
+            }
+            if (result != null) {
+                synchronized (finderResults) {
+                    savedLookupCount++;
+                }
+                return result;
+            }
+
+            result =
+                finder.findAttribute(type, id, issuer, category, this, adType);
+            if (! result.indeterminate()) {
+                synchronized (results) {
+                    results.put(key, result);
+                }
+            }
+            return result;
         } else {
             logger.warning("Context tried to invoke AttributeFinder but was " +
                            "not configured with one");
@@ -686,6 +1126,8 @@ public class BasicEvaluationCtx implements EvaluationCtx
     public EvaluationResult getAttribute(String contextPath,
                                          Node namespaceNode, URI type,
                                          String xpathVersion) {
+        recordWholeRequest();
+
         if (finder != null) {
             return finder.findAttribute(contextPath, namespaceNode, type, this,
                                         xpathVersion);
@@ -697,4 +1139,46 @@ public class BasicEvaluationCtx implements EvaluationCtx
         }
     }
 
+    /**
+     * The designator that a value was looked up for.
+     */
+    private static class FinderKey
+    {
+        private final int designatorType;
+        private final URI category;
+        private final URI id;
+        private final URI type;
+        private final URI issuer;
+
+        private FinderKey(int designatorType, URI category, URI id, URI type,
+                          URI issuer) {
+            this.designatorType = designatorType;
+            this.category = category;
+            this.id = id;
+            this.type = type;
+            this.issuer = issuer;
+        }
+
+        public int hashCode() {
+            int hash = designatorType;
+            hash = 31 * hash + id.hashCode();
+            hash = 31 * hash + type.hashCode();
+            hash = 31 * hash + (category == null ? 0 : category.hashCode());
+            return 31 * hash + (issuer == null ? 0 : issuer.hashCode());
+        }
+
+        public boolean equals(Object o) {
+            if (! (o instanceof FinderKey))
+                return false;
+
+            FinderKey other = (FinderKey)o;
+            return (designatorType == other.designatorType) &&
+                id.equals(other.id) && type.equals(other.type) &&
+                (category == null ? other.category == null :
+                 category.equals(other.category)) &&
+                (issuer == null ? other.issuer == null :
+                 issuer.equals(other.issuer));
+        }
+    }
+
 }
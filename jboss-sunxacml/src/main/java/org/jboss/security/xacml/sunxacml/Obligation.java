@@ -40,6 +40,7 @@ package org.jboss.security.xacml.sunxacml;
 
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.io.Serializable;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
@@ -64,9 +65,11 @@ import org.w3c.dom.NodeList;
  * @author Seth Proctor
  */
 @SuppressWarnings({"unchecked", "rawtypes"})
-public class Obligation
+public class Obligation implements Serializable
 {
 
+    private static final long serialVersionUID = -3097272746277798327L;
+
     // the obligation id
     private URI id;
 
@@ -189,6 +192,36 @@ public class Obligation
         return assignments;
     }
 
+    /**
+     * Returns whether the given object is an <code>Obligation</code> with
+     * the same id, fulfillOn effect and assignments as this one.
+     *
+     * @param o the object to compare
+     *
+     * @return true if the obligations are equal
+     */
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (! (o instanceof Obligation))
+            return false;
+
+        Obligation other = (Obligation)o;
+        return (fulfillOn == other.fulfillOn) && id.equals(other.id) &&
+            assignments.equals(other.assignments);
+    }
+
+    /**
+     * Returns a hash code that is consistent with <code>equals</code>.
+     *
+     * @return the hash code of this obligation
+     */
+    public int hashCode() {
+        int hash = id.hashCode();
+        hash = 31 * hash + fulfillOn;
+        return 31 * hash + assignments.hashCode();
+    }
+
     /**
      * Encodes this <code>Obligation</code> into its XML form and writes this
      * out to the provided <code>OutputStream<code> with no indentation.
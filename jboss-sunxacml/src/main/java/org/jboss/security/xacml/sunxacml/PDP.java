@@ -45,7 +45,9 @@ import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -82,6 +84,16 @@ public class PDP
     // the single resource finder that will be used to resolve resources
     private ResourceFinder resourceFinder;
 
+    // the results of the policies that references resolve to, or null
+    private SubDecisionCache subDecisions;
+
+    // the executor that helps evaluate the resources of a request, or null
+    private Executor executor;
+
+    // the maximum number of threads evaluating the resources of a request
+    private static final int PARALLELISM =
+        Runtime.getRuntime().availableProcessors();
+
     // the logger we'll use for all messages
     private static final Logger logger = Logger.getLogger(PDP.class.getName());
 
@@ -101,6 +113,13 @@ public class PDP
         policyFinder.init();
 
         resourceFinder = config.getResourceFinder();
+
+        if (config.getSubDecisionCacheSize() > 0)
+            subDecisions =
+                new SubDecisionCache(config.getSubDecisionCacheSize(),
+                                     config.getSubDecisionTimeToLive());
+
+        executor = config.getExecutor();
     }
 
     /**
@@ -119,12 +138,55 @@ public class PDP
      * @return a response paired to the request
      */
     public ResponseCtx evaluate(RequestCtx request) {
+        return evaluate(request, null);
+    }
+
+    /**
+     * Attempts to evaluate the request against the policies known to this
+     * PDP, sharing the attribute values found for the subjects of the
+     * request with other evaluations. This is meant for a batch of requests
+     * that have the same subjects, which can all be evaluated with the
+     * same map. See <code>BasicEvaluationCtx</code> for details.
+     *
+     * @param request the request to evaluate
+     * @param subjectResults a map shared by the evaluations of requests with
+     *                       the same subjects, or null
+     *
+     * @return a response paired to the request
+     */
+    public ResponseCtx evaluate(RequestCtx request, Map subjectResults) {
+        return evaluate(request, subjectResults, null);
+    }
+
+    /**
+     * Attempts to evaluate the request against the policies known to this
+     * PDP, recording the request data that the evaluation reads. See
+     * <code>AttributeDependencies</code> for details.
+     *
+     * @param request the request to evaluate
+     * @param subjectResults a map shared by the evaluations of requests with
+     *                       the same subjects, or null
+     * @param dependencies where the data read is recorded, or null
+     *
+     * @return a response paired to the request
+     */
+    public ResponseCtx evaluate(RequestCtx request, Map subjectResults,
+                                AttributeDependencies dependencies) {
         // try to create the EvaluationCtx out of the request
         try {
-            return evaluate(new BasicEvaluationCtx(request, attributeFinder));
+            BasicEvaluationCtx context =
+                new BasicEvaluationCtx(request, attributeFinder, true,
+                                       subjectResults, dependencies);
+            context.setSubDecisions(subDecisions);
+            context.setPolicyFinder(policyFinder);
+            return evaluate(context);
         } catch (ParsingException pe) {
             logger.log(Level.INFO, "the PDP receieved an invalid request", pe);
 
+            // the response describes the whole request
+            if (dependencies != null)
+                dependencies.setWholeRequest();
+
             // there was something wrong with the request, so we return
             // Indeterminate with a status of syntax error...though this
             // may change if a more appropriate status type exists
@@ -184,24 +246,23 @@ public class PDP
 
             // at this point, we need to go through all the resources we
             // successfully found and start collecting results
-            Iterator it = resourceResult.getResources().iterator();
-            while (it.hasNext()) {
-                // get the next resource, and set it in the EvaluationCtx
-                AttributeValue resource = (AttributeValue)(it.next());
-                context.setResourceId(resource);
-                
-                // do the evaluation, and set the resource in the result
-                Result result = evaluateContext(context);
-                result.setResource(resource.encode());
+            List resources = new ArrayList(resourceResult.getResources());
+            Result [] evaluated;
+            if ((executor != null) &&
+                (context instanceof BasicEvaluationCtx) &&
+                (resources.size() > 1))
+                evaluated = evaluateResources((BasicEvaluationCtx)context,
+                                              resources);
+            else
+                evaluated = evaluateResources(context, resources);
 
-                // add the result
-                results.add(result);
-            }
+            for (int i = 0; i < evaluated.length; i++)
+                results.add(evaluated[i]);
 
             // now that we've done all the successes, we add all the failures
             // from the finder result
             Map failureMap = resourceResult.getFailures();
-            it = failureMap.keySet().iterator();
+            Iterator it = failureMap.keySet().iterator();
             while (it.hasNext()) {
                 // get the next resource, and use it to get its Status data
                 AttributeValue resource = (AttributeValue)(it.next());
@@ -221,6 +282,48 @@ public class PDP
         }
     }
 
+    /**
+     * A private helper routine that evaluates the resources one after the
+     * other, changing the resource-id of the given context each time
+     */
+    private Result [] evaluateResources(EvaluationCtx context,
+                                        List resources) {
+        Result [] results = new Result[resources.size()];
+        for (int i = 0; i < results.length; i++) {
+            // get the next resource, and set it in the EvaluationCtx
+            AttributeValue resource = (AttributeValue)(resources.get(i));
+            context.setResourceId(resource);
+
+            // do the evaluation, and set the resource in the result
+            results[i] = evaluateContext(context);
+            results[i].setResource(resource.encode());
+        }
+        return results;
+    }
+
+    /**
+     * A private helper routine that evaluates each resource in a child of
+     * the given context. The children are evaluated by the calling thread
+     * and the threads of the configured executor together, see
+     * <code>ParallelTasks</code>.
+     */
+    private Result [] evaluateResources(final BasicEvaluationCtx context,
+                                        final List resources) {
+        final Result [] results = new Result[resources.size()];
+        ParallelTasks.run(executor, PARALLELISM, results.length,
+                          new ParallelTasks.Task() {
+                public void run(int i) {
+                    AttributeValue resource =
+                        (AttributeValue)(resources.get(i));
+                    Result result = evaluateContext(context.
+                        createChildContext(resource));
+                    result.setResource(resource.encode());
+                    results[i] = result;
+                }
+            });
+        return results;
+    }
+
     /**
      * A private helper routine that resolves a policy for the given 
      * context, and then tries to evaluate based on the policy
@@ -290,4 +393,24 @@ public class PDP
         return out;
     }
 
+    /**
+     * Returns the number of evaluations of policy references that were
+     * answered with a result remembered by this PDP. See
+     * <code>SubDecisionCache</code> for details.
+     *
+     * @return the number of reused results
+     */
+    public long getSubDecisionHitCount() {
+        return (subDecisions == null) ? 0 : subDecisions.getHitCount();
+    }
+
+    /**
+     * Forgets the results of the policy references that this PDP
+     * remembered, such as when the policies they came from are replaced.
+     */
+    public void clearSubDecisions() {
+        if (subDecisions != null)
+            subDecisions.clear();
+    }
+
 }
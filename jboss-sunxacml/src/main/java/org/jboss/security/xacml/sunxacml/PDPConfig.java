@@ -36,6 +36,8 @@
 
 package org.jboss.security.xacml.sunxacml;
 
+import java.util.concurrent.Executor;
+
 import org.jboss.security.xacml.sunxacml.finder.AttributeFinder;
 import org.jboss.security.xacml.sunxacml.finder.PolicyFinder;
 import org.jboss.security.xacml.sunxacml.finder.ResourceFinder;
@@ -63,6 +65,21 @@ public class PDPConfig
     //
     private ResourceFinder resourceFinder;
 
+    // the number of results of referenced policies the PDP remembers
+    private int subDecisionCacheSize;
+
+    // how long the PDP reuses a result of a referenced policy
+    private long subDecisionTimeToLive;
+
+    /**
+     * The time a result of a referenced policy is reused by default, in
+     * milliseconds
+     */
+    public static final long DEFAULT_SUB_DECISION_TIME_TO_LIVE = 60000;
+
+    // the executor that helps evaluate the resources of a request
+    private Executor executor;
+
     /**
      * Constructor that creates a <code>PDPConfig</code> from components.
      *
@@ -76,6 +93,86 @@ public class PDPConfig
     public PDPConfig(AttributeFinder attributeFinder,
                      PolicyFinder policyFinder,
                      ResourceFinder resourceFinder) {
+        this(attributeFinder, policyFinder, resourceFinder, 0);
+    }
+
+    /**
+     * Constructor that creates a <code>PDPConfig</code> from components,
+     * with a PDP that remembers the results of the policies that policy
+     * references refer to for a minute. See <code>SubDecisionCache</code>
+     * for details.
+     *
+     * @param attributeFinder the <code>AttributeFinder</code> that the PDP
+     *                        should use, or null if it shouldn't use any
+     * @param policyFinder the <code>PolicyFinder</code> that the PDP
+     *                     should use, or null if it shouldn't use any
+     * @param resourceFinder the <code>ResourceFinder</code> that the PDP
+     *                       should use, or null if it shouldn't use any
+     * @param subDecisionCacheSize the number of results of referenced
+     *                             policies remembered, or 0 for none
+     */
+    public PDPConfig(AttributeFinder attributeFinder,
+                     PolicyFinder policyFinder,
+                     ResourceFinder resourceFinder,
+                     int subDecisionCacheSize) {
+        this(attributeFinder, policyFinder, resourceFinder,
+             subDecisionCacheSize, null);
+    }
+
+    /**
+     * Constructor that creates a <code>PDPConfig</code> from components,
+     * with an executor whose threads help evaluate the resources of a
+     * request whose scope is not immediate.
+     *
+     * @param attributeFinder the <code>AttributeFinder</code> that the PDP
+     *                        should use, or null if it shouldn't use any
+     * @param policyFinder the <code>PolicyFinder</code> that the PDP
+     *                     should use, or null if it shouldn't use any
+     * @param resourceFinder the <code>ResourceFinder</code> that the PDP
+     *                       should use, or null if it shouldn't use any
+     * @param subDecisionCacheSize the number of results of referenced
+     *                             policies remembered, or 0 for none
+     * @param executor the executor that helps evaluate the resources, or
+     *                 null to evaluate them one after the other
+     */
+    public PDPConfig(AttributeFinder attributeFinder,
+                     PolicyFinder policyFinder,
+                     ResourceFinder resourceFinder,
+                     int subDecisionCacheSize,
+                     Executor executor) {
+        this(attributeFinder, policyFinder, resourceFinder,
+             subDecisionCacheSize, DEFAULT_SUB_DECISION_TIME_TO_LIVE,
+             executor);
+    }
+
+    /**
+     * Constructor that creates a <code>PDPConfig</code> from components,
+     * with the time a result of a referenced policy is reused, which is
+     * usually the time to live of the decisions cached for the PDP.
+     *
+     * @param attributeFinder the <code>AttributeFinder</code> that the PDP
+     *                        should use, or null if it shouldn't use any
+     * @param policyFinder the <code>PolicyFinder</code> that the PDP
+     *                     should use, or null if it shouldn't use any
+     * @param resourceFinder the <code>ResourceFinder</code> that the PDP
+     *                       should use, or null if it shouldn't use any
+     * @param subDecisionCacheSize the number of results of referenced
+     *                             policies remembered, or 0 for none
+     * @param subDecisionTimeToLive how long a result is reused, in
+     *                              milliseconds
+     * @param executor the executor that helps evaluate the resources, or
+     *                 null to evaluate them one after the other
+     */
+    public PDPConfig(AttributeFinder attributeFinder,
+                     PolicyFinder policyFinder,
+                     ResourceFinder resourceFinder,
+                     int subDecisionCacheSize,
+                     long subDecisionTimeToLive,
+                     Executor executor) {
+        this.subDecisionCacheSize = subDecisionCacheSize;
+        this.subDecisionTimeToLive = subDecisionTimeToLive;
+        this.executor = executor;
+
         if (attributeFinder != null)
             this.attributeFinder = attributeFinder;
         else
@@ -122,4 +219,33 @@ public class PDPConfig
         return resourceFinder;
     }
 
+    /**
+     * Returns the number of results of referenced policies the PDP
+     * remembers.
+     *
+     * @return the number of results, or 0 if they are not remembered
+     */
+    public int getSubDecisionCacheSize() {
+        return subDecisionCacheSize;
+    }
+
+    /**
+     * Returns how long the PDP reuses a result of a referenced policy.
+     *
+     * @return the time to live, in milliseconds
+     */
+    public long getSubDecisionTimeToLive() {
+        return subDecisionTimeToLive;
+    }
+
+    /**
+     * Returns the executor that helps evaluate the resources of a request.
+     *
+     * @return the executor, or null if the resources are evaluated one
+     *         after the other
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+
 }
@@ -0,0 +1,121 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.security.xacml.sunxacml;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+
+/**
+ * Runs a number of independent tasks on the calling thread and the threads
+ * of an executor. Each thread takes the next task that nobody has taken
+ * yet, so all the tasks run even if the executor runs none of them, and
+ * the calling thread returns once they are all done. This is how the
+ * <code>PDP</code> evaluates the resources of a request in parallel.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since Oct 18, 2026
+ */
+public class ParallelTasks
+{
+
+    /**
+     * One of the numbered tasks to run.
+     */
+    public interface Task
+    {
+        /**
+         * Runs the task with the given number.
+         *
+         * @param index the number of the task, from 0
+         */
+        public void run(int index);
+    }
+
+    /**
+     * Runs the tasks numbered from 0 to <code>count - 1</code>, and returns
+     * once they are all done. If a task fails, the other tasks still run,
+     * and the first failure is then thrown.
+     *
+     * @param executor the executor whose threads help the calling thread,
+     *                 or null to run all the tasks on the calling thread
+     * @param parallelism the maximum number of threads running the tasks,
+     *                    including the calling thread
+     * @param count the number of tasks
+     * @param task the tasks
+     */
+    public static void run(Executor executor, int parallelism,
+                           final int count, final Task task) {
+        final AtomicInteger next = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(count);
+        final AtomicReference<Throwable> failure =
+            new AtomicReference<Throwable>();
+
+        Runnable worker = new Runnable() {
+                public void run() {
+                    int i;
+                    while ((i = next.getAndIncrement()) < count) {
+                        try {
+                            task.run(i);
+                        } catch (Throwable t) {
+                            failure.compareAndSet(null, t);
+                        } finally {
+                            done.countDown();
+                        }
+                    }
+                }
+            };
+
+        int helpers = (executor != null) ?
+            Math.min(count, parallelism) - 1 : 0;
+        for (int i = 0; i < helpers; i++) {
+            try {
+                executor.execute(worker);
+            } catch (RejectedExecutionException ree) {
+                break;
+            }
+        }
+        worker.run();
+
+        boolean interrupted = false;
+        while (true) {
+            try {
+                done.await();
+                break;
+            } catch (InterruptedException ie) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+
+        Throwable t = failure.get();
+        if (t instanceof RuntimeException)
+            throw (RuntimeException)t;
+        if (t instanceof Error)
+            throw (Error)t;
+    }
+
+}
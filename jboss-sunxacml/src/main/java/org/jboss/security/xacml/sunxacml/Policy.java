@@ -45,8 +45,8 @@ import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -71,6 +71,8 @@ import org.w3c.dom.NodeList;
 public class Policy extends AbstractPolicy
 {
 
+    private static final long serialVersionUID = 5491412841590440539L;
+
     // the set of variable definitions in this policy
     private Set definitions;
 
@@ -233,7 +235,7 @@ public class Policy extends AbstractPolicy
             this.definitions = Collections.EMPTY_SET;
         else
             this.definitions = Collections.
-                unmodifiableSet(new HashSet(definitions));
+                unmodifiableSet(new LinkedHashSet(definitions));
     }
 
     /**
@@ -293,7 +295,7 @@ public class Policy extends AbstractPolicy
             this.definitions = Collections.EMPTY_SET;
         else
             this.definitions = Collections.
-                unmodifiableSet(new HashSet(definitions));
+                unmodifiableSet(new LinkedHashSet(definitions));
     }
 
     /**
@@ -332,7 +334,7 @@ public class Policy extends AbstractPolicy
 
         // now create a manager with the defined variable identifiers
         VariableManager manager = new VariableManager(variableIds, metaData);
-        definitions = new HashSet();
+        definitions = new LinkedHashSet();
 
         // next, collect the Policy-specific elements
         for (int i = 0; i < children.getLength(); i++) {
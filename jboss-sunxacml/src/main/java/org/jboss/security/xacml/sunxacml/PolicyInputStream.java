@@ -0,0 +1,175 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.security.xacml.sunxacml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.StreamCorruptedException;
+
+import org.jboss.security.xacml.sunxacml.finder.PolicyFinder;
+
+/**
+ * A stream that reads serialized policies and policy sets, as written by
+ * a <code>PolicyOutputStream</code>.
+ * <p>
+ * Policies are serializable so that a compiled policy tree can be saved and
+ * read back without parsing its XML again. The references to other policies
+ * in a policy set need a <code>PolicyFinder</code>, which is not serialized,
+ * so the references read from this stream use the finder it was created with.
+ * The factories of the policy meta-data are the default ones once read, and
+ * the functions, combining algorithms and attribute values are copies of the
+ * ones that were serialized.
+ * </p>
+ * <p>
+ * Only the classes that make up a policy tree can be read: the classes of
+ * this package and its sub-packages, the <code>java.lang</code> and
+ * <code>java.util</code> classes, and the few JDK classes that attribute
+ * values hold. Any other class is rejected before it is loaded, and so is a
+ * stream written with another version of the serialized form.
+ * </p>
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since Oct 18, 2026
+ */
+public class PolicyInputStream extends ObjectInputStream
+{
+    // the package of the policy classes
+    private static final String POLICY_PACKAGE =
+        "org.jboss.security.xacml.sunxacml.";
+
+    // the JDK classes, besides java.lang and java.util, that attribute
+    // values hold
+    private static final String [] JDK_CLASSES = {
+        "java.net.URI", "java.net.InetAddress", "java.net.Inet4Address",
+        "java.net.Inet6Address", "java.net.InetAddress$InetAddressHolder",
+        "java.net.Inet6Address$Inet6AddressHolder",
+        "javax.security.auth.x500.X500Principal"
+    };
+
+    // the finder given to the policy references
+    private final PolicyFinder finder;
+
+    /**
+     * Creates a stream that reads policies from the given stream.
+     *
+     * @param in the stream to read from
+     * @param finder the finder used by the policy references that are read,
+     *               or null
+     *
+     * @throws IOException if the stream header cannot be read
+     */
+    public PolicyInputStream(InputStream in, PolicyFinder finder)
+        throws IOException
+    {
+        super(in);
+        this.finder = finder;
+    }
+
+    /**
+     * Returns the finder used by the policy references read from this
+     * stream.
+     *
+     * @return the finder or null
+     */
+    public PolicyFinder getPolicyFinder() {
+        return finder;
+    }
+
+    /**
+     * Checks the version of the serialized form after the usual header.
+     */
+    protected void readStreamHeader() throws IOException {
+        super.readStreamHeader();
+        int version = readInt();
+        if (version != PolicyOutputStream.FORMAT_VERSION)
+            throw new StreamCorruptedException("unsupported policy format " +
+                                               "version " + version);
+    }
+
+    /**
+     * Resolves the classes of a policy tree, and rejects any other class.
+     */
+    protected Class<?> resolveClass(ObjectStreamClass desc)
+        throws IOException, ClassNotFoundException
+    {
+        String name = desc.getName();
+        if (! isAllowed(name))
+            throw new InvalidClassException(name, "not a policy class");
+        return super.resolveClass(desc);
+    }
+
+    /**
+     * Rejects the proxies, which are never part of a policy tree.
+     */
+    protected Class<?> resolveProxyClass(String [] interfaces)
+        throws IOException, ClassNotFoundException
+    {
+        throw new InvalidClassException("proxy", "not a policy class");
+    }
+
+    /**
+     * Private helper that tells whether a class, or the element class of
+     * an array, may be read.
+     */
+    private static boolean isAllowed(String name) {
+        // the element class of an array, which is primitive unless it
+        // is given as Lname;
+        int dims = 0;
+        while ((dims < name.length()) && (name.charAt(dims) == '['))
+            dims++;
+        if (dims > 0) {
+            if (name.charAt(dims) != 'L')
+                return name.length() == dims + 1;
+            name = name.substring(dims + 1, name.length() - 1);
+        }
+
+        if (name.startsWith(POLICY_PACKAGE))
+            return true;
+        if ((name.startsWith("java.lang.") &&
+             (name.indexOf('.', "java.lang.".length()) == -1)) ||
+            (name.startsWith("java.util.") &&
+             (name.indexOf('.', "java.util.".length()) == -1)))
+            return true;
+        for (int i = 0; i < JDK_CLASSES.length; i++) {
+            if (JDK_CLASSES[i].equals(name))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Reads a policy or policy set.
+     *
+     * @return the policy
+     *
+     * @throws IOException if the policy cannot be read
+     * @throws ClassNotFoundException if a class of the policy tree cannot
+     *                                be found
+     */
+    public AbstractPolicy readPolicy()
+        throws IOException, ClassNotFoundException
+    {
+        return (AbstractPolicy)(readObject());
+    }
+}
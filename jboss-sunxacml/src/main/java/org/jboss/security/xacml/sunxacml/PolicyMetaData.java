@@ -36,6 +36,10 @@
 
 package org.jboss.security.xacml.sunxacml;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+
 import org.jboss.security.xacml.sunxacml.attr.AttributeFactory;
 import org.jboss.security.xacml.sunxacml.attr.AttributeFactoryProxy;
 import org.jboss.security.xacml.sunxacml.combine.CombiningAlgFactory;
@@ -54,9 +58,11 @@ import org.jboss.security.xacml.sunxacml.cond.FunctionFactoryProxy;
  * @since 2.0
  * @author Seth Proctor
  */
-public class PolicyMetaData
+public class PolicyMetaData implements Serializable
 {
 
+    private static final long serialVersionUID = -5882346138451677207L;
+
     /**
      * XACML 1.0 identifier
      */
@@ -123,10 +129,12 @@ public class PolicyMetaData
     // the version of XPath, or null if none is specified
     private int xpathVersion;
 
-    // the factories used with this policy
-    private AttributeFactoryProxy afProxy;
-    private CombiningAlgFactoryProxy cafProxy;
-    private FunctionFactoryProxy ffProxy;
+    // the factories used with this policy, which are only needed while
+    // the policy is parsed and so are replaced by the default ones when
+    // the policy is deserialized
+    private transient AttributeFactoryProxy afProxy;
+    private transient CombiningAlgFactoryProxy cafProxy;
+    private transient FunctionFactoryProxy ffProxy;
 
     /**
      * Creates a <code>PolicyMetaData</code> instance with all the parameters
@@ -253,6 +261,17 @@ public class PolicyMetaData
             this.ffProxy = functionFactoryProxy;
     }
 
+    /**
+     * Private helper that sets up the default factories of a deserialized
+     * instance.
+     */
+    private void readObject(ObjectInputStream in)
+        throws IOException, ClassNotFoundException
+    {
+        in.defaultReadObject();
+        proxySetup(null, null, null);
+    }
+
     /**
      * Returns which version of XACML is specified in this meta-data.
      *
@@ -0,0 +1,76 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.security.xacml.sunxacml;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
+/**
+ * A stream that writes serialized policies and policy sets, to be read
+ * back with a <code>PolicyInputStream</code>.
+ * <p>
+ * The stream header carries the version of the serialized form of the
+ * policy classes, which changes whenever a serialized field of those classes
+ * changes, so that policies written by another version are rejected instead
+ * of being read into the wrong fields.
+ * </p>
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since Oct 18, 2026
+ */
+public class PolicyOutputStream extends ObjectOutputStream
+{
+    /**
+     * The version of the serialized form of the policies
+     */
+    public static final int FORMAT_VERSION = 1;
+
+    /**
+     * Creates a stream that writes policies to the given stream.
+     *
+     * @param out the stream to write to
+     *
+     * @throws IOException if the stream header cannot be written
+     */
+    public PolicyOutputStream(OutputStream out) throws IOException {
+        super(out);
+    }
+
+    /**
+     * Writes the version of the serialized form after the usual header.
+     */
+    protected void writeStreamHeader() throws IOException {
+        super.writeStreamHeader();
+        writeInt(FORMAT_VERSION);
+    }
+
+    /**
+     * Writes a policy or policy set.
+     *
+     * @param policy the policy
+     *
+     * @throws IOException if the policy cannot be written
+     */
+    public void writePolicy(AbstractPolicy policy) throws IOException {
+        writeObject(policy);
+    }
+}
@@ -39,6 +39,8 @@ package org.jboss.security.xacml.sunxacml;
 
 
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.OutputStream;
 import java.io.PrintStream;
 import java.net.URI;
@@ -61,15 +63,18 @@ import org.w3c.dom.Node;
  * This class is used as a placeholder for the PolicyIdReference and
  * PolicySetIdReference fields in a PolicySetType. When a reference is used
  * in a policy set, it is telling the PDP to use an external policy in
- * the current policy. Each time the PDP needs to evaluate that policy
- * reference, it asks the policy finder for the policy. Typically the policy
- * finder will have cached the referenced policy, so this isn't too slow.
+ * the current policy. The first time the PDP needs that policy, the
+ * reference asks the policy finder for it, and then keeps a link to the
+ * policy that was found.
  * <p>
  * NOTE: all of the accessor methods, the match method, and the evaluate method
- * require this class to ask its <code>PolicyFinder</code> for the referenced
- * policy, which can be a slow operation. Care should be taken, therefore in
- * calling these methods too often. Also note that it's not safe to cache the
- * results of these calls, since the referenced policy may change.
+ * use the linked policy. The link is dropped, and the policy looked up again,
+ * when the <code>PolicyFinder</code> is told that the policies with the
+ * referenced id have changed, or its modules are replaced. A policy that
+ * does not meet the version constraints of the reference is treated as if
+ * it had not been found, and a reference whose policy was not found keeps
+ * looking it up until it is. Also note that it's not safe to cache the results of
+ * these calls, since the referenced policy may change.
  *
  * @since 1.0
  * @author Seth Proctor
@@ -77,6 +82,8 @@ import org.w3c.dom.Node;
 @SuppressWarnings({"unchecked", "rawtypes"})
 public class PolicyReference extends AbstractPolicy
 {
+
+    private static final long serialVersionUID = 7687132038654213588L;
     
     /**
      * Identifies this as a reference to a <code>Policy</code>
@@ -97,12 +104,17 @@ public class PolicyReference extends AbstractPolicy
     // and version constraints on this reference
     private VersionConstraints constraints;
 
-    // the finder to use in finding the referenced policy
-    private PolicyFinder finder;
+    // the finder to use in finding the referenced policy, which is not
+    // serialized but taken from the PolicyInputStream
+    private transient PolicyFinder finder;
 
     // the meta-data for the parent policy
     private PolicyMetaData parentMetaData;
 
+    // the result of the last lookup of the referenced policy, which is not
+    // serialized since it depends on the finder
+    private transient volatile Link link;
+
     // the logger we'll use for all messages
     private static final Logger logger =
         Logger.getLogger(PolicyReference.class.getName());
@@ -247,6 +259,18 @@ public class PolicyReference extends AbstractPolicy
                                    metaData);
     }
 
+    /**
+     * Private helper that sets the finder of a deserialized reference to
+     * the one of the stream, if any.
+     */
+    private void readObject(ObjectInputStream in)
+        throws IOException, ClassNotFoundException
+    {
+        in.defaultReadObject();
+        if (in instanceof PolicyInputStream)
+            finder = ((PolicyInputStream)in).getPolicyFinder();
+    }
+
     /**
      * Returns the refernce identitfier used to resolve the policy.
      *
@@ -416,8 +440,9 @@ public class PolicyReference extends AbstractPolicy
      * @return the result of trying to match the policy and the request
      */
     public MatchResult match(EvaluationCtx context) {
+        recordDependency(context);
         try {
-            return getTarget().match(context);
+            return resolvePolicy(getFinder(context)).getTarget().match(context);
         } catch (ProcessingException pe) {
             // this means that we couldn't resolve the policy
             ArrayList code = new ArrayList();
@@ -427,12 +452,43 @@ public class PolicyReference extends AbstractPolicy
         }
     }
 
+    /**
+     * Private helper method that records the referenced id, whatever it
+     * resolves to, if the context records the dependencies of its evaluation
+     */
+    private void recordDependency(EvaluationCtx context) {
+        if (context instanceof BasicEvaluationCtx)
+            ((BasicEvaluationCtx)context).recordPolicy(reference, null);
+    }
+
+    /**
+     * Private helper method that returns the finder that resolves this
+     * reference for an evaluation, which is the finder of the PDP if the
+     * context has one
+     */
+    private PolicyFinder getFinder(EvaluationCtx context) {
+        if (context instanceof BasicEvaluationCtx) {
+            PolicyFinder policyFinder =
+                ((BasicEvaluationCtx)context).getPolicyFinder();
+            if (policyFinder != null)
+                return policyFinder;
+        }
+        return finder;
+    }
+
     /**
      * Private helper method that tried to resolve the policy
      */
     private AbstractPolicy resolvePolicy() {
+        return resolvePolicy(finder);
+    }
+
+    /**
+     * Private helper method that tried to resolve the policy with a finder
+     */
+    private AbstractPolicy resolvePolicy(PolicyFinder policyFinder) {
         // see if this reference was setup with a finder
-        if (finder == null) {
+        if (policyFinder == null) {
             if (logger.isLoggable(Level.WARNING))
                 logger.warning("PolicyReference with id " +
                                reference.toString() + " was queried but was " +
@@ -442,9 +498,7 @@ public class PolicyReference extends AbstractPolicy
                                           "a null finder");
         }
 
-        PolicyFinderResult pfr =
-            finder.findPolicy(reference, policyType, constraints,
-                              parentMetaData);
+        PolicyFinderResult pfr = findPolicy(policyFinder);
         
         if (pfr.notApplicable())
             throw new ProcessingException("couldn't resolve the policy");
@@ -466,14 +520,15 @@ public class PolicyReference extends AbstractPolicy
      * @return the result of evaluation
      */
     public Result evaluate(EvaluationCtx context) {
+        recordDependency(context);
+
         // if there is no finder, then we return NotApplicable
-        if (finder == null)
+        PolicyFinder policyFinder = getFinder(context);
+        if (policyFinder == null)
             return new Result(Result.DECISION_NOT_APPLICABLE,
                               context.getResourceId().encode());
 
-        PolicyFinderResult pfr = finder.findPolicy(reference, policyType,
-                                                   constraints,
-                                                   parentMetaData);
+        PolicyFinderResult pfr = findPolicy(policyFinder);
 
         // if we found nothing, then we return NotApplicable
         if (pfr.notApplicable())
@@ -486,7 +541,76 @@ public class PolicyReference extends AbstractPolicy
                               context.getResourceId().encode());
 
         // we must have found a policy
-        return pfr.getPolicy().evaluate(context);
+        AbstractPolicy policy = pfr.getPolicy();
+        SubDecisionCache cache = (context instanceof BasicEvaluationCtx) ?
+            ((BasicEvaluationCtx)context).getSubDecisions() : null;
+        if (cache == null)
+            return policy.evaluate(context);
+
+        BasicEvaluationCtx basicContext = (BasicEvaluationCtx)context;
+        Result result = cache.get(basicContext, policy);
+        if (result != null)
+            return result;
+
+        AttributeDependencies captured = new AttributeDependencies();
+        basicContext.startCapture(captured);
+        try {
+            result = policy.evaluate(context);
+        } finally {
+            basicContext.endCapture(captured);
+        }
+        cache.put(basicContext, policy, captured, result);
+        return result;
+    }
+
+    /**
+     * Private helper method that returns the linked policy, or looks it up
+     * and links to it if the link was dropped or made with another finder.
+     * Errors and missing policies are not linked to, since a later lookup
+     * may find the policy.
+     */
+    private PolicyFinderResult findPolicy(PolicyFinder policyFinder) {
+        Link current = link;
+        if ((current != null) && (current.finder == policyFinder) &&
+            policyFinder.isUnchanged(reference, current.generation))
+            return current.result;
+
+        long generation = policyFinder.getGeneration();
+        PolicyFinderResult pfr =
+            policyFinder.findPolicy(reference, policyType, constraints,
+                                    parentMetaData);
+        if (pfr.indeterminate() || pfr.notApplicable())
+            return pfr;
+
+        if (! constraints.meetsConstraint(pfr.getPolicy().getVersion())) {
+            if (logger.isLoggable(Level.INFO))
+                logger.info("The policy found for the reference " +
+                            reference.toString() + " has version " +
+                            pfr.getPolicy().getVersion() + ", which does " +
+                            "not meet the constraints of the reference");
+            return new PolicyFinderResult();
+        }
+
+        link = new Link(policyFinder, pfr, generation);
+        return pfr;
+    }
+
+    /**
+     * The result of looking up the referenced policy, the finder that found
+     * it and the generation of the finder before the lookup.
+     */
+    private static class Link
+    {
+        private final PolicyFinder finder;
+        private final PolicyFinderResult result;
+        private final long generation;
+
+        private Link(PolicyFinder finder, PolicyFinderResult result,
+                     long generation) {
+            this.finder = finder;
+            this.result = result;
+            this.generation = generation;
+        }
     }
 
     /**
@@ -68,6 +68,8 @@ import org.w3c.dom.NodeList;
 public class PolicySet extends AbstractPolicy
 {
 
+    private static final long serialVersionUID = 761569290872424818L;
+
     /**
      * Creates a new <code>PolicySet</code> with only the required elements.
      *
@@ -38,6 +38,7 @@ package org.jboss.security.xacml.sunxacml;
 
 
 import java.io.OutputStream;
+import java.io.Serializable;
 
 import java.net.URI;
 
@@ -56,7 +57,7 @@ import org.jboss.security.xacml.sunxacml.ctx.Result;
  * @author seth proctor
  */
 @SuppressWarnings( "rawtypes" )
-public interface PolicyTreeElement
+public interface PolicyTreeElement extends Serializable
 {
 
     /**
@@ -73,6 +73,8 @@ import org.w3c.dom.NodeList;
 public class Rule implements PolicyTreeElement
 {
 
+    private static final long serialVersionUID = 3488147192215526536L;
+
     // the attributes associated with this Rule
     private URI idAttr;
     private int effectAttr;
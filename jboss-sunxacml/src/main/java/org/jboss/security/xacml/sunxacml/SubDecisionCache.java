@@ -0,0 +1,279 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.security.xacml.sunxacml;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jboss.security.xacml.sunxacml.AttributeDependencies.Designator;
+import org.jboss.security.xacml.sunxacml.AttributeDependencies.PolicyDependency;
+import org.jboss.security.xacml.sunxacml.attr.AttributeValue;
+import org.jboss.security.xacml.sunxacml.attr.BagAttribute;
+import org.jboss.security.xacml.sunxacml.cond.EvaluationResult;
+import org.jboss.security.xacml.sunxacml.ctx.Result;
+
+
+/**
+ * Remembers the results of the policies that <code>PolicyReference</code>s
+ * resolve to, so that requests which reach a shared policy set through
+ * different parents, or through different top-level policies, can reuse
+ * its decision. There is one of these per <code>PDP</code>.
+ * <p>
+ * A result is stored under the id and version of the policy along with the
+ * designators that its evaluation read. Evaluation only depends on the
+ * values of those designators, so any later request with the same resource
+ * and the same values for them gets the same result. The different sets of
+ * designators seen so far for a policy are the shapes that are tried when
+ * looking up a request; a shared set usually reads the same few attributes,
+ * so there are only a handful of them. A shape is only tried if the values
+ * of all its designators are in the request or were already found for it,
+ * so that a lookup never calls the attribute finder. Results that depend on
+ * the whole request are not stored.
+ * <p>
+ * A result is only reused for the very policy it was made with, and for a
+ * limited time, since the values the attribute finder returns may change.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since Oct 18, 2026
+ */
+@SuppressWarnings({"unchecked", "rawtypes"})
+class SubDecisionCache
+{
+    // the maximum number of designator sets that are tried for a policy
+    private static final int MAX_SHAPES = 16;
+
+    // orders the designators of a shape
+    private static final Comparator<Designator> ORDER =
+        new Comparator<Designator>() {
+            public int compare(Designator d1, Designator d2) {
+                return d1.toString().compareTo(d2.toString());
+            }
+        };
+
+    // the sets of designators read by the stored results, by policy
+    private final Map<String, List<List<Designator>>> shapes =
+        new HashMap<String, List<List<Designator>>>();
+
+    // the stored results, least recently used first
+    private final Map<String, Entry> entries;
+
+    // how long a result is reused, in milliseconds
+    private final long timeToLive;
+
+    // the number of requests answered from this cache
+    private long hits = 0;
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param maxSize the maximum number of results
+     * @param timeToLive how long a result is reused, in milliseconds
+     */
+    SubDecisionCache(final int maxSize, long timeToLive) {
+        this.timeToLive = timeToLive;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                protected boolean removeEldestEntry(Map.Entry eldest) {
+                    return size() > maxSize;
+                }
+            };
+    }
+
+    /**
+     * Returns the result stored for a request, replaying the designators
+     * and the policies it depends on into the dependencies of the context.
+     *
+     * @param context the representation of the request
+     * @param policy the policy the reference resolves to
+     *
+     * @return a copy of the stored result, or null if there is none
+     */
+    Result get(BasicEvaluationCtx context, AbstractPolicy policy) {
+        String policyKey = getPolicyKey(policy);
+        List<List<Designator>> candidates;
+        synchronized (this) {
+            List<List<Designator>> policyShapes = shapes.get(policyKey);
+            if (policyShapes == null)
+                return null;
+            candidates = new ArrayList<List<Designator>>(policyShapes);
+        }
+
+        long now = System.currentTimeMillis();
+        for (List<Designator> shape : candidates) {
+            String key = getKey(context, policyKey, shape);
+            if (key == null)
+                continue;
+
+            Entry entry;
+            synchronized (this) {
+                entry = entries.get(key);
+                if (entry == null)
+                    continue;
+                if ((entry.policy != policy) || (entry.expires <= now)) {
+                    entries.remove(key);
+                    continue;
+                }
+                hits++;
+            }
+            for (Designator designator : shape)
+                context.recordDesignator(designator);
+            for (PolicyDependency dependency : entry.policies)
+                context.recordPolicy(dependency.getId(),
+                                     dependency.getVersion());
+            return copy(entry.result);
+        }
+
+        return null;
+    }
+
+    /**
+     * Stores a result unless it depends on the whole request.
+     *
+     * @param context the representation of the request
+     * @param policy the policy the reference resolved to
+     * @param captured what the evaluation of the policy read
+     * @param result the result of the evaluation
+     */
+    void put(BasicEvaluationCtx context, AbstractPolicy policy,
+             AttributeDependencies captured, Result result) {
+        if (captured.isWholeRequest())
+            return;
+
+        String policyKey = getPolicyKey(policy);
+        List<Designator> shape =
+            new ArrayList<Designator>(captured.getDesignators());
+        Collections.sort(shape, ORDER);
+        String key = getKey(context, policyKey, shape);
+        if (key == null)
+            return;
+
+        Entry entry = new Entry(policy, copy(result), captured.getPolicies(),
+                                System.currentTimeMillis() + timeToLive);
+        synchronized (this) {
+            List<List<Designator>> policyShapes = shapes.get(policyKey);
+            if (policyShapes == null) {
+                policyShapes = new ArrayList<List<Designator>>();
+                shapes.put(policyKey, policyShapes);
+            }
+            if (! policyShapes.contains(shape)) {
+                if (policyShapes.size() >= MAX_SHAPES)
+                    return;
+                policyShapes.add(shape);
+            }
+            entries.put(key, entry);
+        }
+    }
+
+    /**
+     * Forgets all the stored results.
+     */
+    synchronized void clear() {
+        shapes.clear();
+        entries.clear();
+    }
+
+    /**
+     * Returns the number of requests answered from this cache.
+     *
+     * @return the number of hits
+     */
+    synchronized long getHitCount() {
+        return hits;
+    }
+
+    /**
+     * Returns the part of the keys that identifies a policy.
+     */
+    private static String getPolicyKey(AbstractPolicy policy) {
+        return policy.getId() + "|" + policy.getVersion();
+    }
+
+    /**
+     * Returns the key of a request for a set of designators, made of the
+     * policy, the resource id and the values of the designators.
+     *
+     * @return the key, or null if a value is not known without calling
+     *         the attribute finder
+     */
+    private static String getKey(BasicEvaluationCtx context,
+                                 String policyKey, List<Designator> shape) {
+        StringBuilder key = new StringBuilder(policyKey);
+        key.append('\n').append(context.getResourceId().encode());
+        for (Designator designator : shape) {
+            EvaluationResult values =
+                context.getResolvedAttribute(designator);
+            if ((values == null) || values.indeterminate())
+                return null;
+
+            List<String> encoded = new ArrayList<String>();
+            Iterator it = ((BagAttribute)(values.getAttributeValue())).
+                iterator();
+            while (it.hasNext())
+                encoded.add(((AttributeValue)(it.next())).encode());
+            Collections.sort(encoded);
+
+            key.append('\n').append(designator).append('=');
+            for (String value : encoded)
+                key.append(value.length()).append(':').append(value);
+        }
+        return key.toString();
+    }
+
+    /**
+     * Copies a result, since its obligations are added to by the policies
+     * that contain the reference.
+     */
+    private static Result copy(Result result) {
+        return new Result(result.getDecision(), result.getStatus(),
+                          result.getResource(),
+                          new HashSet(result.getObligations()));
+    }
+
+    /**
+     * A stored result, the policy that made it, the policies its
+     * evaluation consulted and when it expires.
+     */
+    private static class Entry
+    {
+        private final AbstractPolicy policy;
+        private final Result result;
+        private final Set<PolicyDependency> policies;
+        private final long expires;
+
+        private Entry(AbstractPolicy policy, Result result,
+                      Set<PolicyDependency> policies, long expires) {
+            this.policy = policy;
+            this.result = result;
+            this.policies = policies;
+            this.expires = expires;
+        }
+    }
+}
@@ -38,6 +38,7 @@ package org.jboss.security.xacml.sunxacml;
 
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.io.Serializable;
 import java.util.logging.Logger;
 
 import org.w3c.dom.Node;
@@ -53,9 +54,11 @@ import org.w3c.dom.NodeList;
  * @since 1.0
  * @author Seth Proctor
  */
-public class Target
+public class Target implements Serializable
 {
 
+    private static final long serialVersionUID = 5639445134457175506L;
+
     // the four sections of a Target
     private TargetSection subjectsSection;
     private TargetSection resourcesSection;
@@ -40,13 +40,17 @@ package org.jboss.security.xacml.sunxacml;
 
 
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.io.Serializable;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.regex.Pattern;
 
 import org.jboss.security.xacml.sunxacml.attr.AttributeDesignator;
 import org.jboss.security.xacml.sunxacml.attr.AttributeFactory;
@@ -59,6 +63,7 @@ import org.jboss.security.xacml.sunxacml.cond.EvaluationResult;
 import org.jboss.security.xacml.sunxacml.cond.Function;
 import org.jboss.security.xacml.sunxacml.cond.FunctionFactory;
 import org.jboss.security.xacml.sunxacml.cond.FunctionTypeException;
+import org.jboss.security.xacml.sunxacml.cond.MatchFunction;
 import org.jboss.security.xacml.sunxacml.ctx.Status;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
@@ -75,9 +80,11 @@ import org.w3c.dom.NodeList;
  * @author Seth Proctor
  */
 @SuppressWarnings({"unchecked", "rawtypes"})
-public class TargetMatch
+public class TargetMatch implements Serializable
 {
 
+    private static final long serialVersionUID = 4161862586945491104L;
+
     /**
      * An integer value indicating that this class represents a SubjectMatch
      */
@@ -117,6 +124,10 @@ public class TargetMatch
     // the value
     private AttributeValue attrValue;
 
+    // the value compiled as a regular expression, if the function is one
+    // of the regular expression functions
+    private transient Pattern pattern;
+
     /**
      * Constructor that creates a <code>TargetMatch</code> from components.
      *
@@ -145,6 +156,23 @@ public class TargetMatch
         this.function = function;
         this.eval = eval;
         this.attrValue = attrValue;
+
+        // the value is the first argument of the function, so a regular
+        // expression can be compiled once here instead of per request
+        if (function instanceof MatchFunction)
+            pattern = ((MatchFunction)function).compile(attrValue);
+    }
+
+    /**
+     * Private helper that compiles the regular expression of a
+     * deserialized match again.
+     */
+    private void readObject(ObjectInputStream in)
+        throws IOException, ClassNotFoundException
+    {
+        in.defaultReadObject();
+        if (function instanceof MatchFunction)
+            pattern = ((MatchFunction)function).compile(attrValue);
     }
 
     /**
@@ -377,7 +405,12 @@ public class TargetMatch
      */
     private MatchResult evaluateMatch(List inputs, EvaluationCtx context) {
         // first off, evaluate the function
-        EvaluationResult result = function.evaluate(inputs, context);
+        EvaluationResult result;
+        if (pattern != null)
+            result = ((MatchFunction)function).evaluate(inputs, context,
+                                                        pattern);
+        else
+            result = function.evaluate(inputs, context);
 
         // if it was indeterminate, then that's what we return immediately
         if (result.indeterminate())
@@ -38,6 +38,7 @@ package org.jboss.security.xacml.sunxacml;
 
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
@@ -56,9 +57,11 @@ import org.w3c.dom.NodeList;
  * @author Seth Proctor
  */
 @SuppressWarnings({"unchecked", "rawtypes"})
-public class TargetMatchGroup
+public class TargetMatchGroup implements Serializable
 {
 
+    private static final long serialVersionUID = 1964619799617374322L;
+
     // the list of matches
     private List matches;
 
@@ -81,6 +84,16 @@ public class TargetMatchGroup
         this.matchType = matchType;
     }
 
+    /**
+     * Returns the <code>TargetMatch</code>es in this group, in the order
+     * in which they are matched.
+     *
+     * @return an unmodifiable <code>List</code> of <code>TargetMatch</code>
+     */
+    public List getMatches() {
+        return matches;
+    }
+
     /**
      * Creates a <code>Target</code> based on its DOM node.
      *
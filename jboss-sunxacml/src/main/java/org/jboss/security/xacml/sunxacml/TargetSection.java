@@ -39,6 +39,7 @@ package org.jboss.security.xacml.sunxacml;
 
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.io.Serializable;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -59,9 +60,11 @@ import org.w3c.dom.NodeList;
  * @author Seth Proctor
  */
 @SuppressWarnings({"unchecked", "rawtypes"})
-public class TargetSection
+public class TargetSection implements Serializable
 {
 
+    private static final long serialVersionUID = 512150271109926467L;
+
     // the list of match groups
     private List matchGroups;
 
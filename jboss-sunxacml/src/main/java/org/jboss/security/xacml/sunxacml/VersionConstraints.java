@@ -36,6 +36,7 @@
 
 package org.jboss.security.xacml.sunxacml;
 
+import java.io.Serializable;
 import java.util.StringTokenizer;
 
 
@@ -49,9 +50,11 @@ import java.util.StringTokenizer;
  * @since 2.0
  * @author Seth Proctor
  */
-public class VersionConstraints
+public class VersionConstraints implements Serializable
 {
 
+    private static final long serialVersionUID = -5862008252523099300L;
+
     // internal identifiers used to specify the kind of match
     private static final int COMPARE_EQUAL = 0;
     private static final int COMPARE_LESS = 1;
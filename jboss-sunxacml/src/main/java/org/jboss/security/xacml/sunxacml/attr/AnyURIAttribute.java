@@ -52,6 +52,8 @@ import org.w3c.dom.Node;
 public class AnyURIAttribute extends AttributeValue
 {
 
+    private static final long serialVersionUID = -8975765679954980770L;
+
     /**
      * Official name of this type
      */
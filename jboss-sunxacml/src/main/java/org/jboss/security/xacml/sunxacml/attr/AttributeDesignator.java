@@ -70,6 +70,8 @@ import org.w3c.dom.Node;
 public class AttributeDesignator implements Evaluatable
 {
 
+    private static final long serialVersionUID = -7498947414590294663L;
+
     /**
      * Tells designator to search in the subject section of the request
      */
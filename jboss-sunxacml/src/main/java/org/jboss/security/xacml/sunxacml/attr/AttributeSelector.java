@@ -39,6 +39,9 @@ package org.jboss.security.xacml.sunxacml.attr;
 
 
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.io.PrintStream;
 
@@ -47,6 +50,7 @@ import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -75,6 +79,8 @@ import org.w3c.dom.Node;
 public class AttributeSelector implements Evaluatable
 {
 
+    private static final long serialVersionUID = -4256073702504300368L;
+
     // the data type returned by this selector
     private URI type;
 
@@ -88,7 +94,8 @@ public class AttributeSelector implements Evaluatable
     private String xpathVersion;
 
     // the policy root, where we get namespace mapping details
-    private Node policyRoot;
+    // this is not serialized, only the namespace mappings it defines are
+    private transient Node policyRoot;
 
     // the logger we'll use for all messages
     private static final Logger logger =
@@ -130,6 +137,11 @@ public class AttributeSelector implements Evaluatable
         this.mustBePresent = mustBePresent;
         this.xpathVersion = xpathVersion;
         this.policyRoot = policyRoot;
+
+        // resolve the namespace mappings now rather than on the first
+        // request that reaches this selector
+        if (policyRoot != null)
+            SelectorNamespaceContext.getInstance(policyRoot);
     }
 
     /**
@@ -241,6 +253,30 @@ public class AttributeSelector implements Evaluatable
                                      mustBePresent, xpathVersion);
     }
 
+    /**
+     * Private helper that writes the namespace mappings of the policy root
+     * instead of the DOM node.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeObject((policyRoot == null) ? null :
+                        SelectorNamespaceContext.getInstance(policyRoot).
+                        getNamespaces());
+    }
+
+    /**
+     * Private helper that rebuilds a node defining the namespace mappings
+     * of the policy root.
+     */
+    private void readObject(ObjectInputStream in)
+        throws IOException, ClassNotFoundException
+    {
+        in.defaultReadObject();
+        Map namespaces = (Map)(in.readObject());
+        if (namespaces != null)
+            policyRoot = SelectorNamespaceContext.createNode(namespaces);
+    }
+
     /**
      * Returns the data type of the attribute values that this selector
      * will resolve
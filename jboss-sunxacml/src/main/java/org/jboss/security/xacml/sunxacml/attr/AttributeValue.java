@@ -68,6 +68,8 @@ import org.jboss.security.xacml.sunxacml.cond.EvaluationResult;
 public abstract class AttributeValue implements Evaluatable
 {
 
+    private static final long serialVersionUID = 2627789674745372518L;
+
     // the type of this attribute
     private URI type;
     
@@ -62,6 +62,8 @@ import java.util.NoSuchElementException;
 public class BagAttribute extends AttributeValue
 {
 
+    private static final long serialVersionUID = -4381501632192462068L;
+
     // The Collection of AttributeValues that this object encapsulates
     private Collection bag;
 
@@ -55,6 +55,8 @@ import org.w3c.dom.Node;
  */
 public class Base64BinaryAttribute extends AttributeValue
 {
+    private static final long serialVersionUID = -3754177340688493753L;
+
     /**
      * Official name of this type
      */
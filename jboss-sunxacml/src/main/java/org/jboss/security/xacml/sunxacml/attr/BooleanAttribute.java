@@ -54,6 +54,8 @@ import org.w3c.dom.Node;
  */
 public class BooleanAttribute extends AttributeValue
 {
+
+    private static final long serialVersionUID = 7089357799439304609L;
    
     /**
      * Official name of this type
@@ -53,6 +53,8 @@ import org.w3c.dom.Node;
 public class DNSNameAttribute extends AttributeValue
 {
 
+    private static final long serialVersionUID = 6893949002111145166L;
+
     /**
      * Official name of this type
      */
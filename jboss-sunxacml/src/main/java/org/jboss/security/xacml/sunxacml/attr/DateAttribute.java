@@ -62,6 +62,8 @@ import org.w3c.dom.Node;
  */
 public class DateAttribute extends AttributeValue
 {
+    private static final long serialVersionUID = -5362481127066264466L;
+
     /**
      * Official name of this type
      */
@@ -64,6 +64,8 @@ import org.w3c.dom.Node;
  */
 public class DateTimeAttribute extends AttributeValue
 {
+    private static final long serialVersionUID = 5341156154691138786L;
+
     /**
      * Official name of this type
      */
@@ -60,6 +60,8 @@ import org.w3c.dom.Node;
  */
 public class DayTimeDurationAttribute extends AttributeValue
 {
+    private static final long serialVersionUID = 6055065183029120304L;
+
     /**
      * Official name of this type
      */
@@ -53,6 +53,8 @@ import org.w3c.dom.Node;
  */
 public class DoubleAttribute extends AttributeValue
 {
+    private static final long serialVersionUID = 6671591901105547342L;
+
     /**
      * Official name of this type
      */
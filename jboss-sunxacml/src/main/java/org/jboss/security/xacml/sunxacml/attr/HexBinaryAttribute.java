@@ -55,6 +55,8 @@ import org.w3c.dom.Node;
  */
 public class HexBinaryAttribute extends AttributeValue
 {
+    private static final long serialVersionUID = -4364964711810846371L;
+
     /**
      * Official name of this type
      */
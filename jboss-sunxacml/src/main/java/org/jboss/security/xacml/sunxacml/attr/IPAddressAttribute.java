@@ -63,6 +63,8 @@ import org.w3c.dom.Node;
 public abstract class IPAddressAttribute extends AttributeValue
 {
 
+    private static final long serialVersionUID = 8891362529957956822L;
+
     /**
      * Official name of this type
      */
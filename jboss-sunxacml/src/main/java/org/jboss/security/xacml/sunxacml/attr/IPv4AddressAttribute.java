@@ -51,6 +51,8 @@ import java.net.UnknownHostException;
 public class IPv4AddressAttribute extends IPAddressAttribute
 {
 
+    private static final long serialVersionUID = 644100778732522938L;
+
     /**
      * Creates the new <code>IPv4AddressAttribute</code> with just the required
      * address component.
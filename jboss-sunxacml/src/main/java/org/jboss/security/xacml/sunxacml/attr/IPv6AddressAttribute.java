@@ -51,6 +51,8 @@ import java.net.UnknownHostException;
 public class IPv6AddressAttribute extends IPAddressAttribute
 {
 
+    private static final long serialVersionUID = 2511866476725783838L;
+
     /**
      * Creates the new <code>IPv6AddressAttribute</code> with just the required
      * address component.
@@ -52,6 +52,8 @@ import org.w3c.dom.Node;
  */
 public class IntegerAttribute extends AttributeValue
 {
+    private static final long serialVersionUID = 3324532783755261716L;
+
     /**
      * Official name of this type
      */
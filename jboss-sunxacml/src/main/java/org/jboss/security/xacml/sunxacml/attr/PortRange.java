@@ -36,6 +36,7 @@
 
 package org.jboss.security.xacml.sunxacml.attr;
 
+import java.io.Serializable;
 
 /**
  * This class represents a port range as specified in the XACML 2.0 description
@@ -46,9 +47,11 @@ package org.jboss.security.xacml.sunxacml.attr;
  * @since 2.0
  * @author Seth Proctor
  */
-public class PortRange
+public class PortRange implements Serializable
 {
 
+    private static final long serialVersionUID = 745534512691649513L;
+
     /**
      * Constant used to specify that the range is unbound on one side.
      */
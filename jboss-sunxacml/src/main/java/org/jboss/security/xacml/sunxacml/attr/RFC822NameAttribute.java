@@ -50,6 +50,8 @@ import org.w3c.dom.Node;
 public class RFC822NameAttribute extends AttributeValue
 {
 
+    private static final long serialVersionUID = 7128458454296735537L;
+
     /**
      * Official name of this type
      */
@@ -0,0 +1,230 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.security.xacml.sunxacml.attr;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * The namespace mappings that an <code>AttributeSelector</code> uses to
+ * resolve the prefixes in its XPath expression.
+ * <p>
+ * The mappings are read from the <code>xmlns</code> declarations of a DOM
+ * node and its ancestors once, and are not modified afterwards, so that
+ * an instance can be shared by concurrent evaluations. Instances are
+ * remembered for as long as their node is reachable, so a policy is only
+ * scanned the first time one of its selectors asks for its mappings.
+ * </p>
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since Oct 18, 2026
+ */
+@SuppressWarnings("rawtypes")
+public class SelectorNamespaceContext implements NamespaceContext
+{
+    // the resolved mappings of the nodes seen so far
+    private static final Map<Node, SelectorNamespaceContext> contexts =
+        new WeakHashMap<Node, SelectorNamespaceContext>();
+
+    // prefix -> namespace, the default namespace has an empty prefix
+    private final Map<String, String> namespaces;
+
+    // namespace -> prefixes
+    private final Map<String, List<String>> prefixes;
+
+    /**
+     * Private constructor that reads the declarations in scope at a node.
+     */
+    private SelectorNamespaceContext(Node node) {
+        Map<String, String> found = new HashMap<String, String>();
+
+        // walk up from the node so that the nearest declaration wins
+        for (Node n = node; (n != null) &&
+                 (n.getNodeType() == Node.ELEMENT_NODE);
+             n = n.getParentNode()) {
+            NamedNodeMap attrs = n.getAttributes();
+            for (int i = 0; i < attrs.getLength(); i++) {
+                Node attr = attrs.item(i);
+                String name = attr.getNodeName();
+                String prefix;
+                if (name.equals(XMLConstants.XMLNS_ATTRIBUTE))
+                    prefix = XMLConstants.DEFAULT_NS_PREFIX;
+                else if (name.startsWith(XMLConstants.XMLNS_ATTRIBUTE + ":"))
+                    prefix = name.substring(6);
+                else
+                    continue;
+
+                if (! found.containsKey(prefix))
+                    found.put(prefix, attr.getNodeValue());
+            }
+        }
+
+        Map<String, List<String>> reverse =
+            new HashMap<String, List<String>>();
+        for (Map.Entry<String, String> entry : found.entrySet()) {
+            List<String> list = reverse.get(entry.getValue());
+            if (list == null) {
+                list = new ArrayList<String>();
+                reverse.put(entry.getValue(), list);
+            }
+            list.add(entry.getKey());
+        }
+        for (List<String> list : reverse.values())
+            Collections.sort(list);
+
+        this.namespaces = found;
+        this.prefixes = reverse;
+    }
+
+    /**
+     * Returns the mappings in scope at the given node, reading them only
+     * the first time this is called for the node.
+     *
+     * @param node an element that defines namespace mappings
+     *
+     * @return the mappings in scope at the node
+     */
+    public static SelectorNamespaceContext getInstance(Node node) {
+        synchronized (contexts) {
+            SelectorNamespaceContext context = contexts.get(node);
+            if (context == null) {
+                context = new SelectorNamespaceContext(node);
+                contexts.put(node, context);
+            }
+            return context;
+        }
+    }
+
+    /**
+     * Returns an element that declares the given mappings and nothing
+     * else, which stands for a policy root that is no longer available,
+     * such as the root of a deserialized policy.
+     *
+     * @param namespaces the mappings from prefix to namespace, the default
+     *                   namespace having an empty prefix
+     *
+     * @return an element declaring the mappings
+     */
+    static Node createNode(Map<String, String> namespaces) {
+        Document doc;
+        try {
+            DocumentBuilderFactory factory =
+                DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(true);
+            doc = factory.newDocumentBuilder().newDocument();
+        } catch (ParserConfigurationException pce) {
+            throw new IllegalStateException("Unable to create a document: " +
+                                            pce.getMessage());
+        }
+
+        Element root = doc.createElementNS(null, "Namespaces");
+        for (Map.Entry<String, String> entry : namespaces.entrySet()) {
+            String prefix = entry.getKey();
+            String name = (prefix.length() == 0) ?
+                XMLConstants.XMLNS_ATTRIBUTE :
+                XMLConstants.XMLNS_ATTRIBUTE + ":" + prefix;
+            root.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, name,
+                                entry.getValue());
+        }
+        doc.appendChild(root);
+
+        getInstance(root);
+        return root;
+    }
+
+    /**
+     * Returns the mappings from prefix to namespace of this context.
+     *
+     * @return a copy of the mappings
+     */
+    Map<String, String> getNamespaces() {
+        return new HashMap<String, String>(namespaces);
+    }
+
+    /**
+     * Returns a prefix other than the default one that is bound to the
+     * given namespace, which is the only kind of prefix that can be used
+     * to name an element in an XPath 1.0 expression.
+     *
+     * @param namespaceURI the namespace
+     *
+     * @return a non-empty prefix or null if there is none
+     */
+    public String getQualifyingPrefix(String namespaceURI) {
+        List<String> list = prefixes.get(namespaceURI);
+        if (list != null) {
+            for (String prefix : list) {
+                if (prefix.length() > 0)
+                    return prefix;
+            }
+        }
+        return null;
+    }
+
+    public String getNamespaceURI(String prefix) {
+        if (prefix == null)
+            throw new IllegalArgumentException("prefix is null");
+        if (prefix.equals(XMLConstants.XML_NS_PREFIX))
+            return XMLConstants.XML_NS_URI;
+        if (prefix.equals(XMLConstants.XMLNS_ATTRIBUTE))
+            return XMLConstants.XMLNS_ATTRIBUTE_NS_URI;
+
+        String namespaceURI = namespaces.get(prefix);
+        return (namespaceURI != null) ? namespaceURI :
+            XMLConstants.NULL_NS_URI;
+    }
+
+    public String getPrefix(String namespaceURI) {
+        Iterator it = getPrefixes(namespaceURI);
+        return it.hasNext() ? (String)(it.next()) : null;
+    }
+
+    public Iterator getPrefixes(String namespaceURI) {
+        if (namespaceURI == null)
+            throw new IllegalArgumentException("namespace is null");
+        if (namespaceURI.equals(XMLConstants.XML_NS_URI))
+            return Collections.singletonList(XMLConstants.XML_NS_PREFIX).
+                iterator();
+        if (namespaceURI.equals(XMLConstants.XMLNS_ATTRIBUTE_NS_URI))
+            return Collections.singletonList(XMLConstants.XMLNS_ATTRIBUTE).
+                iterator();
+
+        List<String> list = prefixes.get(namespaceURI);
+        if (list == null)
+            list = Collections.emptyList();
+        return Collections.unmodifiableList(list).iterator();
+    }
+}
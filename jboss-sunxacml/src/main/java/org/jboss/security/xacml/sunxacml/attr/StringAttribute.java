@@ -62,6 +62,8 @@ import org.w3c.dom.Node;
  */ 
 public class StringAttribute extends AttributeValue
 {
+    private static final long serialVersionUID = -4473507379331360530L;
+
     /**
      * Official name of this type
      */
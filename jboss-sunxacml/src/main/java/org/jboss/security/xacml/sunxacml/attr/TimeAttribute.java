@@ -58,6 +58,8 @@ import org.w3c.dom.Node;
  */ 
 public class TimeAttribute extends AttributeValue
 {
+    private static final long serialVersionUID = -1864851544944422994L;
+
     /**
      * Official name of this type
      */
@@ -52,6 +52,8 @@ import org.w3c.dom.Node;
  */
 public class X500NameAttribute extends AttributeValue
 {
+
+    private static final long serialVersionUID = 8362545041563873804L;
    
     /**
      * Official name of this type
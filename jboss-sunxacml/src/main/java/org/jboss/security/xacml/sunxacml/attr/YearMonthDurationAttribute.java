@@ -60,6 +60,8 @@ import org.w3c.dom.Node;
  */
 public class YearMonthDurationAttribute extends AttributeValue
 {
+    private static final long serialVersionUID = -7971976472428735472L;
+
     /**
      * Official name of this type
      */
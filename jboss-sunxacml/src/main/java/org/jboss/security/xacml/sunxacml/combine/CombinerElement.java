@@ -38,6 +38,7 @@ package org.jboss.security.xacml.sunxacml.combine;
 
 
 import java.io.OutputStream;
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -54,9 +55,11 @@ import org.jboss.security.xacml.sunxacml.PolicyTreeElement;
  * @author Seth Proctor
  */
 @SuppressWarnings({"unchecked", "rawtypes"})
-public abstract class CombinerElement
+public abstract class CombinerElement implements Serializable
 {
 
+    private static final long serialVersionUID = 7725593152397285432L;
+
     // the element to be combined
     private PolicyTreeElement element;
 
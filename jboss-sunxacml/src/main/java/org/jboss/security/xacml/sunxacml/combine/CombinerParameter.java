@@ -40,6 +40,7 @@ package org.jboss.security.xacml.sunxacml.combine;
 
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.io.Serializable;
 
 import org.jboss.security.xacml.sunxacml.Indenter;
 import org.jboss.security.xacml.sunxacml.ParsingException;
@@ -56,9 +57,11 @@ import org.w3c.dom.Node;
  * @since 2.0
  * @author Seth Proctor
  */
-public class CombinerParameter
+public class CombinerParameter implements Serializable
 {
 
+    private static final long serialVersionUID = -5927284474688761073L;
+
     // the name of this parameter
     private String name;
 
@@ -38,6 +38,7 @@ package org.jboss.security.xacml.sunxacml.combine;
 
 
 
+import java.io.Serializable;
 import java.net.URI;
 import java.util.List;
 import java.util.logging.Logger;
@@ -54,8 +55,10 @@ import org.jboss.security.xacml.sunxacml.ctx.Result;
  * @author Seth Proctor
  */
 @SuppressWarnings( "rawtypes" )
-public abstract class CombiningAlgorithm
+public abstract class CombiningAlgorithm implements Serializable
 {
+   private static final long serialVersionUID = 5349462769200133653L;
+
    protected static final Logger logger =
       Logger.getLogger(CombiningAlgorithm.class.getName());
 
@@ -64,6 +64,8 @@ import org.jboss.security.xacml.sunxacml.ctx.Result;
 public class DenyOverridesPolicyAlg extends PolicyCombiningAlgorithm
 {
 
+    private static final long serialVersionUID = -8007188096768892980L;
+
     /**
      * The standard URN used to identify this algorithm
      */
@@ -62,6 +62,8 @@ import org.jboss.security.xacml.sunxacml.ctx.Result;
 public class DenyOverridesRuleAlg extends RuleCombiningAlgorithm
 {
 
+    private static final long serialVersionUID = 8759744659906407947L;
+
     /**
      * The standard URN used to identify this algorithm
      */
@@ -59,6 +59,8 @@ import org.jboss.security.xacml.sunxacml.ctx.Result;
 @SuppressWarnings( "rawtypes" )
 public class FirstApplicablePolicyAlg extends PolicyCombiningAlgorithm
 {
+
+    private static final long serialVersionUID = 2658525235712189902L;
     
     /**
      * The standard URN used to identify this algorithm
@@ -59,6 +59,8 @@ import org.jboss.security.xacml.sunxacml.ctx.Result;
 public class FirstApplicableRuleAlg extends RuleCombiningAlgorithm
 {
 
+    private static final long serialVersionUID = -2688981588517652697L;
+
     /**
      * The standard URN used to identify this algorithm
      */
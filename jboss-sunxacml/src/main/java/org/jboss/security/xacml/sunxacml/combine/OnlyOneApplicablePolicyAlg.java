@@ -62,6 +62,8 @@ import org.jboss.security.xacml.sunxacml.ctx.Status;
 public class OnlyOneApplicablePolicyAlg extends PolicyCombiningAlgorithm
 {
 
+    private static final long serialVersionUID = 8718106719860774696L;
+
     /**
      * The standard URN used to identify this algorithm
      */
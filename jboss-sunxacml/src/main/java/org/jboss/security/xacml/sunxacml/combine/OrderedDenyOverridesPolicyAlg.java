@@ -51,6 +51,8 @@ import java.net.URI;
 public class OrderedDenyOverridesPolicyAlg extends DenyOverridesPolicyAlg
 {
 
+    private static final long serialVersionUID = -8814905012438147215L;
+
     /**
      * The standard URN used to identify this algorithm
      */
@@ -51,6 +51,8 @@ import java.net.URI;
 public class OrderedDenyOverridesRuleAlg extends DenyOverridesRuleAlg
 {
 
+    private static final long serialVersionUID = 8592130823935610525L;
+
     /**
      * The standard URN used to identify this algorithm
      */
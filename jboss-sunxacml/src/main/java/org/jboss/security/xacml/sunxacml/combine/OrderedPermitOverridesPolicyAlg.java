@@ -51,6 +51,8 @@ import java.net.URI;
 public class OrderedPermitOverridesPolicyAlg extends PermitOverridesPolicyAlg
 {
 
+    private static final long serialVersionUID = -72271031877340791L;
+
     /**
      * The standard URN used to identify this algorithm
      */
@@ -51,6 +51,8 @@ import java.net.URI;
 public class OrderedPermitOverridesRuleAlg extends PermitOverridesRuleAlg
 {
 
+    private static final long serialVersionUID = -992560700937019194L;
+
     /**
      * The standard URN used to identify this algorithm
      */
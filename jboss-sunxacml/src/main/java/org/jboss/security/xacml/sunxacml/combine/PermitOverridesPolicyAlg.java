@@ -65,6 +65,8 @@ import org.jboss.security.xacml.sunxacml.ctx.Status;
 public class PermitOverridesPolicyAlg extends PolicyCombiningAlgorithm
 {
 
+    private static final long serialVersionUID = -4027100493807096393L;
+
     /**
      * The standard URN used to identify this algorithm
      */
@@ -61,6 +61,8 @@ import org.jboss.security.xacml.sunxacml.ctx.Result;
 public class PermitOverridesRuleAlg extends RuleCombiningAlgorithm
 {
 
+    private static final long serialVersionUID = -4474477220847676519L;
+
     /**
      * The standard URN used to identify this algorithm
      */
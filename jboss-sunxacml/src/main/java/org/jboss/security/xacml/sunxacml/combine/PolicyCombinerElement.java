@@ -60,6 +60,8 @@ import org.jboss.security.xacml.sunxacml.PolicySet;
 public class PolicyCombinerElement extends CombinerElement
 {
 
+    private static final long serialVersionUID = 7463907954674798571L;
+
     /**
      * Constructor that only takes an <code>AbstractPolicy</code. No parameters
      * are associated with this <code>AbstractPolicy</code> when combining.
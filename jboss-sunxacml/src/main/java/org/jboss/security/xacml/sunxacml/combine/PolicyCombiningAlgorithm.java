@@ -65,6 +65,8 @@ import org.jboss.security.xacml.sunxacml.ctx.Result;
 public abstract class PolicyCombiningAlgorithm extends CombiningAlgorithm
 {
 
+    private static final long serialVersionUID = -3433607682346940496L;
+
     /**
      * Constructor that takes the algorithm's identifier.
      *
@@ -57,6 +57,8 @@ import org.jboss.security.xacml.sunxacml.Rule;
 public class RuleCombinerElement extends CombinerElement
 {
 
+    private static final long serialVersionUID = 46236715527848746L;
+
     /**
      * Constructor that only takes a <code>Rule</code. No parameters are
      * associated with this <code>Rule</code> when combining.
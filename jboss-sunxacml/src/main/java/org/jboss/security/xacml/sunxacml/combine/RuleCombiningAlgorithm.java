@@ -57,6 +57,8 @@ import org.jboss.security.xacml.sunxacml.ctx.Result;
 public abstract class RuleCombiningAlgorithm extends CombiningAlgorithm
 {
 
+    private static final long serialVersionUID = 5589817006360492195L;
+
     /**
      * Constructor that takes the algorithm's identifier.
      *
@@ -62,6 +62,8 @@ import org.jboss.security.xacml.sunxacml.attr.IntegerAttribute;
 public class AbsFunction extends FunctionBase
 {
 
+    private static final long serialVersionUID = -858797594144900598L;
+
     /**
      * Standard identifier for the integer-abs function.
      */
@@ -62,6 +62,8 @@ import org.jboss.security.xacml.sunxacml.attr.IntegerAttribute;
 public class AddFunction extends FunctionBase
 {
 
+    private static final long serialVersionUID = -1797255902083130814L;
+
     /**
      * Standard identifier for the integer-add function.
      */
@@ -39,6 +39,8 @@ package org.jboss.security.xacml.sunxacml.cond;
 
 
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.OutputStream;
 import java.io.PrintStream;
 import java.net.URI;
@@ -48,6 +50,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Pattern;
 
 import org.jboss.security.xacml.sunxacml.EvaluationCtx;
 import org.jboss.security.xacml.sunxacml.Indenter;
@@ -80,11 +83,17 @@ import org.w3c.dom.NodeList;
 public class Apply implements Evaluatable
 {
 
+    private static final long serialVersionUID = -6302201899452568824L;
+
     // the function used to evaluate the contents of the apply
     private Function function;
 
     // the paramaters to the function...ie, the contents of the apply
     private List xprs;
+
+    // the first parameter compiled as a regular expression, if the
+    // function is one of the regular expression functions
+    private transient Pattern pattern;
     
     protected static final Logger logger =
        Logger.getLogger(Apply.class.getName());
@@ -110,6 +119,11 @@ public class Apply implements Evaluatable
         // if everything checks out, then store the inputs
         this.function = function;
         this.xprs = Collections.unmodifiableList(new ArrayList(xprs));
+
+        // compile a literal regular expression once here instead of
+        // per request
+        if ((function instanceof MatchFunction) && (! xprs.isEmpty()))
+            pattern = ((MatchFunction)function).compile(xprs.get(0));
     }
 
     /**
@@ -147,6 +161,23 @@ public class Apply implements Evaluatable
         // if everything checks out, then store the inputs
         this.function = function;
         this.xprs = Collections.unmodifiableList(new ArrayList(xprs));
+
+        // compile a literal regular expression once here instead of
+        // per request
+        if ((function instanceof MatchFunction) && (! xprs.isEmpty()))
+            pattern = ((MatchFunction)function).compile(xprs.get(0));
+    }
+
+    /**
+     * Private helper that compiles the literal regular expression of a
+     * deserialized apply again.
+     */
+    private void readObject(ObjectInputStream in)
+        throws IOException, ClassNotFoundException
+    {
+        in.defaultReadObject();
+        if ((function instanceof MatchFunction) && (! xprs.isEmpty()))
+            pattern = ((MatchFunction)function).compile(xprs.get(0));
     }
 
     /**
@@ -337,7 +368,12 @@ public class Apply implements Evaluatable
         // function can only be at the start of an Apply), we no longer make
         // assumptions at this point, so the higher order functions are
         // left to evaluate their own parameters.
-        EvaluationResult result = function.evaluate(xprs, context);
+        EvaluationResult result;
+        if (pattern != null)
+            result = ((MatchFunction)function).evaluate(xprs, context,
+                                                        pattern);
+        else
+            result = function.evaluate(xprs, context);
         AttributeValue avalue = result.getAttributeValue(); 
         StringBuilder builder = new StringBuilder();
         builder.append("Function:"+function.getIdentifier().toASCIIString());
@@ -70,6 +70,8 @@ import org.jboss.security.xacml.sunxacml.attr.YearMonthDurationAttribute;
 public abstract class BagFunction extends FunctionBase
 {
 
+    private static final long serialVersionUID = 9190128294661924867L;
+
     /**
      * Base name for the type-one-and-only funtions. To get the standard
      * identifier for a given type, use <code>FunctionBase.FUNCTION_NS</code>
@@ -66,6 +66,8 @@ import org.jboss.security.xacml.sunxacml.attr.TimeAttribute;
 public class ComparisonFunction extends FunctionBase
 {
 
+    private static final long serialVersionUID = 3853246161788274667L;
+
     /**
      * Standard identifier for the integer-greater-than function.
      */
@@ -69,6 +69,8 @@ import org.w3c.dom.NodeList;
 public class Condition implements Evaluatable
 {
 
+    private static final long serialVersionUID = 8593161620841001635L;
+
     // a local Boolean URI that is used as the return type
     private static URI booleanIdentifier;
 
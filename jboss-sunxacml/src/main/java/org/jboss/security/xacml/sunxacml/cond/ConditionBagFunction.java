@@ -60,6 +60,8 @@ import org.jboss.security.xacml.sunxacml.attr.BooleanAttribute;
 public class ConditionBagFunction extends BagFunction
 {
 
+    private static final long serialVersionUID = -1310261251577568985L;
+
     // mapping of function name to its associated argument type
     private static HashMap argMap;
 
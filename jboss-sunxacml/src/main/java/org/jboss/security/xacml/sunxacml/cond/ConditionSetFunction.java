@@ -63,6 +63,8 @@ import org.jboss.security.xacml.sunxacml.attr.BooleanAttribute;
 public class ConditionSetFunction extends SetFunction
 {
 
+    private static final long serialVersionUID = 5731611530765663685L;
+
     // private identifiers for the supported functions
     private static final int ID_BASE_AT_LEAST_ONE_MEMBER_OF = 0;
     private static final int ID_BASE_SUBSET = 1;
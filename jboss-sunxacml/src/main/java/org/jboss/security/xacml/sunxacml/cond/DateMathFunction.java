@@ -72,6 +72,8 @@ import org.jboss.security.xacml.sunxacml.attr.YearMonthDurationAttribute;
 public class DateMathFunction extends FunctionBase
 {
 
+    private static final long serialVersionUID = 3437309313169787268L;
+
     /**
      * Standard identifier for the dateTime-add-dayTimeDuration function.
      */
@@ -62,6 +62,8 @@ import org.jboss.security.xacml.sunxacml.attr.IntegerAttribute;
 public class DivideFunction extends FunctionBase
 {
 
+    private static final long serialVersionUID = 7265062857069385971L;
+
     /**
      * Standard identifier for the integer-divide function.
      */
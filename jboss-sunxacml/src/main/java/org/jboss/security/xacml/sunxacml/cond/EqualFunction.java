@@ -77,6 +77,8 @@ import org.jboss.security.xacml.sunxacml.attr.YearMonthDurationAttribute;
 public class EqualFunction extends FunctionBase
 {
 
+    private static final long serialVersionUID = -9149560571520792922L;
+
     /**
      * Standard identifier for the string-equal function.
      */
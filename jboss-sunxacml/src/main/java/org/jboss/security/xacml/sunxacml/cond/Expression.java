@@ -40,6 +40,7 @@ package org.jboss.security.xacml.sunxacml.cond;
 import java.net.URI;
 
 import java.io.OutputStream;
+import java.io.Serializable;
 
 import org.jboss.security.xacml.sunxacml.Indenter;
 
@@ -50,7 +51,7 @@ import org.jboss.security.xacml.sunxacml.Indenter;
  * @since 2.0
  * @author Seth Proctor
  */
-public interface Expression
+public interface Expression extends Serializable
 {
 
     /**
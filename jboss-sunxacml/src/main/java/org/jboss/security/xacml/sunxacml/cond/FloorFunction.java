@@ -61,6 +61,8 @@ import org.jboss.security.xacml.sunxacml.attr.DoubleAttribute;
 public class FloorFunction extends FunctionBase
 {
 
+    private static final long serialVersionUID = 5368502454076219849L;
+
     /**
      * Standard identifier for the floor function.
      */
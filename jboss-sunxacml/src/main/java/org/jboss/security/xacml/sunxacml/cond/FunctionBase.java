@@ -66,6 +66,8 @@ import org.jboss.security.xacml.sunxacml.ctx.Status;
 @SuppressWarnings( "rawtypes" )
 public abstract class FunctionBase implements Function
 {
+
+    private static final long serialVersionUID = -1257875944927666684L;
     
     /**
      * The standard namespace where all XACML 1.0 spec-defined functions live
@@ -63,6 +63,8 @@ import org.jboss.security.xacml.sunxacml.attr.IntegerAttribute;
 public class GeneralBagFunction extends BagFunction
 {
 
+    private static final long serialVersionUID = 1914016835743256449L;
+
     // private identifiers for the supported functions
     private static final int ID_BASE_ONE_AND_ONLY = 0;
     private static final int ID_BASE_BAG_SIZE = 1;
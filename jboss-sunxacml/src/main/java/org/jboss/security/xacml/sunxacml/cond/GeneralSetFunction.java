@@ -61,6 +61,8 @@ import org.jboss.security.xacml.sunxacml.attr.BagAttribute;
 public class GeneralSetFunction extends SetFunction
 {
 
+    private static final long serialVersionUID = 495872625668555004L;
+
     // private identifiers for the supported functions
     private static final int ID_BASE_INTERSECTION = 0;
     private static final int ID_BASE_UNION = 1;
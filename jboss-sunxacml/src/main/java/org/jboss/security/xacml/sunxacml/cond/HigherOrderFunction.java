@@ -75,6 +75,8 @@ import org.jboss.security.xacml.sunxacml.attr.StringAttribute;
 public class HigherOrderFunction implements Function
 {
 
+    private static final long serialVersionUID = -7223753750987760134L;
+
     /**
      * Standard identifier for the any-of function.
      */
@@ -64,6 +64,8 @@ import org.jboss.security.xacml.sunxacml.attr.BooleanAttribute;
 public class LogicalFunction extends FunctionBase
 {
 
+    private static final long serialVersionUID = 1672616407532387894L;
+
     /**
      * Standard identifier for the or function.
      */
@@ -67,6 +67,8 @@ import org.w3c.dom.NodeList;
 class MapFunction implements Function
 {
 
+    private static final long serialVersionUID = -6299887130883285705L;
+
     /**
      * The name of this function
      */
@@ -39,7 +39,9 @@ package org.jboss.security.xacml.sunxacml.cond;
 
 
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import java.util.regex.Pattern;
@@ -68,6 +70,8 @@ import org.jboss.security.xacml.sunxacml.attr.X500NameAttribute;
 public class MatchFunction extends FunctionBase
 {
 
+    private static final long serialVersionUID = 5672451854931765274L;
+
     /**
      * Standard identifier for the regexp-string-match function.
      */
@@ -168,6 +172,21 @@ public class MatchFunction extends FunctionBase
     // private mapping for bag input options
     private static final boolean bagParams [] = { false, false };
 
+    // the maximum number of patterns compiled at evaluation time that
+    // are kept for later evaluations
+    private static final int MAX_DYNAMIC_PATTERNS = 256;
+
+    // the most recently used patterns that were only known at evaluation
+    // time, guarded by its own lock
+    private static final Map dynamicPatterns =
+        new LinkedHashMap(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            protected boolean removeEldestEntry(Map.Entry eldest) {
+                return size() > MAX_DYNAMIC_PATTERNS;
+            }
+        };
+
     /**
      * Creates a new <code>MatchFunction</code> based on the given name.
      *
@@ -261,6 +280,35 @@ public class MatchFunction extends FunctionBase
         return set;
     }
 
+    /**
+     * Compiles the regular expression ahead of the first evaluation if
+     * this is one of the regular expression functions and the expression
+     * is a literal value. This is called with the first argument of the
+     * function when a <code>TargetMatch</code> or an <code>Apply</code>
+     * is created, which keeps the pattern for as long as it is loaded and
+     * passes it back to <code>evaluate</code>. An expression that cannot
+     * be compiled is left alone, so that the error is reported when the
+     * function is evaluated.
+     *
+     * @param regexp the first argument of the function
+     *
+     * @return the compiled pattern, or null if the argument is not a
+     *         literal regular expression that could be compiled
+     */
+    public Pattern compile(Object regexp) {
+        if ((getFunctionId() == ID_X500NAME_MATCH) ||
+            (getFunctionId() == ID_RFC822NAME_MATCH) ||
+            (! (regexp instanceof StringAttribute)))
+            return null;
+
+        try {
+            return Pattern.compile(translate(((StringAttribute)regexp).
+                                             getValue()));
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
     /**
      * Evaluate the function, using the specified parameters.
      *
@@ -272,6 +320,24 @@ public class MatchFunction extends FunctionBase
      *         function's result
      */
     public EvaluationResult evaluate(List inputs, EvaluationCtx context) {
+        return evaluate(inputs, context, null);
+    }
+
+    /**
+     * Evaluate the function, using the specified parameters and the
+     * pattern that <code>compile</code> returned for the first of them.
+     *
+     * @param inputs a <code>List</code> of <code>Evaluatable</code>
+     *               objects representing the arguments passed to the function
+     * @param context an <code>EvaluationCtx</code> so that the
+     *                <code>Evaluatable</code> objects can be evaluated
+     * @param pattern the compiled literal regular expression, or null to
+     *                compile the first argument as needed
+     * @return an <code>EvaluationResult</code> representing the
+     *         function's result
+     */
+    public EvaluationResult evaluate(List inputs, EvaluationCtx context,
+                                     Pattern pattern) {
         
         // Evaluate the arguments
         AttributeValue [] argValues = new AttributeValue[inputs.size()];
@@ -293,7 +359,7 @@ public class MatchFunction extends FunctionBase
             String arg0 = ((StringAttribute)(argValues[0])).getValue();
             String arg1 = ((StringAttribute)(argValues[1])).getValue();
 
-            boolResult = regexpHelper(arg0, arg1);
+            boolResult = regexpHelper(arg0, arg1, pattern);
 
             break;
         }
@@ -335,7 +401,7 @@ public class MatchFunction extends FunctionBase
             String arg0 = ((StringAttribute)(argValues[0])).getValue();
             String arg1 = ((AnyURIAttribute)(argValues[1])).encode();
 
-            boolResult = regexpHelper(arg0, arg1);
+            boolResult = regexpHelper(arg0, arg1, pattern);
 
             break;
         }
@@ -345,7 +411,7 @@ public class MatchFunction extends FunctionBase
             String arg0 = ((StringAttribute)(argValues[0])).getValue();
             String arg1 = ((IPAddressAttribute)(argValues[1])).encode();
 
-            boolResult = regexpHelper(arg0, arg1);
+            boolResult = regexpHelper(arg0, arg1, pattern);
 
             break;
         }  
@@ -355,7 +421,7 @@ public class MatchFunction extends FunctionBase
             String arg0 = ((StringAttribute)(argValues[0])).getValue();
             String arg1 = ((DNSNameAttribute)(argValues[1])).encode();
 
-            boolResult = regexpHelper(arg0, arg1);
+            boolResult = regexpHelper(arg0, arg1, pattern);
 
             break;
         }
@@ -365,7 +431,7 @@ public class MatchFunction extends FunctionBase
             String arg0 = ((StringAttribute)(argValues[0])).getValue();
             String arg1 = ((RFC822NameAttribute)(argValues[1])).encode();
 
-            boolResult = regexpHelper(arg0, arg1);
+            boolResult = regexpHelper(arg0, arg1, pattern);
 
             break;
         }
@@ -375,7 +441,7 @@ public class MatchFunction extends FunctionBase
             String arg0 = ((StringAttribute)(argValues[0])).getValue();
             String arg1 = ((X500NameAttribute)(argValues[1])).encode();
 
-            boolResult = regexpHelper(arg0, arg1);
+            boolResult = regexpHelper(arg0, arg1, pattern);
 
             break;
         }
@@ -387,9 +453,30 @@ public class MatchFunction extends FunctionBase
     }
 
     /**
-     *
+     * Private helper that matches a string against a regular expression
+     * in the XACML syntax, re-using the compiled pattern if there is one.
+     */
+    private boolean regexpHelper(String xpr, String str, Pattern pattern) {
+        if (pattern == null) {
+            synchronized (dynamicPatterns) {
+                pattern = (Pattern)(dynamicPatterns.get(xpr));
+            }
+            if (pattern == null) {
+                pattern = Pattern.compile(translate(xpr));
+                synchronized (dynamicPatterns) {
+                    dynamicPatterns.put(xpr, pattern);
+                }
+            }
+        }
+
+        return pattern.matcher(str).matches();
+    }
+
+    /**
+     * Private helper that translates a regular expression in the XACML
+     * syntax into the syntax supported by <code>Pattern</code>.
      */
-    private boolean regexpHelper(String xpr, String str) {
+    private static String translate(String xpr) {
         // the regular expression syntax required by XACML differs
         // from the syntax supported by java.util.regex.Pattern
         // in several ways; the next several code blocks transform
@@ -438,7 +525,7 @@ public class MatchFunction extends FunctionBase
             idx = buf.indexOf("-[", idx);
         }
 
-        return Pattern.matches(buf.toString(), str);
+        return buf.toString();
     }
 
 }
@@ -60,6 +60,8 @@ import org.jboss.security.xacml.sunxacml.attr.IntegerAttribute;
 public class ModFunction extends FunctionBase
 {
 
+    private static final long serialVersionUID = -4152446915490855432L;
+
     /**
      * Standard identifier for the integer-mod function.
      */
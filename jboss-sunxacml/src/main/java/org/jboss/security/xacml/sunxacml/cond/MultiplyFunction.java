@@ -62,6 +62,8 @@ import org.jboss.security.xacml.sunxacml.attr.IntegerAttribute;
 public class MultiplyFunction extends FunctionBase
 {
 
+    private static final long serialVersionUID = -4987921574602164580L;
+
     /**
      * Standard identifier for the integer-multiply function.
      */
@@ -70,6 +70,8 @@ import org.jboss.security.xacml.sunxacml.attr.IntegerAttribute;
 public class NOfFunction extends FunctionBase
 {
 
+    private static final long serialVersionUID = 8763287941298181508L;
+
     /**
      * Standard identifier for the n-of function.
      */
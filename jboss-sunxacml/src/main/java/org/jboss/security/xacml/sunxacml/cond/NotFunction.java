@@ -61,6 +61,8 @@ import org.jboss.security.xacml.sunxacml.attr.BooleanAttribute;
 public class NotFunction extends FunctionBase
 {
 
+    private static final long serialVersionUID = 4906269763465077198L;
+
     /**
      * Standard identifier for the not function.
      */
@@ -63,6 +63,8 @@ import org.jboss.security.xacml.sunxacml.attr.IntegerAttribute;
 public class NumericConvertFunction extends FunctionBase
 {
 
+    private static final long serialVersionUID = -7749135833325419106L;
+
     /**
      * Standard identifier for the double-to-integer function.
      */
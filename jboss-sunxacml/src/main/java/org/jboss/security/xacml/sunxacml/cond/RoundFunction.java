@@ -60,6 +60,8 @@ import org.jboss.security.xacml.sunxacml.attr.DoubleAttribute;
 public class RoundFunction extends FunctionBase
 {
 
+    private static final long serialVersionUID = -7473146909816458055L;
+
     /**
      * Standard identifier for the round function.
      */
@@ -71,6 +71,8 @@ import org.jboss.security.xacml.sunxacml.attr.YearMonthDurationAttribute;
 public abstract class SetFunction extends FunctionBase
 {
 
+    private static final long serialVersionUID = 8345487026030806461L;
+
     /**
      * Base name for the type-intersection funtions. To get the standard
      * identifier for a given type, use <code>FunctionBase.FUNCTION_NS</code>
@@ -57,6 +57,8 @@ import org.jboss.security.xacml.sunxacml.attr.StringAttribute;
 public class StringFunction extends FunctionBase
 {
 
+    private static final long serialVersionUID = 7934345625829962927L;
+
     /**
      * Standard identifier for the string-concatenate function.
      */
@@ -62,6 +62,8 @@ import org.jboss.security.xacml.sunxacml.attr.StringAttribute;
 public class StringNormalizeFunction extends FunctionBase
 {
 
+    private static final long serialVersionUID = -8834227952912085589L;
+
     /**
      * Standard identifier for the string-normalize-space function.
      */
@@ -62,6 +62,8 @@ import org.jboss.security.xacml.sunxacml.attr.IntegerAttribute;
 public class SubtractFunction extends FunctionBase
 {
 
+    private static final long serialVersionUID = 5413147817122286168L;
+
     /**
      * Standard identifier for the integer-subtract function.
      */
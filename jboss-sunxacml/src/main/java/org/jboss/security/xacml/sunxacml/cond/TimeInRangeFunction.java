@@ -63,6 +63,8 @@ import org.jboss.security.xacml.sunxacml.attr.TimeAttribute;
 public class TimeInRangeFunction extends FunctionBase
 {
 
+    private static final long serialVersionUID = -3626430072232111464L;
+
     /**
      * The identifier for this function
      */
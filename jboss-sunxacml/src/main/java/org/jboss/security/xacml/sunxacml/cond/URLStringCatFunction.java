@@ -63,6 +63,8 @@ import org.jboss.security.xacml.sunxacml.ctx.Status;
 public class URLStringCatFunction extends FunctionBase
 {
 
+    private static final long serialVersionUID = 374806459573934986L;
+
     /**
      * Standard identifier for the url-string-concatenate function.
      */
@@ -39,6 +39,7 @@ package org.jboss.security.xacml.sunxacml.cond;
 
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.io.Serializable;
 
 import org.jboss.security.xacml.sunxacml.Indenter;
 import org.jboss.security.xacml.sunxacml.ParsingException;
@@ -57,9 +58,11 @@ import org.w3c.dom.NodeList;
  * @since 2.0
  * @author Seth Proctor
  */
-public class VariableDefinition
+public class VariableDefinition implements Serializable
 {
 
+    private static final long serialVersionUID = 5512848911680079364L;
+
     // the identitifer for this definition
     private String variableId;
 
@@ -38,6 +38,8 @@ package org.jboss.security.xacml.sunxacml.cond;
 
 
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.io.PrintStream;
 import java.net.URI;
@@ -66,14 +68,17 @@ import org.w3c.dom.Node;
 public class VariableReference implements Evaluatable
 {
 
+    private static final long serialVersionUID = -8175921495172635378L;
+
     // the identifier used to resolve the reference
     private String variableId;
 
     // the actual definition we refernce, if it's known
     private VariableDefinition definition = null;
 
-    // a manager for resolving references, if it's been provided
-    private VariableManager manager = null;
+    // a manager for resolving references, if it's been provided, which
+    // is only used while parsing and is not serialized
+    private transient VariableManager manager = null;
 
     /**
      * Simple constructor that takes only the identifier. This is provided
@@ -171,6 +176,16 @@ public class VariableReference implements Evaluatable
         return null;
     }
     
+    /**
+     * Private helper that resolves the definition through the manager
+     * before this reference is serialized without it.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        if (definition == null)
+            definition = getReferencedDefinition();
+        out.defaultWriteObject();
+    }
+
     /**
      * Evaluates the referenced expression using the given context, and either
      * returns an error or a resulting value. If this doesn't reference an
@@ -41,6 +41,7 @@ package org.jboss.security.xacml.sunxacml.ctx;
 
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.io.Serializable;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -65,9 +66,11 @@ import org.w3c.dom.NodeList;
  * @since 1.0
  * @author Seth Proctor
  */
-public class Attribute
+public class Attribute implements Serializable
 {
 
+   private static final long serialVersionUID = 5860330911253648257L;
+
    // required meta-data attributes
    private URI id;
    private URI type;
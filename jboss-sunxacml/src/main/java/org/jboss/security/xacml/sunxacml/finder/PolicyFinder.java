@@ -41,9 +41,13 @@ package org.jboss.security.xacml.sunxacml.finder;
 import java.net.URI;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -86,13 +90,22 @@ public class PolicyFinder
 {
 
     // all modules in this finder
-    private Set allModules;
-
-    // all the request modules
-    private Set requestModules;
+    private volatile Set allModules;
 
     // all the reference modules
-    private Set referenceModules;
+    private volatile Set referenceModules;
+
+    // all the request modules, indexed on the targets of their policies
+    private volatile TargetIndex requestModuleIndex;
+
+    // changes whenever the policies that can be found may have changed
+    private final AtomicLong generation = new AtomicLong();
+
+    // the generation at which all the policies last changed
+    private volatile long allChanged = 0;
+
+    // the generation at which each id last changed, since allChanged
+    private final Map<URI, Long> changed = new ConcurrentHashMap<URI, Long>();
 
     // the logger we'll use for all messages
     private static final Logger logger =
@@ -110,26 +123,91 @@ public class PolicyFinder
 
     /**
      * Sets the unordered <code>Set</code> of modules used by this class
-     * to find policies.
+     * to find policies. The new sets are fully built before they are
+     * published, so a lookup running concurrently with this call sees
+     * either the old or the new modules, never a partial set. Since the
+     * new modules may find other policies for any id, this counts as a
+     * change to all the policies, see <code>policiesChanged()</code>.
      *
      * @param modules the modules this class will use
      */
     public void setModules(Set modules) {
         Iterator it = modules.iterator();
 
-        allModules = new HashSet(modules);
-        requestModules = new HashSet();
-        referenceModules = new HashSet();
+        Set newAllModules = new HashSet(modules);
+        Set newReferenceModules = new HashSet();
+        TargetIndex newRequestModuleIndex = new TargetIndex();
 
         while (it.hasNext()) {
             PolicyFinderModule module = (PolicyFinderModule)(it.next());
 
             if (module.isRequestSupported())
-                requestModules.add(module);
+                newRequestModuleIndex.add(module.getTarget(), module);
 
             if (module.isIdReferenceSupported())
-                referenceModules.add(module);
+                newReferenceModules.add(module);
         }
+
+        requestModuleIndex = newRequestModuleIndex;
+        referenceModules = newReferenceModules;
+        allModules = newAllModules;
+
+        policiesChanged();
+    }
+
+    /**
+     * Tells this finder that any of the policies its modules know about
+     * may have changed, so that the policy references which link to the
+     * policies it found before resolve them again. This must be called
+     * after the modules have been updated in place. Replacing the modules
+     * with <code>setModules</code> does this by itself.
+     */
+    public synchronized void policiesChanged() {
+        allChanged = generation.incrementAndGet();
+        changed.clear();
+    }
+
+    /**
+     * Tells this finder that the policies with the given ids have been
+     * added, replaced or removed, so that only the policy references to
+     * those ids resolve them again. This must be called after the modules
+     * have been updated.
+     *
+     * @param ids the <code>URI</code>s of the policies that changed
+     */
+    public synchronized void policiesChanged(Collection ids) {
+        Long now = Long.valueOf(generation.incrementAndGet());
+        Iterator it = ids.iterator();
+        while (it.hasNext())
+            changed.put((URI)(it.next()), now);
+    }
+
+    /**
+     * Returns a number that changes whenever the policies that this finder
+     * can find may have changed.
+     *
+     * @return the current generation
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Returns whether a reference to the given id still resolves to what
+     * it resolved to at the given generation.
+     *
+     * @param idReference the identifier used to resolve a policy
+     * @param since the generation that was current before the reference
+     *              was resolved
+     *
+     * @return true if no change to the id was published since then
+     */
+    public boolean isUnchanged(URI idReference, long since) {
+        if (allChanged > since)
+            return false;
+
+        Long last = changed.get(idReference);
+        return (last == null) || (last.longValue() <= since);
     }
 
     /**
@@ -151,6 +229,7 @@ public class PolicyFinder
      * the request data as indexing data to lookup a policy. This will always
      * do a Target match to make sure that the given policy applies. If more
      * than one applicable policy is found, this will return an error.
+     * Modules whose target cannot match the request are not asked.
      *
      * @param context the representation of the request data
      *
@@ -158,7 +237,7 @@ public class PolicyFinder
      */
     public PolicyFinderResult findPolicy(EvaluationCtx context) {
         PolicyFinderResult result = null;
-        Iterator it = requestModules.iterator();
+        Iterator it = requestModuleIndex.getCandidates(context).iterator();
 
         // look through all of the modules
         while (it.hasNext()) {
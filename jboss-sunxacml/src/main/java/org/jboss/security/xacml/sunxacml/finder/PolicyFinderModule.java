@@ -41,6 +41,7 @@ import java.net.URI;
 
 import org.jboss.security.xacml.sunxacml.EvaluationCtx;
 import org.jboss.security.xacml.sunxacml.PolicyMetaData;
+import org.jboss.security.xacml.sunxacml.Target;
 import org.jboss.security.xacml.sunxacml.VersionConstraints;
 
 
@@ -141,6 +142,22 @@ public abstract class PolicyFinderModule
         return new PolicyFinderResult();
     }
 
+    /**
+     * Returns the target that a request has to match for
+     * <code>findPolicy(EvaluationCtx)</code> to return anything other than
+     * an empty result. The <code>PolicyFinder</code> reads it when the module
+     * is set, and uses it to index the modules so that only the modules
+     * that may apply are asked for a policy. By default this method returns
+     * null, which means that the module is asked for every request.
+     *
+     * @return the target of the policy returned by this module, or null
+     *
+     * @since 2.1
+     */
+    public Target getTarget() {
+        return null;
+    }
+
     /**
      * Tries to find one and only one matching policy given the idReference
      * If more than one policy is found, this is an error and must be reported
@@ -0,0 +1,298 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.security.xacml.sunxacml.finder;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jboss.security.xacml.sunxacml.EvaluationCtx;
+import org.jboss.security.xacml.sunxacml.Target;
+import org.jboss.security.xacml.sunxacml.TargetMatch;
+import org.jboss.security.xacml.sunxacml.TargetMatchGroup;
+import org.jboss.security.xacml.sunxacml.TargetSection;
+import org.jboss.security.xacml.sunxacml.attr.AttributeDesignator;
+import org.jboss.security.xacml.sunxacml.attr.AttributeValue;
+import org.jboss.security.xacml.sunxacml.attr.BagAttribute;
+import org.jboss.security.xacml.sunxacml.cond.EqualFunction;
+import org.jboss.security.xacml.sunxacml.cond.EvaluationResult;
+
+/**
+ * An inverted index over the targets of top-level policies.
+ * <p>
+ * A target is indexed on its first section that does not match any request,
+ * provided that the first match of every group in that section compares an
+ * attribute designator to a literal value with an equality function. The
+ * index then maps the designator and the literal value to the element, and a
+ * request only gets the elements whose literal value is present in the bag
+ * of the designator. Since <code>Target.match</code> evaluates the sections
+ * and the matches of a group in order and stops at the first one that does
+ * not match, every element that is left out would have returned
+ * <code>NO_MATCH</code>. If a designator cannot be resolved, all of its
+ * elements are candidates so that the error is reported as before.
+ * </p>
+ * <p>
+ * Targets that cannot be indexed are always returned as candidates. The
+ * candidates keep the order in which they were added. The callers still
+ * have to match the targets of the candidates.
+ * </p>
+ * <p>
+ * The index is built once and is not modified after it has been published,
+ * so it can be shared by concurrent requests.
+ * </p>
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since Oct 18, 2026
+ */
+@SuppressWarnings("rawtypes")
+public class TargetIndex<T>
+{
+    // the equality functions whose arguments are equal iff their
+    // encoded forms are equal
+    private static final Set<String> INDEXABLE_FUNCTIONS = new HashSet<String>();
+
+    static {
+        INDEXABLE_FUNCTIONS.add(EqualFunction.NAME_STRING_EQUAL);
+        INDEXABLE_FUNCTIONS.add(EqualFunction.NAME_BOOLEAN_EQUAL);
+        INDEXABLE_FUNCTIONS.add(EqualFunction.NAME_INTEGER_EQUAL);
+    }
+
+    // all the elements, in the order in which they were added
+    private final List<T> elements = new ArrayList<T>();
+
+    // a read-only view of the elements
+    private final List<T> allElements = Collections.unmodifiableList(elements);
+
+    // the positions of the elements that are scanned for every request
+    private final BitSet unindexed = new BitSet();
+
+    // designator -> encoded literal value -> positions of the elements
+    private final Map<DesignatorKey, Map<String, BitSet>> index =
+        new LinkedHashMap<DesignatorKey, Map<String, BitSet>>();
+
+    // designator -> positions of all the elements under that designator
+    private final Map<DesignatorKey, BitSet> designatorElements =
+        new HashMap<DesignatorKey, BitSet>();
+
+    /**
+     * Adds an element to the index.
+     *
+     * @param target the target that a request has to match for the
+     *               element to apply, or null if the element has to be
+     *               considered for every request
+     * @param element the element
+     */
+    public void add(Target target, T element) {
+        int position = elements.size();
+        elements.add(element);
+
+        TargetSection section = getIndexedSection(target);
+        if (section == null) {
+            unindexed.set(position);
+            return;
+        }
+
+        Iterator it = section.getMatchGroups().iterator();
+        while (it.hasNext()) {
+            TargetMatchGroup group = (TargetMatchGroup)(it.next());
+            TargetMatch match = (TargetMatch)(group.getMatches().get(0));
+            AttributeDesignator designator =
+                (AttributeDesignator)(match.getMatchEvaluatable());
+            DesignatorKey key = new DesignatorKey(designator);
+
+            Map<String, BitSet> values = index.get(key);
+            if (values == null) {
+                values = new HashMap<String, BitSet>();
+                index.put(key, values);
+                designatorElements.put(key, new BitSet());
+            }
+            String value = match.getMatchValue().encode();
+            BitSet positions = values.get(value);
+            if (positions == null) {
+                positions = new BitSet();
+                values.put(value, positions);
+            }
+            positions.set(position);
+            designatorElements.get(key).set(position);
+        }
+    }
+
+    /**
+     * Returns the elements whose targets may match the request, in the
+     * order in which they were added.
+     *
+     * @param context the representation of the request
+     *
+     * @return the candidate elements
+     */
+    public List<T> getCandidates(EvaluationCtx context) {
+        if (index.isEmpty())
+            return allElements;
+
+        BitSet candidates = (BitSet)(unindexed.clone());
+        for (Map.Entry<DesignatorKey, Map<String, BitSet>> entry :
+                 index.entrySet()) {
+            DesignatorKey key = entry.getKey();
+            EvaluationResult result = key.designator.evaluate(context);
+            if (result.indeterminate()) {
+                candidates.or(designatorElements.get(key));
+                continue;
+            }
+
+            Map<String, BitSet> values = entry.getValue();
+            BagAttribute bag = (BagAttribute)(result.getAttributeValue());
+            Iterator it = bag.iterator();
+            while (it.hasNext()) {
+                AttributeValue value = (AttributeValue)(it.next());
+                BitSet positions = values.get(value.encode());
+                if (positions != null)
+                    candidates.or(positions);
+            }
+        }
+
+        List<T> list = new ArrayList<T>(candidates.cardinality());
+        for (int i = candidates.nextSetBit(0); i >= 0;
+             i = candidates.nextSetBit(i + 1))
+            list.add(elements.get(i));
+        return list;
+    }
+
+    /**
+     * Returns the number of elements in this index.
+     *
+     * @return the number of elements
+     */
+    public int size() {
+        return elements.size();
+    }
+
+    /**
+     * Returns the number of elements that are considered for every request.
+     *
+     * @return the number of elements that could not be indexed
+     */
+    public int getUnindexedCount() {
+        return unindexed.cardinality();
+    }
+
+    /**
+     * Private helper that returns the first section of the target that
+     * does not match any request if it can be indexed, or null.
+     */
+    private static TargetSection getIndexedSection(Target target) {
+        if (target == null || target.matchesAny())
+            return null;
+
+        TargetSection [] sections = { target.getSubjectsSection(),
+                                      target.getResourcesSection(),
+                                      target.getActionsSection(),
+                                      target.getEnvironmentsSection() };
+        for (int i = 0; i < sections.length; i++) {
+            if (sections[i] == null || sections[i].matchesAny())
+                continue;
+
+            Iterator it = sections[i].getMatchGroups().iterator();
+            while (it.hasNext()) {
+                TargetMatchGroup group = (TargetMatchGroup)(it.next());
+                List matches = group.getMatches();
+                if (matches.isEmpty() ||
+                    (! isIndexable((TargetMatch)(matches.get(0)))))
+                    return null;
+            }
+            return sections[i];
+        }
+
+        return null;
+    }
+
+    /**
+     * Private helper that checks whether a match compares a designator
+     * with a literal value using an indexable equality function.
+     */
+    private static boolean isIndexable(TargetMatch match) {
+        return (match.getMatchEvaluatable() instanceof AttributeDesignator) &&
+            (match.getMatchValue() != null) &&
+            INDEXABLE_FUNCTIONS.contains(match.getMatchFunction().
+                                         getIdentifier().toString());
+    }
+
+    /**
+     * The identity of an attribute designator. Two designators with the
+     * same key always return the same bag for a request.
+     */
+    private static class DesignatorKey
+    {
+        private final AttributeDesignator designator;
+
+        private final int designatorType;
+
+        private final URI type;
+
+        private final URI id;
+
+        private final URI category;
+
+        private final URI issuer;
+
+        private final boolean mustBePresent;
+
+        private DesignatorKey(AttributeDesignator designator) {
+            this.designator = designator;
+            this.designatorType = designator.getDesignatorType();
+            this.type = designator.getType();
+            this.id = designator.getId();
+            this.category = designator.getCategory();
+            this.issuer = designator.getIssuer();
+            this.mustBePresent = designator.mustBePresent();
+        }
+
+        public int hashCode() {
+            int hash = designatorType;
+            hash = 31 * hash + id.hashCode();
+            hash = 31 * hash + type.hashCode();
+            hash = 31 * hash + (category == null ? 0 : category.hashCode());
+            hash = 31 * hash + (issuer == null ? 0 : issuer.hashCode());
+            return 31 * hash + (mustBePresent ? 1 : 0);
+        }
+
+        public boolean equals(Object o) {
+            if (! (o instanceof DesignatorKey))
+                return false;
+
+            DesignatorKey other = (DesignatorKey)o;
+            return (designatorType == other.designatorType) &&
+                (mustBePresent == other.mustBePresent) &&
+                id.equals(other.id) && type.equals(other.type) &&
+                (category == null ? other.category == null :
+                 category.equals(other.category)) &&
+                (issuer == null ? other.issuer == null :
+                 issuer.equals(other.issuer));
+        }
+    }
+}
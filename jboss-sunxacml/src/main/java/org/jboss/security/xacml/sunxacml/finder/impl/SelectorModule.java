@@ -43,22 +43,25 @@ package org.jboss.security.xacml.sunxacml.finder.impl;
 
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
 import javax.xml.xpath.XPathFactory;
 
 import org.jboss.security.xacml.sunxacml.EvaluationCtx;
 import org.jboss.security.xacml.sunxacml.ParsingException;
 import org.jboss.security.xacml.sunxacml.PolicyMetaData;
-import org.jboss.security.xacml.sunxacml.SunxacmlUtil;
 import org.jboss.security.xacml.sunxacml.UnknownIdentifierException;
 import org.jboss.security.xacml.sunxacml.attr.AttributeFactory;
 import org.jboss.security.xacml.sunxacml.attr.BagAttribute;
+import org.jboss.security.xacml.sunxacml.attr.SelectorNamespaceContext;
 import org.jboss.security.xacml.sunxacml.cond.EvaluationResult;
 import org.jboss.security.xacml.sunxacml.ctx.Status;
 import org.jboss.security.xacml.sunxacml.finder.AttributeFinderModule;
-import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
@@ -82,6 +85,12 @@ import org.w3c.dom.NodeList;
  * AttributeSelector functionality, but is not designed for environments
  * that make significant use of XPath queries. Developers for any such
  * environment should consider implementing their own module.
+ * <p>
+ * Neither <code>XPath</code> nor compiled <code>XPathExpression</code>s
+ * are safe for concurrent use, so each thread keeps its own
+ * <code>XPath</code> and the expressions it has most recently compiled.
+ * An expression is therefore compiled once per thread rather than once
+ * per evaluation.
  *
  * @since 1.0
  * @author Seth Proctor
@@ -90,6 +99,29 @@ import org.w3c.dom.NodeList;
 public class SelectorModule extends AttributeFinderModule
 {
 
+    // the maximum number of compiled expressions kept by each thread
+    private static final int MAX_EXPRESSIONS = 128;
+
+    // the XPath of each thread, which is expensive to look up
+    private static final ThreadLocal xpaths = new ThreadLocal() {
+            protected Object initialValue() {
+                return XPathFactory.newInstance().newXPath();
+            }
+        };
+
+    // the expressions each thread has most recently compiled
+    private static final ThreadLocal expressions = new ThreadLocal() {
+            protected Object initialValue() {
+                return new LinkedHashMap(16, 0.75f, true) {
+                        private static final long serialVersionUID = 1L;
+
+                        protected boolean removeEldestEntry(Map.Entry e) {
+                            return size() > MAX_EXPRESSIONS;
+                        }
+                    };
+            }
+        };
+
     /**
      * Returns true since this module supports retrieving attributes based on
      * the data provided in an AttributeSelectorType.
@@ -109,6 +141,28 @@ public class SelectorModule extends AttributeFinderModule
         return new EvaluationResult(new Status(code, msg));
     }
 
+    /**
+     * Private helper that returns the expression compiled by this thread
+     * for the given path and namespace mappings, compiling it if needed.
+     */
+    private static XPathExpression compile(String path,
+                                           SelectorNamespaceContext namespaces)
+        throws XPathExpressionException
+    {
+        Map compiled = (Map)(expressions.get());
+        ExpressionKey key = new ExpressionKey(path, namespaces);
+        XPathExpression expression = (XPathExpression)(compiled.get(key));
+
+        if (expression == null) {
+            XPath xpath = (XPath)(xpaths.get());
+            xpath.setNamespaceContext(namespaces);
+            expression = xpath.compile(path);
+            compiled.put(key, expression);
+        }
+
+        return expression;
+    }
+
     /**
      * Tries to find attribute values based on the given selector data.
      * The result, if successful, always contains a <code>BagAttribute</code>,
@@ -138,6 +192,8 @@ public class SelectorModule extends AttributeFinderModule
         // if we were provided with a non-null namespace node, then use it
         // to resolve namespaces, otherwise use the context root node
         Node nsNode = (namespaceNode != null) ? namespaceNode : root;
+        SelectorNamespaceContext namespaces =
+            SelectorNamespaceContext.getInstance(nsNode);
 
         // setup the root path (pre-pended to the context path), which...
         String rootPath = "";
@@ -155,46 +211,24 @@ public class SelectorModule extends AttributeFinderModule
             } else {
                 // namespaces are used, so we need to lookup the correct
                 // prefix to use in the search string
-                NamedNodeMap nmap = namespaceNode.getAttributes();
-                rootPath = null;
-
-                for (int i = 0; i < nmap.getLength(); i++) {
-                    Node n = nmap.item(i);
-                    if (n.getNodeValue().equals(namespace)) {
-                        // we found the matching namespace, so get the prefix
-                        // and then break out
-                        String name = SunxacmlUtil.getNodeName(n);
-                        int pos = name.indexOf(':');
-
-                        if (pos == -1) {
-                            // the namespace was the default namespace
-                            rootPath = "/";
-                        } else {
-                            // we found a prefixed namespace
-                            rootPath = "/" + name.substring(pos + 1);
-                        }
-
-                        // finish off the string
-                        rootPath += ":" + rootName + "/";
+                String prefix = namespaces.getQualifyingPrefix(namespace);
 
-                        break;
-                    }
-                }
-
-                // if the rootPath is still null, then we don't have any
+                // if there is no prefix, then we don't have any usable
                 // definitions for the namespace
-                if (rootPath == null)
+                if (prefix == null)
                     return createProcessingError("Failed to map a namespace" +
                                                  " in an XPath expression");
+
+                rootPath = "/" + prefix + ":" + rootName + "/";
             }
         }
 
         // now do the query, pre-pending the root path to the context path
         NodeList matches = null;
         try {
-            // NOTE: see comments in XALAN docs about why this is slow
-            XPath xpath = XPathFactory.newInstance().newXPath();
-            matches = (NodeList)xpath.evaluate(rootPath + path, root, XPathConstants.NODESET);
+            XPathExpression expression = compile(rootPath + path, namespaces);
+            matches = (NodeList)expression.evaluate(root,
+                                                    XPathConstants.NODESET);
 
         } catch (Exception e) {
             // in the case of any exception, we need to return an error
@@ -240,4 +274,35 @@ public class SelectorModule extends AttributeFinderModule
         }
     }
 
+    /**
+     * An expression along with the mappings used to compile it. The
+     * mappings are compared by identity since there is one instance per
+     * namespace node.
+     */
+    private static class ExpressionKey
+    {
+        private final String path;
+
+        private final SelectorNamespaceContext namespaces;
+
+        private ExpressionKey(String path,
+                              SelectorNamespaceContext namespaces) {
+            this.path = path;
+            this.namespaces = namespaces;
+        }
+
+        public int hashCode() {
+            return 31 * path.hashCode() +
+                System.identityHashCode(namespaces);
+        }
+
+        public boolean equals(Object o) {
+            if (! (o instanceof ExpressionKey))
+                return false;
+
+            ExpressionKey other = (ExpressionKey)o;
+            return (namespaces == other.namespaces) && path.equals(other.path);
+        }
+    }
+
 }
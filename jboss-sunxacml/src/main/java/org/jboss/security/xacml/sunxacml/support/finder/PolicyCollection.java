@@ -56,6 +56,7 @@ import org.jboss.security.xacml.sunxacml.TargetSection;
 import org.jboss.security.xacml.sunxacml.VersionConstraints;
 import org.jboss.security.xacml.sunxacml.combine.PolicyCombiningAlgorithm;
 import org.jboss.security.xacml.sunxacml.ctx.Status;
+import org.jboss.security.xacml.sunxacml.finder.TargetIndex;
 
 /**
  * This class handles collections of <code>AbstractPolicy</code> instances,
@@ -102,6 +103,12 @@ public class PolicyCollection
    // the optional policy id used when wrapping multiple policies
    private URI parentId;
 
+   // the most recent version of each policy, indexed on its target; this
+   // is built when first needed, and dropped whenever a policy is added.
+   // It is built and dropped while holding the lock of the collection, so
+   // an index built from the previous policies is never kept
+   private volatile TargetIndex index;
+
    // default target that matches anything, used in wrapping policies
    private static final Target target;
 
@@ -169,14 +176,15 @@ public class PolicyCollection
     *
     * @return true if the policy was added, false otherwise
     */
-   public boolean addPolicy(AbstractPolicy policy, String identifier)
+   public synchronized boolean addPolicy(AbstractPolicy policy, String identifier)
    {
+      boolean added;
       if (policies.containsKey(identifier))
       {
          // this identifier is already is use, so see if this version is
          // already in the set
          TreeSet set = (TreeSet) (policies.get(identifier));
-         return set.add(policy);
+         added = set.add(policy);
       }
       else
       {
@@ -184,8 +192,10 @@ public class PolicyCollection
          // set in the map for it, and add the policy
          TreeSet set = new TreeSet(versionComparator);
          policies.put(identifier, set);
-         return set.add(policy);
+         added = set.add(policy);
       }
+      index = null;
+      return added;
    }
 
    /**
@@ -207,13 +217,12 @@ public class PolicyCollection
    {
       // setup a list of matching policies
       ArrayList list = new ArrayList();
-      // get an iterator over all the identifiers
-      Iterator it = policies.values().iterator();
+      // get an iterator over the policies that may match
+      Iterator it = getIndex().getCandidates(context).iterator();
 
       while (it.hasNext())
       {
-         // for each identifier, get only the most recent policy
-         AbstractPolicy policy = (AbstractPolicy) (((TreeSet) (it.next())).first());
+         AbstractPolicy policy = (AbstractPolicy) (it.next());
 
          // see if we match
          MatchResult match = policy.match(context);
@@ -253,6 +262,35 @@ public class PolicyCollection
       }
    }
 
+   /**
+    * Private helper that returns the index of the most recent version of
+    * each policy, building it if needed.
+    */
+   private TargetIndex getIndex()
+   {
+      TargetIndex current = index;
+      if (current == null)
+      {
+         synchronized (this)
+         {
+            current = index;
+            if (current == null)
+            {
+               current = new TargetIndex();
+               Iterator it = policies.values().iterator();
+               while (it.hasNext())
+               {
+                  // for each identifier, get only the most recent policy
+                  AbstractPolicy policy = (AbstractPolicy) (((TreeSet) (it.next())).first());
+                  current.add(policy.getTarget(), policy);
+               }
+               index = current;
+            }
+         }
+      }
+      return current;
+   }
+
    /**
     * Attempts to retrieve a policy based on the given identifier and other
     * constraints. If there are multiple versions of the identified policy
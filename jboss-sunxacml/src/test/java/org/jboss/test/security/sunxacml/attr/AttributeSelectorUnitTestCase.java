@@ -0,0 +1,147 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors. 
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.test.security.sunxacml.attr;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import junit.framework.TestCase;
+
+import org.jboss.security.xacml.sunxacml.BasicEvaluationCtx;
+import org.jboss.security.xacml.sunxacml.EvaluationCtx;
+import org.jboss.security.xacml.sunxacml.PolicyMetaData;
+import org.jboss.security.xacml.sunxacml.attr.AttributeSelector;
+import org.jboss.security.xacml.sunxacml.attr.BagAttribute;
+import org.jboss.security.xacml.sunxacml.attr.SelectorNamespaceContext;
+import org.jboss.security.xacml.sunxacml.attr.StringAttribute;
+import org.jboss.security.xacml.sunxacml.cond.EvaluationResult;
+import org.jboss.security.xacml.sunxacml.ctx.RequestCtx;
+import org.jboss.security.xacml.sunxacml.finder.AttributeFinder;
+import org.jboss.security.xacml.sunxacml.finder.impl.SelectorModule;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Unit test the AttributeSelector with the SelectorModule
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since Oct 18, 2026
+ */
+public class AttributeSelectorUnitTestCase extends TestCase
+{
+   private static final String STRING = "http://www.w3.org/2001/XMLSchema#string";
+
+   private static final String CONTEXT_NS = "urn:oasis:names:tc:xacml:2.0:context:schema:os";
+
+   private static final String RESOURCE_ID = "urn:oasis:names:tc:xacml:1.0:resource:resource-id";
+
+   public void testNamespacesAreResolvedAtParseTime() throws Exception
+   {
+      Element policyRoot = getPolicyRoot();
+      Element selectorNode = (Element) policyRoot.getElementsByTagNameNS("*", "AttributeSelector").item(0);
+      AttributeSelector.getInstance(selectorNode, getMetaData());
+
+      SelectorNamespaceContext namespaces = SelectorNamespaceContext.getInstance(policyRoot);
+      assertEquals(CONTEXT_NS, namespaces.getNamespaceURI("ctx"));
+      assertEquals("ctx", namespaces.getQualifyingPrefix(CONTEXT_NS));
+      assertNull(namespaces.getQualifyingPrefix("urn:unknown"));
+   }
+
+   public void testSelectorFromConcurrentThreads() throws Exception
+   {
+      Element policyRoot = getPolicyRoot();
+      Element selectorNode = (Element) policyRoot.getElementsByTagNameNS("*", "AttributeSelector").item(0);
+      final AttributeSelector selector = AttributeSelector.getInstance(selectorNode, getMetaData());
+
+      ExecutorService executor = Executors.newFixedThreadPool(4);
+      try
+      {
+         List<Future<String>> futures = new ArrayList<Future<String>>();
+         for (int i = 0; i < 40; i++)
+         {
+            final String resource = "resource" + i;
+            futures.add(executor.submit(new Callable<String>()
+            {
+               public String call() throws Exception
+               {
+                  EvaluationResult result = selector.evaluate(getContext(resource));
+                  assertFalse(result.indeterminate());
+                  BagAttribute bag = (BagAttribute) result.getAttributeValue();
+                  assertEquals(1, bag.size());
+                  return ((StringAttribute) bag.iterator().next()).getValue();
+               }
+            }));
+         }
+         for (int i = 0; i < futures.size(); i++)
+            assertEquals("resource" + i, futures.get(i).get());
+      }
+      finally
+      {
+         executor.shutdown();
+      }
+   }
+
+   private PolicyMetaData getMetaData()
+   {
+      return new PolicyMetaData(PolicyMetaData.XACML_2_0_IDENTIFIER, PolicyMetaData.XPATH_1_0_IDENTIFIER);
+   }
+
+   private Element getPolicyRoot() throws Exception
+   {
+      String policy = "<Policy xmlns=\"urn:oasis:names:tc:xacml:2.0:policy:schema:os\" xmlns:ctx=\"" + CONTEXT_NS
+            + "\" PolicyId=\"selector\" "
+            + "RuleCombiningAlgId=\"urn:oasis:names:tc:xacml:1.0:rule-combining-algorithm:permit-overrides\">"
+            + "<Target/><Rule RuleId=\"permit\" Effect=\"Permit\"><Condition>"
+            + "<AttributeSelector DataType=\"" + STRING + "\" RequestContextPath=\"ctx:Resource/ctx:Attribute"
+            + "[@AttributeId='" + RESOURCE_ID + "']/ctx:AttributeValue/text()\"/>"
+            + "</Condition></Rule></Policy>";
+      return parse(policy).getDocumentElement();
+   }
+
+   @SuppressWarnings({"unchecked", "rawtypes"})
+   private EvaluationCtx getContext(String resource) throws Exception
+   {
+      String request = "<Request xmlns=\"" + CONTEXT_NS + "\"><Subject/>"
+            + "<Resource><Attribute AttributeId=\"" + RESOURCE_ID + "\" DataType=\"" + STRING + "\">"
+            + "<AttributeValue>" + resource + "</AttributeValue></Attribute></Resource>"
+            + "<Action/><Environment/></Request>";
+      RequestCtx requestCtx = RequestCtx.getInstance(parse(request).getDocumentElement());
+      AttributeFinder finder = new AttributeFinder();
+      List modules = new ArrayList();
+      modules.add(new SelectorModule());
+      finder.setModules(modules);
+      return new BasicEvaluationCtx(requestCtx, finder);
+   }
+
+   private Document parse(String xml) throws Exception
+   {
+      DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+      factory.setNamespaceAware(true);
+      return factory.newDocumentBuilder().parse(new ByteArrayInputStream(xml.getBytes("UTF-8")));
+   }
+}
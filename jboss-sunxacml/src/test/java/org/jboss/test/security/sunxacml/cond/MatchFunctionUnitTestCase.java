@@ -0,0 +1,134 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors. 
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.test.security.sunxacml.cond;
+
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import junit.framework.TestCase;
+
+import org.jboss.security.xacml.sunxacml.BasicEvaluationCtx;
+import org.jboss.security.xacml.sunxacml.EvaluationCtx;
+import org.jboss.security.xacml.sunxacml.MatchResult;
+import org.jboss.security.xacml.sunxacml.Policy;
+import org.jboss.security.xacml.sunxacml.attr.AnyURIAttribute;
+import org.jboss.security.xacml.sunxacml.attr.BooleanAttribute;
+import org.jboss.security.xacml.sunxacml.attr.StringAttribute;
+import org.jboss.security.xacml.sunxacml.cond.EvaluationResult;
+import org.jboss.security.xacml.sunxacml.cond.MatchFunction;
+import org.jboss.security.xacml.sunxacml.ctx.RequestCtx;
+import org.jboss.security.xacml.sunxacml.finder.AttributeFinder;
+import org.w3c.dom.Document;
+
+/**
+ * Unit test the compiled patterns of the regular expression functions
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since Oct 18, 2026
+ */
+public class MatchFunctionUnitTestCase extends TestCase
+{
+   private static final String STRING = "http://www.w3.org/2001/XMLSchema#string";
+
+   private static final String RESOURCE_ID = "urn:oasis:names:tc:xacml:1.0:resource:resource-id";
+
+   private static final String REGEXP_MATCH = "urn:oasis:names:tc:xacml:1.0:function:string-regexp-match";
+
+   public void testLiteralPatternIsCompiledAtParseTime() throws Exception
+   {
+      String regexp = "^/reports/[0-9]+/summary$";
+      MatchFunction function = new MatchFunction(REGEXP_MATCH);
+      Pattern pattern = function.compile(new StringAttribute(regexp));
+      assertNotNull(pattern);
+      assertTrue(pattern.matcher("/reports/42/summary").matches());
+      //Only literal regular expressions are compiled
+      assertNull(function.compile(new AnyURIAttribute(new URI("http://host"))));
+      assertNull(new MatchFunction(MatchFunction.NAME_RFC822NAME_MATCH).compile(new StringAttribute("host")));
+
+      Policy policy = getPolicy(regexp);
+      assertEquals(MatchResult.MATCH, policy.match(getContext("/reports/42/summary")).getResult());
+      assertEquals(MatchResult.NO_MATCH, policy.match(getContext("/reports/x/summary")).getResult());
+      assertEquals(MatchResult.NO_MATCH, policy.match(getContext("/archive/reports/42/summary")).getResult());
+   }
+
+   public void testDynamicPatterns() throws Exception
+   {
+      MatchFunction function = new MatchFunction(MatchFunction.NAME_ANYURI_REGEXP_MATCH);
+      EvaluationCtx context = getContext("ignored");
+
+      //Unanchored expressions match any substring
+      assertTrue(evaluate(function, context, "host", new AnyURIAttribute(new URI("http://host/path"))));
+      assertFalse(evaluate(function, context, "^host", new AnyURIAttribute(new URI("http://host/path"))));
+      //Same expression again, now served by the cache
+      assertTrue(evaluate(function, context, "host", new AnyURIAttribute(new URI("http://host/other"))));
+
+      MatchFunction stringMatch = new MatchFunction(MatchFunction.NAME_STRING_REGEXP_MATCH);
+      //Unicode blocks and character class subtraction are translated
+      assertTrue(evaluate(stringMatch, context, "^\\p{IsBasicLatin}+$", new StringAttribute("abc")));
+      assertTrue(evaluate(stringMatch, context, "^[a-z-[aeiou]]+$", new StringAttribute("xyz")));
+      assertFalse(evaluate(stringMatch, context, "^[a-z-[aeiou]]+$", new StringAttribute("xaz")));
+   }
+
+   @SuppressWarnings({"unchecked", "rawtypes"})
+   private boolean evaluate(MatchFunction function, EvaluationCtx context, String regexp, Object value)
+   {
+      List inputs = new ArrayList();
+      inputs.add(new StringAttribute(regexp));
+      inputs.add(value);
+      EvaluationResult result = function.evaluate(inputs, context);
+      assertFalse(result.indeterminate());
+      return ((BooleanAttribute) result.getAttributeValue()).getValue();
+   }
+
+   private Policy getPolicy(String regexp) throws Exception
+   {
+      String policy = "<Policy xmlns=\"urn:oasis:names:tc:xacml:2.0:policy:schema:os\" PolicyId=\"regexp\" "
+            + "RuleCombiningAlgId=\"urn:oasis:names:tc:xacml:1.0:rule-combining-algorithm:permit-overrides\">"
+            + "<Target><Resources><Resource><ResourceMatch MatchId=\"" + REGEXP_MATCH + "\">"
+            + "<AttributeValue DataType=\"" + STRING + "\">" + regexp + "</AttributeValue>"
+            + "<ResourceAttributeDesignator AttributeId=\"" + RESOURCE_ID + "\" DataType=\"" + STRING + "\"/>"
+            + "</ResourceMatch></Resource></Resources></Target>"
+            + "<Rule RuleId=\"permit\" Effect=\"Permit\"/></Policy>";
+      return Policy.getInstance(parse(policy).getDocumentElement());
+   }
+
+   private EvaluationCtx getContext(String resource) throws Exception
+   {
+      String request = "<Request xmlns=\"urn:oasis:names:tc:xacml:2.0:context:schema:os\"><Subject/>"
+            + "<Resource><Attribute AttributeId=\"" + RESOURCE_ID + "\" DataType=\"" + STRING + "\">"
+            + "<AttributeValue>" + resource + "</AttributeValue></Attribute></Resource>"
+            + "<Action/><Environment/></Request>";
+      RequestCtx requestCtx = RequestCtx.getInstance(parse(request).getDocumentElement());
+      return new BasicEvaluationCtx(requestCtx, new AttributeFinder());
+   }
+
+   private Document parse(String xml) throws Exception
+   {
+      DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+      factory.setNamespaceAware(true);
+      return factory.newDocumentBuilder().parse(new ByteArrayInputStream(xml.getBytes("UTF-8")));
+   }
+}
@@ -0,0 +1,131 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors. 
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.test.security.sunxacml.finder;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import junit.framework.TestCase;
+
+import org.jboss.security.xacml.sunxacml.AbstractPolicy;
+import org.jboss.security.xacml.sunxacml.BasicEvaluationCtx;
+import org.jboss.security.xacml.sunxacml.EvaluationCtx;
+import org.jboss.security.xacml.sunxacml.Policy;
+import org.jboss.security.xacml.sunxacml.ctx.RequestCtx;
+import org.jboss.security.xacml.sunxacml.finder.AttributeFinder;
+import org.jboss.security.xacml.sunxacml.finder.TargetIndex;
+import org.jboss.security.xacml.sunxacml.support.finder.PolicyCollection;
+import org.w3c.dom.Document;
+
+/**
+ * Unit test the index on the targets of top-level policies
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since Oct 18, 2026
+ */
+public class TargetIndexUnitTestCase extends TestCase
+{
+   private static final String STRING = "http://www.w3.org/2001/XMLSchema#string";
+
+   private static final String RESOURCE_ID = "urn:oasis:names:tc:xacml:1.0:resource:resource-id";
+
+   private static final String STRING_EQUAL = "urn:oasis:names:tc:xacml:1.0:function:string-equal";
+
+   private static final String REGEXP_MATCH = "urn:oasis:names:tc:xacml:1.0:function:string-regexp-match";
+
+   public void testCandidates() throws Exception
+   {
+      Policy first = getPolicy("first", resourceTarget(STRING_EQUAL, "res1"));
+      Policy second = getPolicy("second", resourceTarget(STRING_EQUAL, "res2"));
+      Policy regexp = getPolicy("regexp", resourceTarget(REGEXP_MATCH, "res.*"));
+      Policy any = getPolicy("any", "<Target/>");
+
+      TargetIndex<AbstractPolicy> index = new TargetIndex<AbstractPolicy>();
+      index.add(first.getTarget(), first);
+      index.add(second.getTarget(), second);
+      index.add(regexp.getTarget(), regexp);
+      index.add(any.getTarget(), any);
+      assertEquals(4, index.size());
+      assertEquals(2, index.getUnindexedCount());
+
+      List<AbstractPolicy> candidates = index.getCandidates(getContext("res1"));
+      assertEquals(3, candidates.size());
+      assertSame(first, candidates.get(0));
+      assertSame(regexp, candidates.get(1));
+      assertSame(any, candidates.get(2));
+
+      candidates = index.getCandidates(getContext("res3"));
+      assertEquals(2, candidates.size());
+      assertSame(regexp, candidates.get(0));
+      assertSame(any, candidates.get(1));
+   }
+
+   public void testPolicyCollection() throws Exception
+   {
+      Policy first = getPolicy("first", resourceTarget(STRING_EQUAL, "res1"));
+      Policy second = getPolicy("second", resourceTarget(STRING_EQUAL, "res2"));
+
+      PolicyCollection collection = new PolicyCollection();
+      collection.addPolicy(first);
+      assertSame(first, collection.getPolicy(getContext("res1")));
+      assertNull(collection.getPolicy(getContext("res2")));
+
+      //Adding a policy should rebuild the index
+      collection.addPolicy(second);
+      assertSame(second, collection.getPolicy(getContext("res2")));
+      assertNull(collection.getPolicy(getContext("res3")));
+   }
+
+   private String resourceTarget(String function, String value)
+   {
+      return "<Target><Resources><Resource><ResourceMatch MatchId=\"" + function + "\">"
+            + "<AttributeValue DataType=\"" + STRING + "\">" + value + "</AttributeValue>"
+            + "<ResourceAttributeDesignator AttributeId=\"" + RESOURCE_ID + "\" DataType=\"" + STRING + "\"/>"
+            + "</ResourceMatch></Resource></Resources></Target>";
+   }
+
+   private Policy getPolicy(String id, String target) throws Exception
+   {
+      String policy = "<Policy xmlns=\"urn:oasis:names:tc:xacml:2.0:policy:schema:os\" PolicyId=\"" + id + "\" "
+            + "RuleCombiningAlgId=\"urn:oasis:names:tc:xacml:1.0:rule-combining-algorithm:permit-overrides\">"
+            + target + "<Rule RuleId=\"permit\" Effect=\"Permit\"/></Policy>";
+      return Policy.getInstance(parse(policy).getDocumentElement());
+   }
+
+   private EvaluationCtx getContext(String resource) throws Exception
+   {
+      String request = "<Request xmlns=\"urn:oasis:names:tc:xacml:2.0:context:schema:os\"><Subject/>"
+            + "<Resource><Attribute AttributeId=\"" + RESOURCE_ID + "\" DataType=\"" + STRING + "\">"
+            + "<AttributeValue>" + resource + "</AttributeValue></Attribute></Resource>"
+            + "<Action/><Environment/></Request>";
+      RequestCtx requestCtx = RequestCtx.getInstance(parse(request).getDocumentElement());
+      return new BasicEvaluationCtx(requestCtx, new AttributeFinder());
+   }
+
+   private Document parse(String xml) throws Exception
+   {
+      DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+      factory.setNamespaceAware(true);
+      return factory.newDocumentBuilder().parse(new ByteArrayInputStream(xml.getBytes("UTF-8")));
+   }
+}
@@ -0,0 +1,244 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors. 
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.test.security.sunxacml.policy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.InvalidClassException;
+import java.io.ObjectOutputStream;
+import java.io.StreamCorruptedException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import junit.framework.TestCase;
+
+import org.jboss.security.xacml.sunxacml.AbstractPolicy;
+import org.jboss.security.xacml.sunxacml.BasicEvaluationCtx;
+import org.jboss.security.xacml.sunxacml.EvaluationCtx;
+import org.jboss.security.xacml.sunxacml.MatchResult;
+import org.jboss.security.xacml.sunxacml.Policy;
+import org.jboss.security.xacml.sunxacml.PolicyInputStream;
+import org.jboss.security.xacml.sunxacml.PolicyOutputStream;
+import org.jboss.security.xacml.sunxacml.PolicySet;
+import org.jboss.security.xacml.sunxacml.ctx.RequestCtx;
+import org.jboss.security.xacml.sunxacml.ctx.Result;
+import org.jboss.security.xacml.sunxacml.finder.AttributeFinder;
+import org.jboss.security.xacml.sunxacml.finder.PolicyFinder;
+import org.jboss.security.xacml.sunxacml.finder.impl.CurrentEnvModule;
+import org.jboss.security.xacml.sunxacml.finder.impl.SelectorModule;
+import org.w3c.dom.Element;
+
+/**
+ * Unit test the serialization of compiled policies
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since Oct 18, 2026
+ */
+@SuppressWarnings({"unchecked", "rawtypes"})
+public class PolicySerializationUnitTestCase extends TestCase
+{
+   private static final String STRING = "http://www.w3.org/2001/XMLSchema#string";
+
+   private static final String CONTEXT_NS = "urn:oasis:names:tc:xacml:2.0:context:schema:os";
+
+   private static final String RESOURCE_ID = "urn:oasis:names:tc:xacml:1.0:resource:resource-id";
+
+   public void testConformancePoliciesEncodeTheSameOnceRead() throws Exception
+   {
+      File dir = new File("src/test/resources/conformance/mandatory");
+      String[] files = dir.list(new FilenameFilter()
+      {
+         public boolean accept(File dir, String name)
+         {
+            return name.endsWith("Policy.xml");
+         }
+      });
+      Arrays.sort(files);
+      int count = 0;
+      for (String file : files)
+      {
+         AbstractPolicy policy;
+         try
+         {
+            policy = parse(getRoot(new File(dir, file)));
+         }
+         catch (Exception e)
+         {
+            //some conformance policies are invalid on purpose
+            continue;
+         }
+         AbstractPolicy copy = roundTrip(policy, null);
+         assertEquals(file, encode(policy), encode(copy));
+         count++;
+      }
+      assertTrue(count > 300);
+   }
+
+   public void testSerializedPolicyEvaluates() throws Exception
+   {
+      String policy = "<Policy xmlns=\"urn:oasis:names:tc:xacml:2.0:policy:schema:os\" xmlns:ctx=\"" + CONTEXT_NS
+            + "\" PolicyId=\"serialized\" "
+            + "RuleCombiningAlgId=\"urn:oasis:names:tc:xacml:1.0:rule-combining-algorithm:first-applicable\">"
+            + "<PolicyDefaults><XPathVersion>http://www.w3.org/TR/1999/Rec-xpath-19991116</XPathVersion></PolicyDefaults>"
+            + "<Target><Resources><Resource><ResourceMatch MatchId=\"urn:oasis:names:tc:xacml:1.0:function:string-regexp-match\">"
+            + "<AttributeValue DataType=\"" + STRING + "\">^doc-.*</AttributeValue>"
+            + "<ResourceAttributeDesignator AttributeId=\"" + RESOURCE_ID + "\" DataType=\"" + STRING + "\"/>"
+            + "</ResourceMatch></Resource></Resources></Target>"
+            + "<VariableDefinition VariableId=\"selected\">"
+            + "<Apply FunctionId=\"urn:oasis:names:tc:xacml:1.0:function:string-one-and-only\">"
+            + "<AttributeSelector DataType=\"" + STRING + "\" RequestContextPath=\"ctx:Resource/ctx:Attribute"
+            + "[@AttributeId='" + RESOURCE_ID + "']/ctx:AttributeValue/text()\"/></Apply></VariableDefinition>"
+            + "<Rule RuleId=\"permit\" Effect=\"Permit\"><Condition>"
+            + "<Apply FunctionId=\"urn:oasis:names:tc:xacml:1.0:function:string-equal\">"
+            + "<VariableReference VariableId=\"selected\"/>"
+            + "<AttributeValue DataType=\"" + STRING + "\">doc-1</AttributeValue></Apply>"
+            + "</Condition></Rule>"
+            + "<Rule RuleId=\"deny\" Effect=\"Deny\"/></Policy>";
+      AbstractPolicy copy = roundTrip(Policy.getInstance(getRoot(policy)), null);
+
+      assertEquals(Result.DECISION_PERMIT, copy.evaluate(getContext("doc-1")).getDecision());
+      assertEquals(Result.DECISION_DENY, copy.evaluate(getContext("doc-2")).getDecision());
+      assertEquals(MatchResult.MATCH, copy.match(getContext("doc-1")).getResult());
+      assertEquals(MatchResult.NO_MATCH, copy.match(getContext("img-1")).getResult());
+   }
+
+   public void testPolicyReferencesUseTheFinderOfTheStream() throws Exception
+   {
+      String policySet = "<PolicySet xmlns=\"urn:oasis:names:tc:xacml:2.0:policy:schema:os\" PolicySetId=\"set\" "
+            + "PolicyCombiningAlgId=\"urn:oasis:names:tc:xacml:1.0:policy-combining-algorithm:first-applicable\">"
+            + "<Target/><PolicyIdReference>referenced</PolicyIdReference></PolicySet>";
+      PolicyFinder finder = new PolicyFinder();
+      finder.setModules(new java.util.HashSet());
+      PolicySet copy = (PolicySet) roundTrip(PolicySet.getInstance(getRoot(policySet), new PolicyFinder()), finder);
+
+      //the reference cannot be resolved by the new finder, which has no module
+      Result result = copy.evaluate(getContext("doc-1"));
+      assertEquals(Result.DECISION_INDETERMINATE, result.getDecision());
+      assertEquals(URI.create("set"), copy.getId());
+   }
+
+   public void testOnlyPolicyClassesAreRead() throws Exception
+   {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      PolicyOutputStream out = new PolicyOutputStream(baos);
+      out.writeObject(new File("policy.xml"));
+      out.close();
+      PolicyInputStream in = new PolicyInputStream(new ByteArrayInputStream(baos.toByteArray()), null);
+      try
+      {
+         in.readObject();
+         fail("java.io.File is not a policy class");
+      }
+      catch (InvalidClassException e)
+      {
+         assertEquals("java.io.File", e.classname);
+      }
+      finally
+      {
+         in.close();
+      }
+   }
+
+   public void testStreamsWithoutTheFormatVersionAreRejected() throws Exception
+   {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      ObjectOutputStream out = new ObjectOutputStream(baos);
+      out.writeObject(Policy.getInstance(getRoot("<Policy xmlns=\"urn:oasis:names:tc:xacml:2.0:policy:schema:os\" "
+            + "PolicyId=\"unversioned\" "
+            + "RuleCombiningAlgId=\"urn:oasis:names:tc:xacml:1.0:rule-combining-algorithm:first-applicable\">"
+            + "<Target/></Policy>")));
+      out.close();
+      try
+      {
+         new PolicyInputStream(new ByteArrayInputStream(baos.toByteArray()), null);
+         fail("The stream has no format version");
+      }
+      catch (StreamCorruptedException e)
+      {
+      }
+   }
+
+   private AbstractPolicy roundTrip(AbstractPolicy policy, PolicyFinder finder) throws Exception
+   {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      PolicyOutputStream out = new PolicyOutputStream(baos);
+      out.writePolicy(policy);
+      out.close();
+      PolicyInputStream in = new PolicyInputStream(new ByteArrayInputStream(baos.toByteArray()), finder);
+      try
+      {
+         return in.readPolicy();
+      }
+      finally
+      {
+         in.close();
+      }
+   }
+
+   private String encode(AbstractPolicy policy) throws Exception
+   {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      policy.encode(baos);
+      return baos.toString("UTF-8");
+   }
+
+   private AbstractPolicy parse(Element root) throws Exception
+   {
+      if ("PolicySet".equals(root.getLocalName()))
+         return PolicySet.getInstance(root, new PolicyFinder());
+      return Policy.getInstance(root);
+   }
+
+   private EvaluationCtx getContext(String resource) throws Exception
+   {
+      String request = "<Request xmlns=\"" + CONTEXT_NS + "\"><Subject/>"
+            + "<Resource><Attribute AttributeId=\"" + RESOURCE_ID + "\" DataType=\"" + STRING + "\">"
+            + "<AttributeValue>" + resource + "</AttributeValue></Attribute></Resource>"
+            + "<Action/><Environment/></Request>";
+      RequestCtx requestCtx = RequestCtx.getInstance(getRoot(request));
+      AttributeFinder finder = new AttributeFinder();
+      List modules = new ArrayList();
+      modules.add(new CurrentEnvModule());
+      modules.add(new SelectorModule());
+      finder.setModules(modules);
+      return new BasicEvaluationCtx(requestCtx, finder);
+   }
+
+   private Element getRoot(String xml) throws Exception
+   {
+      DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+      factory.setNamespaceAware(true);
+      return factory.newDocumentBuilder().parse(new ByteArrayInputStream(xml.getBytes("UTF-8"))).getDocumentElement();
+   }
+
+   private Element getRoot(File file) throws Exception
+   {
+      DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+      factory.setNamespaceAware(true);
+      return factory.newDocumentBuilder().parse(file).getDocumentElement();
+   }
+}
@@ -23,12 +23,23 @@ package org.jboss.test.security.sunxacml.request;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import junit.framework.TestCase;
 
+import org.jboss.security.xacml.sunxacml.BasicEvaluationCtx;
+import org.jboss.security.xacml.sunxacml.EvaluationCtx;
+import org.jboss.security.xacml.sunxacml.attr.BagAttribute;
+import org.jboss.security.xacml.sunxacml.attr.StringAttribute;
+import org.jboss.security.xacml.sunxacml.cond.EvaluationResult;
 import org.jboss.security.xacml.sunxacml.ctx.RequestCtx;
 import org.jboss.security.xacml.sunxacml.ctx.Subject;
+import org.jboss.security.xacml.sunxacml.finder.AttributeFinder;
+import org.jboss.security.xacml.sunxacml.finder.AttributeFinderModule;
 
 /**
  * Unit test to read xacml requests
@@ -60,4 +71,93 @@ public class RequestReadUnitTestCase extends TestCase
       List attribs = subject.getAttributesAsList(); 
       assertEquals( 3, attribs.size() );
    }
+
+   @SuppressWarnings({"rawtypes", "unchecked"})
+   public void testFinderLookupsAreRemembered() throws Exception
+   {
+      String fileName = "src/test/resources/requests/multiple-resourceid.xml";
+      RequestCtx req = RequestCtx.getInstance(new FileInputStream(new File(fileName)));
+
+      final int[] lookups = new int[1];
+      AttributeFinderModule module = new AttributeFinderModule()
+      {
+         @Override
+         public boolean isDesignatorSupported()
+         {
+            return true;
+         }
+
+         @Override
+         public EvaluationResult findAttribute(URI attributeType, URI attributeId, URI issuer,
+               URI subjectCategory, EvaluationCtx context, int designatorType)
+         {
+            lookups[0]++;
+            return new EvaluationResult(BagAttribute.createEmptyBag(attributeType));
+         }
+      };
+      List modules = new ArrayList();
+      modules.add(module);
+      AttributeFinder finder = new AttributeFinder();
+      finder.setModules(modules);
+
+      BasicEvaluationCtx ctx = new BasicEvaluationCtx(req, finder);
+      URI type = new URI(StringAttribute.identifier);
+      URI id = new URI("urn:test:missing");
+      for (int i = 0; i < 3; i++)
+      {
+         EvaluationResult result = ctx.getActionAttribute(type, id, null);
+         assertTrue(((BagAttribute) result.getAttributeValue()).isEmpty());
+      }
+      assertEquals(1, lookups[0]);
+      assertEquals(2, ctx.getSavedLookupCount());
+
+      //A different issuer is a different attribute
+      ctx.getActionAttribute(type, id, new URI("urn:test:issuer"));
+      assertEquals(2, lookups[0]);
+   }
+
+   public void testSubjectLookupsAreShared() throws Exception
+   {
+      String fileName = "src/test/resources/requests/multiple-resourceid.xml";
+      RequestCtx req = RequestCtx.getInstance(new FileInputStream(new File(fileName)));
+
+      final int[] lookups = new int[1];
+      AttributeFinderModule module = new AttributeFinderModule()
+      {
+         @Override
+         public boolean isDesignatorSupported()
+         {
+            return true;
+         }
+
+         @Override
+         public EvaluationResult findAttribute(URI attributeType, URI attributeId, URI issuer,
+               URI subjectCategory, EvaluationCtx context, int designatorType)
+         {
+            lookups[0]++;
+            return new EvaluationResult(BagAttribute.createEmptyBag(attributeType));
+         }
+      };
+      List modules = new ArrayList();
+      modules.add(module);
+      AttributeFinder finder = new AttributeFinder();
+      finder.setModules(modules);
+
+      Map subjectResults = new HashMap();
+      BasicEvaluationCtx first = new BasicEvaluationCtx(req, finder, true, subjectResults);
+      BasicEvaluationCtx second = new BasicEvaluationCtx(req, finder, true, subjectResults);
+      URI type = new URI(StringAttribute.identifier);
+      URI id = new URI("urn:test:missing");
+      URI category = Subject.DEFAULT_CATEGORY;
+
+      first.getSubjectAttribute(type, id, category);
+      second.getSubjectAttribute(type, id, category);
+      assertEquals(1, lookups[0]);
+      assertEquals(1, second.getSavedLookupCount());
+
+      //Other categories stay with their context
+      first.getActionAttribute(type, id, null);
+      second.getActionAttribute(type, id, null);
+      assertEquals(3, lookups[0]);
+   }
 }
\ No newline at end of file
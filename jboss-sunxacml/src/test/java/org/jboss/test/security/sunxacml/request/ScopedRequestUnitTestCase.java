@@ -0,0 +1,191 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors. 
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.test.security.sunxacml.request;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import junit.framework.TestCase;
+
+import org.jboss.security.xacml.sunxacml.EvaluationCtx;
+import org.jboss.security.xacml.sunxacml.MatchResult;
+import org.jboss.security.xacml.sunxacml.PDP;
+import org.jboss.security.xacml.sunxacml.PDPConfig;
+import org.jboss.security.xacml.sunxacml.Policy;
+import org.jboss.security.xacml.sunxacml.attr.AttributeValue;
+import org.jboss.security.xacml.sunxacml.attr.StringAttribute;
+import org.jboss.security.xacml.sunxacml.ctx.RequestCtx;
+import org.jboss.security.xacml.sunxacml.ctx.ResponseCtx;
+import org.jboss.security.xacml.sunxacml.ctx.Result;
+import org.jboss.security.xacml.sunxacml.finder.AttributeFinder;
+import org.jboss.security.xacml.sunxacml.finder.PolicyFinder;
+import org.jboss.security.xacml.sunxacml.finder.PolicyFinderModule;
+import org.jboss.security.xacml.sunxacml.finder.PolicyFinderResult;
+import org.jboss.security.xacml.sunxacml.finder.ResourceFinder;
+import org.jboss.security.xacml.sunxacml.finder.ResourceFinderModule;
+import org.jboss.security.xacml.sunxacml.finder.ResourceFinderResult;
+import org.w3c.dom.Document;
+
+/**
+ * Unit test requests with the Children resource scope
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since Oct 18, 2026
+ */
+@SuppressWarnings({"unchecked", "rawtypes"})
+public class ScopedRequestUnitTestCase extends TestCase
+{
+   private static final String STRING = "http://www.w3.org/2001/XMLSchema#string";
+
+   private static final String RESOURCE_ID = "urn:oasis:names:tc:xacml:1.0:resource:resource-id";
+
+   private static final String RESOURCE_SCOPE = "urn:oasis:names:tc:xacml:1.0:resource:scope";
+
+   private static final String STRING_EQUAL = "urn:oasis:names:tc:xacml:1.0:function:string-equal";
+
+   public void testChildResourcesAreEvaluated() throws Exception
+   {
+      validateChildResources(null);
+   }
+
+   public void testChildResourcesAreEvaluatedInParallel() throws Exception
+   {
+      ExecutorService executor = Executors.newFixedThreadPool(4);
+      try
+      {
+         validateChildResources(executor);
+      }
+      finally
+      {
+         executor.shutdown();
+      }
+   }
+
+   private void validateChildResources(Executor executor) throws Exception
+   {
+      final Policy policy = getPolicy();
+      PolicyFinderModule policyModule = new PolicyFinderModule()
+      {
+         public void init(PolicyFinder finder)
+         {
+         }
+
+         public boolean isRequestSupported()
+         {
+            return true;
+         }
+
+         public PolicyFinderResult findPolicy(EvaluationCtx context)
+         {
+            if (policy.match(context).getResult() == MatchResult.MATCH)
+               return new PolicyFinderResult(policy);
+            return new PolicyFinderResult();
+         }
+      };
+      ResourceFinderModule resourceModule = new ResourceFinderModule()
+      {
+         public boolean isChildSupported()
+         {
+            return true;
+         }
+
+         public ResourceFinderResult findChildResources(AttributeValue parentResourceId, EvaluationCtx context)
+         {
+            assertEquals("folder", parentResourceId.encode());
+            Set children = new HashSet();
+            for (int i = 1; i <= 8; i++)
+               children.add(new StringAttribute("folder/doc" + i));
+            return new ResourceFinderResult(children);
+         }
+      };
+
+      PolicyFinder policyFinder = new PolicyFinder();
+      Set policyModules = new HashSet();
+      policyModules.add(policyModule);
+      policyFinder.setModules(policyModules);
+      ResourceFinder resourceFinder = new ResourceFinder();
+      List resourceModules = new ArrayList();
+      resourceModules.add(resourceModule);
+      resourceFinder.setModules(resourceModules);
+      PDP pdp = new PDP(new PDPConfig(new AttributeFinder(), policyFinder, resourceFinder, 0, executor));
+
+      ResponseCtx response = pdp.evaluate(getRequest("folder", "Children"));
+      Map decisions = new HashMap();
+      Iterator it = response.getResults().iterator();
+      while (it.hasNext())
+      {
+         Result result = (Result) it.next();
+         decisions.put(result.getResource(), result.getDecision());
+      }
+      assertEquals(8, decisions.size());
+      for (int i = 1; i <= 8; i++)
+      {
+         int expected = (i == 1 || i == 3) ? Result.DECISION_PERMIT : Result.DECISION_NOT_APPLICABLE;
+         assertEquals("folder/doc" + i, expected, decisions.get("folder/doc" + i));
+      }
+   }
+
+   private Policy getPolicy() throws Exception
+   {
+      String policy = "<Policy xmlns=\"urn:oasis:names:tc:xacml:2.0:policy:schema:os\" PolicyId=\"docs\" "
+            + "RuleCombiningAlgId=\"urn:oasis:names:tc:xacml:1.0:rule-combining-algorithm:permit-overrides\">"
+            + "<Target><Resources>" + resource("folder/doc1") + resource("folder/doc3") + "</Resources></Target>"
+            + "<Rule RuleId=\"permit\" Effect=\"Permit\"/></Policy>";
+      return Policy.getInstance(parse(policy).getDocumentElement());
+   }
+
+   private String resource(String value)
+   {
+      return "<Resource><ResourceMatch MatchId=\"" + STRING_EQUAL + "\">"
+            + "<AttributeValue DataType=\"" + STRING + "\">" + value + "</AttributeValue>"
+            + "<ResourceAttributeDesignator AttributeId=\"" + RESOURCE_ID + "\" DataType=\"" + STRING + "\"/>"
+            + "</ResourceMatch></Resource>";
+   }
+
+   private RequestCtx getRequest(String resource, String scope) throws Exception
+   {
+      String request = "<Request xmlns=\"urn:oasis:names:tc:xacml:2.0:context:schema:os\"><Subject/>"
+            + "<Resource><Attribute AttributeId=\"" + RESOURCE_ID + "\" DataType=\"" + STRING + "\">"
+            + "<AttributeValue>" + resource + "</AttributeValue></Attribute>"
+            + "<Attribute AttributeId=\"" + RESOURCE_SCOPE + "\" DataType=\"" + STRING + "\">"
+            + "<AttributeValue>" + scope + "</AttributeValue></Attribute></Resource>"
+            + "<Action/><Environment/></Request>";
+      return RequestCtx.getInstance(parse(request).getDocumentElement());
+   }
+
+   private Document parse(String xml) throws Exception
+   {
+      DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+      factory.setNamespaceAware(true);
+      return factory.newDocumentBuilder().parse(new ByteArrayInputStream(xml.getBytes("UTF-8")));
+   }
+}
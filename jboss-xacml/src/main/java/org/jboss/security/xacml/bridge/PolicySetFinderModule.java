@@ -32,6 +32,7 @@ import org.jboss.security.xacml.sunxacml.EvaluationCtx;
 import org.jboss.security.xacml.sunxacml.MatchResult;
 import org.jboss.security.xacml.sunxacml.PolicyMetaData;
 import org.jboss.security.xacml.sunxacml.PolicySet;
+import org.jboss.security.xacml.sunxacml.Target;
 import org.jboss.security.xacml.sunxacml.VersionConstraints;
 import org.jboss.security.xacml.sunxacml.ctx.Status;
 import org.jboss.security.xacml.sunxacml.finder.PolicyFinder;
@@ -116,6 +117,16 @@ public class PolicySetFinderModule extends PolicyFinderModule
       return new PolicyFinderResult(selectedPolicy);
    }
 
+   /**
+    * The module only returns its policy set if the target of the policy set matches
+    * @see PolicyFinderModule#getTarget()
+    */
+   @Override
+   public Target getTarget()
+   {
+      return policySet != null ? policySet.getTarget() : null;
+   }
+
    @Override
    public PolicyFinderResult findPolicy(URI idReference, int type, VersionConstraints constraints,
          PolicyMetaData parentMetaData)
@@ -30,6 +30,7 @@ import org.jboss.security.xacml.sunxacml.MatchResult;
 import org.jboss.security.xacml.sunxacml.PolicySet;
 import org.jboss.security.xacml.sunxacml.ctx.Status;
 import org.jboss.security.xacml.sunxacml.finder.PolicyFinderResult;
+import org.jboss.security.xacml.sunxacml.finder.TargetIndex;
 
 /**
  * A Policy Set Finder Module that holds the RBAC Role Policy Sets
@@ -39,10 +40,13 @@ import org.jboss.security.xacml.sunxacml.finder.PolicyFinderResult;
 public class RPSPolicySetFinderModule extends PolicySetFinderModule
 {
    protected List<PolicySet> policySets = new ArrayList<PolicySet>();
+
+   private volatile TargetIndex<PolicySet> index;
    
-   public void add(PolicySet ps)
+   public synchronized void add(PolicySet ps)
    {
       policySets.add(ps);
+      index = null;
    }
 
    @Override
@@ -50,7 +54,7 @@ public class RPSPolicySetFinderModule extends PolicySetFinderModule
    { 
       AbstractPolicy selectedPolicy = null;
    
-      for( PolicySet policySet: policySets)
+      for( PolicySet policySet: getIndex().getCandidates(context))
       {
          MatchResult match = policySet.match(context);
          int result = match.getResult();
@@ -78,4 +82,31 @@ public class RPSPolicySetFinderModule extends PolicySetFinderModule
       // return the single applicable policy (if there was one)
       return new PolicyFinderResult(selectedPolicy);
    }  
+
+   /**
+    * Get the role policy sets indexed on their targets
+    * @return
+    */
+   private TargetIndex<PolicySet> getIndex()
+   {
+      TargetIndex<PolicySet> current = index;
+      if (current == null)
+      {
+         //built under the lock of add, so that it is not built from the previous policy sets
+         synchronized (this)
+         {
+            current = index;
+            if (current == null)
+            {
+               current = new TargetIndex<PolicySet>();
+               for (PolicySet policySet : policySets)
+               {
+                  current.add(policySet.getTarget(), policySet);
+               }
+               index = current;
+            }
+         }
+      }
+      return current;
+   }
 }
\ No newline at end of file
@@ -0,0 +1,78 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.security.xacml.core;
+
+import java.security.AccessControlContext;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs tasks on another executor with the context class loader and the
+ * access control context of the thread that submitted them, so that the
+ * locators of an evaluation see the same class loader and permissions
+ * on a pool thread as on the calling thread.
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since Oct 18, 2026
+ */
+class CallerContextExecutor implements Executor
+{
+   private final Executor executor;
+
+   /**
+    * Create an executor
+    * @param executor the executor that runs the tasks
+    */
+   CallerContextExecutor(Executor executor)
+   {
+      this.executor = executor;
+   }
+
+   public void execute(final Runnable command)
+   {
+      final ClassLoader tcl = SecurityActions.getContextClassLoader();
+      final AccessControlContext acc = AccessController.getContext();
+      executor.execute(new Runnable()
+      {
+         public void run()
+         {
+            ClassLoader previous = SecurityActions.getContextClassLoader();
+            SecurityActions.setContextClassLoader(tcl);
+            try
+            {
+               AccessController.doPrivileged(new PrivilegedAction<Object>()
+               {
+                  public Object run()
+                  {
+                     command.run();
+                     return null;
+                  }
+               }, acc);
+            }
+            finally
+            {
+               SecurityActions.setContextClassLoader(previous);
+            }
+         }
+      });
+   }
+}
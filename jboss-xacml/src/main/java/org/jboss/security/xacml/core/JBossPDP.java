@@ -21,21 +21,55 @@
   */
 package org.jboss.security.xacml.core;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FilenameFilter;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.Serializable;
+import java.lang.ref.WeakReference;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -68,8 +102,16 @@ import org.jboss.security.xacml.jaxb.PolicyType;
 import org.jboss.security.xacml.locators.AttributeLocator;
 import org.jboss.security.xacml.locators.ResourceLocator;
 import org.jboss.security.xacml.locators.cache.CacheLocator;
+import org.jboss.security.xacml.locators.cache.CachingAttributeFinderModule;
 import org.jboss.security.xacml.locators.cache.DecisionCacheLocator;
+import org.jboss.security.xacml.locators.cache.RequestFingerprint;
+import org.jboss.security.xacml.sunxacml.AbstractPolicy;
+import org.jboss.security.xacml.sunxacml.AttributeDependencies;
+import org.jboss.security.xacml.sunxacml.AttributeDependencies.PolicyDependency;
 import org.jboss.security.xacml.sunxacml.PDPConfig;
+import org.jboss.security.xacml.sunxacml.ParallelTasks;
+import org.jboss.security.xacml.sunxacml.PolicyReference;
+import org.jboss.security.xacml.sunxacml.PolicySet;
 import org.jboss.security.xacml.sunxacml.ctx.RequestCtx;
 import org.jboss.security.xacml.sunxacml.ctx.ResponseCtx;
 import org.jboss.security.xacml.sunxacml.finder.AttributeFinder;
@@ -80,6 +122,7 @@ import org.jboss.security.xacml.sunxacml.finder.ResourceFinderModule;
 import org.jboss.security.xacml.sunxacml.finder.impl.CurrentEnvModule;
 import org.jboss.security.xacml.sunxacml.finder.impl.SelectorModule;
 import org.jboss.security.xacml.util.JBossXACMLEntityResolver;
+import org.jboss.security.xacml.util.PDPConfigReader;
 import org.w3c.dom.Node;
 import org.xml.sax.ErrorHandler;
 import org.xml.sax.InputSource;
@@ -89,6 +132,29 @@ import org.xml.sax.SAXParseException;
 /**
  *  <p>PDP for JBoss XACML</p>
  *  <b>Thread-safe evaluate method</b>
+ *  <p>
+ *  The system property <i>picketbox.xacml.pdp.lockstrategy</i> controls how
+ *  evaluations are serialized. With the value <i>snapshot</i>, the policy 
+ *  decision point and its finders are published as an immutable snapshot and
+ *  requests are evaluated in parallel without taking any lock. Calls to
+ *  {@link #setPolicies(Set)} and {@link #setLocators(Set)} then build a new
+ *  snapshot, with its own policy finder over the modules of the new policies,
+ *  and swap it in atomically.
+ *  </p>
+ *  <p>
+ *  Policies read from a directory can be reloaded while the PDP is in use,
+ *  see {@link #watchPolicyDirectories()}.
+ *  </p>
+ *  <p>
+ *  The threads that a PDP starts for batches of requests and background work
+ *  are released with {@link #close()}.
+ *  </p>
+ *  <p>
+ *  The system property <i>picketbox.xacml.pdp.subdecisioncache</i> sets how many
+ *  results each policy reference remembers for the attribute values that the 
+ *  referenced policy reads, so that a policy set shared by several parents is 
+ *  evaluated once for requests that only differ in what it does not read.
+ *  </p>
  *  @author Anil.Saldhana@redhat.com
  *  @since  Jul 6, 2007 
  *  @version $Revision$
@@ -99,6 +165,38 @@ public class JBossPDP implements PolicyDecisionPoint, Serializable
 
    private static Logger log = Logger.getLogger(JBossPDP.class.getName());
    
+   /**
+    * The number of threads that evaluate a batch of requests, including the calling thread
+    */
+   private static final int BATCH_THREADS = Runtime.getRuntime().availableProcessors();
+   
+   /**
+    * The number of threads that refresh the cached decisions that are due
+    */
+   private static final int REFRESH_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+   
+   /**
+    * The number of threads that run asynchronous evaluations when the JVM has no virtual
+    * threads. They mostly wait on the attribute locators, so there are more of them than processors.
+    */
+   private static final int ASYNC_THREADS = 4 * Runtime.getRuntime().availableProcessors();
+   
+   /**
+    * The number of refreshes that may wait, beyond which they are dropped
+    */
+   private static final int REFRESH_QUEUE_SIZE = 1024;
+   
+   /**
+    * Runs the tasks on the calling thread
+    */
+   private static final Executor SAME_THREAD = new Executor()
+   {
+      public void execute(Runnable command)
+      {
+         command.run();
+      }
+   };
+   
    private Unmarshaller unmarshaller = null;
 
    private Set<AttributeFinderModule> attributeLocators = new HashSet<AttributeFinderModule>();
@@ -109,10 +207,22 @@ public class JBossPDP implements PolicyDecisionPoint, Serializable
    private List<CacheLocator> cacheLocators = new ArrayList<CacheLocator>();
    
    private Set<XACMLPolicy> policies = new HashSet<XACMLPolicy>();
+   
+   /**
+    * The directories that policies were read from
+    */
+   private Set<File> policyDirectories = new HashSet<File>();
+   
+   /**
+    * The policies read from the policy directories, by file
+    */
+   private Map<File, XACMLPolicy> directoryPolicies = new LinkedHashMap<File, XACMLPolicy>();
+   
+   private transient PolicyDirectoryWatcher policyWatcher;
 
    private JBossPolicyFinder policyFinder = new JBossPolicyFinder();
 
-   private org.jboss.security.xacml.sunxacml.PDP policyDecisionPoint = null;
+   private volatile org.jboss.security.xacml.sunxacml.PDP policyDecisionPoint = null;
    
    private Lock lock = new ReentrantLock();
 
@@ -122,11 +232,79 @@ public class JBossPDP implements PolicyDecisionPoint, Serializable
 
    private boolean useRWLock = false;
    
+   private boolean useSnapshots = false;
+   
+   /**
+    * Policies are published under the write lock, and decisions are only cached under the 
+    * read lock by the PDP that is still current, so that a decision made with replaced 
+    * policies is never cached after the decisions were invalidated
+    */
+   private ReadWriteLock publishLock = new ReentrantReadWriteLock();
+   
+   /**
+    * The current snapshot when the "snapshot" lock strategy is used
+    */
+   private final AtomicReference<PDPSnapshot> snapshot = new AtomicReference<PDPSnapshot>();
+   
+   /**
+    * The evaluations of the requests that missed the decision cache, by fingerprint,
+    * so that identical requests missing at the same time wait for the same decision
+    */
+   private transient volatile ConcurrentMap<RequestFingerprint, FutureTask<ResponseCtx>> pendingDecisions;
+   
+   /**
+    * The executor of asynchronous evaluations, or null for the default one
+    */
+   private transient volatile Executor asyncExecutor;
+   
+   /**
+    * The executor that helps the calling thread with a batch of requests, or null for the default one
+    */
+   private transient volatile Executor batchExecutor;
+   
+   /**
+    * The default batch threads, created on first use
+    */
+   private transient ExecutorService batchThreads;
+   
+   /**
+    * The default asynchronous evaluation threads, created on first use: a virtual
+    * thread per evaluation when the JVM supports them, a bounded pool otherwise
+    */
+   private transient ExecutorService asyncThreads;
+   
+   /**
+    * The threads that refresh the cached decisions that are due, created on first use
+    */
+   private transient ThreadPoolExecutor refreshThreads;
+   
+   /**
+    * The thread that loads and saves the decision cache snapshots, created on first use
+    */
+   private transient ScheduledThreadPoolExecutor snapshotThreads;
+   
+   /**
+    * The number of refreshes dropped because too many were waiting
+    */
+   private final AtomicLong droppedRefreshes = new AtomicLong();
+   
+   private transient volatile boolean closed = false;
+   
+   /**
+    * A digest of the policies, computed when a decision cache snapshot needs it
+    */
+   private transient volatile String policyVersion;
+   
    /**
     * JAXBContext is thread safe and very expensive to create
     */
    private static JAXBContext jaxbContext;
 
+   /**
+    * The compiled schema of the configuration, created on first use
+    */
+   private static Schema configSchema;
+
    static
    {
       try
@@ -148,10 +326,6 @@ public class JBossPDP implements PolicyDecisionPoint, Serializable
     */
    public JBossPDP()
    {
-      if(SecurityActions.getSystemProperty("org.jboss.security.xacml.schema.validation") == null)
-	     this.createValidatingUnMarshaller();
-      else
-         this.createUnMarshaller();
    }
 
    /**
@@ -163,8 +337,7 @@ public class JBossPDP implements PolicyDecisionPoint, Serializable
       this();
       try
       {
-         JAXBElement<?> jxb = (JAXBElement<?>) unmarshaller.unmarshal(configFile);
-         bootstrap((PDP) jxb.getValue());
+         bootstrap(readConfig(configFile));
       }
       catch (Exception e)
       {
@@ -181,7 +354,7 @@ public class JBossPDP implements PolicyDecisionPoint, Serializable
 	  this();
       try
       {
-         JAXBElement<?> jxb = (JAXBElement<?>) unmarshaller.unmarshal(configFile);
+         JAXBElement<?> jxb = (JAXBElement<?>) getUnmarshaller().unmarshal(configFile);
          bootstrap((PDP) jxb.getValue());
       }
       catch (Exception e)
@@ -199,7 +372,7 @@ public class JBossPDP implements PolicyDecisionPoint, Serializable
 	  this();
       try
       {
-         JAXBElement<?> jxb = (JAXBElement<?>) unmarshaller.unmarshal(configFile);
+         JAXBElement<?> jxb = (JAXBElement<?>) getUnmarshaller().unmarshal(configFile);
          bootstrap((PDP) jxb.getValue());
       }
       catch (Exception e)
@@ -217,7 +390,7 @@ public class JBossPDP implements PolicyDecisionPoint, Serializable
 	  this();
 	  try
       {
-         JAXBElement<?> jxb = (JAXBElement<?>) unmarshaller.unmarshal(configFile);
+         JAXBElement<?> jxb = (JAXBElement<?>) getUnmarshaller().unmarshal(configFile);
          bootstrap((PDP) jxb.getValue());
       }
       catch (Exception e)
@@ -235,8 +408,15 @@ public class JBossPDP implements PolicyDecisionPoint, Serializable
       this();
       try
       {
-         JAXBElement<?> jxb = (JAXBElement<?>) unmarshaller.unmarshal(configFileURL.openStream());
-         bootstrap((PDP) jxb.getValue());
+         InputStream is = configFileURL.openStream();
+         try
+         {
+            bootstrap(readConfig(is));
+         }
+         finally
+         {
+            is.close();
+         }
       }
       catch (Exception e)
       {
@@ -266,9 +446,258 @@ public class JBossPDP implements PolicyDecisionPoint, Serializable
    /**
     * @see PolicyDecisionPoint#setLocators(Set)
     */
-   public void setLocators(Set<PolicyLocator> locators)
+   public synchronized void setLocators(Set<PolicyLocator> locators)
    {
       this.policyLocators = locators;
+      Lock writeLock = publishLock.writeLock();
+      writeLock.lock();
+      try
+      {
+         org.jboss.security.xacml.sunxacml.PDP previous = policyDecisionPoint;
+         if(previous != null)
+            this.bootstrapPDP();
+         
+         //The decisions made with the policies of the previous locators no longer hold
+         this.clearDecisions(previous);
+         
+         //Any reference may now resolve to another policy
+         policyFinder.policiesChanged();
+      }
+      finally
+      {
+         writeLock.unlock();
+      }
+   }
+
+   /**
+    * Drop the attribute values cached for the attribute locators
+    * configured with caching options
+    * @see CachingAttributeFinderModule
+    */
+   public void invalidateAttributeCaches()
+   {
+      for(AttributeFinderModule module : attributeLocators)
+      {
+         if(module instanceof CachingAttributeFinderModule)
+            module.invalidateCache();
+      }
+   }
+
+   /**
+    * Drop the attribute values cached for a value of the key attribute
+    * of the caching attribute locators, such as a subject whose attributes have changed
+    * @param keyValue
+    * @see CachingAttributeFinderModule#invalidateKey(String)
+    */
+   public void invalidateAttributeCaches(String keyValue)
+   {
+      for(AttributeFinderModule module : attributeLocators)
+      {
+         if(module instanceof CachingAttributeFinderModule)
+            ((CachingAttributeFinderModule) module).invalidateKey(keyValue);
+      }
+   }
+
+   /**
+    * Set the executor that runs the evaluations started with {@link #evaluateAsync(RequestContext)}.
+    * By default, every evaluation gets its own virtual thread when the JVM supports them,
+    * and a thread from a bounded pool otherwise. {@link #close()} shuts the default executor down. 
+    * @param executor the executor, or null to go back to the default
+    */
+   public void setExecutor(Executor executor)
+   {
+      this.asyncExecutor = executor;
+   }
+
+   /**
+    * Set the executor that helps the calling thread evaluate a batch of requests,
+    * see {@link #evaluateAll(List)}, or the resources of a request whose scope is
+    * not immediate. By default, the PDP starts a pool of threads
+    * on first use, which {@link #close()} shuts down. 
+    * @param executor the executor, or null to go back to the default
+    */
+   public void setBatchExecutor(Executor executor)
+   {
+      this.batchExecutor = executor;
+   }
+
+   /**
+    * Shut down the threads that this PDP started, including the watch of the
+    * policy directories, the refreshes of cached decisions and the periodic saves
+    * of the decision cache snapshots. The executors set on the PDP are left to their 
+    * owner. Requests evaluated afterwards run on the calling thread. The attribute
+    * locators close their pooled connections and no longer query their stores.
+    */
+   public void close()
+   {
+      stopWatchingPolicyDirectories();
+      List<ExecutorService> threads = new ArrayList<ExecutorService>();
+      synchronized(this)
+      {
+         closed = true;
+         if(batchThreads != null)
+            threads.add(batchThreads);
+         if(asyncThreads != null)
+            threads.add(asyncThreads);
+         if(refreshThreads != null)
+            threads.add(refreshThreads);
+         if(snapshotThreads != null)
+            threads.add(snapshotThreads);
+         batchThreads = null;
+         asyncThreads = null;
+         refreshThreads = null;
+         snapshotThreads = null;
+      }
+      for(ExecutorService executor : threads)
+         executor.shutdown();
+      closeAttributeLocators();
+   }
+   
+   /**
+    * Let the attribute locators release their pooled connections
+    * @see AttributeLocator#close()
+    */
+   private void closeAttributeLocators()
+   {
+      for(AttributeFinderModule module : attributeLocators)
+      {
+         if(module instanceof CachingAttributeFinderModule)
+            module = ((CachingAttributeFinderModule) module).getDelegate();
+         if(module instanceof AttributeLocator)
+         {
+            try
+            {
+               ((AttributeLocator) module).close();
+            }
+            catch(RuntimeException e)
+            {
+               log.log(Level.WARNING, "Error closing attribute locator " + module.getIdentifier(), e);
+            }
+         }
+      }
+   }
+   
+   /**
+    * Get the executor of the batch threads, which runs the tasks with the
+    * context of the caller
+    * @return the executor, or null once the PDP is closed
+    */
+   private synchronized Executor getBatchExecutor()
+   {
+      Executor executor = batchExecutor;
+      if(executor == null)
+      {
+         if(closed)
+            return null;
+         if(batchThreads == null)
+            batchThreads = Executors.newFixedThreadPool(BATCH_THREADS, new PDPThreadFactory("JBossPDP-batch"));
+         executor = batchThreads;
+      }
+      return new CallerContextExecutor(executor);
+   }
+   
+   /**
+    * Get the executor of the refreshes of cached decisions. A refresh is dropped, and
+    * counted, when too many of them are waiting.
+    * @return the executor, or null once the PDP is closed
+    */
+   private synchronized Executor getRefreshExecutor()
+   {
+      if(closed)
+         return null;
+      if(refreshThreads == null)
+      {
+         refreshThreads = new ThreadPoolExecutor(REFRESH_THREADS, REFRESH_THREADS, 60, TimeUnit.SECONDS, 
+               new ArrayBlockingQueue<Runnable>(REFRESH_QUEUE_SIZE), new PDPThreadFactory("JBossPDP-refresh"), 
+               new RejectedExecutionHandler()
+         {
+            public void rejectedExecution(Runnable r, ThreadPoolExecutor executor)
+            {
+               if(executor.isShutdown())
+                  return;
+               long dropped = droppedRefreshes.incrementAndGet();
+               if(dropped == 1)
+                  log.warning("Dropping refreshes of cached decisions, " + REFRESH_QUEUE_SIZE + " are waiting");
+               else if(log.isLoggable(Level.FINE))
+                  log.fine("Dropped " + dropped + " refreshes of cached decisions");
+            }
+         });
+         refreshThreads.allowCoreThreadTimeOut(true);
+      }
+      return refreshThreads;
+   }
+   
+   /**
+    * Get the executor that loads and saves the decision cache snapshots. Its thread
+    * ends once the snapshot tasks of a PDP that is no longer used cancel themselves.
+    * @return the executor, or null once the PDP is closed
+    */
+   private synchronized ScheduledExecutorService getSnapshotScheduler()
+   {
+      if(closed)
+         return null;
+      if(snapshotThreads == null)
+      {
+         snapshotThreads = new ScheduledThreadPoolExecutor(1, new PDPThreadFactory("JBossPDP-decision-snapshot"));
+         snapshotThreads.setKeepAliveTime(60, TimeUnit.SECONDS);
+         snapshotThreads.allowCoreThreadTimeOut(true);
+         snapshotThreads.setRemoveOnCancelPolicy(true);
+      }
+      return snapshotThreads;
+   }
+   
+   /**
+    * Get the number of refreshes of cached decisions that were dropped because too many 
+    * of them were waiting. The decisions of dropped refreshes expire as usual.
+    * @return
+    * @see DecisionCacheLocator#REFRESH_AHEAD
+    */
+   public long getDroppedRefreshCount()
+   {
+      return droppedRefreshes.get();
+   }
+
+   /**
+    * Get the executor of the asynchronous evaluations, which runs the tasks with
+    * the context of the caller
+    * @return the executor, which runs the tasks on the calling thread once the PDP is closed
+    */
+   private synchronized Executor getAsyncExecutor()
+   {
+      Executor executor = asyncExecutor;
+      if(executor == null)
+      {
+         if(closed)
+            return SAME_THREAD;
+         if(asyncThreads == null)
+            asyncThreads = createAsyncThreads();
+         executor = asyncThreads;
+      }
+      return new CallerContextExecutor(executor);
+   }
+   
+   /**
+    * Create the default executor of the asynchronous evaluations. Virtual threads are
+    * looked up reflectively since they are not available on every JVM that runs this code,
+    * so that blocking attribute locators do not hold on to platform threads.
+    * @return
+    */
+   private static ExecutorService createAsyncThreads()
+   {
+      try
+      {
+         ExecutorService executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+               .invoke(null);
+         if(log.isLoggable(Level.FINE))
+            log.fine("Asynchronous evaluations run on virtual threads");
+         return executor;
+      }
+      catch(Exception e)
+      {
+         if(log.isLoggable(Level.FINE))
+            log.fine("Asynchronous evaluations run on " + ASYNC_THREADS + " threads:" + e);
+         return Executors.newFixedThreadPool(ASYNC_THREADS, new PDPThreadFactory("JBossPDP-async"));
+      }
    }
 
    /**
@@ -276,7 +705,114 @@ public class JBossPDP implements PolicyDecisionPoint, Serializable
     */
    public void setPolicies(Set<XACMLPolicy> policies)
    {
+      this.publishPolicies(policies);
+   }
+   
+   /**
+    * Hand the policies to the policy locators, publish a PDP built with them
+    * if one was already built, and drop the decisions made with the policies they replace
+    * @param policies the new policies
+    */
+   private synchronized void publishPolicies(Set<XACMLPolicy> policies)
+   {
+      Set<XACMLPolicy> previous = this.policies;
       this.policies = policies;
+      this.policyVersion = null;
+      if(policies != null)
+      {
+         for(PolicyLocator locator : policyLocators)
+         {
+            locator.setPolicies(policies);
+         }
+      }
+      Lock writeLock = publishLock.writeLock();
+      writeLock.lock();
+      try
+      {
+         if(policyDecisionPoint != null)
+            this.bootstrapPDP();
+         
+         Set<XACMLPolicy> removed = new HashSet<XACMLPolicy>();
+         if(previous != null)
+            removed.addAll(previous);
+         Set<XACMLPolicy> added = new HashSet<XACMLPolicy>();
+         if(policies != null)
+            added.addAll(policies);
+         added.removeAll(removed);
+         if(policies != null)
+            removed.removeAll(policies);
+         this.invalidateDecisions(removed, added);
+      }
+      finally
+      {
+         writeLock.unlock();
+      }
+   }
+
+   /**
+    * Save the most requested decisions of the decision caches configured with a
+    * snapshot file, such as before the PDP is shut down. The decisions are otherwise
+    * saved periodically, and read back asynchronously when a PDP is created with the
+    * same policies.
+    * @see DecisionCacheLocator#SNAPSHOT_FILE
+    */
+   public void saveDecisionCaches()
+   {
+      String version = this.getPolicyVersion();
+      if(version == null)
+         return;
+      for(CacheLocator cacheLocator : cacheLocators)
+      {
+         if(cacheLocator instanceof DecisionCacheLocator && ((DecisionCacheLocator) cacheLocator).getSnapshotFile() != null)
+            ((DecisionCacheLocator) cacheLocator).saveSnapshot(version);
+      }
+   }
+
+   /**
+    * Watch the directories that policies were read from, and reload the policy files
+    * that are created, modified or deleted. Only the changed files are parsed again, 
+    * and the new policies are published at once while evaluations go on with the
+    * previous ones. A file that cannot be parsed is reported and its previous 
+    * version is kept.
+    * @see #watchPolicyDirectories(long)
+    */
+   public void watchPolicyDirectories()
+   {
+      watchPolicyDirectories(500);
+   }
+
+   /**
+    * Watch the directories that policies were read from
+    * @param settleMillis how long a directory has to be quiet before its changes are reloaded
+    * @see #watchPolicyDirectories()
+    */
+   public synchronized void watchPolicyDirectories(long settleMillis)
+   {
+      if(policyWatcher != null)
+         return;
+      if(policyDirectories.isEmpty())
+         throw new IllegalStateException("No policies were read from a directory");
+      try
+      {
+         policyWatcher = new PolicyDirectoryWatcher(this, policyDirectories, settleMillis);
+      }
+      catch (IOException e)
+      {
+         throw new RuntimeException(e);
+      }
+      policyWatcher.start();
+   }
+
+   /**
+    * Stop watching the policy directories
+    */
+   public synchronized void stopWatchingPolicyDirectories()
+   {
+      if(policyWatcher != null)
+      {
+         policyWatcher.close();
+         policyWatcher = null;
+      }
    }
 
    /**
@@ -291,7 +827,12 @@ public class JBossPDP implements PolicyDecisionPoint, Serializable
       //Check if PDP is null
       if(policyDecisionPoint == null)
       {   
-         this.bootstrapPDP();
+         this.ensureBootstrapped();
+      }
+      
+      if(useSnapshots)
+      {
+         return evaluate(req, snapshot.get());
       }
       
       ResponseCtx resp = null;
@@ -300,37 +841,7 @@ public class JBossPDP implements PolicyDecisionPoint, Serializable
       }
       try
       {
-         int cacheLocatorsLength = cacheLocators.size();
-         
-         if( cacheLocatorsLength > 0 )
-         {
-            for( int i = 0 ; i < cacheLocatorsLength; i++ )
-            {
-               CacheLocator cacheLocator = cacheLocators.get(i);
-               resp = cacheLocator.get( req );
-               if( resp != null )
-                  break;
-            }
-         }
-         
-         //We got nothing from the cache?
-         if( resp == null ) 
-         {
-            resp = policyDecisionPoint.evaluate(req); 
-            
-            //add it to cache locators
-            if( cacheLocatorsLength > 0 )
-            {
-               for( int i = 0 ; i < cacheLocatorsLength; i++ )
-               {
-                  CacheLocator cacheLocator = cacheLocators.get(i);
-                  if( cacheLocator instanceof DecisionCacheLocator  )
-                  {
-                     ( ( DecisionCacheLocator ) cacheLocator ).add( req, resp );
-                  } 
-               }
-            }  
-         }  
+         resp = evaluate(req, policyDecisionPoint, cacheLocators, null);
       }
       finally
       {
@@ -344,29 +855,493 @@ public class JBossPDP implements PolicyDecisionPoint, Serializable
       return response;
    }
 
-   private void bootstrap(PDP pdp) throws Exception
+   /**
+    * Evaluate a request on the configured executor, so that the caller does not
+    * block while the attribute locators query their databases or directories.
+    * The evaluation runs with the context class loader and access control context
+    * of the caller.
+    * @param request
+    * @return the future response, which can also run a callback once the decision is made
+    * @see #setExecutor(Executor)
+    */
+   public CompletableFuture<ResponseContext> evaluateAsync(final RequestContext request)
    {
-      boolean justLocators = false;
+      if (request.get(XACMLConstants.REQUEST_CTX) == null)
+         throw new IllegalStateException("Request Context does not contain a request");
       
-      PoliciesType policiesType = pdp.getPolicies();
-      //SECURITY-407: Just allow Locators
-      if(policiesType != null)
+      return CompletableFuture.supplyAsync(new Supplier<ResponseContext>()
       {
-         List<PolicySetType> pset = policiesType.getPolicySet();
-
-         this.addPolicySets(pset, true);
+         public ResponseContext get()
+         {
+            return evaluate(request);
+         }
+      }, getAsyncExecutor());
+   }
 
-         //Take care of additional policies
-         List<XACMLPolicy> policyList = this.addPolicies(policiesType.getPolicy());
-         policies.addAll(policyList);  
-      }
-      else
-      {
-         justLocators = true;
-      }
-      
-      //Take care of the locators
-      LocatorsType locatorsType = pdp.getLocators();
+   /**
+    * Evaluate a batch of requests.
+    * <p>
+    * Identical requests are evaluated once. Requests with the same subjects
+    * share the attribute values that the attribute locators found for the
+    * subjects. When the lock strategy allows concurrent evaluations, the
+    * remaining requests are spread across the batch executor and the
+    * calling thread, see {@link #setBatchExecutor(Executor)}. Otherwise they are evaluated in turn under one lock.
+    * </p>
+    * @param requests
+    * @return the responses, in the order of the requests
+    */
+   public List<ResponseContext> evaluateAll(List<RequestContext> requests)
+   {
+      int size = requests.size();
+      int[] slots = new int[size];
+      List<RequestCtx> unique = new ArrayList<RequestCtx>();
+      List<Map<Object, Object>> subjectResults = new ArrayList<Map<Object, Object>>();
+      Map<RequestFingerprint, Integer> seenRequests = new HashMap<RequestFingerprint, Integer>();
+      Map<RequestFingerprint, Map<Object, Object>> seenSubjects = new HashMap<RequestFingerprint, Map<Object, Object>>();
+      
+      for( int i = 0 ; i < size; i++ )
+      {
+         RequestCtx req = (RequestCtx) requests.get(i).get(XACMLConstants.REQUEST_CTX);
+         if (req == null)
+            throw new IllegalStateException("Request Context does not contain a request");
+         
+         RequestFingerprint fingerprint = RequestFingerprint.from(req, null, null, null, null);
+         Integer slot = seenRequests.get(fingerprint);
+         if( slot == null )
+         {
+            slot = unique.size();
+            unique.add(req);
+            seenRequests.put(fingerprint, slot);
+            
+            RequestFingerprint subjectFingerprint = RequestFingerprint.fromSubjects(req);
+            Map<Object, Object> shared = seenSubjects.get(subjectFingerprint);
+            if( shared == null )
+            {
+               shared = new HashMap<Object, Object>();
+               seenSubjects.put(subjectFingerprint, shared);
+            }
+            subjectResults.add(shared);
+         }
+         slots[i] = slot;
+      }
+
+      //Check if PDP is null
+      if(policyDecisionPoint == null)
+      {   
+         this.ensureBootstrapped();
+      }
+      
+      ResponseCtx[] responses;
+      if(useSnapshots)
+      {
+         PDPSnapshot current = snapshot.get();
+         responses = evaluateConcurrently(unique, subjectResults, current.policyDecisionPoint, current.cacheLocators);
+      }
+      else if(lockFree && !useRWLock)
+      {
+         responses = evaluateConcurrently(unique, subjectResults, policyDecisionPoint, cacheLocators);
+      }
+      else
+      {
+         lock.lock();
+         try
+         {
+            responses = new ResponseCtx[unique.size()];
+            for( int i = 0 ; i < responses.length; i++ )
+               responses[i] = evaluate(unique.get(i), policyDecisionPoint, cacheLocators, subjectResults.get(i));
+         }
+         finally
+         {
+            lock.unlock();
+         }
+      }
+      
+      List<ResponseContext> result = new ArrayList<ResponseContext>(size);
+      for( int i = 0 ; i < size; i++ )
+      {
+         ResponseContext response = RequestResponseContextFactory.createResponseContext();
+         response.set(XACMLConstants.RESPONSE_CTX, responses[slots[i]]);
+         result.add(response);
+      }
+      return result;
+   }
+
+   /**
+    * Evaluate requests on the batch executor and the calling thread, see {@link ParallelTasks}
+    * @param reqs
+    * @param subjectResults
+    * @param pdp
+    * @param cacheLocatorList
+    * @return the responses, in the order of the requests
+    */
+   private ResponseCtx[] evaluateConcurrently(final List<RequestCtx> reqs, final List<Map<Object, Object>> subjectResults,
+         final org.jboss.security.xacml.sunxacml.PDP pdp, final List<CacheLocator> cacheLocatorList)
+   {
+      final ResponseCtx[] responses = new ResponseCtx[reqs.size()];
+      ParallelTasks.run(getBatchExecutor(), BATCH_THREADS, responses.length, new ParallelTasks.Task()
+      {
+         public void run(int i)
+         {
+            responses[i] = evaluate(reqs.get(i), pdp, cacheLocatorList, subjectResults.get(i));
+         }
+      });
+      return responses;
+   }
+
+   /**
+    * Evaluate a request against a published snapshot without taking the PDP lock
+    * @param req
+    * @param current the snapshot read once for this evaluation
+    * @return
+    */
+   private ResponseContext evaluate(RequestCtx req, PDPSnapshot current)
+   {
+      ResponseCtx resp = evaluate(req, current.policyDecisionPoint, current.cacheLocators, null);
+      
+      ResponseContext response = RequestResponseContextFactory.createResponseContext();
+      response.set(XACMLConstants.RESPONSE_CTX, resp);
+      return response;
+   }
+
+   /**
+    * Look up the decision in the cache locators, or evaluate it and cache it.
+    * The fingerprint of the request is computed once per decision cache. The evaluation
+    * records the policies it consults, and when a decision cache tracks dependencies,
+    * the attributes it reads. Identical requests that miss the cache at the same time
+    * wait for the evaluation of the first one. A decision cache that refreshes ahead
+    * asks for the request to be evaluated again in the background when the decision
+    * it returns is about to expire.
+    * @param req
+    * @param pdp
+    * @param cacheLocatorList
+    * @param subjectResults attribute values shared with requests for the same subjects, or null
+    * @return
+    */
+   private ResponseCtx evaluate(final RequestCtx req, final org.jboss.security.xacml.sunxacml.PDP pdp, 
+         final List<CacheLocator> cacheLocatorList, final Map<Object, Object> subjectResults)
+   {
+      int cacheLocatorsLength = cacheLocatorList.size();
+      if( cacheLocatorsLength == 0 )
+         return pdp.evaluate(req, subjectResults);
+      
+      ResponseCtx resp = null;
+      final RequestFingerprint[] fingerprints = new RequestFingerprint[cacheLocatorsLength];
+      final boolean[] tracking = new boolean[cacheLocatorsLength];
+      RequestFingerprint key = null;
+      boolean decisionCaching = false;
+      boolean dependencyTracking = false;
+      Runnable refresh = null;
+      for( int i = 0 ; i < cacheLocatorsLength; i++ )
+      {
+         CacheLocator cacheLocator = cacheLocatorList.get(i);
+         if( cacheLocator instanceof DecisionCacheLocator )
+         {
+            decisionCaching = true;
+            if( refresh == null && ( (DecisionCacheLocator) cacheLocator ).isRefreshAhead() )
+            {
+               refresh = new Runnable()
+               {
+                  public void run()
+                  {
+                     scheduleRefresh(req);
+                  }
+               };
+            }
+         }
+         if( cacheLocator instanceof DecisionCacheLocator 
+               && ( (DecisionCacheLocator) cacheLocator ).isDependencyTracking() )
+         {
+            tracking[i] = true;
+            dependencyTracking = true;
+            resp = ( (DecisionCacheLocator) cacheLocator ).get( req, refresh );
+         }
+         else if( cacheLocator instanceof DecisionCacheLocator )
+         {
+            DecisionCacheLocator decisionCacheLocator = (DecisionCacheLocator) cacheLocator;
+            fingerprints[i] = decisionCacheLocator.getFingerprint( req );
+            resp = decisionCacheLocator.get( fingerprints[i], refresh );
+         }
+         else
+         {
+            resp = cacheLocator.get( req );
+         }
+         if( resp != null )
+            return resp;
+         if( key == null && cacheLocator instanceof DecisionCacheLocator )
+         {
+            key = fingerprints[i] != null ? fingerprints[i] 
+                  : ( (DecisionCacheLocator) cacheLocator ).getFingerprint( req );
+         }
+      }
+      
+      //We got nothing from the cache
+      if( !decisionCaching )
+         return pdp.evaluate(req, subjectResults);
+      
+      return evaluateMiss(req, pdp, cacheLocatorList, subjectResults, fingerprints, tracking, key, dependencyTracking);
+   }
+   
+   /**
+    * Evaluate a request that is not in the decision caches and cache the decision,
+    * unless an identical request is already being evaluated
+    * @param key the fingerprint of the request in the first decision cache
+    * @param recordDesignators whether a decision cache tracks dependencies
+    * @return
+    */
+   private ResponseCtx evaluateMiss(final RequestCtx req, final org.jboss.security.xacml.sunxacml.PDP pdp, 
+         final List<CacheLocator> cacheLocatorList, final Map<Object, Object> subjectResults, 
+         final RequestFingerprint[] fingerprints, final boolean[] tracking, RequestFingerprint key, 
+         final boolean recordDesignators)
+   {
+      FutureTask<ResponseCtx> task = new FutureTask<ResponseCtx>(new Callable<ResponseCtx>()
+      {
+         public ResponseCtx call() throws Exception
+         {
+            return evaluateAndCache(req, pdp, cacheLocatorList, subjectResults, fingerprints, tracking, 
+                  recordDesignators);
+         }
+      });
+      return coalesce(key, task);
+   }
+   
+   /**
+    * Evaluate a request again on the refresh threads. The refresh is dropped
+    * when too many of them are waiting, and the decision then expires as usual.
+    * @param req
+    */
+   private void scheduleRefresh(final RequestCtx req)
+   {
+      Executor executor = getRefreshExecutor();
+      if(executor == null)
+         return;
+      executor.execute(new Runnable()
+      {
+         public void run()
+         {
+            try
+            {
+               refresh(req);
+            }
+            catch (RuntimeException e)
+            {
+               log.log(Level.FINE, "Unable to refresh a cached decision", e);
+            }
+         }
+      });
+   }
+   
+   /**
+    * Evaluate a request with the current policies and replace its cached decisions
+    * @param req
+    */
+   private void refresh(RequestCtx req)
+   {
+      org.jboss.security.xacml.sunxacml.PDP pdp;
+      List<CacheLocator> cacheLocatorList;
+      if(useSnapshots)
+      {
+         PDPSnapshot current = snapshot.get();
+         pdp = current.policyDecisionPoint;
+         cacheLocatorList = current.cacheLocators;
+      }
+      else
+      {
+         pdp = policyDecisionPoint;
+         cacheLocatorList = cacheLocators;
+      }
+      
+      int cacheLocatorsLength = cacheLocatorList.size();
+      RequestFingerprint[] fingerprints = new RequestFingerprint[cacheLocatorsLength];
+      boolean[] tracking = new boolean[cacheLocatorsLength];
+      RequestFingerprint key = null;
+      boolean dependencyTracking = false;
+      for( int i = 0 ; i < cacheLocatorsLength; i++ )
+      {
+         CacheLocator cacheLocator = cacheLocatorList.get(i);
+         if( !( cacheLocator instanceof DecisionCacheLocator ))
+            continue;
+         DecisionCacheLocator decisionCacheLocator = (DecisionCacheLocator) cacheLocator;
+         if( decisionCacheLocator.isDependencyTracking() )
+         {
+            tracking[i] = true;
+            dependencyTracking = true;
+            if( key == null )
+               key = decisionCacheLocator.getFingerprint( req );
+         }
+         else
+         {
+            fingerprints[i] = decisionCacheLocator.getFingerprint( req );
+            if( key == null )
+               key = fingerprints[i];
+         }
+      }
+      
+      boolean locking = !useSnapshots && (!lockFree || useRWLock);
+      if(locking)
+         lock.lock();
+      try
+      {
+         evaluateMiss(req, pdp, cacheLocatorList, null, fingerprints, tracking, key, dependencyTracking);
+      }
+      finally
+      {
+         if(locking)
+            lock.unlock();
+      }
+   }
+   
+   /**
+    * Run the evaluation of a request that missed the cache, unless an identical
+    * request is already being evaluated, in which case wait for its decision
+    * @param key the fingerprint of the request in the first decision cache
+    * @param task the evaluation
+    * @return
+    */
+   private ResponseCtx coalesce(RequestFingerprint key, FutureTask<ResponseCtx> task)
+   {
+      ConcurrentMap<RequestFingerprint, FutureTask<ResponseCtx>> pending = getPendingDecisions();
+      FutureTask<ResponseCtx> running = pending.putIfAbsent(key, task);
+      if (running == null)
+      {
+         running = task;
+         try
+         {
+            task.run();
+         }
+         finally
+         {
+            pending.remove(key, task);
+         }
+      }
+      
+      boolean interrupted = false;
+      try
+      {
+         while (true)
+         {
+            try
+            {
+               return running.get();
+            }
+            catch (InterruptedException e)
+            {
+               interrupted = true;
+            }
+            catch (ExecutionException e)
+            {
+               Throwable cause = e.getCause();
+               if (cause instanceof RuntimeException)
+                  throw (RuntimeException) cause;
+               if (cause instanceof Error)
+                  throw (Error) cause;
+               throw new RuntimeException(cause);
+            }
+         }
+      }
+      finally
+      {
+         if (interrupted)
+            Thread.currentThread().interrupt();
+      }
+   }
+   
+   private ConcurrentMap<RequestFingerprint, FutureTask<ResponseCtx>> getPendingDecisions()
+   {
+      ConcurrentMap<RequestFingerprint, FutureTask<ResponseCtx>> pending = pendingDecisions;
+      if (pending == null)
+      {
+         synchronized (this)
+         {
+            if (pendingDecisions == null)
+               pendingDecisions = new ConcurrentHashMap<RequestFingerprint, FutureTask<ResponseCtx>>();
+            pending = pendingDecisions;
+         }
+      }
+      return pending;
+   }
+   
+   /**
+    * Evaluate a request that missed the cache and add the decision to the decision caches
+    * @param req
+    * @param pdp
+    * @param cacheLocatorList
+    * @param subjectResults
+    * @param fingerprints the fingerprints of the request, for the decision caches that do not track dependencies
+    * @param tracking which decision caches track dependencies
+    * @param recordDesignators whether a decision cache tracks dependencies
+    * @return
+    */
+   private ResponseCtx evaluateAndCache(RequestCtx req, org.jboss.security.xacml.sunxacml.PDP pdp, 
+         List<CacheLocator> cacheLocatorList, Map<Object, Object> subjectResults, 
+         RequestFingerprint[] fingerprints, boolean[] tracking, boolean recordDesignators)
+   {
+      //record the policies that the decision depends on
+      AttributeDependencies dependencies = new AttributeDependencies(recordDesignators);
+      ResponseCtx resp = pdp.evaluate(req, subjectResults, dependencies); 
+      
+      //add it to cache locators, unless the policies were replaced in the meantime
+      Lock readLock = publishLock.readLock();
+      readLock.lock();
+      try
+      {
+         if( pdp != policyDecisionPoint )
+            return resp;
+         for( int i = 0 ; i < fingerprints.length; i++ )
+         {
+            if( tracking[i] )
+            {
+               ( ( DecisionCacheLocator ) cacheLocatorList.get(i) ).add( req, resp, dependencies );
+            }
+            else if( fingerprints[i] != null )
+            {
+               ( ( DecisionCacheLocator ) cacheLocatorList.get(i) ).add( fingerprints[i], resp, dependencies.getPolicies() );
+            } 
+         }
+      }
+      finally
+      {
+         readLock.unlock();
+      }
+      return resp;
+   }
+
+   private void bootstrap(PDP pdp) throws Exception
+   {
+      boolean justLocators = false;
+      
+      PoliciesType policiesType = pdp.getPolicies();
+      //SECURITY-407: Just allow Locators
+      if(policiesType != null)
+      {
+         List<PolicySetType> pset = policiesType.getPolicySet();
+
+         //Parse all the policy files up front, then assemble them in the configured order
+         PolicyReader reader = new PolicyReader();
+         try
+         {
+            reader.schedulePolicySets(pset);
+            reader.schedulePolicies(policiesType.getPolicy());
+
+            this.addPolicySets(pset, true, reader);
+
+            //Take care of additional policies
+            List<XACMLPolicy> policyList = this.addPolicies(policiesType.getPolicy(), reader);
+            policies.addAll(policyList);  
+
+            reader.saveSnapshot();
+         }
+         finally
+         {
+            reader.close();
+         }
+      }
+      else
+      {
+         justLocators = true;
+      }
+      
+      //Take care of the locators
+      LocatorsType locatorsType = pdp.getLocators();
       
       if(policiesType == null && locatorsType == null)
          throw new IllegalStateException("Configuration should have either policies or locators");
@@ -389,7 +1364,8 @@ public class JBossPDP implements PolicyDecisionPoint, Serializable
          else if(locator instanceof AttributeLocator)
          {
             AttributeLocator attribLocator = (AttributeLocator) locator;
-            this.attributeLocators.add(attribLocator);
+            //Caching options put a cache in front of the locator
+            this.attributeLocators.add(CachingAttributeFinderModule.decorate(attribLocator, options));
          }
          else if(locator instanceof ResourceLocator)
          {
@@ -406,79 +1382,384 @@ public class JBossPDP implements PolicyDecisionPoint, Serializable
       //the policy finder
       if(justLocators)
       {
-         int len = this.policyLocators.size();
-         if(len > 0)
-         {
-            for(PolicyLocator pl: policyLocators)
-            {
-               pl.set(XACMLConstants.POLICY_FINDER, this.policyFinder); 
-            } 
-         }
-      } 
-      
-      this.bootstrapPDP(); 
+         int len = this.policyLocators.size();
+         if(len > 0)
+         {
+            for(PolicyLocator pl: policyLocators)
+            {
+               pl.set(XACMLConstants.POLICY_FINDER, this.policyFinder); 
+            } 
+         }
+      } 
+      
+      this.bootstrapPDP(); 
+      
+      //Warm up the decision caches configured with a snapshot file
+      for(CacheLocator cacheLocator : cacheLocators)
+      {
+         if(cacheLocator instanceof DecisionCacheLocator && ((DecisionCacheLocator) cacheLocator).getSnapshotFile() != null)
+            new DecisionCacheSnapshotTask(this, (DecisionCacheLocator) cacheLocator).start(getSnapshotScheduler());
+      }
+   }
+   
+   private List<AttributeFinderModule> createAttributeFinderModules()
+   {
+      List<AttributeFinderModule> attributeModules = new ArrayList<AttributeFinderModule>();
+      attributeModules.add(new CurrentEnvModule());
+      attributeModules.add(new SelectorModule());      
+      attributeModules.addAll(attributeLocators); 
+      return attributeModules;
+   }
+
+   @SuppressWarnings("unchecked")
+   private Set<PolicyFinderModule> createPolicyFinderModules()
+   {
+      HashSet<PolicyFinderModule> policyModules = new HashSet<PolicyFinderModule>();
+      //Go through the Locators
+      for (PolicyLocator locator : policyLocators)
+      {
+         @SuppressWarnings("rawtypes")
+         List finderModulesList = (List) locator.get(XACMLConstants.POLICY_FINDER_MODULE);
+         if (finderModulesList == null)
+            throw new IllegalStateException("Locator " + locator.getClass().getName() + " has no policy finder modules");
+         policyModules.addAll(finderModulesList);
+      }
+      return policyModules; 
+   }
+   
+   private List<ResourceFinderModule> createResourceFinderModules()
+   {
+      List<ResourceFinderModule> resourceFinderModules = new ArrayList<ResourceFinderModule>();
+      for(ResourceLocator resourceLocator: resourceLocators)
+      {
+         resourceFinderModules.add(resourceLocator);
+      }
+      return resourceFinderModules;
+   }
+   
+   /**
+    * Bootstrap the PDP once, even if several threads see an uninitialized PDP
+    */
+   private synchronized void ensureBootstrapped()
+   {
+      if(policyDecisionPoint == null)
+         this.bootstrapPDP();
+   }
+   
+   private synchronized void bootstrapPDP()
+   {
+      String lockStatus = SecurityActions.getSystemProperty("picketbox.xacml.pdp.lockstrategy");
+      if(lockStatus != null){
+          if("lockfree".equalsIgnoreCase(lockStatus)){
+              lockFree = true;
+          }
+          if("readwrite".equalsIgnoreCase(lockStatus)){
+              useRWLock =true;
+              lock = rwLock.writeLock();
+          }
+          if("snapshot".equalsIgnoreCase(lockStatus)){
+              useSnapshots = true;
+          }
+      }
+      AttributeFinder attributeFinder = new AttributeFinder();
+      attributeFinder.setModules(this.createAttributeFinderModules());
+      
+      //Every PDP gets its own finder, so that a published snapshot keeps resolving
+      //the policies it was built with while the next one is built
+      Set<PolicyFinderModule> policyModules = this.createPolicyFinderModules();
+      JBossPolicyFinder pdpPolicyFinder = new JBossPolicyFinder();
+      pdpPolicyFinder.setModules(policyModules);
+      //The finder the policies were read with resolves their references outside of an evaluation
+      policyFinder.setModules(policyModules);
+      
+      ResourceFinder resourceFinder = new ResourceFinder();
+      resourceFinder.setModules(this.createResourceFinderModules());
+      
+      int subDecisionCacheSize = 0;
+      String subDecisionCache = SecurityActions.getSystemProperty("picketbox.xacml.pdp.subdecisioncache");
+      if(subDecisionCache != null)
+         subDecisionCacheSize = Integer.parseInt(subDecisionCache);
+      
+      //The results of referenced policies are reused as long as the cached decisions
+      long subDecisionTimeToLive = 0;
+      for(CacheLocator cacheLocator : cacheLocators)
+      {
+         long timeToLive = cacheLocator instanceof DecisionCacheLocator ? 
+               ((DecisionCacheLocator) cacheLocator).getTimeToLive() : 0;
+         if(timeToLive > 0 && (subDecisionTimeToLive == 0 || timeToLive < subDecisionTimeToLive))
+            subDecisionTimeToLive = timeToLive;
+      }
+      if(subDecisionTimeToLive == 0)
+         subDecisionTimeToLive = PDPConfig.DEFAULT_SUB_DECISION_TIME_TO_LIVE;
+      
+      //The batch threads also help with the resources of a request, as long as the PDP is open
+      Executor resourceExecutor = new Executor()
+      {
+         public void execute(Runnable command)
+         {
+            Executor executor = getBatchExecutor();
+            if(executor == null)
+               throw new RejectedExecutionException("The PDP is closed");
+            executor.execute(command);
+         }
+      };
+      PDPConfig pdpConfig = new PDPConfig(attributeFinder, pdpPolicyFinder, resourceFinder, subDecisionCacheSize,
+            subDecisionTimeToLive, resourceExecutor); 
+      org.jboss.security.xacml.sunxacml.PDP newPDP = new org.jboss.security.xacml.sunxacml.PDP(pdpConfig);
+      
+      if(useSnapshots)
+      {
+         snapshot.set(new PDPSnapshot(newPDP, cacheLocators));
+      }
+      policyDecisionPoint = newPDP;  
+   }
+
+   /**
+    * Read the changed policy files again and publish the new policies.
+    * A directory stands for all of its files.
+    * @param changed the files that were created, modified or deleted
+    */
+   synchronized void reloadPolicyFiles(Set<File> changed)
+   {
+      Set<File> files = new LinkedHashSet<File>();
+      for(File file : changed)
+      {
+         if(policyDirectories.contains(file))
+         {
+            for(File known : directoryPolicies.keySet())
+            {
+               if(file.equals(known.getParentFile()))
+                  files.add(known);
+            }
+            files.addAll(this.listPolicyFiles(file));
+         }
+         else if(isPolicyFileName(file.getName()))
+         {
+            files.add(file);
+         }
+      }
+      
+      Map<File, XACMLPolicy> updated = new LinkedHashMap<File, XACMLPolicy>(directoryPolicies);
+      boolean modified = false;
+      for(File file : files)
+      {
+         XACMLPolicy previous = updated.remove(file);
+         if(file.isFile())
+         {
+            try
+            {
+               updated.put(file, this.readPolicyFile(file));
+               modified = true;
+            }
+            catch (Exception e)
+            {
+               log.log(Level.WARNING, "Unable to reload the policy file " + file + ", keeping its previous version", e);
+               if(previous != null)
+                  updated.put(file, previous);
+            }
+         }
+         else if(previous != null)
+         {
+            modified = true;
+         }
+      }
+      if(!modified)
+         return;
+      
+      Set<XACMLPolicy> newPolicies = new HashSet<XACMLPolicy>(policies);
+      newPolicies.removeAll(directoryPolicies.values());
+      newPolicies.addAll(updated.values());
+      this.directoryPolicies = updated;
+      
+      //Decisions made with the previous policies are stale
+      this.publishPolicies(newPolicies);
+      log.info("Reloaded the policy files " + files);
+   }
+   
+   /**
+    * Drop the cached decisions that depend on replaced policies. A decision only 
+    * depends on the policies that its evaluation consulted, but the policy finder
+    * skips the top level policies whose targets cannot match without consulting them,
+    * so a top level policy with a new id or a new target drops all the decisions.
+    * The policy references to the replaced ids are resolved again.
+    * @param removed the policies that are no longer used
+    * @param added the policies that replace them
+    */
+   private void invalidateDecisions(Collection<XACMLPolicy> removed, Collection<XACMLPolicy> added)
+   {
+      if(removed.isEmpty() && added.isEmpty())
+         return;
+      
+      Map<URI, String> removedTargets = new HashMap<URI, String>();
+      Set<PolicyDependency> changed = new HashSet<PolicyDependency>();
+      for(XACMLPolicy policy : removed)
+      {
+         collectTargets(policy, removedTargets);
+         collectPolicies(policy, changed);
+      }
+      Map<URI, String> addedTargets = new HashMap<URI, String>();
+      boolean newTargets = false;
+      for(XACMLPolicy policy : added)
+      {
+         if(!collectTargets(policy, addedTargets))
+            newTargets = true;
+         collectPolicies(policy, changed);
+      }
+      for(Map.Entry<URI, String> target : addedTargets.entrySet())
+      {
+         if(!target.getValue().equals(removedTargets.get(target.getKey())))
+            newTargets = true;
+      }
+      
+      Set<URI> changedIds = new HashSet<URI>();
+      for(PolicyDependency dependency : changed)
+         changedIds.add(dependency.getId());
+      policyFinder.policiesChanged(changedIds);
+      
+      for(CacheLocator cacheLocator : cacheLocators)
+      {
+         if(cacheLocator instanceof DecisionCacheLocator)
+         {
+            if(newTargets)
+               ((DecisionCacheLocator) cacheLocator).clear();
+            else
+               ((DecisionCacheLocator) cacheLocator).invalidate(changed);
+         }
+      }
+   }
+   
+   /**
+    * Drop all the cached decisions, and the results of policy references that
+    * a PDP remembered
+    * @param pdp the PDP whose results are dropped, or null
+    */
+   private void clearDecisions(org.jboss.security.xacml.sunxacml.PDP pdp)
+   {
+      if(pdp != null)
+         pdp.clearSubDecisions();
+      for(CacheLocator cacheLocator : cacheLocators)
+      {
+         if(cacheLocator instanceof DecisionCacheLocator)
+            ((DecisionCacheLocator) cacheLocator).clear();
+      }
+   }
+   
+   /**
+    * Get a digest of the XML of the policies, which tells whether decisions
+    * were made with the same policies
+    * @return the digest, or null if the policies are only known to the policy locators
+    */
+   private synchronized String getPolicyVersion()
+   {
+      if(policyVersion == null && policies != null && !policies.isEmpty())
+      {
+         //the policies are not ordered, so the digests of the policies are sorted
+         List<String> digests = new ArrayList<String>();
+         for(XACMLPolicy policy : policies)
+            digestPolicies(policy, digests);
+         Collections.sort(digests);
+         MessageDigest digest = createDigest();
+         for(String policyDigest : digests)
+            digest.update(policyDigest.getBytes());
+         policyVersion = toHex(digest.digest());
+      }
+      return policyVersion;
+   }
+   
+   private static void digestPolicies(XACMLPolicy policy, List<String> digests)
+   {
+      AbstractPolicy abstractPolicy = policy.get(XACMLConstants.UNDERLYING_POLICY);
+      if(abstractPolicy != null)
+      {
+         ByteArrayOutputStream baos = new ByteArrayOutputStream();
+         abstractPolicy.encode(baos);
+         digests.add(toHex(createDigest().digest(baos.toByteArray())));
+      }
+      List<XACMLPolicy> enclosingPolicies = policy.getEnclosingPolicies();
+      if(enclosingPolicies != null)
+      {
+         for(XACMLPolicy enclosingPolicy : enclosingPolicies)
+            digestPolicies(enclosingPolicy, digests);
+      }
    }
    
-   private List<AttributeFinderModule> createAttributeFinderModules()
+   private static MessageDigest createDigest()
    {
-      List<AttributeFinderModule> attributeModules = new ArrayList<AttributeFinderModule>();
-      attributeModules.add(new CurrentEnvModule());
-      attributeModules.add(new SelectorModule());      
-      attributeModules.addAll(attributeLocators); 
-      return attributeModules;
+      try
+      {
+         return MessageDigest.getInstance("SHA-256");
+      }
+      catch (NoSuchAlgorithmException e)
+      {
+         throw new IllegalStateException(e);
+      }
    }
-
-   @SuppressWarnings("unchecked")
-   private Set<PolicyFinderModule> createPolicyFinderModules()
+   
+   private static String toHex(byte[] bytes)
    {
-      HashSet<PolicyFinderModule> policyModules = new HashSet<PolicyFinderModule>();
-      //Go through the Locators
-      for (PolicyLocator locator : policyLocators)
+      StringBuilder sb = new StringBuilder(bytes.length * 2);
+      for(byte b : bytes)
       {
-         @SuppressWarnings("rawtypes")
-         List finderModulesList = (List) locator.get(XACMLConstants.POLICY_FINDER_MODULE);
-         if (finderModulesList == null)
-            throw new IllegalStateException("Locator " + locator.getClass().getName() + " has no policy finder modules");
-         policyModules.addAll(finderModulesList);
+         sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+         sb.append(Character.forDigit(b & 0xF, 16));
       }
-      return policyModules; 
+      return sb.toString();
    }
    
-   private List<ResourceFinderModule> createResourceFinderModules()
+   /**
+    * Collect the encoded targets of a top level policy and of its enclosing policies, by id
+    * @return false if the policy has no underlying policy
+    */
+   private static boolean collectTargets(XACMLPolicy policy, Map<URI, String> targets)
    {
-      List<ResourceFinderModule> resourceFinderModules = new ArrayList<ResourceFinderModule>();
-      for(ResourceLocator resourceLocator: resourceLocators)
+      AbstractPolicy abstractPolicy = policy.get(XACMLConstants.UNDERLYING_POLICY);
+      if(abstractPolicy == null)
+         return false;
+      ByteArrayOutputStream target = new ByteArrayOutputStream();
+      if(abstractPolicy.getTarget() != null)
+         abstractPolicy.getTarget().encode(target);
+      targets.put(abstractPolicy.getId(), target.toString());
+      List<XACMLPolicy> enclosingPolicies = policy.getEnclosingPolicies();
+      if(enclosingPolicies != null)
       {
-         resourceFinderModules.add(resourceLocator);
+         for(XACMLPolicy enclosingPolicy : enclosingPolicies)
+            collectTargets(enclosingPolicy, targets);
       }
-      return resourceFinderModules;
+      return true;
    }
    
-   private void bootstrapPDP()
+   /**
+    * Collect the ids and versions of a policy and the policies it contains
+    * @param policy
+    * @param policies
+    */
+   private static void collectPolicies(XACMLPolicy policy, Set<PolicyDependency> policies)
    {
-      String lockStatus = SecurityActions.getSystemProperty("picketbox.xacml.pdp.lockstrategy");
-      if(lockStatus != null){
-          if("lockfree".equalsIgnoreCase(lockStatus)){
-              lockFree = true;
-          }
-          if("readwrite".equalsIgnoreCase(lockStatus)){
-              useRWLock =true;
-              lock = rwLock.writeLock();
-          }
+      AbstractPolicy abstractPolicy = policy.get(XACMLConstants.UNDERLYING_POLICY);
+      if(abstractPolicy != null)
+         collectPolicies(abstractPolicy, policies);
+      List<XACMLPolicy> enclosingPolicies = policy.getEnclosingPolicies();
+      if(enclosingPolicies != null)
+      {
+         for(XACMLPolicy enclosingPolicy : enclosingPolicies)
+            collectPolicies(enclosingPolicy, policies);
+      }
+   }
+   
+   private static void collectPolicies(AbstractPolicy policy, Set<PolicyDependency> policies)
+   {
+      //references are recorded by the policies they resolve to
+      if(policy instanceof PolicyReference)
+         return;
+      policies.add(new PolicyDependency(policy.getId(), policy.getVersion()));
+      for(Object child : policy.getChildren())
+      {
+         if(child instanceof AbstractPolicy)
+            collectPolicies((AbstractPolicy) child, policies);
       }
-      AttributeFinder attributeFinder = new AttributeFinder();
-      attributeFinder.setModules(this.createAttributeFinderModules());
-      
-      policyFinder.setModules(this.createPolicyFinderModules());
-      
-      ResourceFinder resourceFinder = new ResourceFinder();
-      resourceFinder.setModules(this.createResourceFinderModules());
-      
-      PDPConfig pdpConfig = new PDPConfig(attributeFinder, policyFinder, resourceFinder); 
-      policyDecisionPoint = new org.jboss.security.xacml.sunxacml.PDP(pdpConfig);  
    }
 
-   private List<XACMLPolicy> addPolicySets(List<PolicySetType> policySets, boolean topLevel) throws Exception
+   private List<XACMLPolicy> addPolicySets(List<PolicySetType> policySets, boolean topLevel, PolicyReader reader) throws Exception
    {
       List<XACMLPolicy> list = new ArrayList<XACMLPolicy>();
       
@@ -486,25 +1767,28 @@ public class JBossPDP implements PolicyDecisionPoint, Serializable
       {
          String loc = pst.getLocation();
          log.info("Reading policysets from location="+loc); 
-         if( isDirectory(loc))
+         File dir = reader.getDirectory(pst);
+         if( dir != null)
          {
-            InputStream[] streams = this.readPoliciesFromDir(loc);
-            for( InputStream stream : streams)
+            for( File file : reader.getDirectoryFiles(pst))
             {
-               list.add(PolicyFactory.create(stream, policyFinder));
+               XACMLPolicy policy = reader.get(file);
+               directoryPolicies.put(file, policy);
+               list.add(policy);
             }
+            policyDirectories.add(dir);
             policies.addAll(list);
          }
          else
          {
-            XACMLPolicy policySet = PolicyFactory.createPolicySet(getInputStream(loc), policyFinder);
+            XACMLPolicy policySet = reader.get(pst);
             list.add(policySet);
-            List<XACMLPolicy> policyList = this.addPolicies(pst.getPolicy());
+            List<XACMLPolicy> policyList = this.addPolicies(pst.getPolicy(), reader);
             policySet.setEnclosingPolicies(policyList);
 
             List<PolicySetType> pset = pst.getPolicySet();
             if (pset != null)
-               policySet.getEnclosingPolicies().addAll(this.addPolicySets(pset, false));
+               policySet.getEnclosingPolicies().addAll(this.addPolicySets(pset, false, reader));
 
             if (topLevel)
                policies.add(policySet); 
@@ -514,17 +1798,58 @@ public class JBossPDP implements PolicyDecisionPoint, Serializable
       return list;
    }
 
-   private List<XACMLPolicy> addPolicies(List<PolicyType> policies) throws Exception
+   private List<XACMLPolicy> addPolicies(List<PolicyType> policies, PolicyReader reader) throws Exception
    {
       List<XACMLPolicy> policyList = new ArrayList<XACMLPolicy>();
       for (PolicyType pt : policies)
       {
-         policyList.add(PolicyFactory.createPolicy(getInputStream(pt.getLocation())));
+         policyList.add(reader.get(pt));
       }
 
       return policyList;
    }
    
+   /**
+    * Read a configuration, with the {@link PDPConfigReader} when it can, and
+    * otherwise with the JAXB unmarshaller
+    * @param configFile
+    * @return
+    * @throws Exception
+    */
+   private PDP readConfig(InputStream configFile) throws Exception
+   {
+      byte[] config = toByteArray(configFile);
+      PDP pdp = PDPConfigReader.read(config);
+      if (pdp == null)
+      {
+         JAXBElement<?> jxb = (JAXBElement<?>) getUnmarshaller().unmarshal(new ByteArrayInputStream(config));
+         pdp = (PDP) jxb.getValue();
+      }
+      return pdp;
+   }
+
+   private Unmarshaller getUnmarshaller()
+   {
+      if (unmarshaller == null)
+      {
+         if(SecurityActions.getSystemProperty("org.jboss.security.xacml.schema.validation") == null)
+            this.createValidatingUnMarshaller();
+         else
+            this.createUnMarshaller();
+      }
+      return unmarshaller;
+   }
+
+   private static byte[] toByteArray(InputStream is) throws IOException
+   {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      byte[] buf = new byte[8192];
+      int n;
+      while ((n = is.read(buf)) != -1)
+         baos.write(buf, 0, n);
+      return baos.toByteArray();
+   }
+
    private void createUnMarshaller()
    {
       try
@@ -541,7 +1866,24 @@ public class JBossPDP implements PolicyDecisionPoint, Serializable
       try
       {
          createUnMarshaller();
-         
+         unmarshaller.setSchema(getConfigSchema());
+      }
+      catch (Exception jxb)
+      {
+         throw new RuntimeException(jxb);
+      }
+   }
+
+   /**
+    * Get the compiled configuration schema, which is shared by all the PDPs
+    * since compiling it costs much more than unmarshalling a configuration
+    * @return
+    * @throws Exception
+    */
+   private static synchronized Schema getConfigSchema() throws Exception
+   {
+      if (configSchema == null)
+      {
          //Validate against schema
          ClassLoader tcl = SecurityActions.getContextClassLoader();
          URL schemaURL = tcl.getResource("schema/jbossxacml-2.0.xsd");
@@ -589,13 +1931,9 @@ public class JBossPDP implements PolicyDecisionPoint, Serializable
             }
          });
          
-         Schema schema = scFact.newSchema(schemaURL);
-         unmarshaller.setSchema(schema);
-      }
-      catch (Exception jxb)
-      {
-         throw new RuntimeException(jxb);
+         configSchema = scFact.newSchema(schemaURL);
       }
+      return configSchema;
    }
    
    private boolean isDirectory(String location)
@@ -659,7 +1997,7 @@ public class JBossPDP implements PolicyDecisionPoint, Serializable
       return null;
    }
    
-   private InputStream[] readPoliciesFromDir( String location)
+   private File getPolicyDirectory( String location)
    {
       URI uri = getResourceViaClassLoader(SecurityActions.getContextClassLoader(), location);
       if( uri == null)
@@ -679,27 +2017,49 @@ public class JBossPDP implements PolicyDecisionPoint, Serializable
       if( uri == null )
          throw new RuntimeException("Unable to load the URI:" + location);
       
-      ArrayList<InputStream> list = new ArrayList<InputStream>();
       File dir = new File(uri);
       if( dir == null || !dir.isDirectory())
          throw new RuntimeException( uri + " is not a directory" );
-      
-      String dirLocationUri = uri.toString() + "/";
-      
+      return dir;
+   }
+   
+   private List<File> listPolicyFiles( File dir)
+   {
+      List<File> list = new ArrayList<File>();
       String[]  files = dir.list(new FilenameFilter()
       {     
          public boolean accept(File dir, String name)
          { 
-            return !name.startsWith(".");
+            return isPolicyFileName(name);
          }
       });
-      for( String fileName: files)
+      if( files != null)
+      {
+         Arrays.sort(files);
+         for( String fileName: files)
+         {
+            list.add(new File(dir, fileName));
+         }
+      }
+      return list;
+   }
+   
+   private static boolean isPolicyFileName(String name)
+   {
+      return !name.startsWith(".");
+   }
+   
+   private XACMLPolicy readPolicyFile(File file) throws Exception
+   {
+      InputStream is = getInputStream(file.toURI().toString());
+      try
+      {
+         return PolicyFactory.create(is, policyFinder);
+      }
+      finally
       {
-         list.add(getInputStream(dirLocationUri + fileName));
+         is.close();
       }
-      InputStream[] isArr = new InputStream[list.size()];
-      list.toArray(isArr);
-      return isArr;
    }
 
    private InputStream getInputStream(String loc)
@@ -729,4 +2089,324 @@ public class JBossPDP implements PolicyDecisionPoint, Serializable
       ClassLoader tcl = SecurityActions.getContextClassLoader();
       return tcl.loadClass(fqn);
    }
-}
\ No newline at end of file
+   
+   /**
+    * Parses the policy files of the configuration on a bounded pool of threads.
+    * <p>
+    * All the files are scheduled first, in the order of the configuration. They are 
+    * then taken in that same order to assemble the policy sets, so the result does not
+    * depend on which file is parsed first, and the error reported is the one of 
+    * the first file that cannot be read, as when the files are parsed one by one.
+    * The system property <i>picketbox.xacml.pdp.bootstrap.threads</i> sets the number
+    * of threads, and a value of 1 parses the files on the calling thread.
+    * </p>
+    * <p>
+    * The system property <i>picketbox.xacml.pdp.policysnapshot</i> names a
+    * {@link PolicySnapshotFile}. A file whose XML has not changed since the snapshot 
+    * was saved is then decoded from the snapshot instead of being parsed, and the
+    * snapshot is saved again once the policies have been assembled.
+    * </p>
+    */
+   private final class PolicyReader
+   {
+      private static final int POLICY = 0;
+
+      private static final int POLICYSET = 1;
+
+      private static final int ANY = 2;
+
+      private final ExecutorService executor;
+
+      private final Map<Object, FutureTask<XACMLPolicy>> tasks = new IdentityHashMap<Object, FutureTask<XACMLPolicy>>();
+
+      private final Map<PolicySetType, File> directories = new IdentityHashMap<PolicySetType, File>();
+
+      private final Map<PolicySetType, List<File>> directoryFiles = new IdentityHashMap<PolicySetType, List<File>>();
+
+      private final long start = System.currentTimeMillis();
+
+      private final PolicySnapshotFile snapshotFile;
+
+      private PolicyReader()
+      {
+         String snapshotLocation = SecurityActions.getSystemProperty("picketbox.xacml.pdp.policysnapshot");
+         snapshotFile = snapshotLocation != null ? PolicySnapshotFile.open(new File(snapshotLocation)) : null;
+
+
+         int threads = Runtime.getRuntime().availableProcessors();
+         String threadCount = SecurityActions.getSystemProperty("picketbox.xacml.pdp.bootstrap.threads");
+         if (threadCount != null)
+            threads = Integer.parseInt(threadCount);
+
+         if (threads > 1)
+         {
+            //the locations are resolved with the class loader of the caller
+            executor = Executors.newFixedThreadPool(threads, new PDPThreadFactory("JBossPDP-bootstrap",
+                  SecurityActions.getContextClassLoader()));
+         }
+         else
+         {
+            executor = null;
+         }
+      }
+
+      private void schedulePolicySets(List<PolicySetType> policySets)
+      {
+         for (PolicySetType pst : policySets)
+         {
+            String loc = pst.getLocation();
+            if (isDirectory(loc))
+            {
+               File dir = getPolicyDirectory(loc);
+               List<File> files = listPolicyFiles(dir);
+               for (File file : files)
+                  schedule(file, file.toURI().toString(), ANY);
+               directories.put(pst, dir);
+               directoryFiles.put(pst, files);
+            }
+            else
+            {
+               schedule(pst, loc, POLICYSET);
+               schedulePolicies(pst.getPolicy());
+               if (pst.getPolicySet() != null)
+                  schedulePolicySets(pst.getPolicySet());
+            }
+         }
+      }
+
+      private void schedulePolicies(List<PolicyType> policyTypes)
+      {
+         for (PolicyType pt : policyTypes)
+            schedule(pt, pt.getLocation(), POLICY);
+      }
+
+      private void schedule(Object source, final String location, final int kind)
+      {
+         FutureTask<XACMLPolicy> task = new FutureTask<XACMLPolicy>(new Callable<XACMLPolicy>()
+         {
+            public XACMLPolicy call() throws Exception
+            {
+               long begin = System.nanoTime();
+               XACMLPolicy policy;
+               if (snapshotFile == null)
+               {
+                  InputStream is = getInputStream(location);
+                  try
+                  {
+                     policy = create(is, kind);
+                  }
+                  finally
+                  {
+                     is.close();
+                  }
+               }
+               else
+               {
+                  policy = readWithSnapshot(location, kind);
+               }
+               if (log.isLoggable(Level.FINE))
+                  log.fine("Read " + location + " in " + (System.nanoTime() - begin) / 1000000L + " ms");
+               return policy;
+            }
+         });
+         tasks.put(source, task);
+         if (executor != null)
+            executor.execute(task);
+      }
+
+      private XACMLPolicy create(InputStream is, int kind) throws Exception
+      {
+         if (kind == POLICY)
+            return PolicyFactory.createPolicy(is);
+         else if (kind == POLICYSET)
+            return PolicyFactory.createPolicySet(is, policyFinder);
+         else
+            return PolicyFactory.create(is, policyFinder);
+      }
+
+      /**
+       * Take the policy of a location from the snapshot if its XML is unchanged,
+       * otherwise parse the XML and add the result to the snapshot
+       */
+      private XACMLPolicy readWithSnapshot(String location, int kind) throws Exception
+      {
+         byte[] source = readFully(location);
+         long checksum = PolicySnapshotFile.checksum(source);
+         String key = kind + ":" + location;
+
+         AbstractPolicy compiled = snapshotFile.get(key, checksum, policyFinder);
+         if (compiled != null)
+         {
+            int type = compiled instanceof PolicySet ? XACMLPolicy.POLICYSET : XACMLPolicy.POLICY;
+            try
+            {
+               return PolicyFactory.create(compiled, type, policyFinder);
+            }
+            catch (Exception e)
+            {
+               //the constructing class cannot take a compiled policy
+               log.log(Level.FINE, "Policy snapshot not usable for " + location, e);
+               snapshotFile.discard();
+            }
+         }
+
+         XACMLPolicy policy = create(new ByteArrayInputStream(source), kind);
+         Object underlying = policy.get(XACMLConstants.UNDERLYING_POLICY);
+         snapshotFile.put(key, checksum, underlying instanceof AbstractPolicy ? (AbstractPolicy) underlying : null);
+         return policy;
+      }
+
+      private byte[] readFully(String location) throws IOException
+      {
+         InputStream is = getInputStream(location);
+         try
+         {
+            return toByteArray(is);
+         }
+         finally
+         {
+            is.close();
+         }
+      }
+
+      /**
+       * Save the snapshot, once all the policies have been assembled
+       */
+      private void saveSnapshot()
+      {
+         if (snapshotFile != null)
+            snapshotFile.save();
+      }
+
+      private File getDirectory(PolicySetType pst)
+      {
+         return directories.get(pst);
+      }
+
+      private List<File> getDirectoryFiles(PolicySetType pst)
+      {
+         return directoryFiles.get(pst);
+      }
+
+      /**
+       * Get the policy parsed from a location, waiting for it if needed
+       * @param source the configuration element or the file of the location
+       * @return
+       * @throws Exception the error that parsing the location raised
+       */
+      private XACMLPolicy get(Object source) throws Exception
+      {
+         FutureTask<XACMLPolicy> task = tasks.get(source);
+         //a task that has already run does nothing
+         task.run();
+         try
+         {
+            return task.get();
+         }
+         catch (ExecutionException e)
+         {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception)
+               throw (Exception) cause;
+            if (cause instanceof Error)
+               throw (Error) cause;
+            throw e;
+         }
+      }
+
+      /**
+       * Release the threads, dropping the files that have not been parsed yet
+       */
+      private void close()
+      {
+         if (executor != null)
+            executor.shutdownNow();
+         String fromSnapshot = "";
+         if (snapshotFile != null)
+            fromSnapshot = ", " + snapshotFile.getHitCount() + " of them from the snapshot " + snapshotFile.getFile();
+         log.info("Read " + tasks.size() + " policy files in " + (System.currentTimeMillis() - start) + " ms"
+               + fromSnapshot);
+      }
+   }
+
+   /**
+    * Loads the snapshot of a decision cache once the PDP has started, then saves
+    * the cache periodically for as long as the PDP is in use
+    */
+   private static final class DecisionCacheSnapshotTask implements Runnable
+   {
+      private final WeakReference<JBossPDP> pdp;
+      
+      private final DecisionCacheLocator locator;
+      
+      private volatile ScheduledFuture<?> future;
+      
+      private boolean loaded = false;
+      
+      private DecisionCacheSnapshotTask(JBossPDP pdp, DecisionCacheLocator locator)
+      {
+         this.pdp = new WeakReference<JBossPDP>(pdp);
+         this.locator = locator;
+      }
+      
+      private void start(ScheduledExecutorService scheduler)
+      {
+         if(scheduler == null)
+            return;
+         long interval = locator.getSnapshotInterval();
+         future = scheduler.scheduleWithFixedDelay(this, 0, interval, TimeUnit.MILLISECONDS);
+      }
+      
+      public void run()
+      {
+         JBossPDP current = pdp.get();
+         if(current == null)
+         {
+            //the PDP is no longer used
+            if(future != null)
+               future.cancel(false);
+            return;
+         }
+         try
+         {
+            if(!loaded)
+            {
+               loaded = true;
+               //a policy reload in between would leave stale decisions in the cache
+               synchronized(current)
+               {
+                  String version = current.getPolicyVersion();
+                  if(version != null)
+                     locator.loadSnapshot(version);
+               }
+            }
+            else
+            {
+               String version = current.getPolicyVersion();
+               if(version != null)
+                  locator.saveSnapshot(version);
+            }
+         }
+         catch (RuntimeException e)
+         {
+            log.log(Level.WARNING, "Error with the decision cache snapshot " + locator.getSnapshotFile(), e);
+         }
+      }
+   }
+   
+   /**
+    * An immutable view of the PDP graph that is evaluated without locking
+    */
+   private static final class PDPSnapshot
+   {
+      private final org.jboss.security.xacml.sunxacml.PDP policyDecisionPoint;
+      
+      private final List<CacheLocator> cacheLocators;
+      
+      private PDPSnapshot(org.jboss.security.xacml.sunxacml.PDP pdp, List<CacheLocator> cacheLocators)
+      {
+         this.policyDecisionPoint = pdp;
+         this.cacheLocators = Collections.unmodifiableList(new ArrayList<CacheLocator>(cacheLocators));
+      }
+   }
+}
@@ -145,6 +145,30 @@ public class JBossXACMLPolicy implements XACMLPolicy, ContextMapOp
       map.put(XACMLConstants.UNDERLYING_POLICY, policy);
    }
 
+   /**
+    * Construct a JBossXACMLPolicy instance around a policy that has already
+    * been read, such as one taken from a policy snapshot
+    * @param policy the policy or policyset
+    * @param type policy or policyset
+    * @param theFinder PolicySet processing needs this
+    * @see XACMLConstants
+    */
+   public JBossXACMLPolicy(AbstractPolicy policy, int type, JBossPolicyFinder theFinder)
+   {
+      this.policyType = type;
+      if (type == XACMLPolicy.POLICYSET)
+      {
+         if (theFinder == null)
+            throw new IllegalArgumentException("policy finder is null");
+         this.finder = theFinder;
+         map.put(XACMLConstants.POLICY_FINDER, theFinder);
+      }
+      else if (type != XACMLPolicy.POLICY)
+         throw new RuntimeException("Unknown type");
+
+      map.put(XACMLConstants.UNDERLYING_POLICY, policy);
+   }
+
    /**
     * @see XACMLPolicy#getType()
     * @see XACMLConstants
@@ -0,0 +1,70 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.security.xacml.core;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the threads of the pools of a {@link JBossPDP}. The threads are
+ * daemons, so that a pool that was not closed does not keep the JVM running,
+ * and they are numbered after the name of their pool.
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since Oct 18, 2026
+ */
+class PDPThreadFactory implements ThreadFactory
+{
+   private final String name;
+
+   private final ClassLoader contextClassLoader;
+
+   private final AtomicInteger count = new AtomicInteger();
+
+   /**
+    * Create a factory of threads whose context class loader is the one of
+    * the PDP, rather than the one of the caller that happened to start them
+    * @param name the name of the pool
+    */
+   PDPThreadFactory(String name)
+   {
+      this(name, SecurityActions.getClassLoader(PDPThreadFactory.class));
+   }
+
+   /**
+    * Create a factory
+    * @param name the name of the pool
+    * @param contextClassLoader the context class loader of the threads
+    */
+   PDPThreadFactory(String name, ClassLoader contextClassLoader)
+   {
+      this.name = name;
+      this.contextClassLoader = contextClassLoader;
+   }
+
+   public Thread newThread(Runnable r)
+   {
+      Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+      t.setDaemon(true);
+      t.setContextClassLoader(contextClassLoader);
+      return t;
+   }
+}
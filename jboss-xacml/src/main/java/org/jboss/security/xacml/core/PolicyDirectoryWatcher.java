@@ -0,0 +1,182 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.security.xacml.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Watches the policy directories of a {@link JBossPDP} and tells it which
+ * files have been created, modified or deleted.
+ * <p>
+ * Editors and copy tools usually produce several events for a single change,
+ * so the events are collected until the directories have been quiet for the
+ * settle time, and the PDP then reloads all the changed files at once. When
+ * events have been lost, the whole directory is reported as changed.
+ * </p>
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since Oct 18, 2026
+ */
+class PolicyDirectoryWatcher implements Runnable
+{
+   private static Logger log = Logger.getLogger(PolicyDirectoryWatcher.class.getName());
+
+   private static final AtomicInteger count = new AtomicInteger();
+
+   private final JBossPDP pdp;
+
+   private final long settleMillis;
+
+   private final WatchService watchService;
+
+   private final Map<WatchKey, File> directories = new HashMap<WatchKey, File>();
+
+   private final Thread thread;
+
+   private volatile boolean closed = false;
+
+   /**
+    * Create a watcher
+    * @param pdp the PDP to notify
+    * @param dirs the directories to watch
+    * @param settleMillis how long the directories have to be quiet before the changes are reported
+    * @throws IOException if a directory cannot be watched
+    */
+   PolicyDirectoryWatcher(JBossPDP pdp, Collection<File> dirs, long settleMillis) throws IOException
+   {
+      this.pdp = pdp;
+      this.settleMillis = settleMillis;
+      this.watchService = FileSystems.getDefault().newWatchService();
+      try
+      {
+         for (File dir : dirs)
+         {
+            WatchKey key = dir.toPath().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                  StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            directories.put(key, dir);
+         }
+      }
+      catch (IOException e)
+      {
+         watchService.close();
+         throw e;
+      }
+      this.thread = new Thread(this, "JBossPDP-policy-watcher-" + count.incrementAndGet());
+      this.thread.setDaemon(true);
+   }
+
+   void start()
+   {
+      thread.start();
+   }
+
+   /**
+    * Stop watching. A reload that is in progress is completed.
+    */
+   void close()
+   {
+      closed = true;
+      try
+      {
+         watchService.close();
+      }
+      catch (IOException e)
+      {
+         log.log(Level.FINE, "Error closing the policy watch service", e);
+      }
+   }
+
+   public void run()
+   {
+      try
+      {
+         while (!closed)
+         {
+            Set<File> changed = new LinkedHashSet<File>();
+            WatchKey key = watchService.take();
+            while (key != null)
+            {
+               collect(key, changed);
+               key = watchService.poll(settleMillis, TimeUnit.MILLISECONDS);
+            }
+            if (!changed.isEmpty() && !closed)
+            {
+               try
+               {
+                  pdp.reloadPolicyFiles(changed);
+               }
+               catch (RuntimeException e)
+               {
+                  log.log(Level.WARNING, "Error reloading the policies " + changed, e);
+               }
+            }
+         }
+      }
+      catch (ClosedWatchServiceException e)
+      {
+         //closed
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+      }
+   }
+
+   private void collect(WatchKey key, Set<File> changed)
+   {
+      File dir = directories.get(key);
+      for (WatchEvent<?> event : key.pollEvents())
+      {
+         if (event.kind() == StandardWatchEventKinds.OVERFLOW)
+         {
+            changed.add(dir);
+         }
+         else
+         {
+            Path name = (Path) event.context();
+            changed.add(new File(dir, name.toString()));
+         }
+      }
+      if (!key.reset())
+      {
+         //the directory is gone, so are its policies
+         changed.add(dir);
+         directories.remove(key);
+      }
+   }
+}
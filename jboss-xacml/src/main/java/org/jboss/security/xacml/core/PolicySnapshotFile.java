@@ -0,0 +1,391 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.security.xacml.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import org.jboss.security.xacml.sunxacml.AbstractPolicy;
+import org.jboss.security.xacml.sunxacml.PolicyInputStream;
+import org.jboss.security.xacml.sunxacml.PolicyOutputStream;
+import org.jboss.security.xacml.sunxacml.finder.PolicyFinder;
+
+/**
+ * A file holding the compiled form of the policies read at bootstrap, so
+ * that the next start does not have to parse their XML again.
+ * <p>
+ * The file starts with a magic number, the format version and an index
+ * giving, for each policy location, the checksum of the XML it was compiled
+ * from and the length of the serialized policy. The serialized policies
+ * follow the index. The file is memory mapped and only the index is read
+ * when it is opened; a policy is decoded when it is asked for, and only if
+ * the checksum of its XML is unchanged. Anything that cannot be decoded is
+ * reported as missing, so the caller falls back to the XML.
+ * </p>
+ * <p>
+ * The policies read or compiled during a bootstrap are collected, and
+ * {@link #save()} replaces the file when any of them had to be compiled.
+ * The file holds serialized Java objects and must only be writable by the
+ * administrators of the PDP, although only the classes of a policy tree
+ * are read from it, see {@link PolicyInputStream}.
+ * </p>
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since Oct 18, 2026
+ */
+class PolicySnapshotFile
+{
+   private static Logger log = Logger.getLogger(PolicySnapshotFile.class.getName());
+
+   private static final int MAGIC = 0x4A425853;
+
+   private static final int FORMAT_VERSION = 2;
+
+   private final File file;
+
+   private final Map<String, Entry> entries;
+
+   private final ByteBuffer buffer;
+
+   /**
+    * The contents of the next file, by key
+    */
+   private final Map<String, Entry> next = new TreeMap<String, Entry>();
+
+   private int hits = 0;
+
+   private int misses = 0;
+
+   private boolean writable = true;
+
+   private PolicySnapshotFile(File file, Map<String, Entry> entries, ByteBuffer buffer)
+   {
+      this.file = file;
+      this.entries = entries;
+      this.buffer = buffer;
+   }
+
+   /**
+    * Open a snapshot file. A file that does not exist or cannot be read is
+    * treated as an empty snapshot.
+    * @param file
+    * @return
+    */
+   static PolicySnapshotFile open(File file)
+   {
+      if (!file.isFile())
+         return new PolicySnapshotFile(file, Collections.<String, Entry> emptyMap(), null);
+
+      try
+      {
+         ByteBuffer buffer;
+         RandomAccessFile raf = new RandomAccessFile(file, "r");
+         try
+         {
+            //the mapping stays valid once the file is closed
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+         }
+         finally
+         {
+            raf.close();
+         }
+
+         DataInputStream in = new DataInputStream(new BufferInputStream(buffer.duplicate()));
+         if (in.readInt() != MAGIC)
+            throw new IOException("Not a policy snapshot");
+         int version = in.readInt();
+         if (version != FORMAT_VERSION)
+            throw new IOException("Unsupported policy snapshot version:" + version);
+
+         int count = in.readInt();
+         Map<String, Entry> entries = new HashMap<String, Entry>();
+         int[] lengths = new int[count];
+         String[] keys = new String[count];
+         long[] checksums = new long[count];
+         for (int i = 0; i < count; i++)
+         {
+            keys[i] = in.readUTF();
+            checksums[i] = in.readLong();
+            lengths[i] = in.readInt();
+         }
+         int offset = buffer.capacity() - in.available();
+         for (int i = 0; i < count; i++)
+         {
+            if (lengths[i] < 0 || offset + lengths[i] > buffer.capacity())
+               throw new IOException("Truncated policy snapshot");
+            entries.put(keys[i], new Entry(checksums[i], offset, lengths[i], null));
+            offset += lengths[i];
+         }
+         return new PolicySnapshotFile(file, entries, buffer);
+      }
+      catch (IOException e)
+      {
+         log.log(Level.INFO, "Ignoring the policy snapshot " + file + ":" + e.getLocalizedMessage());
+         return new PolicySnapshotFile(file, Collections.<String, Entry> emptyMap(), null);
+      }
+   }
+
+   /**
+    * Compute the checksum of the XML of a policy
+    * @param source
+    * @return
+    */
+   static long checksum(byte[] source)
+   {
+      CRC32 crc = new CRC32();
+      crc.update(source, 0, source.length);
+      return crc.getValue();
+   }
+
+   /**
+    * Get the policy compiled from a location
+    * @param key the location
+    * @param checksum the checksum of the current XML of the location
+    * @param finder the finder of the references of a policy set
+    * @return the policy, or null if it is not in the snapshot, is out of date or cannot be decoded
+    */
+   AbstractPolicy get(String key, long checksum, PolicyFinder finder)
+   {
+      Entry entry = entries.get(key);
+      if (entry == null || entry.checksum != checksum)
+         return null;
+
+      ByteBuffer blob = buffer.duplicate();
+      blob.position(entry.offset);
+      blob.limit(entry.offset + entry.length);
+      try
+      {
+         PolicyInputStream in = new PolicyInputStream(new BufferInputStream(blob), finder);
+         AbstractPolicy policy;
+         try
+         {
+            policy = in.readPolicy();
+         }
+         finally
+         {
+            in.close();
+         }
+         synchronized (this)
+         {
+            next.put(key, entry);
+            hits++;
+         }
+         return policy;
+      }
+      catch (Exception e)
+      {
+         if (log.isLoggable(Level.FINE))
+            log.fine("Unable to decode " + key + " from the policy snapshot:" + e.getLocalizedMessage());
+         return null;
+      }
+   }
+
+   /**
+    * Add a policy that had to be compiled from its XML
+    * @param key the location
+    * @param checksum the checksum of the XML of the location
+    * @param policy the compiled policy, or null if there is none
+    */
+   void put(String key, long checksum, AbstractPolicy policy)
+   {
+      byte[] bytes = null;
+      if (policy != null)
+      {
+         try
+         {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            PolicyOutputStream out = new PolicyOutputStream(baos);
+            out.writePolicy(policy);
+            out.close();
+            bytes = baos.toByteArray();
+         }
+         catch (IOException e)
+         {
+            log.log(Level.INFO, "Policy " + key + " cannot be saved in a snapshot:" + e.getLocalizedMessage());
+         }
+      }
+      synchronized (this)
+      {
+         misses++;
+         if (bytes == null)
+            writable = false;
+         else
+            next.put(key, new Entry(checksum, 0, bytes.length, bytes));
+      }
+   }
+
+   /**
+    * Stop the file from being replaced, because the policies read cannot be
+    * used by the next start
+    */
+   synchronized void discard()
+   {
+      writable = false;
+   }
+
+   synchronized int getHitCount()
+   {
+      return hits;
+   }
+
+   File getFile()
+   {
+      return file;
+   }
+
+   /**
+    * Replace the file with the policies read or compiled since it was opened,
+    * if any had to be compiled or some are no longer used
+    */
+   synchronized void save()
+   {
+      if (!writable || (misses == 0 && next.keySet().equals(entries.keySet())))
+         return;
+
+      File tmp = null;
+      try
+      {
+         File dir = file.getAbsoluteFile().getParentFile();
+         tmp = File.createTempFile(file.getName(), ".tmp", dir);
+         DataOutputStream out = new DataOutputStream(new FileOutputStream(tmp));
+         try
+         {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(next.size());
+            for (Map.Entry<String, Entry> e : next.entrySet())
+            {
+               out.writeUTF(e.getKey());
+               out.writeLong(e.getValue().checksum);
+               out.writeInt(e.getValue().length);
+            }
+            for (Entry entry : next.values())
+            {
+               if (entry.bytes != null)
+               {
+                  out.write(entry.bytes);
+               }
+               else
+               {
+                  ByteBuffer blob = buffer.duplicate();
+                  blob.position(entry.offset);
+                  blob.limit(entry.offset + entry.length);
+                  byte[] bytes = new byte[entry.length];
+                  blob.get(bytes);
+                  out.write(bytes);
+               }
+            }
+         }
+         finally
+         {
+            out.close();
+         }
+         Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+         tmp = null;
+         log.info("Saved " + next.size() + " policies in the policy snapshot " + file);
+      }
+      catch (IOException e)
+      {
+         log.log(Level.INFO, "Unable to save the policy snapshot " + file + ":" + e.getLocalizedMessage());
+      }
+      finally
+      {
+         if (tmp != null)
+            tmp.delete();
+      }
+   }
+
+   /**
+    * A serialized policy, either in the mapped file or compiled during this bootstrap
+    */
+   private static class Entry
+   {
+      private final long checksum;
+
+      private final int offset;
+
+      private final int length;
+
+      private final byte[] bytes;
+
+      private Entry(long checksum, int offset, int length, byte[] bytes)
+      {
+         this.checksum = checksum;
+         this.offset = offset;
+         this.length = length;
+         this.bytes = bytes;
+      }
+   }
+
+   /**
+    * Reads the remaining bytes of a buffer
+    */
+   private static class BufferInputStream extends InputStream
+   {
+      private final ByteBuffer buffer;
+
+      private BufferInputStream(ByteBuffer buffer)
+      {
+         this.buffer = buffer;
+      }
+
+      @Override
+      public int read()
+      {
+         return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len)
+      {
+         if (len == 0)
+            return 0;
+         if (!buffer.hasRemaining())
+            return -1;
+         len = Math.min(len, buffer.remaining());
+         buffer.get(b, off, len);
+         return len;
+      }
+
+      @Override
+      public int available()
+      {
+         return buffer.remaining();
+      }
+   }
+}
@@ -48,6 +48,18 @@ class SecurityActions
       });
    }
    
+   static void setContextClassLoader(final ClassLoader classLoader)
+   {
+      AccessController.doPrivileged(new PrivilegedAction<Object>()
+      {
+         public Object run()
+         {
+            Thread.currentThread().setContextClassLoader(classLoader);
+            return null;
+         }
+      });
+   }
+   
    static ClassLoader getClassLoader( final Class<?> clazz)
    {
       return AccessController.doPrivileged(new PrivilegedAction<ClassLoader>()
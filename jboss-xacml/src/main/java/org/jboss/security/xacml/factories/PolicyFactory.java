@@ -34,6 +34,7 @@ import org.jboss.security.xacml.core.JBossXACMLPolicy;
 import org.jboss.security.xacml.core.model.policy.ObjectFactory;
 import org.jboss.security.xacml.core.model.policy.PolicyType;
 import org.jboss.security.xacml.interfaces.XACMLPolicy;
+import org.jboss.security.xacml.sunxacml.AbstractPolicy;
 
 
 /**
@@ -143,6 +144,22 @@ public class PolicyFactory
       return ctr.newInstance(new Object[]{is, finder});
    }
 
+   /**
+    * Create {@link XACMLPolicy} around a policy that has already been read
+    * @param policy a policy or policyset
+    * @param type policy or policyset
+    * @param finder a {@link JBossPolicyFinder}
+    * @return
+    * @throws Exception if the constructing class does not take an {@link AbstractPolicy}
+    */
+   @SuppressWarnings("unchecked")
+   public static XACMLPolicy create(AbstractPolicy policy, int type, JBossPolicyFinder finder) throws Exception
+   {
+      Constructor<XACMLPolicy> ctr = (Constructor<XACMLPolicy>) constructingClass.getConstructor(new Class[]{
+             AbstractPolicy.class, Integer.TYPE, JBossPolicyFinder.class});
+      return ctr.newInstance(new Object[]{policy, type, finder});
+   }
+
    @SuppressWarnings("unchecked")
    private static Constructor<XACMLPolicy> getCtr() throws Exception
    {
@@ -218,4 +218,12 @@ public class AttributeLocator extends AttributeFinderModule implements AbstractL
       }
       return null;
    } 
+   
+   /**
+    * Release the resources that the locator holds on to, such as pooled connections.
+    * The PDP calls it when it is closed. It does nothing by default.
+    */
+   public void close()
+   {
+   }
 }
\ No newline at end of file
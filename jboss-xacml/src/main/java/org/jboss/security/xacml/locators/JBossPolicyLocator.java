@@ -21,12 +21,14 @@
   */
 package org.jboss.security.xacml.locators;
 
+import java.util.ArrayList;
 import java.util.Set;
 
 import org.jboss.security.xacml.bridge.WrapperPolicyFinderModule;
 import org.jboss.security.xacml.interfaces.XACMLConstants;
 import org.jboss.security.xacml.interfaces.XACMLPolicy;
 import org.jboss.security.xacml.sunxacml.Policy;
+import org.jboss.security.xacml.sunxacml.finder.PolicyFinderModule;
 
 /**
  *  Policy Locator for plain XACML Policy instances
@@ -49,6 +51,7 @@ public class JBossPolicyLocator extends AbstractJBossPolicyLocator
    public void setPolicies(Set<XACMLPolicy> policies)
    {
       this.policies = policies;
+      this.pfml = new ArrayList<PolicyFinderModule>();
       
       for (XACMLPolicy xp : policies)
       {
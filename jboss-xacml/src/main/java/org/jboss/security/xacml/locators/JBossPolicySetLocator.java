@@ -22,7 +22,9 @@
 package org.jboss.security.xacml.locators;
 
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.jboss.security.xacml.bridge.PolicySetFinderModule;
@@ -32,15 +34,23 @@ import org.jboss.security.xacml.interfaces.XACMLPolicy;
 import org.jboss.security.xacml.sunxacml.AbstractPolicy;
 import org.jboss.security.xacml.sunxacml.Policy;
 import org.jboss.security.xacml.sunxacml.PolicySet;
+import org.jboss.security.xacml.sunxacml.finder.PolicyFinderModule;
 
 /**
  *  Locator for a PolicySet
+ *  <p>
+ *  The policies can be set again, for instance when a policy file has changed.
+ *  The finder modules of the policies that were already located are kept, 
+ *  so only the modules of new policies are built.
+ *  </p>
  *  @author Anil.Saldhana@redhat.com
  *  @since  Jul 6, 2007 
  *  @version $Revision$
  */
 public class JBossPolicySetLocator extends AbstractJBossPolicyLocator
 {  
+   private Map<XACMLPolicy, PolicyFinderModule> locatedModules = new IdentityHashMap<XACMLPolicy, PolicyFinderModule>();
+
    public JBossPolicySetLocator()
    {
    }
@@ -54,23 +64,31 @@ public class JBossPolicySetLocator extends AbstractJBossPolicyLocator
    public void setPolicies(Set<XACMLPolicy> policies)
    {
       this.policies = policies;
+      List<PolicyFinderModule> modules = new ArrayList<PolicyFinderModule>();
+      Map<XACMLPolicy, PolicyFinderModule> located = new IdentityHashMap<XACMLPolicy, PolicyFinderModule>();
       for (XACMLPolicy xp : policies)
       {
-         if (xp.getType() == XACMLPolicy.POLICYSET)
+         PolicyFinderModule module = locatedModules.get(xp);
+         if (module == null)
          {
-            PolicySetFinderModule psfm = getPopulatedPolicySetFinderModule(xp);
-            if( psfm != null )
+            if (xp.getType() == XACMLPolicy.POLICYSET)
+            {
+               module = getPopulatedPolicySetFinderModule(xp);
+            }
+            else if (xp.getType() == XACMLPolicy.POLICY)
             {
-               pfml.add(psfm); 
+               Policy p = xp.get(XACMLConstants.UNDERLYING_POLICY);
+               module = new WrapperPolicyFinderModule(p);
             }
          }
-         else if (xp.getType() == XACMLPolicy.POLICY)
+         if (module != null)
          {
-            Policy p = xp.get(XACMLConstants.UNDERLYING_POLICY);
-            WrapperPolicyFinderModule wpfm = new WrapperPolicyFinderModule(p);
-            pfml.add(wpfm);
+            modules.add(module);
+            located.put(xp, module);
          }
       }
+      this.locatedModules = located;
+      this.pfml = modules;
       this.map.put(XACMLConstants.POLICY_FINDER_MODULE, pfml);
    }
 
@@ -21,6 +21,7 @@
  */
 package org.jboss.security.xacml.locators;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 
@@ -32,6 +33,7 @@ import org.jboss.security.xacml.interfaces.XACMLPolicy;
 import org.jboss.security.xacml.sunxacml.AbstractPolicy;
 import org.jboss.security.xacml.sunxacml.Policy;
 import org.jboss.security.xacml.sunxacml.PolicySet;
+import org.jboss.security.xacml.sunxacml.finder.PolicyFinderModule;
 
 /**
  * A Policy Set Locator that follows the XACML RBAC Profile
@@ -51,6 +53,9 @@ public class JBossRBACPolicySetLocator extends JBossPolicySetLocator
    public void setPolicies(Set<XACMLPolicy> policies)
    {
       this.policies = policies;
+      this.pfml = new ArrayList<PolicyFinderModule>();
+      this.rpsFinderModule = new RPSPolicySetFinderModule();
+      this.ppsFinderModule = new PPSPolicySetFinderModule();
       pfml.add(rpsFinderModule);
       pfml.add(ppsFinderModule);
       
@@ -0,0 +1,292 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.security.xacml.locators.attrib;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A bounded pool of JDBC connections for the database attribute locators
+ * that are not configured with a container DataSource.
+ * <p>
+ * Each pooled connection keeps its prepared statements open, so a statement
+ * is only prepared once per connection. The most recently used connection is
+ * handed out first, once the driver has confirmed that it is still valid.
+ * A connection that failed during a query is closed instead of being
+ * returned to the pool, and so is a connection given back after the pool
+ * was closed.
+ * </p>
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since Oct 18, 2026
+ */
+class ConnectionPool
+{
+   private static Logger log = Logger.getLogger(ConnectionPool.class.getName());
+
+   private final String connectionURL;
+
+   private final int maxStatements;
+
+   private final long timeoutMillis;
+
+   private final Semaphore permits;
+
+   private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<PooledConnection>();
+
+   private volatile boolean closed = false;
+
+   /**
+    * Create a pool
+    * @param connectionURL the JDBC url
+    * @param maxConnections maximum number of connections open at any time
+    * @param maxStatements maximum number of prepared statements kept per connection
+    * @param timeoutMillis how long to wait for a connection when all of them are in use
+    */
+   ConnectionPool(String connectionURL, int maxConnections, int maxStatements, long timeoutMillis)
+   {
+      if (maxConnections <= 0)
+         throw new IllegalArgumentException("maxConnections should be positive:" + maxConnections);
+      this.connectionURL = connectionURL;
+      this.maxStatements = maxStatements;
+      this.timeoutMillis = timeoutMillis;
+      this.permits = new Semaphore(maxConnections, true);
+   }
+
+   /**
+    * Borrow a connection. It has to be given back with {@link #release(PooledConnection, boolean)}
+    * @return
+    * @throws SQLException if no connection could be opened or none became available in time
+    */
+   PooledConnection borrow() throws SQLException
+   {
+      if (closed)
+         throw new SQLException("The connection pool to " + connectionURL + " is closed");
+      try
+      {
+         if (!permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS))
+            throw new SQLException("Timed out waiting for a pooled connection to " + connectionURL);
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+         throw new SQLException("Interrupted while waiting for a pooled connection");
+      }
+
+      boolean borrowed = false;
+      try
+      {
+         PooledConnection pooled;
+         while ((pooled = idle.pollFirst()) != null)
+         {
+            if (pooled.isValid(getValidationTimeout()))
+            {
+               borrowed = true;
+               return pooled;
+            }
+            pooled.close();
+         }
+         pooled = new PooledConnection(DriverManager.getConnection(connectionURL), maxStatements);
+         borrowed = true;
+         return pooled;
+      }
+      finally
+      {
+         if (!borrowed)
+            permits.release();
+      }
+   }
+
+   /**
+    * Give back a borrowed connection
+    * @param pooled
+    * @param reusable false if the connection failed and should be closed
+    */
+   void release(PooledConnection pooled, boolean reusable)
+   {
+      if (reusable && !closed)
+      {
+         idle.offerFirst(pooled);
+         //the pool may have been closed while the connection was given back
+         if (closed)
+            closeIdle();
+      }
+      else
+      {
+         pooled.close();
+      }
+      permits.release();
+   }
+
+   /**
+    * Close the idle connections. The borrowed ones are closed when they are given back.
+    */
+   void close()
+   {
+      closed = true;
+      closeIdle();
+   }
+
+   private void closeIdle()
+   {
+      PooledConnection pooled;
+      while ((pooled = idle.pollFirst()) != null)
+         pooled.close();
+   }
+
+   /**
+    * Seconds that the driver may take to check an idle connection, which is
+    * at most the time to wait for a connection
+    * @return
+    */
+   private int getValidationTimeout()
+   {
+      return (int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(timeoutMillis));
+   }
+
+   /**
+    * Number of idle connections
+    * @return
+    */
+   int getIdleCount()
+   {
+      return idle.size();
+   }
+
+   /**
+    * A connection along with the statements prepared on it
+    */
+   static class PooledConnection
+   {
+      private final Connection connection;
+
+      private final Map<String, PreparedStatement> statements;
+
+      private PooledConnection(Connection connection, final int maxStatements)
+      {
+         this.connection = connection;
+         this.statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true)
+         {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest)
+            {
+               if (size() <= maxStatements)
+                  return false;
+               closeQuietly(eldest.getValue());
+               return true;
+            }
+         };
+      }
+
+      /**
+       * Get the statement prepared for the sql, preparing it on first use.
+       * The statement must not be closed by the caller.
+       * @param sql
+       * @return
+       * @throws SQLException
+       */
+      PreparedStatement prepareStatement(String sql) throws SQLException
+      {
+         PreparedStatement statement = statements.get(sql);
+         if (statement == null)
+         {
+            statement = connection.prepareStatement(sql);
+            statements.put(sql, statement);
+         }
+         else
+         {
+            statement.clearParameters();
+         }
+         return statement;
+      }
+
+      private boolean isValid(int timeoutSeconds)
+      {
+         try
+         {
+            return connection.isValid(timeoutSeconds);
+         }
+         catch (SQLException e)
+         {
+            return false;
+         }
+         catch (AbstractMethodError e)
+         {
+            //a driver written before JDBC 4 can only tell whether the connection was closed
+            return isOpen();
+         }
+      }
+
+      private boolean isOpen()
+      {
+         try
+         {
+            return !connection.isClosed();
+         }
+         catch (SQLException e)
+         {
+            return false;
+         }
+      }
+
+      private void close()
+      {
+         Iterator<PreparedStatement> iter = statements.values().iterator();
+         while (iter.hasNext())
+         {
+            closeQuietly(iter.next());
+            iter.remove();
+         }
+         try
+         {
+            connection.close();
+         }
+         catch (SQLException e)
+         {
+            if (log.isLoggable(Level.FINE))
+               log.fine("Error closing pooled connection:" + e.getLocalizedMessage());
+         }
+      }
+
+      private static void closeQuietly(PreparedStatement statement)
+      {
+         try
+         {
+            statement.close();
+         }
+         catch (SQLException e)
+         {
+         }
+      }
+   }
+}
@@ -50,6 +50,13 @@ import org.jboss.security.xacml.util.JBossXACMLUtil;
  * <b>NOTE:</b> Subclasses should try to override the {@link #getColumnValue(URI, EvaluationCtx)}
  * method if the DB is not a true RDBMS
  * </p> 
+ * <p>
+ * The data source named by DATASOURCE_JNDI_NAME is looked up once. Without a data source,
+ * the connections described by DATABASE_FILE_NAME are pooled by the locator and keep their
+ * prepared statements. The pool is sized with the MAX_CONNECTIONS (default 10), MAX_STATEMENTS
+ * (default 16 per connection) and CONNECTION_TIMEOUT (milliseconds, default 30000) options.
+ * {@link #close()} closes the pooled connections, after which the locator no longer queries the DB.
+ * </p>
  * @author Anil.Saldhana@redhat.com
  * @since Mar 1, 2010
  */
@@ -69,11 +76,34 @@ public abstract class DatabaseAttributeLocator extends StorageAttributeLocator
    //Column Name to be returned as part of the sql statement
    protected String columnName = null;
    
+   //Maximum number of pooled connections when no data source is configured
+   protected int maxConnections = 10;
+   
+   //Maximum number of prepared statements kept open per pooled connection
+   protected int maxStatements = 16;
+   
+   //Milliseconds to wait for a pooled connection
+   protected long connectionTimeout = 30000;
+   
+   private volatile DataSource dataSource = null;
+   
+   private volatile Properties dbProperties = null;
+   
+   private volatile ConnectionPool connectionPool = null;
+   
+   private boolean closed = false;
+   
    //Constants
    public static final String DS_JNDI_NAME = "DATASOURCE_JNDI_NAME";
    
    public static final String DB_FILE_NAME = "DATABASE_FILE_NAME";
    
+   public static final String MAX_CONNECTIONS = "MAX_CONNECTIONS";
+   
+   public static final String MAX_STATEMENTS = "MAX_STATEMENTS";
+   
+   public static final String CONNECTION_TIMEOUT = "CONNECTION_TIMEOUT";
+   
    @SuppressWarnings("unchecked")
    @Override
    public EvaluationResult findAttribute(URI attributeType, URI attributeId, URI issuer, URI subjectCategory,
@@ -127,49 +157,58 @@ public abstract class DatabaseAttributeLocator extends StorageAttributeLocator
       {
          this.columnName = optionValue;
       }
+      if(MAX_CONNECTIONS.equals(optionTag))
+      {
+         this.maxConnections = Integer.parseInt(optionValue.trim());
+      }
+      if(MAX_STATEMENTS.equals(optionTag))
+      {
+         this.maxStatements = Integer.parseInt(optionValue.trim());
+      }
+      if(CONNECTION_TIMEOUT.equals(optionTag))
+      {
+         this.connectionTimeout = Long.parseLong(optionValue.trim());
+      }
    } 
    
+   /**
+    * Close the pooled connections and their prepared statements. The connections
+    * in use are closed when they are given back.
+    */
+   @Override
+   public void close()
+   {
+      ConnectionPool pool;
+      synchronized(this)
+      {
+         closed = true;
+         pool = connectionPool;
+      }
+      if(pool != null)
+         pool.close();
+   }
+   
    protected Connection getConnection()
    {
       Connection connection = null;
-      if(dsJNDIName != null)
+      DataSource ds = getDataSource();
+      if(ds != null)
       {
          try
          {
-            Context ctx = new InitialContext();
-            DataSource ds = (DataSource) ctx.lookup(dsJNDIName);
             connection = ds.getConnection(); 
          }
          catch(Exception e)
          {
             if(log.isLoggable(Level.FINE))
-               log.fine("Error looking up connection via Datasource:" + e.getLocalizedMessage()); 
+               log.fine("Error getting connection via Datasource:" + e.getLocalizedMessage()); 
          }
       }
       if(connection == null && dbFileName != null)
       {
-         Properties props = new Properties();
-         ClassLoader tcl = SecurityActions.getContextClassLoader();
          try
          {
-            props.load(tcl.getResourceAsStream(dbFileName));
-         }
-         catch (IOException e)
-         {
-            throw new RuntimeException("Error loading DB file", e);
-         }
-         
-         try
-         {
-            Class.forName(props.getProperty("driverName"));
-         }
-         catch (ClassNotFoundException e)
-         {
-            throw new RuntimeException("DB Driver not found:",e);
-         }
-         try
-         {
-            connection = DriverManager.getConnection(props.getProperty("connectionURL"));
+            connection = DriverManager.getConnection(getDBProperties().getProperty("connectionURL"));
          }
          catch (SQLException e)
          {
@@ -187,38 +226,18 @@ public abstract class DatabaseAttributeLocator extends StorageAttributeLocator
     */
    protected Object getColumnValue(URI attributeType, EvaluationCtx context)
    {
-      Object columnValue = null;
+      if(getDataSource() == null && dbFileName != null)
+         return getPooledColumnValue(attributeType, context);
       
       //Do DB stuff here
       Connection connection = getConnection(); 
       
       PreparedStatement statement = null;
-      ResultSet resultSet = null; 
       
       try
       {     
          statement = connection.prepareStatement(sqlStatement);
-         
-         Object pluginValue = null;
-         try
-         {
-            pluginValue = getSubstituteValue( attributeType, context );
-         }
-         catch (URISyntaxException e)
-         {
-           throw new RuntimeException(e);
-         }
-         statement.setObject(1, pluginValue);
-
-         connection.setAutoCommit(false);
-         resultSet = statement.executeQuery(); 
-         connection.setAutoCommit(true);  
-
-         while (resultSet.next()) 
-         {
-            columnValue = resultSet.getObject(columnName); 
-            break;
-         }
+         return executeQuery(statement, attributeType, context);
       }
       catch (SQLException e)
       {
@@ -226,14 +245,6 @@ public abstract class DatabaseAttributeLocator extends StorageAttributeLocator
       }
       finally
       {
-         try
-         {
-            if(resultSet != null)
-               resultSet.close();
-         }
-         catch (SQLException e)
-         {}
-         
          try
          { 
             if(statement != null)
@@ -251,7 +262,150 @@ public abstract class DatabaseAttributeLocator extends StorageAttributeLocator
          { 
          }         
       }  
-      
-      return columnValue; 
    } 
+   
+   /**
+    * Get the value of the attribute with a connection and a prepared statement
+    * from the pool of this locator
+    * @param attributeType
+    * @param context
+    * @return
+    */
+   private Object getPooledColumnValue(URI attributeType, EvaluationCtx context)
+   {
+      ConnectionPool pool = getConnectionPool();
+      ConnectionPool.PooledConnection connection = null;
+      boolean reusable = false;
+      try
+      {
+         connection = pool.borrow();
+         Object columnValue = executeQuery(connection.prepareStatement(sqlStatement), attributeType, context);
+         reusable = true;
+         return columnValue;
+      }
+      catch (SQLException e)
+      {
+         throw new RuntimeException(e);
+      }
+      finally
+      {
+         if(connection != null)
+            pool.release(connection, reusable);
+      }
+   }
+   
+   private Object executeQuery(PreparedStatement statement, URI attributeType, EvaluationCtx context)
+   throws SQLException
+   {
+      Object columnValue = null;
+      Object pluginValue = null;
+      try
+      {
+         pluginValue = getSubstituteValue( attributeType, context );
+      }
+      catch (URISyntaxException e)
+      {
+        throw new RuntimeException(e);
+      }
+      statement.setObject(1, pluginValue);
+
+      ResultSet resultSet = statement.executeQuery(); 
+      try
+      {
+         if (resultSet.next()) 
+         {
+            columnValue = resultSet.getObject(columnName); 
+         }
+      }
+      finally
+      {
+         try
+         {
+            resultSet.close();
+         }
+         catch (SQLException e)
+         {}
+      }
+      return columnValue; 
+   }
+   
+   /**
+    * Get the container data source, looking it up the first time it is needed
+    * @return the data source or null
+    */
+   private DataSource getDataSource()
+   {
+      if(dsJNDIName == null)
+         return null;
+      DataSource ds = dataSource;
+      if(ds == null)
+      {
+         try
+         {
+            Context ctx = new InitialContext();
+            ds = (DataSource) ctx.lookup(dsJNDIName);
+            dataSource = ds;
+         }
+         catch(Exception e)
+         {
+            if(log.isLoggable(Level.FINE))
+               log.fine("Error looking up Datasource:" + e.getLocalizedMessage()); 
+         }
+      }
+      return ds;
+   }
+   
+   /**
+    * Get the DB connection information, loading it and the driver the first time
+    * @return
+    */
+   private Properties getDBProperties()
+   {
+      Properties props = dbProperties;
+      if(props == null)
+      {
+         props = new Properties();
+         ClassLoader tcl = SecurityActions.getContextClassLoader();
+         try
+         {
+            props.load(tcl.getResourceAsStream(dbFileName));
+         }
+         catch (IOException e)
+         {
+            throw new RuntimeException("Error loading DB file", e);
+         }
+         
+         try
+         {
+            Class.forName(props.getProperty("driverName"));
+         }
+         catch (ClassNotFoundException e)
+         {
+            throw new RuntimeException("DB Driver not found:",e);
+         }
+         dbProperties = props;
+      }
+      return props;
+   }
+   
+   private ConnectionPool getConnectionPool()
+   {
+      ConnectionPool pool = connectionPool;
+      if(pool == null)
+      {
+         synchronized(this)
+         {
+            pool = connectionPool;
+            if(pool == null)
+            {
+               String url = getDBProperties().getProperty("connectionURL");
+               pool = new ConnectionPool(url, maxConnections, maxStatements, connectionTimeout);
+               if(closed)
+                  pool.close();
+               connectionPool = pool;
+            }
+         }
+      }
+      return pool;
+   }
 }
@@ -29,11 +29,8 @@ import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
 import javax.naming.directory.Attribute;
-import javax.naming.directory.Attributes;
-import javax.naming.directory.SearchResult;
 
 import org.jboss.security.xacml.jaxb.Option;
 import org.jboss.security.xacml.sunxacml.EvaluationCtx;
@@ -55,6 +52,9 @@ import org.jboss.security.xacml.util.LDAPCommon;
     * attribute - The name of the entry's attribute <br/>
     * searchScope - Scope of the search for entries. Default is SUBTREE<br/>
     * searchTimeLimit - Search time limit. Default is 10000 (10 seconds)<br/>
+    * poolSize - Maximum number of pooled LDAP connections. Default is 10<br/>
+    * poolTimeout - Milliseconds to wait for a pooled connection. Default is 30000<br/>
+    * validationInterval - Milliseconds after which an idle connection is checked before use. Default is 60000<br/>
     * attributeSupportedId : Attribute that is supported by this locator for retrieval.<br/>
     * substituteValue : This is the URI of the attribute available from the request that will be plugged into the ldap filter wildcard.<br/>
     * valueDataType: The data type of the attribute that is being plugged into the filter of the wildcard. <br/>
@@ -128,25 +128,13 @@ public abstract class LDAPAttributeLocator extends StorageAttributeLocator
       
       Object[] filterArgs = new Object[] { columnValue };
       
-      NamingEnumeration<SearchResult> results = null;
-
+      Object foundValue = null;
       try
       { 
-         ldapCommon.constructJNDIContext(); 
-         
-         results = ldapCommon.search( filterArgs ); 
-         while (results.hasMore())
+         //The search borrows a pooled context, so concurrent lookups share the connections
+         for( Attribute ldapAttribute : ldapCommon.searchAttribute( filterArgs ))
          {
-            SearchResult rs = results.next();
-            Attributes attributes = rs.getAttributes();
-            if (attributes != null)
-            {
-               Attribute ldapAttribute = attributes.get( ldapCommon.getLdapAttribute() );
-               if (ldapAttribute != null)
-               {
-                  attributeValue = ldapAttribute.get(); 
-              }
-            }
+            foundValue = ldapAttribute.get(); 
          }  
       }
       catch (NamingException e)
@@ -154,18 +142,10 @@ public abstract class LDAPAttributeLocator extends StorageAttributeLocator
          log.severe(e.getMessage());
          throw new IllegalStateException(e);
       }
-      finally
-      {
-         if( results != null )
-         {
-            try {   results.close(); } catch ( NamingException ignore ) {}
-         }
-
-         try {  ldapCommon.closeJNDIContext(); }  catch (NamingException ignore ) {} 
-      }
+      attributeValue = foundValue;
        
       Set<AttributeValue> bagSet = new HashSet<AttributeValue>();
-      bagSet.add( JBossXACMLUtil.getAttributeValue( attributeValue ) );
+      bagSet.add( JBossXACMLUtil.getAttributeValue( foundValue ) );
       
       return new EvaluationResult( new BagAttribute( attributeType, bagSet )); 
    }
@@ -176,4 +156,14 @@ public abstract class LDAPAttributeLocator extends StorageAttributeLocator
       super.usePassedOption(optionTag, optionValue);
       ldapCommon.processPassedOption(optionTag, optionValue); 
    }   
+   
+   /**
+    * Close the pooled LDAP contexts
+    * @see LDAPCommon#closePool()
+    */
+   @Override
+   public void close()
+   {
+      ldapCommon.closePool();
+   }
 }
\ No newline at end of file
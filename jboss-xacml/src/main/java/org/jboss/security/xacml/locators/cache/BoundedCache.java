@@ -0,0 +1,673 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.security.xacml.locators.cache;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded cache that is safe for concurrent use.
+ * <p>
+ * The cache is split into segments, each guarded by its own lock and holding
+ * an access ordered map, so that readers on different segments never contend.
+ * Entries may expire after a time to live. When a segment is full, a candidate
+ * is only admitted if it has been requested at least as often as the least
+ * recently used entry it would evict. Frequencies are estimated by a small
+ * count-min sketch per segment that is periodically aged.
+ * </p>
+ * <p>
+ * With refresh ahead, an entry that is read once a fraction of its time to live
+ * has elapsed is still returned, and a {@link RefreshListener} is told once that
+ * it should be recomputed, so that hot entries are replaced before they expire.
+ * </p>
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since Oct 18, 2026
+ */
+public class BoundedCache<K, V>
+{
+   private final Segment<K, V>[] segments;
+
+   private final int segmentMask;
+
+   private final long timeToLiveNanos;
+
+   private final boolean frequencyAdmission;
+
+   private final long refreshAheadNanos;
+
+   private final AtomicLong hits = new AtomicLong();
+
+   private final AtomicLong misses = new AtomicLong();
+
+   private final AtomicLong evictions = new AtomicLong();
+
+   private final AtomicLong rejections = new AtomicLong();
+
+   private final AtomicLong refreshes = new AtomicLong();
+
+   /**
+    * Create a cache
+    * @param maxEntries maximum number of entries held by the cache
+    * @param timeToLiveMillis time to live of an entry, or 0 if entries do not expire
+    * @param concurrencyLevel expected number of concurrent writers, rounded to a power of two
+    * @param initialCapacity initial capacity of the whole cache
+    * @param loadFactor load factor of the segment maps
+    * @param frequencyAdmission whether a full segment should reject rarely requested candidates
+    */
+   public BoundedCache(int maxEntries, long timeToLiveMillis, int concurrencyLevel, int initialCapacity,
+         float loadFactor, boolean frequencyAdmission)
+   {
+      this(maxEntries, timeToLiveMillis, concurrencyLevel, initialCapacity, loadFactor, frequencyAdmission, 0f);
+   }
+
+   /**
+    * Create a cache that refreshes its entries ahead of their expiry
+    * @param maxEntries maximum number of entries held by the cache
+    * @param timeToLiveMillis time to live of an entry, or 0 if entries do not expire
+    * @param concurrencyLevel expected number of concurrent writers, rounded to a power of two
+    * @param initialCapacity initial capacity of the whole cache
+    * @param loadFactor load factor of the segment maps
+    * @param frequencyAdmission whether a full segment should reject rarely requested candidates
+    * @param refreshAhead fraction of the time to live after which a read entry is due for
+    * a refresh, or 0 if entries are not refreshed
+    * @see #get(Object, RefreshListener)
+    */
+   @SuppressWarnings("unchecked")
+   public BoundedCache(int maxEntries, long timeToLiveMillis, int concurrencyLevel, int initialCapacity,
+         float loadFactor, boolean frequencyAdmission, float refreshAhead)
+   {
+      if (maxEntries <= 0)
+         throw new IllegalArgumentException("maxEntries should be positive:" + maxEntries);
+
+      int segmentCount = 1;
+      while (segmentCount < concurrencyLevel && segmentCount < maxEntries)
+         segmentCount <<= 1;
+
+      this.segmentMask = segmentCount - 1;
+      this.timeToLiveNanos = timeToLiveMillis > 0 ? timeToLiveMillis * 1000000L : 0L;
+      this.frequencyAdmission = frequencyAdmission;
+      this.refreshAheadNanos = (refreshAhead > 0f && refreshAhead < 1f) ? (long) (timeToLiveNanos * refreshAhead) : 0L;
+
+      int perSegmentMax = (maxEntries + segmentCount - 1) / segmentCount;
+      int perSegmentCapacity = Math.max(1, initialCapacity / segmentCount);
+      this.segments = new Segment[segmentCount];
+      for (int i = 0; i < segmentCount; i++)
+      {
+         segments[i] = new Segment<K, V>(perSegmentMax, perSegmentCapacity, loadFactor);
+      }
+   }
+
+   /**
+    * Get the value cached for a key
+    * @param key
+    * @return the value, or null if it is not cached or has expired
+    */
+   public V get(K key)
+   {
+      return get(key, null);
+   }
+
+   /**
+    * Get the value cached for a key, and tell a listener when the value is due
+    * for a refresh. The listener is called on the calling thread, at most once
+    * per cached value, and should not block.
+    * @param key
+    * @param listener the listener, or null
+    * @return the value, or null if it is not cached or has expired
+    */
+   public V get(K key, RefreshListener<? super K, ? super V> listener)
+   {
+      int hash = spread(key.hashCode());
+      Segment<K, V> segment = segmentFor(hash);
+      V value = segment.get(key, hash, timeToLiveNanos > 0 ? System.nanoTime() : 0L,
+            refreshAheadNanos > 0 ? listener : null, this);
+      if (value == null)
+         misses.incrementAndGet();
+      else
+         hits.incrementAndGet();
+      return value;
+   }
+
+   /**
+    * Cache a value for a key
+    * @param key
+    * @param value
+    * @return true if the value was admitted into the cache
+    */
+   public boolean put(K key, V value)
+   {
+      return put(key, value, 0L);
+   }
+
+   /**
+    * Cache a value for a key for at most some time, such as what is left of the
+    * lifetime of a value cached before. The entry is due for a refresh as long
+    * before its expiry as any other entry.
+    * @param key
+    * @param value
+    * @param timeToLiveMillis time to live of the entry, capped at the time to live
+    * of the cache, or 0 for the time to live of the cache
+    * @return true if the value was admitted into the cache
+    */
+   public boolean put(K key, V value, long timeToLiveMillis)
+   {
+      if (value == null)
+         throw new IllegalArgumentException("value is null");
+      long ttl = timeToLiveNanos;
+      if (ttl > 0 && timeToLiveMillis > 0 && timeToLiveMillis < ttl / 1000000L)
+         ttl = timeToLiveMillis * 1000000L;
+      int hash = spread(key.hashCode());
+      long now = ttl > 0 ? System.nanoTime() : 0L;
+      long expiresAt = ttl > 0 ? now + ttl : 0L;
+      long refreshAt = refreshAheadNanos > 0 ? expiresAt - (timeToLiveNanos - refreshAheadNanos) : 0L;
+      return segmentFor(hash).put(key, hash, new CacheEntry<V>(value, expiresAt, refreshAt), this);
+   }
+
+   /**
+    * Remove the value cached for a key
+    * @param key
+    * @return the removed value or null
+    */
+   public V remove(K key)
+   {
+      int hash = spread(key.hashCode());
+      return segmentFor(hash).remove(key);
+   }
+
+   /**
+    * Remove all the entries
+    */
+   public void clear()
+   {
+      for (Segment<K, V> segment : segments)
+         segment.clear();
+   }
+
+   /**
+    * Remove the entries whose keys are accepted by a filter
+    * @param filter
+    * @return the number of removed entries
+    */
+   public int removeAll(KeyFilter<? super K> filter)
+   {
+      int removed = 0;
+      for (Segment<K, V> segment : segments)
+         removed += segment.removeAll(filter);
+      return removed;
+   }
+
+   /**
+    * Remove the entries that are accepted by a filter
+    * @param filter
+    * @return the number of removed entries
+    */
+   public int removeEntries(EntryFilter<? super K, ? super V> filter)
+   {
+      int removed = 0;
+      for (Segment<K, V> segment : segments)
+         removed += segment.removeEntries(filter);
+      return removed;
+   }
+
+   /**
+    * Get the entries that are requested most often, the most recently used
+    * first among equally popular ones. Expired entries are left out.
+    * @param maxEntries maximum number of entries to return
+    * @return a copy of the entries
+    */
+   public List<Map.Entry<K, V>> getHottestEntries(int maxEntries)
+   {
+      long now = timeToLiveNanos > 0 ? System.nanoTime() : 0L;
+      List<RankedEntry<K, V>> ranked = new ArrayList<RankedEntry<K, V>>();
+      for (Segment<K, V> segment : segments)
+         segment.rank(now, ranked);
+      Collections.sort(ranked, new Comparator<RankedEntry<K, V>>()
+      {
+         public int compare(RankedEntry<K, V> e1, RankedEntry<K, V> e2)
+         {
+            if (e1.frequency != e2.frequency)
+               return e1.frequency > e2.frequency ? -1 : 1;
+            return e1.recency > e2.recency ? -1 : (e1.recency == e2.recency ? 0 : 1);
+         }
+      });
+
+      int count = Math.min(maxEntries, ranked.size());
+      List<Map.Entry<K, V>> hottest = new ArrayList<Map.Entry<K, V>>(count);
+      for (int i = 0; i < count; i++)
+         hottest.add(ranked.get(i).entry);
+      return hottest;
+   }
+
+   /**
+    * Get the number of entries, including those that have expired but have
+    * not been purged yet
+    * @return
+    */
+   public int size()
+   {
+      int size = 0;
+      for (Segment<K, V> segment : segments)
+         size += segment.size();
+      return size;
+   }
+
+   public long getHitCount()
+   {
+      return hits.get();
+   }
+
+   public long getMissCount()
+   {
+      return misses.get();
+   }
+
+   public long getEvictionCount()
+   {
+      return evictions.get();
+   }
+
+   public long getRejectionCount()
+   {
+      return rejections.get();
+   }
+
+   public long getRefreshCount()
+   {
+      return refreshes.get();
+   }
+
+   @Override
+   public String toString()
+   {
+      return "BoundedCache[size=" + size() + " hits=" + hits + " misses=" + misses + " evictions="
+            + evictions + " rejections=" + rejections + " refreshes=" + refreshes + "]";
+   }
+
+   /**
+    * Selects the keys of the entries to remove
+    */
+   public interface KeyFilter<K>
+   {
+      boolean accept(K key);
+   }
+
+   /**
+    * Selects the entries to remove
+    */
+   public interface EntryFilter<K, V>
+   {
+      boolean accept(K key, V value);
+   }
+
+   /**
+    * Told when a value that is read is due for a refresh
+    */
+   public interface RefreshListener<K, V>
+   {
+      void refreshDue(K key, V value);
+   }
+
+   private Segment<K, V> segmentFor(int hash)
+   {
+      return segments[(hash >>> 16) & segmentMask];
+   }
+
+   private static int spread(int h)
+   {
+      h ^= (h >>> 20) ^ (h >>> 12);
+      return h ^ (h >>> 7) ^ (h >>> 4);
+   }
+
+   private static class CacheEntry<V>
+   {
+      private final V value;
+
+      private final long expiresAt;
+
+      private final long refreshAt;
+
+      //guarded by the segment lock
+      private boolean refreshing;
+
+      private CacheEntry(V value, long expiresAt, long refreshAt)
+      {
+         this.value = value;
+         this.expiresAt = expiresAt;
+         this.refreshAt = refreshAt;
+      }
+
+      private boolean isExpired(long now)
+      {
+         return expiresAt != 0L && now - expiresAt >= 0;
+      }
+
+      private boolean isRefreshDue(long now)
+      {
+         return refreshAt != 0L && !refreshing && now - refreshAt >= 0;
+      }
+   }
+
+   private static class RankedEntry<K, V>
+   {
+      private final Map.Entry<K, V> entry;
+
+      private final int frequency;
+
+      private final int recency;
+
+      private RankedEntry(K key, V value, int frequency, int recency)
+      {
+         this.entry = new AbstractMap.SimpleImmutableEntry<K, V>(key, value);
+         this.frequency = frequency;
+         this.recency = recency;
+      }
+   }
+
+   private static class Segment<K, V>
+   {
+      private final ReentrantLock lock = new ReentrantLock();
+
+      private final LinkedHashMap<K, CacheEntry<V>> map;
+
+      private final int maxEntries;
+
+      private final FrequencySketch sketch;
+
+      private Segment(int maxEntries, int initialCapacity, float loadFactor)
+      {
+         this.maxEntries = maxEntries;
+         this.map = new LinkedHashMap<K, CacheEntry<V>>(initialCapacity, loadFactor, true);
+         this.sketch = new FrequencySketch(maxEntries);
+      }
+
+      private V get(K key, int hash, long now, RefreshListener<? super K, ? super V> listener,
+            BoundedCache<K, V> cache)
+      {
+         V value;
+         boolean refresh = false;
+         lock.lock();
+         try
+         {
+            sketch.increment(hash);
+            CacheEntry<V> entry = map.get(key);
+            if (entry == null)
+               return null;
+            if (entry.isExpired(now))
+            {
+               map.remove(key);
+               return null;
+            }
+            if (listener != null && entry.isRefreshDue(now))
+            {
+               entry.refreshing = true;
+               refresh = true;
+            }
+            value = entry.value;
+         }
+         finally
+         {
+            lock.unlock();
+         }
+         if (refresh)
+         {
+            cache.refreshes.incrementAndGet();
+            listener.refreshDue(key, value);
+         }
+         return value;
+      }
+
+      private boolean put(K key, int hash, CacheEntry<V> entry, BoundedCache<K, V> cache)
+      {
+         lock.lock();
+         try
+         {
+            if (!map.containsKey(key) && map.size() >= maxEntries)
+            {
+               if (!evict(hash, cache))
+               {
+                  cache.rejections.incrementAndGet();
+                  return false;
+               }
+            }
+            map.put(key, entry);
+            return true;
+         }
+         finally
+         {
+            lock.unlock();
+         }
+      }
+
+      /**
+       * Make room for a candidate: expired entries go first, otherwise the
+       * least recently used entry is evicted if the candidate is at least as popular
+       */
+      private boolean evict(int candidateHash, BoundedCache<K, V> cache)
+      {
+         long now = cache.timeToLiveNanos > 0 ? System.nanoTime() : 0L;
+         Iterator<Map.Entry<K, CacheEntry<V>>> iter = map.entrySet().iterator();
+         Map.Entry<K, CacheEntry<V>> eldest = iter.hasNext() ? iter.next() : null;
+         if (eldest == null)
+            return true;
+
+         if (!eldest.getValue().isExpired(now) && cache.frequencyAdmission)
+         {
+            int victimHash = spread(eldest.getKey().hashCode());
+            if (sketch.frequency(candidateHash) < sketch.frequency(victimHash))
+               return false;
+         }
+         iter.remove();
+         cache.evictions.incrementAndGet();
+         return true;
+      }
+
+      private V remove(K key)
+      {
+         lock.lock();
+         try
+         {
+            CacheEntry<V> entry = map.remove(key);
+            return entry != null ? entry.value : null;
+         }
+         finally
+         {
+            lock.unlock();
+         }
+      }
+
+      private int removeAll(KeyFilter<? super K> filter)
+      {
+         lock.lock();
+         try
+         {
+            int removed = 0;
+            Iterator<K> iter = map.keySet().iterator();
+            while (iter.hasNext())
+            {
+               if (filter.accept(iter.next()))
+               {
+                  iter.remove();
+                  removed++;
+               }
+            }
+            return removed;
+         }
+         finally
+         {
+            lock.unlock();
+         }
+      }
+
+      private int removeEntries(EntryFilter<? super K, ? super V> filter)
+      {
+         lock.lock();
+         try
+         {
+            int removed = 0;
+            Iterator<Map.Entry<K, CacheEntry<V>>> iter = map.entrySet().iterator();
+            while (iter.hasNext())
+            {
+               Map.Entry<K, CacheEntry<V>> entry = iter.next();
+               if (filter.accept(entry.getKey(), entry.getValue().value))
+               {
+                  iter.remove();
+                  removed++;
+               }
+            }
+            return removed;
+         }
+         finally
+         {
+            lock.unlock();
+         }
+      }
+
+      /**
+       * Add the live entries along with their estimated frequency and their
+       * position in the access order, which grows with recency
+       */
+      private void rank(long now, List<RankedEntry<K, V>> ranked)
+      {
+         lock.lock();
+         try
+         {
+            int recency = 0;
+            for (Map.Entry<K, CacheEntry<V>> entry : map.entrySet())
+            {
+               CacheEntry<V> cached = entry.getValue();
+               recency++;
+               if (cached.isExpired(now))
+                  continue;
+               int frequency = sketch.frequency(spread(entry.getKey().hashCode()));
+               ranked.add(new RankedEntry<K, V>(entry.getKey(), cached.value, frequency, recency));
+            }
+         }
+         finally
+         {
+            lock.unlock();
+         }
+      }
+
+      private void clear()
+      {
+         lock.lock();
+         try
+         {
+            map.clear();
+         }
+         finally
+         {
+            lock.unlock();
+         }
+      }
+
+      private int size()
+      {
+         lock.lock();
+         try
+         {
+            return map.size();
+         }
+         finally
+         {
+            lock.unlock();
+         }
+      }
+   }
+
+   /**
+    * A count-min sketch with four rows of small counters. All counters are
+    * halved once the number of increments reaches ten times the capacity so that
+    * old popularity fades away.
+    */
+   private static class FrequencySketch
+   {
+      private static final int MAX_COUNT = 15;
+
+      private static final int[] SEEDS = {0x97cb3127, 0xc2b2ae35, 0x165667b1, 0x27d4eb2f};
+
+      private final int[][] table;
+
+      private final int mask;
+
+      private final int sampleSize;
+
+      private int additions;
+
+      private FrequencySketch(int capacity)
+      {
+         int width = 16;
+         while (width < capacity * 2)
+            width <<= 1;
+         this.table = new int[SEEDS.length][width];
+         this.mask = width - 1;
+         this.sampleSize = Math.max(10 * capacity, 16);
+      }
+
+      private void increment(int hash)
+      {
+         for (int i = 0; i < SEEDS.length; i++)
+         {
+            int index = indexOf(hash, i);
+            if (table[i][index] < MAX_COUNT)
+               table[i][index]++;
+         }
+         if (++additions >= sampleSize)
+            reset();
+      }
+
+      private int frequency(int hash)
+      {
+         int frequency = MAX_COUNT;
+         for (int i = 0; i < SEEDS.length; i++)
+         {
+            frequency = Math.min(frequency, table[i][indexOf(hash, i)]);
+         }
+         return frequency;
+      }
+
+      private int indexOf(int hash, int row)
+      {
+         int h = hash * SEEDS[row];
+         h ^= h >>> 16;
+         return h & mask;
+      }
+
+      private void reset()
+      {
+         for (int[] row : table)
+         {
+            for (int j = 0; j < row.length; j++)
+               row[j] >>>= 1;
+         }
+         additions /= 2;
+      }
+   }
+}
@@ -33,6 +33,10 @@ import org.jboss.security.xacml.sunxacml.ctx.ResponseCtx;
 
 /**
  * Base Class for Cache Locators
+ * <p>
+ * Cache locators are called concurrently when the PDP evaluates
+ * without a lock, so implementations should be thread-safe.
+ * </p>
  * @author Anil.Saldhana@redhat.com
  * @since Aug 27, 2010
  */
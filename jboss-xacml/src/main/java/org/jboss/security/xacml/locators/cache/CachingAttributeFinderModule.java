@@ -0,0 +1,429 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.security.xacml.locators.cache;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jboss.security.xacml.jaxb.Option;
+import org.jboss.security.xacml.sunxacml.EvaluationCtx;
+import org.jboss.security.xacml.sunxacml.attr.AttributeDesignator;
+import org.jboss.security.xacml.sunxacml.attr.AttributeValue;
+import org.jboss.security.xacml.sunxacml.attr.BagAttribute;
+import org.jboss.security.xacml.sunxacml.attr.StringAttribute;
+import org.jboss.security.xacml.sunxacml.cond.EvaluationResult;
+import org.jboss.security.xacml.sunxacml.finder.AttributeFinderModule;
+import org.w3c.dom.Node;
+
+/**
+ * An attribute finder module that caches the values found by another module,
+ * such as an attribute locator backed by a database or an LDAP.
+ * <p>
+ * The values are cached by attribute id, datatype, issuer and designator type,
+ * along with the value of the request attribute that the module looks the
+ * attribute up with (the key attribute). A locator is decorated by the
+ * {@code JBossPDP} when its configuration has one of these options:
+ * </p>
+ * <ul>
+ * <li>attributeCacheMaxEntries - maximum number of cached values (default 1000)</li>
+ * <li>attributeCacheTimeToLive - milliseconds a value is cached (default 60000, 0 means forever)</li>
+ * <li>attributeCacheNegative - whether empty bags are cached (default true)</li>
+ * <li>attributeCacheKeyId - id of the key attribute. Defaults to the substituteValue or
+ * preparedStatementValue option of the locator. Without a key attribute a value is shared by
+ * all the requests.</li>
+ * <li>attributeCacheKeyDataType - datatype of the key attribute. Defaults to the valueDataType
+ * option of the locator, or string</li>
+ * <li>attributeCacheKeyCategory - subject, resource, action or environment, the section of the
+ * request holding the key attribute. Defaults to the section of the attribute being looked up</li>
+ * </ul>
+ * <p>
+ * Indeterminate results and attribute selectors are never cached.
+ * </p>
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since Oct 18, 2026
+ */
+public class CachingAttributeFinderModule extends AttributeFinderModule
+{
+   public static final String MAX_ENTRIES = "attributeCacheMaxEntries";
+
+   public static final String TIME_TO_LIVE = "attributeCacheTimeToLive";
+
+   public static final String NEGATIVE_CACHING = "attributeCacheNegative";
+
+   public static final String KEY_ID = "attributeCacheKeyId";
+
+   public static final String KEY_DATA_TYPE = "attributeCacheKeyDataType";
+
+   public static final String KEY_CATEGORY = "attributeCacheKeyCategory";
+
+   private static final String[] CATEGORIES = {"subject", "resource", "action", "environment"};
+
+   private final AttributeFinderModule delegate;
+
+   private final BoundedCache<AttributeKey, EvaluationResult> cache;
+
+   private final boolean negativeCaching;
+
+   private final URI keyId;
+
+   private final URI keyDataType;
+
+   private final int keyCategory;
+
+   /**
+    * Create a caching module
+    * @param delegate the module that finds the values
+    * @param maxEntries maximum number of cached values
+    * @param timeToLiveMillis milliseconds a value is cached, or 0 if values do not expire
+    * @param negativeCaching whether empty bags are cached
+    * @param keyId id of the key attribute, or null
+    * @param keyDataType datatype of the key attribute
+    * @param keyCategory designator type of the key attribute, or -1 for the type of the looked up attribute
+    */
+   public CachingAttributeFinderModule(AttributeFinderModule delegate, int maxEntries, long timeToLiveMillis,
+         boolean negativeCaching, URI keyId, URI keyDataType, int keyCategory)
+   {
+      this.delegate = delegate;
+      this.cache = new BoundedCache<AttributeKey, EvaluationResult>(maxEntries, timeToLiveMillis, 16,
+            Math.min(maxEntries, 128), 0.75f, true);
+      this.negativeCaching = negativeCaching;
+      this.keyId = keyId;
+      this.keyDataType = keyDataType;
+      this.keyCategory = keyCategory;
+   }
+
+   /**
+    * Decorate a module if its options ask for caching
+    * @param module
+    * @param options the options of the module
+    * @return the caching module, or the module itself
+    */
+   public static AttributeFinderModule decorate(AttributeFinderModule module, List<Option> options)
+   {
+      Map<String, String> values = new HashMap<String, String>();
+      if (options != null)
+      {
+         for (Option option : options)
+         {
+            List<Object> content = option.getContent();
+            if (content != null && content.size() > 0 && content.get(0) instanceof String)
+               values.put(option.getName(), ((String) content.get(0)).trim());
+         }
+      }
+      if (!values.containsKey(MAX_ENTRIES) && !values.containsKey(TIME_TO_LIVE))
+         return module;
+
+      int maxEntries = values.containsKey(MAX_ENTRIES) ? Integer.parseInt(values.get(MAX_ENTRIES)) : 1000;
+      long timeToLive = values.containsKey(TIME_TO_LIVE) ? Long.parseLong(values.get(TIME_TO_LIVE)) : 60000L;
+      boolean negativeCaching = !values.containsKey(NEGATIVE_CACHING)
+            || Boolean.parseBoolean(values.get(NEGATIVE_CACHING));
+
+      String keyId = values.get(KEY_ID);
+      if (keyId == null)
+         keyId = values.get("substituteValue");
+      if (keyId == null)
+         keyId = values.get("preparedStatementValue");
+      String keyDataType = values.get(KEY_DATA_TYPE);
+      if (keyDataType == null)
+         keyDataType = values.get("valueDataType");
+      if (keyDataType == null)
+         keyDataType = StringAttribute.identifier;
+
+      int keyCategory = -1;
+      String category = values.get(KEY_CATEGORY);
+      if (category != null)
+      {
+         for (int i = 0; i < CATEGORIES.length; i++)
+         {
+            if (CATEGORIES[i].equalsIgnoreCase(category))
+               keyCategory = i;
+         }
+         if (keyCategory == -1)
+            throw new IllegalArgumentException("Unknown " + KEY_CATEGORY + ":" + category);
+      }
+
+      try
+      {
+         return new CachingAttributeFinderModule(module, maxEntries, timeToLive, negativeCaching,
+               keyId != null ? new URI(keyId) : null, new URI(keyDataType), keyCategory);
+      }
+      catch (URISyntaxException e)
+      {
+         throw new IllegalArgumentException(e);
+      }
+   }
+
+   /**
+    * Get the decorated module
+    * @return
+    */
+   public AttributeFinderModule getDelegate()
+   {
+      return delegate;
+   }
+
+   @Override
+   public String getIdentifier()
+   {
+      return delegate.getIdentifier();
+   }
+
+   @Override
+   public boolean isDesignatorSupported()
+   {
+      return delegate.isDesignatorSupported();
+   }
+
+   @Override
+   public boolean isSelectorSupported()
+   {
+      return delegate.isSelectorSupported();
+   }
+
+   @SuppressWarnings("rawtypes")
+   @Override
+   public Set getSupportedDesignatorTypes()
+   {
+      return delegate.getSupportedDesignatorTypes();
+   }
+
+   @SuppressWarnings("rawtypes")
+   @Override
+   public Set getSupportedIds()
+   {
+      return delegate.getSupportedIds();
+   }
+
+   @Override
+   public EvaluationResult findAttribute(URI attributeType, URI attributeId, URI issuer, URI subjectCategory,
+         EvaluationCtx context, int designatorType)
+   {
+      String keyValue = null;
+      if (keyId != null)
+      {
+         keyValue = getKeyValue(context, designatorType, subjectCategory);
+         if (keyValue == null)
+            return delegate.findAttribute(attributeType, attributeId, issuer, subjectCategory, context,
+                  designatorType);
+      }
+
+      AttributeKey key = new AttributeKey(attributeId, attributeType, issuer, subjectCategory, designatorType,
+            keyValue);
+      EvaluationResult result = cache.get(key);
+      if (result != null)
+         return result;
+
+      result = delegate.findAttribute(attributeType, attributeId, issuer, subjectCategory, context, designatorType);
+      if (!result.indeterminate())
+      {
+         BagAttribute bag = (BagAttribute) result.getAttributeValue();
+         if (negativeCaching || !bag.isEmpty())
+            cache.put(key, result);
+      }
+      return result;
+   }
+
+   @Override
+   public EvaluationResult findAttribute(String contextPath, Node namespaceNode, URI attributeType,
+         EvaluationCtx context, String xpathVersion)
+   {
+      return delegate.findAttribute(contextPath, namespaceNode, attributeType, context, xpathVersion);
+   }
+
+   /**
+    * Drop all the cached values, and ask the decorated module to do the same
+    */
+   @Override
+   public void invalidateCache()
+   {
+      cache.clear();
+      delegate.invalidateCache();
+   }
+
+   /**
+    * Drop the values cached for an attribute
+    * @param attributeId
+    * @return the number of dropped values
+    */
+   public int invalidate(final URI attributeId)
+   {
+      return cache.removeAll(new BoundedCache.KeyFilter<AttributeKey>()
+      {
+         public boolean accept(AttributeKey key)
+         {
+            return key.attributeId.equals(attributeId);
+         }
+      });
+   }
+
+   /**
+    * Drop the values cached for a value of the key attribute, such as a subject
+    * whose attributes have changed in the store
+    * @param keyValue the encoded value of the key attribute
+    * @return the number of dropped values
+    */
+   public int invalidateKey(final String keyValue)
+   {
+      return cache.removeAll(new BoundedCache.KeyFilter<AttributeKey>()
+      {
+         public boolean accept(AttributeKey key)
+         {
+            return key.hasKeyValue(keyValue);
+         }
+      });
+   }
+
+   /**
+    * Get the number of cached values
+    * @return
+    */
+   public int size()
+   {
+      return cache.size();
+   }
+
+   @Override
+   public String toString()
+   {
+      return "CachingAttributeFinderModule[" + delegate.getIdentifier() + " " + cache + "]";
+   }
+
+   /**
+    * Get the encoded values of the key attribute in the request
+    * @return the values, or null if the key attribute could not be resolved
+    */
+   @SuppressWarnings("rawtypes")
+   private String getKeyValue(EvaluationCtx context, int designatorType, URI subjectCategory)
+   {
+      int category = keyCategory != -1 ? keyCategory : designatorType;
+      EvaluationResult result;
+      switch (category)
+      {
+         case AttributeDesignator.SUBJECT_TARGET :
+            URI subjectCat = subjectCategory;
+            if (subjectCat == null || keyCategory != -1)
+               subjectCat = URI.create(AttributeDesignator.SUBJECT_CATEGORY_DEFAULT);
+            result = context.getSubjectAttribute(keyDataType, keyId, subjectCat);
+            break;
+         case AttributeDesignator.RESOURCE_TARGET :
+            result = context.getResourceAttribute(keyDataType, keyId, null);
+            break;
+         case AttributeDesignator.ACTION_TARGET :
+            result = context.getActionAttribute(keyDataType, keyId, null);
+            break;
+         default :
+            result = context.getEnvironmentAttribute(keyDataType, keyId, null);
+            break;
+      }
+      if (result.indeterminate())
+         return null;
+
+      List<String> values = new ArrayList<String>();
+      Iterator iter = ((BagAttribute) result.getAttributeValue()).iterator();
+      while (iter.hasNext())
+         values.add(((AttributeValue) iter.next()).encode());
+      Collections.sort(values);
+
+      StringBuilder builder = new StringBuilder();
+      for (String value : values)
+      {
+         if (builder.length() > 0)
+            builder.append('\n');
+         builder.append(value);
+      }
+      return builder.toString();
+   }
+
+   private static class AttributeKey
+   {
+      private final URI attributeId;
+
+      private final URI attributeType;
+
+      private final URI issuer;
+
+      private final URI subjectCategory;
+
+      private final int designatorType;
+
+      private final String keyValue;
+
+      private AttributeKey(URI attributeId, URI attributeType, URI issuer, URI subjectCategory, int designatorType,
+            String keyValue)
+      {
+         this.attributeId = attributeId;
+         this.attributeType = attributeType;
+         this.issuer = issuer;
+         this.subjectCategory = subjectCategory;
+         this.designatorType = designatorType;
+         this.keyValue = keyValue;
+      }
+
+      private boolean hasKeyValue(String value)
+      {
+         if (keyValue == null)
+            return false;
+         for (String encoded : keyValue.split("\n"))
+         {
+            if (encoded.equals(value))
+               return true;
+         }
+         return false;
+      }
+
+      @Override
+      public int hashCode()
+      {
+         int hash = designatorType;
+         hash = 31 * hash + attributeId.hashCode();
+         hash = 31 * hash + (attributeType == null ? 0 : attributeType.hashCode());
+         hash = 31 * hash + (issuer == null ? 0 : issuer.hashCode());
+         hash = 31 * hash + (subjectCategory == null ? 0 : subjectCategory.hashCode());
+         return 31 * hash + (keyValue == null ? 0 : keyValue.hashCode());
+      }
+
+      @Override
+      public boolean equals(Object obj)
+      {
+         if (this == obj)
+            return true;
+         if (!(obj instanceof AttributeKey))
+            return false;
+         AttributeKey other = (AttributeKey) obj;
+         return designatorType == other.designatorType && attributeId.equals(other.attributeId)
+               && equal(attributeType, other.attributeType) && equal(issuer, other.issuer)
+               && equal(subjectCategory, other.subjectCategory) && equal(keyValue, other.keyValue);
+      }
+
+      private static boolean equal(Object a, Object b)
+      {
+         return a == null ? b == null : a.equals(b);
+      }
+   }
+}
@@ -21,14 +21,26 @@
  */
 package org.jboss.security.xacml.locators.cache;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.List; 
-import java.util.WeakHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.jboss.security.xacml.jaxb.Option;
+import org.jboss.security.xacml.sunxacml.AttributeDependencies;
+import org.jboss.security.xacml.sunxacml.AttributeDependencies.Designator;
+import org.jboss.security.xacml.sunxacml.AttributeDependencies.PolicyDependency;
+import org.jboss.security.xacml.sunxacml.attr.AttributeDesignator;
 import org.jboss.security.xacml.sunxacml.ctx.Attribute;
 import org.jboss.security.xacml.sunxacml.ctx.RequestCtx;
 import org.jboss.security.xacml.sunxacml.ctx.ResponseCtx;
@@ -41,9 +53,35 @@ import static org.jboss.security.xacml.util.JBossXACMLUtil.getTokenList;
  * A Cache that stores decisions made on requests.
  * 
  * NOTE: Configure this if you know that your requests are going to closely match each other.
- * If the requests are going to be independent, then the cache will just grow. Since the cache
- * implementation uses a {@code java.util.WeakHashMap}, the cache is going to be JDK controlled
- * under the Garbage Collector.
+ * The cache is bounded by the {@code maxEntries} option. Entries expire after the
+ * {@code timeToLive} option (in milliseconds) if it is set. When the cache is full, a new
+ * decision is only admitted if its request has been seen at least as often as the entry
+ * it would evict. The cache is safe for concurrent use and does not need the PDP lock.
+ * 
+ * With the {@code dependencyTracking} option, the PDP records which attributes an
+ * evaluation reads, and the decision is cached under the values the request has for
+ * those attributes only, so requests that differ in attributes the policies did not
+ * read share the decision without listing them in the {@code ignore*ID} options. A 
+ * request is looked up under each of the distinct sets of attributes seen so far, up
+ * to the {@code maxDependencySets} option (8 by default), starting with the set of the
+ * last hit and stopping at the first match. Decisions that depend on the whole request,
+ * such as those of selectors and scoped requests, are cached under the whole request,
+ * resource content included.
+ * 
+ * Decisions added by the PDP are tagged with the ids and versions of the policies and
+ * policy sets that were consulted, so that a policy update only removes the decisions
+ * that depend on the updated policies.
+ * 
+ * With the {@code refreshAhead} option, a fraction of the {@code timeToLive}, a decision
+ * that is asked for once that fraction of its time to live has elapsed is still returned,
+ * and the PDP evaluates the request again in the background to replace the decision
+ * before it expires, so that a hot decision does not expire in front of a caller.
+ * 
+ * With the {@code snapshotFile} option, the PDP periodically writes the most requested
+ * decisions, up to the {@code snapshotEntries} option, to the file every
+ * {@code snapshotInterval} milliseconds, and reads them back when it starts. The
+ * file is tagged with a digest of the policies and is ignored when the policies
+ * have changed or, with a time to live, when it is older than the time to live.
  * 
  * @author Anil.Saldhana@redhat.com
  * @since Aug 27, 2010
@@ -52,19 +90,83 @@ public class DecisionCacheLocator extends CacheLocator
 {
    private static Logger log = Logger.getLogger( DecisionCacheLocator.class.getCanonicalName() );
    
-   protected WeakHashMap<RequestCtx, ResponseCtx> correctnessDecisionMap = null;
+   private static final Comparator<Designator> DESIGNATOR_ORDER = new Comparator<Designator>()
+   {
+      public int compare( Designator d1, Designator d2 )
+      {
+         return d1.toString().compareTo( d2.toString() );
+      }
+   };
    
-   protected LinkedHashMap< RequestCtx, ResponseCtx> speedDecisionMap = null; 
+   protected volatile BoundedCache<RequestFingerprint, CachedDecision> decisionCache = null;
+   
+   //Attribute ids that are not part of the cache key, resolved when the options are set
+   private Set<String> ignoreSubjectIDs = Collections.emptySet();
+   private Set<String> ignoreResourceIDs = Collections.emptySet();
+   private Set<String> ignoreActionIDs = Collections.emptySet();
+   private Set<String> ignoreEnvIDs = Collections.emptySet();
    
    public static final String IGNORE_SUBJECT_ID = "ignoreSubjectID";
    public static final String IGNORE_RESOURCE_ID = "ignoreResourceID";
    public static final String IGNORE_ACTION_ID = "ignoreActionID";
    public static final String IGNORE_ENVIRONMENT_ID = "ignoreEnvironmentID";
    
+   /**
+    * @deprecated The cache is always bounded and access ordered. The option is ignored.
+    */
+   @Deprecated
    public static final String ENHANCE_SPEED = "enhanceSpeed";
    
    public static final String INITIAL_CAPACITY = "initialCapacity";
    public static final String LOAD_FACTOR = "loadFactor";
+   
+   public static final String MAX_ENTRIES = "maxEntries";
+   public static final String TIME_TO_LIVE = "timeToLive";
+   public static final String CONCURRENCY_LEVEL = "concurrencyLevel";
+   public static final String FREQUENCY_ADMISSION = "frequencyAdmission";
+   
+   public static final String DEPENDENCY_TRACKING = "dependencyTracking";
+   public static final String MAX_DEPENDENCY_SETS = "maxDependencySets";
+   
+   public static final String REFRESH_AHEAD = "refreshAhead";
+   
+   public static final String SNAPSHOT_FILE = "snapshotFile";
+   public static final String SNAPSHOT_INTERVAL = "snapshotInterval";
+   public static final String SNAPSHOT_ENTRIES = "snapshotEntries";
+   
+   //The distinct sets of designators that cached decisions depend on
+   private final List<List<Designator>> dependencySets = new CopyOnWriteArrayList<List<Designator>>();
+   
+   //Whether some decision was cached under the whole request
+   private volatile boolean wholeRequestCached = false;
+   
+   //The set of designators of the last hit, probed first
+   private volatile List<Designator> lastHitSet = null;
+   
+   //Whether decisions are refreshed ahead of their expiry, resolved when the options are set
+   private boolean refreshAhead = false;
+
+   @Override
+   public void setOptions(List<Option> options)
+   {
+      super.setOptions(options);
+      this.ignoreSubjectIDs = getIgnoredIDs( IGNORE_SUBJECT_ID );
+      this.ignoreResourceIDs = getIgnoredIDs( IGNORE_RESOURCE_ID );
+      this.ignoreActionIDs = getIgnoredIDs( IGNORE_ACTION_ID );
+      this.ignoreEnvIDs = getIgnoredIDs( IGNORE_ENVIRONMENT_ID );
+      this.refreshAhead = getTimeToLive() > 0 && getRefreshAhead() > 0f && getRefreshAhead() < 1f;
+      this.decisionCache = createCache();
+   }
+
+   /**
+    * Compute the cache key of a request, leaving out the ignored attributes
+    * @param request
+    * @return
+    */
+   public RequestFingerprint getFingerprint( RequestCtx request )
+   {
+      return RequestFingerprint.from( request, ignoreSubjectIDs, ignoreResourceIDs, ignoreActionIDs, ignoreEnvIDs );
+   }
 
    /**
     * Add a {@code RequestCtx} and a {@code ResponseCtx} to the cache
@@ -73,18 +175,119 @@ public class DecisionCacheLocator extends CacheLocator
     */
    public void add( RequestCtx request, ResponseCtx response )
    {
-      RequestCtx cacheRequest = preprocessRequest( request );
+      add( getFingerprint( request ), response );
+   }
+   
+   /**
+    * Add a {@code ResponseCtx} to the cache under a precomputed fingerprint
+    * @param fingerprint
+    * @param response
+    */
+   public void add( RequestFingerprint fingerprint, ResponseCtx response )
+   {
+      add( fingerprint, response, (Set<PolicyDependency>) null );
+   }
+   
+   /**
+    * Add a {@code ResponseCtx} to the cache under a precomputed fingerprint,
+    * tagged with the policies that produced it
+    * @param fingerprint
+    * @param response
+    * @param policies the policies consulted by the evaluation, or null if they are 
+    * not known, in which case the decision is dropped on any policy change
+    * @see #invalidate(Collection)
+    */
+   public void add( RequestFingerprint fingerprint, ResponseCtx response, Set<PolicyDependency> policies )
+   {
+      add( fingerprint, response, policies, getTimeToLive() );
+   }
+   
+   /**
+    * Add a {@code ResponseCtx} to the cache for at most some time, such as what is left
+    * of the lifetime of a decision restored from a snapshot
+    * @param fingerprint
+    * @param response
+    * @param policies the policies that produced the decision, or null if they are not known
+    * @param timeToLive milliseconds, capped at the configured time to live
+    */
+   protected void add( RequestFingerprint fingerprint, ResponseCtx response, Set<PolicyDependency> policies,
+         long timeToLive )
+   {
+      long maxTimeToLive = getTimeToLive();
+      if( maxTimeToLive > 0 && ( timeToLive <= 0 || timeToLive > maxTimeToLive ))
+         timeToLive = maxTimeToLive;
+      long expiresAt = maxTimeToLive > 0 ? System.currentTimeMillis() + timeToLive : 0L;
+      getDecisionCache().put( fingerprint, new CachedDecision( response, policies, expiresAt ), timeToLive );
+   }
+   
+   /**
+    * Add a {@code ResponseCtx} to the cache under the values that the request
+    * has for the attributes the evaluation read
+    * @param request
+    * @param response
+    * @param dependencies what the evaluation of the request read
+    */
+   public void add( RequestCtx request, ResponseCtx response, AttributeDependencies dependencies )
+   {
+      Set<PolicyDependency> policies = dependencies.getPolicies();
+      if( !isDependencyTracking() )
+      {
+         add( getFingerprint( request ), response, policies );
+         return;
+      }
+      if( dependencies.isWholeRequest() )
+      {
+         wholeRequestCached = true;
+         add( getFingerprint( request ), response, policies );
+         return;
+      }
       
-      if( needCorrectness() )
-      {   
-         this.validateCorrectnessMap(); 
-         this.correctnessDecisionMap.put( cacheRequest, response ); 
+      List<Designator> designators = new ArrayList<Designator>();
+      for( Designator designator : dependencies.getDesignators() )
+      {
+         if( !getIgnoredIDs( designator.getDesignatorType() ).contains( designator.getId().toString() ))
+            designators.add( designator );
       }
-      else
+      Collections.sort( designators, DESIGNATOR_ORDER );
+      
+      if( !dependencySets.contains( designators ) )
       {
-         this.validateSpeedMap();
-         this.speedDecisionMap.put( cacheRequest, response );
+         synchronized( dependencySets )
+         {
+            if( !dependencySets.contains( designators ) )
+            {
+               if( dependencySets.size() >= getMaxDependencySets() )
+               {
+                  //too many shapes to look up, fall back on the whole request
+                  wholeRequestCached = true;
+                  add( getFingerprint( request ), response, policies );
+                  return;
+               }
+               dependencySets.add( Collections.unmodifiableList( designators ));
+            }
+         }
       }
+      add( RequestFingerprint.from( request, designators ), response, policies );
+   }
+   
+   /**
+    * Whether decisions are cached under the attributes that their evaluation read,
+    * in which case they should be added with {@link #add(RequestCtx, ResponseCtx, AttributeDependencies)}
+    * @return
+    */
+   public boolean isDependencyTracking()
+   {
+      return Boolean.parseBoolean( getOption( DEPENDENCY_TRACKING, "false" ) );
+   }
+   
+   /**
+    * Whether cached decisions are refreshed ahead of their expiry, in which case 
+    * they should be looked up with {@link #get(RequestFingerprint, Runnable)}
+    * @return
+    */
+   public boolean isRefreshAhead()
+   {
+      return refreshAhead;
    }
    
    /**
@@ -94,34 +297,328 @@ public class DecisionCacheLocator extends CacheLocator
     */
    public ResponseCtx get( RequestCtx request )
    {
-      RequestCtx cacheRequest = preprocessRequest( request );
-      
-      ResponseCtx response = null;
-      
-      int correctnessSize = correctnessDecisionMap != null ? correctnessDecisionMap.size() : 0;
-      int speedSize = speedDecisionMap != null ? speedDecisionMap.size() : 0;
-      
+      return get( request, null );
+   }
+   
+   /**
+    * Get a {@code ResponseCtx} response that we have cached
+    * for a {@code RequestCtx} request, and ask for a refresh if it is due
+    * @param request
+    * @param refresh run when the decision is due for a refresh, or null
+    * @return response object if cached else null
+    * @see #get(RequestFingerprint, Runnable)
+    */
+   public ResponseCtx get( RequestCtx request, Runnable refresh )
+   {
+      if( !isDependencyTracking() )
+         return get( getFingerprint( request ), refresh );
       
-      if( needCorrectness() )
-      {   
-         this.validateCorrectnessMap();
-         response = this.correctnessDecisionMap.get( cacheRequest );
+      List<Designator> lastHit = lastHitSet;
+      if( lastHit != null )
+      {
+         ResponseCtx response = get( RequestFingerprint.from( request, lastHit ), refresh );
+         if( response != null )
+            return response;
+      }
+      for( List<Designator> designators : dependencySets )
+      {
+         if( designators == lastHit )
+            continue;
+         ResponseCtx response = get( RequestFingerprint.from( request, designators ), refresh );
+         if( response != null )
+         {
+            lastHitSet = designators;
+            return response;
+         }
+      }
+      if( wholeRequestCached )
+         return get( getFingerprint( request ), refresh );
+      return null;
+   } 
+   
+   /**
+    * Get a {@code ResponseCtx} response that we have cached
+    * under a precomputed fingerprint
+    * @return response object if cached else null
+    */
+   public ResponseCtx get( RequestFingerprint fingerprint )
+   {
+      return get( fingerprint, null );
+   }
+   
+   /**
+    * Get a {@code ResponseCtx} response that we have cached under a precomputed
+    * fingerprint. When the {@code refreshAhead} fraction of its time to live has
+    * elapsed, the decision is still returned and the refresh is run once on the 
+    * calling thread, so it should only schedule the evaluation that replaces the decision.
+    * @param fingerprint
+    * @param refresh run when the decision is due for a refresh, or null
+    * @return response object if cached else null
+    */
+   public ResponseCtx get( RequestFingerprint fingerprint, final Runnable refresh )
+   {
+      BoundedCache<RequestFingerprint, CachedDecision> cache = getDecisionCache();
+      CachedDecision decision;
+      if( refresh == null )
+      {
+         decision = cache.get( fingerprint );
       }
       else
       {
-         this.validateSpeedMap(); 
-         response = this.speedDecisionMap.get( cacheRequest );
+         decision = cache.get( fingerprint, new BoundedCache.RefreshListener<RequestFingerprint, CachedDecision>()
+         {
+            public void refreshDue( RequestFingerprint key, CachedDecision value )
+            {
+               refresh.run();
+            }
+         });
       }
       
-      if( response == null )
+      if( decision == null && log.isLoggable( Level.FINEST ))
       {
-         
-         log.log( Level.FINEST, "Cache Miss with " + toString() + " correctness size=" + correctnessSize
-                      + " speed size=" + speedSize ); 
+         log.log( Level.FINEST, "Cache Miss with " + toString() + " " + cache ); 
       } 
       
-      return response;
+      return decision != null ? decision.response : null;
    } 
+   
+   /**
+    * Remove the cached decisions that depend on policies that have changed.
+    * A decision depends on a policy if the evaluation consulted it, or consulted a 
+    * reference to its id. Decisions that were cached without their policies are
+    * removed as well.
+    * @param changed the previous and the new versions of the changed policies
+    * @return the number of removed decisions
+    */
+   public int invalidate( final Collection<PolicyDependency> changed )
+   {
+      int removed = getDecisionCache().removeEntries( new BoundedCache.EntryFilter<RequestFingerprint, CachedDecision>()
+      {
+         public boolean accept( RequestFingerprint fingerprint, CachedDecision decision )
+         {
+            return decision.dependsOn( changed );
+         }
+      });
+      if( log.isLoggable( Level.FINE ))
+         log.fine( "Removed " + removed + " decisions depending on " + changed );
+      return removed;
+   }
+   
+   /**
+    * Remove all the cached decisions
+    */
+   public void clear()
+   {
+      getDecisionCache().clear();
+      synchronized( dependencySets )
+      {
+         dependencySets.clear();
+         wholeRequestCached = false;
+         lastHitSet = null;
+      }
+   }
+   
+   /**
+    * Get the number of cached decisions
+    * @return
+    */
+   public int size()
+   {
+      return getDecisionCache().size();
+   }
+
+   /**
+    * Get the file that the hottest decisions are saved to
+    * @return the file, or null if the decisions are not saved
+    */
+   public File getSnapshotFile()
+   {
+      String fileName = getOption( SNAPSHOT_FILE, null );
+      return fileName != null ? new File( fileName ) : null;
+   }
+   
+   /**
+    * Get the configured interval between two snapshots in milliseconds
+    * @return
+    */
+   public long getSnapshotInterval()
+   {
+      return Long.parseLong( getOption( SNAPSHOT_INTERVAL, "300000" ) );
+   }
+   
+   /**
+    * Write the most requested decisions to the snapshot file
+    * @param policyVersion a digest of the policies that made the cached decisions
+    * @return the number of saved decisions, or -1 if the snapshot could not be written
+    * @see #getSnapshotFile()
+    */
+   public int saveSnapshot( String policyVersion )
+   {
+      File file = getSnapshotFile();
+      if( file == null )
+         throw new IllegalStateException( "The " + SNAPSHOT_FILE + " option is not set" );
+      
+      List<DecisionCacheSnapshot.Entry> entries = new ArrayList<DecisionCacheSnapshot.Entry>();
+      for( Map.Entry<RequestFingerprint, CachedDecision> entry : getDecisionCache().getHottestEntries( getSnapshotEntries() ))
+      {
+         CachedDecision decision = entry.getValue();
+         entries.add( new DecisionCacheSnapshot.Entry( entry.getKey(), decision.getResponse(), decision.getPolicies(),
+               decision.getExpiresAt() ));
+      }
+      List<List<Designator>> sets = new ArrayList<List<Designator>>( dependencySets );
+      DecisionCacheSnapshot snapshot = new DecisionCacheSnapshot( policyVersion, System.currentTimeMillis(), 
+            wholeRequestCached, sets, entries );
+      try
+      {
+         snapshot.write( file );
+      }
+      catch( IOException e )
+      {
+         log.log( Level.INFO, "Unable to save the decision cache snapshot " + file + ":" + e.getLocalizedMessage() );
+         return -1;
+      }
+      if( log.isLoggable( Level.FINE ))
+         log.fine( "Saved " + entries.size() + " decisions in the decision cache snapshot " + file );
+      return entries.size();
+   }
+   
+   /**
+    * Add the decisions of the snapshot file to the cache, unless the file was
+    * written with other policies or its decisions may have expired. A decision
+    * is only cached for what was left of its lifetime, and is left out if it has expired.
+    * @param policyVersion a digest of the current policies
+    * @return the number of loaded decisions
+    * @see #saveSnapshot(String)
+    */
+   public int loadSnapshot( String policyVersion )
+   {
+      File file = getSnapshotFile();
+      if( file == null || !file.isFile() )
+         return 0;
+      
+      DecisionCacheSnapshot snapshot;
+      try
+      {
+         snapshot = DecisionCacheSnapshot.read( file );
+      }
+      catch( IOException e )
+      {
+         log.log( Level.INFO, "Ignoring the decision cache snapshot " + file + ":" + e.getLocalizedMessage() );
+         return 0;
+      }
+      if( !snapshot.getPolicyVersion().equals( policyVersion ))
+      {
+         log.info( "Ignoring the decision cache snapshot " + file + " made with other policies" );
+         return 0;
+      }
+      long timeToLive = getTimeToLive();
+      if( timeToLive > 0 && System.currentTimeMillis() - snapshot.getCreatedAt() >= timeToLive )
+      {
+         log.info( "Ignoring the decision cache snapshot " + file + " older than the time to live" );
+         return 0;
+      }
+      
+      synchronized( dependencySets )
+      {
+         if( snapshot.isWholeRequestCached() )
+            wholeRequestCached = true;
+         for( List<Designator> designators : snapshot.getDependencySets() )
+         {
+            Collections.sort( designators, DESIGNATOR_ORDER );
+            if( !dependencySets.contains( designators ) && dependencySets.size() < getMaxDependencySets() )
+               dependencySets.add( Collections.unmodifiableList( designators ));
+         }
+      }
+      int loaded = 0;
+      long now = System.currentTimeMillis();
+      for( DecisionCacheSnapshot.Entry entry : snapshot.getEntries() )
+      {
+         long remaining = 0;
+         if( timeToLive > 0 && entry.getExpiresAt() != 0 )
+         {
+            remaining = entry.getExpiresAt() - now;
+            if( remaining <= 0 )
+               continue;
+         }
+         add( entry.getFingerprint(), entry.getResponse(), entry.getPolicies(), remaining );
+         loaded++;
+      }
+      log.info( "Loaded " + loaded + " decisions from the decision cache snapshot " + file );
+      return loaded;
+   }
+   
+   /**
+    * A cached decision along with the policies that produced it
+    */
+   protected static class CachedDecision
+   {
+      private final ResponseCtx response;
+      
+      private final Set<PolicyDependency> policies;
+      
+      private final long expiresAt;
+      
+      protected CachedDecision( ResponseCtx response, Set<PolicyDependency> policies )
+      {
+         this( response, policies, 0L );
+      }
+      
+      protected CachedDecision( ResponseCtx response, Set<PolicyDependency> policies, long expiresAt )
+      {
+         this.response = response;
+         this.policies = policies;
+         this.expiresAt = expiresAt;
+      }
+      
+      public ResponseCtx getResponse()
+      {
+         return response;
+      }
+      
+      /**
+       * Get the policies that produced the decision
+       * @return the policies, or null if they are not known
+       */
+      public Set<PolicyDependency> getPolicies()
+      {
+         return policies;
+      }
+      
+      /**
+       * Get the time at which the decision expires
+       * @return milliseconds since the epoch, or 0 if the decision does not expire
+       */
+      public long getExpiresAt()
+      {
+         return expiresAt;
+      }
+      
+      private boolean dependsOn( Collection<PolicyDependency> changed )
+      {
+         return DecisionCacheLocator.dependsOn( policies, changed );
+      }
+   }
+   
+   /**
+    * Whether a decision produced by some policies may change with changed policies
+    * @param policies the policies that produced the decision, or null if they are not known
+    * @param changed
+    * @return
+    */
+   static boolean dependsOn( Set<PolicyDependency> policies, Collection<PolicyDependency> changed )
+   {
+      if( policies == null )
+         return true;
+      for( PolicyDependency policy : policies )
+      {
+         for( PolicyDependency changedPolicy : changed )
+         {
+            if( policy.dependsOn( changedPolicy ))
+               return true;
+         }
+      }
+      return false;
+   }
 
    /**
     * Specialized version of {@code RequestCtx} that is suited to be cached
@@ -204,72 +701,84 @@ public class DecisionCacheLocator extends CacheLocator
    }
    
    /**
-    * Transform the XACML request into a request that we can place
-    * in the cache, while considering any of the (subject, resource, action, environment)
-    * attributes that need to be ignored
-    * @param request
+    * Resolve the comma separated list of ignored attribute ids of an option
+    * @param optionName
     * @return
     */
-   private RequestCtx  preprocessRequest( RequestCtx request )
+   private Set<String> getIgnoredIDs( String optionName )
    {
-      List<String> subjectID = new ArrayList<String>();
-      List<String> resourceID = new ArrayList<String>();
-      List<String> actionID = new ArrayList<String>();
-      List<String> envID = new ArrayList<String>();
-      
-      String ignoreSubjectOption = (String) optionMap.get( IGNORE_SUBJECT_ID );
-      String ignoreResourceOption = (String) optionMap.get( IGNORE_RESOURCE_ID );
-      String ignoreActionOption = (String) optionMap.get( IGNORE_ACTION_ID );
-      String ignoreEnvOption = (String) optionMap.get( IGNORE_ENVIRONMENT_ID );
-      
-      subjectID.addAll( getTokenList( ignoreSubjectOption ));
-      resourceID.addAll( getTokenList( ignoreResourceOption ));
-      actionID.addAll( getTokenList( ignoreActionOption ));
-      envID.addAll( getTokenList( ignoreEnvOption ));
-      
-      return DecisionCacheLocatorRequest.from( request, 
-            subjectID, resourceID, actionID, envID ); 
-   } 
+      List<String> tokens = getTokenList( (String) optionMap.get( optionName ));
+      if( tokens.isEmpty() )
+         return Collections.emptySet();
+      Set<String> ids = new HashSet<String>();
+      for( String token : tokens )
+      {
+         ids.add( token.trim() );
+      }
+      return Collections.unmodifiableSet( ids );
+   }
    
    /**
-    * Determine whether we need correctness (WeakHashMap)  or Speed (LinkedHashMap)
+    * Get the ignored attribute ids of the category of a designator type
+    * @param designatorType
     * @return
     */
-   private boolean needCorrectness()
+   private Set<String> getIgnoredIDs( int designatorType )
    {
-      boolean correctness = false;
-      String correct = (String) optionMap.get( ENHANCE_SPEED );
-      if( correct != null && "false".equalsIgnoreCase( correct ))
-         correctness = true;
-       
-      return correctness;
+      switch( designatorType )
+      {
+         case AttributeDesignator.SUBJECT_TARGET:
+            return ignoreSubjectIDs;
+         case AttributeDesignator.RESOURCE_TARGET:
+            return ignoreResourceIDs;
+         case AttributeDesignator.ACTION_TARGET:
+            return ignoreActionIDs;
+         default:
+            return ignoreEnvIDs;
+      }
    }
    
    /**
-    * Validate that the WeakHashMap is not null
+    * Get the configured maximum number of distinct attribute sets
+    * @return
     */
-   private void validateCorrectnessMap()
-   { 
-      if( correctnessDecisionMap == null )
-      { 
-         int initialCapacity  = getInitialCapacity(); 
-         float loadFactor = getLoadFactor();
-         correctnessDecisionMap = new WeakHashMap<RequestCtx, ResponseCtx>( initialCapacity , loadFactor ); 
-      }
+   private int getMaxDependencySets()
+   {
+      return Integer.parseInt( getOption( MAX_DEPENDENCY_SETS, "8" ) );
+   }
+   
+   /**
+    * Get the configured maximum number of decisions in a snapshot
+    * @return
+    */
+   private int getSnapshotEntries()
+   {
+      return Integer.parseInt( getOption( SNAPSHOT_ENTRIES, "10000" ) );
    }
    
    /**
-    * Validate that the LRU LinkedHashMap is not null
+    * Get the cache, creating it with the default options if
+    * the locator was not configured
     */
-   private void validateSpeedMap()
+   private BoundedCache<RequestFingerprint, CachedDecision> getDecisionCache()
    {
-      if( speedDecisionMap == null )
+      BoundedCache<RequestFingerprint, CachedDecision> cache = decisionCache;
+      if( cache == null )
       {
-         int initialCapacity  = getInitialCapacity(); 
-         float loadFactor = getLoadFactor();
-         
-         speedDecisionMap = new LinkedHashMap<RequestCtx, ResponseCtx>( initialCapacity, loadFactor, true ); 
-      } 
+         synchronized( this )
+         {
+            if( decisionCache == null )
+               decisionCache = createCache();
+            cache = decisionCache;
+         }
+      }
+      return cache;
+   }
+   
+   private BoundedCache<RequestFingerprint, CachedDecision> createCache()
+   {
+      return new BoundedCache<RequestFingerprint, CachedDecision>( getMaxEntries(), getTimeToLive(), getConcurrencyLevel(),
+            getInitialCapacity(), getLoadFactor(), useFrequencyAdmission(), getRefreshAhead() );
    }
    
    /**
@@ -278,14 +787,7 @@ public class DecisionCacheLocator extends CacheLocator
     */
    private int getInitialCapacity()
    {
-      int initialCapacity = 100;
-      
-      String initialCapacityStr = (String) optionMap.get( INITIAL_CAPACITY );
-      if( initialCapacityStr != null && initialCapacityStr != "" )
-      {
-         initialCapacity = Integer.parseInt( initialCapacityStr );
-      }
-      return initialCapacity;
+      return Integer.parseInt( getOption( INITIAL_CAPACITY, "100" ) );
    }
    
    /**
@@ -294,12 +796,68 @@ public class DecisionCacheLocator extends CacheLocator
     */
    private float getLoadFactor()
    {
-      float loadFactor = 0.75F;
-      String loadFactorStr = (String) optionMap.get( LOAD_FACTOR );
-      if( loadFactorStr != null && loadFactorStr != "" )
-      {
-         loadFactor = Float.parseFloat( loadFactorStr );
-      }
-      return loadFactor; 
+      return Float.parseFloat( getOption( LOAD_FACTOR, "0.75" ) );
+   }
+   
+   /**
+    * Get the configured maximum number of entries
+    * @return
+    */
+   private int getMaxEntries()
+   {
+      return Integer.parseInt( getOption( MAX_ENTRIES, String.valueOf( getDefaultMaxEntries() )) );
+   }
+   
+   /**
+    * Get the maximum number of entries when the option is not configured
+    * @return
+    */
+   protected int getDefaultMaxEntries()
+   {
+      return 10000;
+   }
+   
+   /**
+    * Get the configured time to live of an entry in milliseconds (0 means no expiry)
+    * @return
+    */
+   public long getTimeToLive()
+   {
+      return Long.parseLong( getOption( TIME_TO_LIVE, "0" ) );
+   }
+   
+   /**
+    * Get the configured number of cache segments
+    * @return
+    */
+   protected int getConcurrencyLevel()
+   {
+      return Integer.parseInt( getOption( CONCURRENCY_LEVEL, "16" ) );
+   }
+   
+   /**
+    * Get the configured fraction of the time to live after which a decision is refreshed (0 means never)
+    * @return
+    */
+   private float getRefreshAhead()
+   {
+      return Float.parseFloat( getOption( REFRESH_AHEAD, "0" ) );
+   }
+   
+   /**
+    * Determine whether a full cache rejects rarely requested decisions
+    * @return
+    */
+   private boolean useFrequencyAdmission()
+   {
+      return Boolean.parseBoolean( getOption( FREQUENCY_ADMISSION, "true" ) );
+   }
+   
+   protected String getOption( String name, String defaultValue )
+   {
+      String value = (String) optionMap.get( name );
+      if( value == null || value.trim().length() == 0 )
+         return defaultValue;
+      return value.trim();
    }
 }
\ No newline at end of file
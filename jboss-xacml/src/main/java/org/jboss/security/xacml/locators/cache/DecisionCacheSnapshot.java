@@ -0,0 +1,351 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.security.xacml.locators.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.jboss.security.xacml.sunxacml.AttributeDependencies;
+import org.jboss.security.xacml.sunxacml.AttributeDependencies.Designator;
+import org.jboss.security.xacml.sunxacml.AttributeDependencies.PolicyDependency;
+import org.jboss.security.xacml.sunxacml.ParsingException;
+import org.jboss.security.xacml.sunxacml.ctx.ResponseCtx;
+
+/**
+ * The contents of a file holding the hottest decisions of a {@link DecisionCacheLocator},
+ * so that a restarted PDP does not start with an empty cache.
+ * <p>
+ * The file starts with a magic number, the format version, the version of the
+ * policies that made the decisions and the time it was written. The sets of
+ * attributes that decisions are cached under follow, then the decisions with
+ * their fingerprint, the time they expire at, the policies that produced them and 
+ * the XML of the response.
+ * The file is written to a temporary file that then replaces the previous one,
+ * so a reader never sees a partially written file.
+ * </p>
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since Oct 18, 2026
+ */
+final class DecisionCacheSnapshot
+{
+   private static final int MAGIC = 0x4A425844;
+
+   private static final int FORMAT_VERSION = 3;
+
+   private final String policyVersion;
+
+   private final long createdAt;
+
+   private final boolean wholeRequestCached;
+
+   private final List<List<Designator>> dependencySets;
+
+   private final List<Entry> entries;
+
+   DecisionCacheSnapshot(String policyVersion, long createdAt, boolean wholeRequestCached,
+         List<List<Designator>> dependencySets, List<Entry> entries)
+   {
+      this.policyVersion = policyVersion;
+      this.createdAt = createdAt;
+      this.wholeRequestCached = wholeRequestCached;
+      this.dependencySets = dependencySets;
+      this.entries = entries;
+   }
+
+   String getPolicyVersion()
+   {
+      return policyVersion;
+   }
+
+   long getCreatedAt()
+   {
+      return createdAt;
+   }
+
+   boolean isWholeRequestCached()
+   {
+      return wholeRequestCached;
+   }
+
+   List<List<Designator>> getDependencySets()
+   {
+      return dependencySets;
+   }
+
+   List<Entry> getEntries()
+   {
+      return entries;
+   }
+
+   /**
+    * Read a snapshot file
+    * @param file
+    * @return
+    * @throws IOException if the file cannot be read or is not a decision snapshot
+    */
+   static DecisionCacheSnapshot read(File file) throws IOException
+   {
+      ByteBuffer buffer;
+      FileInputStream fis = new FileInputStream(file);
+      try
+      {
+         FileChannel channel = fis.getChannel();
+         buffer = ByteBuffer.allocate((int) channel.size());
+         while (buffer.hasRemaining() && channel.read(buffer) >= 0)
+            ;
+      }
+      finally
+      {
+         fis.close();
+      }
+
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(buffer.array(), 0, buffer.position()));
+      if (in.readInt() != MAGIC)
+         throw new IOException("Not a decision cache snapshot");
+      int version = in.readInt();
+      if (version != FORMAT_VERSION)
+         throw new IOException("Unsupported decision cache snapshot version:" + version);
+
+      String policyVersion = in.readUTF();
+      long createdAt = in.readLong();
+      boolean wholeRequestCached = in.readBoolean();
+
+      int setCount = in.readInt();
+      List<List<Designator>> dependencySets = new ArrayList<List<Designator>>(setCount);
+      for (int i = 0; i < setCount; i++)
+      {
+         AttributeDependencies dependencies = new AttributeDependencies();
+         int count = in.readInt();
+         for (int j = 0; j < count; j++)
+         {
+            int designatorType = in.readInt();
+            URI category = readURI(in);
+            URI id = readURI(in);
+            URI type = readURI(in);
+            URI issuer = readURI(in);
+            dependencies.addDesignator(designatorType, category, id, type, issuer);
+         }
+         dependencySets.add(new ArrayList<Designator>(dependencies.getDesignators()));
+      }
+
+      int entryCount = in.readInt();
+      List<Entry> entries = new ArrayList<Entry>(entryCount);
+      for (int i = 0; i < entryCount; i++)
+      {
+         RequestFingerprint fingerprint = new RequestFingerprint(in.readLong(), in.readLong());
+         long expiresAt = in.readLong();
+         Set<PolicyDependency> policies = null;
+         int policyCount = in.readInt();
+         if (policyCount >= 0)
+         {
+            policies = new HashSet<PolicyDependency>();
+            for (int j = 0; j < policyCount; j++)
+            {
+               URI id = readURI(in);
+               String dependencyVersion = in.readBoolean() ? in.readUTF() : null;
+               policies.add(new PolicyDependency(id, dependencyVersion));
+            }
+            policies = Collections.unmodifiableSet(policies);
+         }
+         byte[] xml = new byte[in.readInt()];
+         in.readFully(xml);
+         ResponseCtx response;
+         try
+         {
+            response = ResponseCtx.getInstance(new ByteArrayInputStream(xml));
+         }
+         catch (ParsingException e)
+         {
+            throw new IOException("Unable to parse a cached decision:" + e.getMessage());
+         }
+         entries.add(new Entry(fingerprint, response, policies, expiresAt));
+      }
+      return new DecisionCacheSnapshot(policyVersion, createdAt, wholeRequestCached, dependencySets, entries);
+   }
+
+   /**
+    * Replace a snapshot file with this snapshot
+    * @param file
+    * @throws IOException
+    */
+   void write(File file) throws IOException
+   {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeInt(MAGIC);
+      out.writeInt(FORMAT_VERSION);
+      out.writeUTF(policyVersion);
+      out.writeLong(createdAt);
+      out.writeBoolean(wholeRequestCached);
+
+      out.writeInt(dependencySets.size());
+      for (List<Designator> designators : dependencySets)
+      {
+         out.writeInt(designators.size());
+         for (Designator designator : designators)
+         {
+            out.writeInt(designator.getDesignatorType());
+            writeURI(out, designator.getCategory());
+            writeURI(out, designator.getId());
+            writeURI(out, designator.getType());
+            writeURI(out, designator.getIssuer());
+         }
+      }
+
+      out.writeInt(entries.size());
+      ByteArrayOutputStream xml = new ByteArrayOutputStream();
+      for (Entry entry : entries)
+      {
+         out.writeLong(entry.fingerprint.getHigh());
+         out.writeLong(entry.fingerprint.getLow());
+         out.writeLong(entry.expiresAt);
+         if (entry.policies == null)
+         {
+            out.writeInt(-1);
+         }
+         else
+         {
+            out.writeInt(entry.policies.size());
+            for (PolicyDependency policy : entry.policies)
+            {
+               writeURI(out, policy.getId());
+               out.writeBoolean(policy.getVersion() != null);
+               if (policy.getVersion() != null)
+                  out.writeUTF(policy.getVersion());
+            }
+         }
+         xml.reset();
+         entry.response.encode(xml);
+         out.writeInt(xml.size());
+         xml.writeTo(out);
+      }
+      out.flush();
+
+      File dir = file.getAbsoluteFile().getParentFile();
+      File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+      try
+      {
+         FileOutputStream fos = new FileOutputStream(tmp);
+         try
+         {
+            FileChannel channel = fos.getChannel();
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            while (buffer.hasRemaining())
+               channel.write(buffer);
+            channel.force(false);
+         }
+         finally
+         {
+            fos.close();
+         }
+         Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+         tmp = null;
+      }
+      finally
+      {
+         if (tmp != null)
+            tmp.delete();
+      }
+   }
+
+   private static void writeURI(DataOutputStream out, URI uri) throws IOException
+   {
+      out.writeUTF(uri != null ? uri.toString() : "");
+   }
+
+   private static URI readURI(DataInputStream in) throws IOException
+   {
+      String value = in.readUTF();
+      if (value.length() == 0)
+         return null;
+      try
+      {
+         return new URI(value);
+      }
+      catch (URISyntaxException e)
+      {
+         throw new IOException("Invalid URI in the decision cache snapshot:" + value);
+      }
+   }
+
+   /**
+    * A cached decision
+    */
+   static final class Entry
+   {
+      private final RequestFingerprint fingerprint;
+
+      private final ResponseCtx response;
+
+      private final Set<PolicyDependency> policies;
+
+      private final long expiresAt;
+
+      Entry(RequestFingerprint fingerprint, ResponseCtx response, Set<PolicyDependency> policies, long expiresAt)
+      {
+         this.fingerprint = fingerprint;
+         this.response = response;
+         this.policies = policies;
+         this.expiresAt = expiresAt;
+      }
+
+      RequestFingerprint getFingerprint()
+      {
+         return fingerprint;
+      }
+
+      ResponseCtx getResponse()
+      {
+         return response;
+      }
+
+      Set<PolicyDependency> getPolicies()
+      {
+         return policies;
+      }
+
+      /**
+       * @return milliseconds since the epoch, or 0 if the decision does not expire
+       */
+      long getExpiresAt()
+      {
+         return expiresAt;
+      }
+   }
+}
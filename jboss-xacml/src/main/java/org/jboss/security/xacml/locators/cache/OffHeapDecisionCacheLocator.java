@@ -0,0 +1,177 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.security.xacml.locators.cache;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.jboss.security.xacml.jaxb.Option;
+import org.jboss.security.xacml.sunxacml.AttributeDependencies.PolicyDependency;
+import org.jboss.security.xacml.sunxacml.ctx.ResponseCtx;
+
+/**
+ * A decision cache for millions of entries, that keeps most of its decisions
+ * outside of the heap.
+ * <p>
+ * Decisions are stored in a large off-heap tier, bounded by the
+ * {@code offHeapEntries} option, as a fingerprint of the request and a compact
+ * encoding of the decision, its status and its obligations. A small on-heap
+ * tier, bounded by the {@code maxEntries} option, holds the full response objects
+ * of the recently used decisions, and a decision found in the off-heap tier is
+ * decoded into it. All the other options of {@link DecisionCacheLocator} apply,
+ * and the {@code timeToLive} option applies to both tiers. Responses that cannot
+ * be encoded, such as those with several results, are only held on the heap.
+ * </p>
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since Oct 18, 2026
+ */
+public class OffHeapDecisionCacheLocator extends DecisionCacheLocator
+{
+   private static Logger log = Logger.getLogger( OffHeapDecisionCacheLocator.class.getCanonicalName() );
+   
+   public static final String OFF_HEAP_ENTRIES = "offHeapEntries";
+   
+   private volatile OffHeapDecisionStore store = null;
+   
+   @Override
+   public void setOptions( List<Option> options )
+   {
+      super.setOptions( options );
+      this.store = createStore();
+   }
+   
+   /**
+    * Get a decision from the on-heap tier, or else from the off-heap tier
+    * @see DecisionCacheLocator#get(RequestFingerprint, Runnable)
+    */
+   @Override
+   public ResponseCtx get( RequestFingerprint fingerprint, Runnable refresh )
+   {
+      ResponseCtx response = super.get( fingerprint, refresh );
+      if( response != null )
+         return response;
+      
+      CachedDecision decision = getStore().get( fingerprint );
+      if( decision == null )
+         return null;
+      
+      //keep the decoded response on the heap while it is used
+      super.add( fingerprint, decision.getResponse(), decision.getPolicies(), getTimeToLive() );
+      return decision.getResponse();
+   }
+   
+   /**
+    * Add a decision to both tiers
+    * @see DecisionCacheLocator#add(RequestFingerprint, ResponseCtx, Set, long)
+    */
+   @Override
+   protected void add( RequestFingerprint fingerprint, ResponseCtx response, Set<PolicyDependency> policies,
+         long timeToLive )
+   {
+      super.add( fingerprint, response, policies, timeToLive );
+      if( !getStore().put( fingerprint, response, policies, timeToLive ) && log.isLoggable( Level.FINEST ))
+         log.finest( "Response is only cached on the heap:" + response );
+   }
+   
+   @Override
+   public int invalidate( Collection<PolicyDependency> changed )
+   {
+      int removed = super.invalidate( changed );
+      return removed + getStore().invalidate( changed );
+   }
+   
+   @Override
+   public void clear()
+   {
+      super.clear();
+      getStore().clear();
+   }
+   
+   /**
+    * Get the number of decisions in the off-heap tier
+    * @return
+    */
+   public long getOffHeapSize()
+   {
+      return getStore().size();
+   }
+   
+   /**
+    * Get the number of bytes allocated outside of the heap
+    * @return
+    */
+   public long getOffHeapCapacityInBytes()
+   {
+      return getStore().getCapacityInBytes();
+   }
+   
+   @Override
+   public String toString()
+   {
+      return super.toString() + " " + getStore();
+   }
+   
+   /**
+    * The on-heap tier only holds the recently used decisions
+    */
+   @Override
+   protected int getDefaultMaxEntries()
+   {
+      return 1000;
+   }
+   
+   /**
+    * Get the store, creating it with the default options if
+    * the locator was not configured
+    */
+   private OffHeapDecisionStore getStore()
+   {
+      OffHeapDecisionStore offHeapStore = store;
+      if( offHeapStore == null )
+      {
+         synchronized( this )
+         {
+            if( store == null )
+               store = createStore();
+            offHeapStore = store;
+         }
+      }
+      return offHeapStore;
+   }
+   
+   private OffHeapDecisionStore createStore()
+   {
+      return new OffHeapDecisionStore( getOffHeapEntries(), getTimeToLive(), getConcurrencyLevel() );
+   }
+   
+   /**
+    * Get the configured maximum number of entries of the off-heap tier
+    * @return
+    */
+   private long getOffHeapEntries()
+   {
+      return Long.parseLong( getOption( OFF_HEAP_ENTRIES, "1000000" ) );
+   }
+}
@@ -0,0 +1,619 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.security.xacml.locators.cache;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.jboss.security.xacml.locators.cache.DecisionCacheLocator.CachedDecision;
+import org.jboss.security.xacml.sunxacml.AttributeDependencies.PolicyDependency;
+import org.jboss.security.xacml.sunxacml.Obligation;
+import org.jboss.security.xacml.sunxacml.ctx.ResponseCtx;
+import org.jboss.security.xacml.sunxacml.ctx.Result;
+import org.jboss.security.xacml.sunxacml.ctx.Status;
+
+/**
+ * A store of decisions outside of the heap, for decision caches with
+ * millions of entries.
+ * <p>
+ * Each decision takes a fixed size slot of a direct buffer that holds the
+ * request fingerprint, the expiry time, the decision and the ids of its
+ * status, obligations and policies. The ids refer to small on-heap
+ * dictionaries, since responses only carry a few distinct statuses and
+ * obligations. Responses that cannot be encoded this way, such as those
+ * with several results or too many obligations, are not stored.
+ * </p>
+ * <p>
+ * The store is split into segments, each guarded by its own lock. A
+ * fingerprint maps to a bucket of eight slots, and a full bucket evicts its
+ * expired or least recently used slot. When a dictionary is full, the
+ * store starts a new generation with empty dictionaries and drops the
+ * decisions of the previous one.
+ * </p>
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since Oct 18, 2026
+ */
+class OffHeapDecisionStore
+{
+   static final int SLOT_SIZE = 64;
+
+   static final int WAYS = 8;
+
+   static final int MAX_OBLIGATIONS = 6;
+
+   static final int MAX_DICTIONARY_SIZE = 4096;
+
+   //slot layout
+   private static final int KEY_HIGH = 0;
+
+   private static final int KEY_LOW = 8;
+
+   private static final int EXPIRES_AT = 16;
+
+   private static final int LAST_ACCESS = 24;
+
+   //0 if the slot is free, else the generation of the dictionaries
+   private static final int GENERATION = 28;
+
+   private static final int DECISION = 29;
+
+   //0 for no resource, 1 for an empty one
+   private static final int RESOURCE = 30;
+
+   private static final int OBLIGATION_COUNT = 31;
+
+   private static final int STATUS = 32;
+
+   //-1 if the policies are not known
+   private static final int POLICIES = 36;
+
+   private static final int OBLIGATIONS = 40;
+
+   private final Segment[] segments;
+
+   private final int segmentMask;
+
+   private final long timeToLiveNanos;
+
+   private volatile Dictionaries dictionaries = new Dictionaries(1);
+
+   private final AtomicLong hits = new AtomicLong();
+
+   private final AtomicLong misses = new AtomicLong();
+
+   private final AtomicLong evictions = new AtomicLong();
+
+   /**
+    * Create a store
+    * @param maxEntries the number of decisions the store can hold
+    * @param timeToLiveMillis time to live of a decision, or 0 if decisions do not expire
+    * @param concurrencyLevel expected number of concurrent writers, rounded to a power of two
+    */
+   OffHeapDecisionStore(long maxEntries, long timeToLiveMillis, int concurrencyLevel)
+   {
+      if (maxEntries <= 0)
+         throw new IllegalArgumentException("maxEntries should be positive:" + maxEntries);
+
+      int segmentCount = 1;
+      while (segmentCount < concurrencyLevel && (long) segmentCount * WAYS < maxEntries)
+         segmentCount <<= 1;
+
+      long bucketsPerSegment = (maxEntries + (long) segmentCount * WAYS - 1) / ((long) segmentCount * WAYS);
+      if (bucketsPerSegment * WAYS * SLOT_SIZE > Integer.MAX_VALUE)
+         throw new IllegalArgumentException("Too many entries per segment, increase the concurrency level:"
+               + maxEntries);
+
+      this.segmentMask = segmentCount - 1;
+      this.timeToLiveNanos = timeToLiveMillis > 0 ? timeToLiveMillis * 1000000L : 0L;
+      this.segments = new Segment[segmentCount];
+      for (int i = 0; i < segmentCount; i++)
+      {
+         segments[i] = new Segment((int) bucketsPerSegment);
+      }
+   }
+
+   /**
+    * Get the decision stored for a fingerprint
+    * @param key
+    * @return the decision, or null if it is not stored or has expired
+    */
+   CachedDecision get(RequestFingerprint key)
+   {
+      long now = timeToLiveNanos > 0 ? System.nanoTime() : 0L;
+      Segment segment = segmentFor(key);
+      Encoded encoded = segment.get(key, now, this);
+      if (encoded == null)
+      {
+         misses.incrementAndGet();
+         return null;
+      }
+      hits.incrementAndGet();
+      return encoded.dictionaries.decode(encoded);
+   }
+
+   /**
+    * Store a decision for a fingerprint for at most some time
+    * @param key
+    * @param response
+    * @param policies the policies that produced the decision, or null if they are not known
+    * @param timeToLiveMillis time to live of the decision, capped at the time to live
+    * of the store, or 0 for the time to live of the store
+    * @return false if the response cannot be encoded
+    */
+   boolean put(RequestFingerprint key, ResponseCtx response, Set<PolicyDependency> policies, long timeToLiveMillis)
+   {
+      Dictionaries current = dictionaries;
+      Encoded encoded = current.encode(response, policies);
+      if (encoded == null && current.isFull())
+      {
+         current = newGeneration(current);
+         encoded = current.encode(response, policies);
+      }
+      if (encoded == null)
+         return false;
+
+      long ttl = timeToLiveNanos;
+      if (ttl > 0 && timeToLiveMillis > 0 && timeToLiveMillis < ttl / 1000000L)
+         ttl = timeToLiveMillis * 1000000L;
+      long expiresAt = ttl > 0 ? System.nanoTime() + ttl : 0L;
+      segmentFor(key).put(key, encoded, current.generation, expiresAt, this);
+      return true;
+   }
+
+   /**
+    * Remove the decisions that depend on changed policies
+    * @param changed
+    * @return the number of removed decisions
+    */
+   int invalidate(Collection<PolicyDependency> changed)
+   {
+      Dictionaries current = dictionaries;
+      boolean[] stale = current.staleIds(changed);
+      int removed = 0;
+      for (Segment segment : segments)
+         removed += segment.invalidate(current.generation, stale);
+      return removed;
+   }
+
+   /**
+    * Remove all the decisions
+    */
+   void clear()
+   {
+      newGeneration(dictionaries);
+   }
+
+   /**
+    * Get the number of stored decisions, including those that have expired but 
+    * have not been purged yet
+    * @return
+    */
+   long size()
+   {
+      long size = 0;
+      for (Segment segment : segments)
+         size += segment.size();
+      return size;
+   }
+
+   /**
+    * Get the number of bytes held outside of the heap
+    * @return
+    */
+   long getCapacityInBytes()
+   {
+      long bytes = 0;
+      for (Segment segment : segments)
+         bytes += segment.buffer.capacity();
+      return bytes;
+   }
+
+   long getHitCount()
+   {
+      return hits.get();
+   }
+
+   long getMissCount()
+   {
+      return misses.get();
+   }
+
+   long getEvictionCount()
+   {
+      return evictions.get();
+   }
+
+   @Override
+   public String toString()
+   {
+      return "OffHeapDecisionStore[size=" + size() + " hits=" + hits + " misses=" + misses + " evictions="
+            + evictions + "]";
+   }
+
+   /**
+    * Start a new generation of dictionaries, unless another thread already did,
+    * and free the slots of the previous generations
+    */
+   private synchronized Dictionaries newGeneration(Dictionaries previous)
+   {
+      if (dictionaries != previous)
+         return dictionaries;
+      int generation = previous.generation == Byte.MAX_VALUE ? 1 : previous.generation + 1;
+      Dictionaries next = new Dictionaries(generation);
+      dictionaries = next;
+      for (Segment segment : segments)
+         segment.clear();
+      return next;
+   }
+
+   private Segment segmentFor(RequestFingerprint key)
+   {
+      return segments[(int) (key.getLow() >>> 48) & segmentMask];
+   }
+
+   /**
+    * A decision encoded with the ids of a generation of dictionaries
+    */
+   private static class Encoded
+   {
+      //the dictionaries the ids refer to, set when the decision is read
+      private Dictionaries dictionaries;
+
+      private byte decision;
+
+      private byte resource;
+
+      private int status;
+
+      private int policies;
+
+      private int[] obligations;
+   }
+
+   /**
+    * The dictionaries of a generation. Ids are never reused within a generation.
+    */
+   private static class Dictionaries
+   {
+      private final int generation;
+
+      private final Dictionary<Status> statuses = new Dictionary<Status>();
+
+      private final Dictionary<Obligation> obligations = new Dictionary<Obligation>();
+
+      private final Dictionary<Set<PolicyDependency>> policies = new Dictionary<Set<PolicyDependency>>();
+
+      private Dictionaries(int generation)
+      {
+         this.generation = generation;
+      }
+
+      private boolean isFull()
+      {
+         return statuses.isFull() || obligations.isFull() || policies.isFull();
+      }
+
+      private Encoded encode(ResponseCtx response, Set<PolicyDependency> policySet)
+      {
+         if (response.getResults().size() != 1)
+            return null;
+         Result result = (Result) response.getResults().iterator().next();
+         String resource = result.getResource();
+         if (resource != null && resource.length() > 0)
+            return null;
+         Set<?> resultObligations = result.getObligations();
+         if (resultObligations.size() > MAX_OBLIGATIONS)
+            return null;
+
+         Encoded encoded = new Encoded();
+         encoded.decision = (byte) result.getDecision();
+         encoded.resource = (byte) (resource == null ? 0 : 1);
+         encoded.status = statuses.idOf(result.getStatus());
+         if (encoded.status < 0)
+            return null;
+         encoded.policies = policySet == null ? -1 : policies.idOf(policySet);
+         if (policySet != null && encoded.policies < 0)
+            return null;
+         encoded.obligations = new int[resultObligations.size()];
+         int i = 0;
+         for (Object obligation : resultObligations)
+         {
+            encoded.obligations[i] = obligations.idOf((Obligation) obligation);
+            if (encoded.obligations[i++] < 0)
+               return null;
+         }
+         return encoded;
+      }
+
+      private CachedDecision decode(Encoded encoded)
+      {
+         Set<Obligation> resultObligations = new HashSet<Obligation>();
+         for (int id : encoded.obligations)
+            resultObligations.add(obligations.get(id));
+         Result result = new Result(encoded.decision, statuses.get(encoded.status), 
+               encoded.resource == 0 ? null : "", resultObligations);
+         Set<PolicyDependency> policySet = encoded.policies < 0 ? null : policies.get(encoded.policies);
+         return new CachedDecision(new ResponseCtx(result), policySet);
+      }
+
+      /**
+       * Get the ids of the policy sets that depend on changed policies
+       */
+      private boolean[] staleIds(Collection<PolicyDependency> changed)
+      {
+         List<Set<PolicyDependency>> values = policies.values();
+         boolean[] stale = new boolean[values.size()];
+         for (int i = 0; i < stale.length; i++)
+            stale[i] = DecisionCacheLocator.dependsOn(values.get(i), changed);
+         return stale;
+      }
+   }
+
+   /**
+    * Assigns ids to a bounded number of values
+    */
+   private static class Dictionary<T>
+   {
+      private final Map<T, Integer> ids = new HashMap<T, Integer>();
+
+      private final List<T> values = new ArrayList<T>();
+
+      private synchronized int idOf(T value)
+      {
+         Integer id = ids.get(value);
+         if (id == null)
+         {
+            if (values.size() >= MAX_DICTIONARY_SIZE)
+               return -1;
+            id = values.size();
+            values.add(value);
+            ids.put(value, id);
+         }
+         return id;
+      }
+
+      private synchronized T get(int id)
+      {
+         return values.get(id);
+      }
+
+      private synchronized List<T> values()
+      {
+         return new ArrayList<T>(values);
+      }
+
+      private synchronized boolean isFull()
+      {
+         return values.size() >= MAX_DICTIONARY_SIZE;
+      }
+   }
+
+   private static class Segment
+   {
+      private final ReentrantLock lock = new ReentrantLock();
+
+      private final ByteBuffer buffer;
+
+      private final int buckets;
+
+      private int clock;
+
+      private int size;
+
+      private Segment(int buckets)
+      {
+         this.buckets = buckets;
+         this.buffer = ByteBuffer.allocateDirect(buckets * WAYS * SLOT_SIZE);
+      }
+
+      private int bucketOffset(RequestFingerprint key)
+      {
+         long high = key.getHigh();
+         int hash = (int) (high ^ (high >>> 32)) & 0x7fffffff;
+         return (hash % buckets) * WAYS * SLOT_SIZE;
+      }
+
+      private Encoded get(RequestFingerprint key, long now, OffHeapDecisionStore store)
+      {
+         lock.lock();
+         try
+         {
+            //read under the lock, so that a slot written for a generation started
+            //after this call is not taken for a stale one and freed
+            Dictionaries current = store.dictionaries;
+            int bucket = bucketOffset(key);
+            for (int way = 0; way < WAYS; way++)
+            {
+               int slot = bucket + way * SLOT_SIZE;
+               if (!matches(slot, key))
+                  continue;
+               if (buffer.get(slot + GENERATION) != current.generation || isExpired(slot, now))
+               {
+                  free(slot);
+                  return null;
+               }
+               buffer.putInt(slot + LAST_ACCESS, ++clock);
+               Encoded encoded = new Encoded();
+               encoded.dictionaries = current;
+               encoded.decision = buffer.get(slot + DECISION);
+               encoded.resource = buffer.get(slot + RESOURCE);
+               encoded.status = buffer.getInt(slot + STATUS);
+               encoded.policies = buffer.getInt(slot + POLICIES);
+               encoded.obligations = new int[buffer.get(slot + OBLIGATION_COUNT)];
+               for (int i = 0; i < encoded.obligations.length; i++)
+                  encoded.obligations[i] = buffer.getInt(slot + OBLIGATIONS + 4 * i);
+               return encoded;
+            }
+            return null;
+         }
+         finally
+         {
+            lock.unlock();
+         }
+      }
+
+      private void put(RequestFingerprint key, Encoded encoded, int generation, long expiresAt, 
+            OffHeapDecisionStore store)
+      {
+         lock.lock();
+         try
+         {
+            int slot = findSlot(key, expiresAt == 0L ? 0L : System.nanoTime(), store);
+            buffer.putLong(slot + KEY_HIGH, key.getHigh());
+            buffer.putLong(slot + KEY_LOW, key.getLow());
+            buffer.putLong(slot + EXPIRES_AT, expiresAt);
+            buffer.putInt(slot + LAST_ACCESS, ++clock);
+            buffer.put(slot + GENERATION, (byte) generation);
+            buffer.put(slot + DECISION, encoded.decision);
+            buffer.put(slot + RESOURCE, encoded.resource);
+            buffer.put(slot + OBLIGATION_COUNT, (byte) encoded.obligations.length);
+            buffer.putInt(slot + STATUS, encoded.status);
+            buffer.putInt(slot + POLICIES, encoded.policies);
+            for (int i = 0; i < encoded.obligations.length; i++)
+               buffer.putInt(slot + OBLIGATIONS + 4 * i, encoded.obligations[i]);
+         }
+         finally
+         {
+            lock.unlock();
+         }
+      }
+
+      /**
+       * Find the slot of a key: the slot that already holds it, else a free slot, 
+       * else an expired slot, else the least recently used slot of the bucket
+       */
+      private int findSlot(RequestFingerprint key, long now, OffHeapDecisionStore store)
+      {
+         int bucket = bucketOffset(key);
+         int free = -1;
+         int victim = -1;
+         int victimAge = -1;
+         for (int way = 0; way < WAYS; way++)
+         {
+            int slot = bucket + way * SLOT_SIZE;
+            if (buffer.get(slot + GENERATION) == 0)
+            {
+               if (free < 0)
+                  free = slot;
+               continue;
+            }
+            if (matches(slot, key))
+               return slot;
+            int age = isExpired(slot, now) ? Integer.MAX_VALUE : clock - buffer.getInt(slot + LAST_ACCESS);
+            if (age > victimAge)
+            {
+               victim = slot;
+               victimAge = age;
+            }
+         }
+         if (free >= 0)
+         {
+            size++;
+            return free;
+         }
+         if (victimAge != Integer.MAX_VALUE)
+            store.evictions.incrementAndGet();
+         return victim;
+      }
+
+      private boolean matches(int slot, RequestFingerprint key)
+      {
+         return buffer.get(slot + GENERATION) != 0 && buffer.getLong(slot + KEY_HIGH) == key.getHigh()
+               && buffer.getLong(slot + KEY_LOW) == key.getLow();
+      }
+
+      private boolean isExpired(int slot, long now)
+      {
+         long expiresAt = buffer.getLong(slot + EXPIRES_AT);
+         return expiresAt != 0L && now - expiresAt >= 0;
+      }
+
+      private void free(int slot)
+      {
+         buffer.put(slot + GENERATION, (byte) 0);
+         size--;
+      }
+
+      private int invalidate(int generation, boolean[] stale)
+      {
+         lock.lock();
+         try
+         {
+            int removed = 0;
+            for (int slot = 0; slot < buffer.capacity(); slot += SLOT_SIZE)
+            {
+               byte slotGeneration = buffer.get(slot + GENERATION);
+               if (slotGeneration == 0)
+                  continue;
+               int policies = buffer.getInt(slot + POLICIES);
+               //decisions of another generation are unreachable anyway
+               if (slotGeneration != generation || policies < 0 || policies >= stale.length || stale[policies])
+               {
+                  free(slot);
+                  removed++;
+               }
+            }
+            return removed;
+         }
+         finally
+         {
+            lock.unlock();
+         }
+      }
+
+      private void clear()
+      {
+         lock.lock();
+         try
+         {
+            for (int slot = 0; slot < buffer.capacity(); slot += SLOT_SIZE)
+               buffer.put(slot + GENERATION, (byte) 0);
+            size = 0;
+         }
+         finally
+         {
+            lock.unlock();
+         }
+      }
+
+      private int size()
+      {
+         lock.lock();
+         try
+         {
+            return size;
+         }
+         finally
+         {
+            lock.unlock();
+         }
+      }
+   }
+}
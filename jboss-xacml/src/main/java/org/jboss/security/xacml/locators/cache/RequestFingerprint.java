@@ -0,0 +1,389 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.security.xacml.locators.cache;
+
+import java.io.Serializable;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.jboss.security.xacml.sunxacml.AttributeDependencies;
+import org.jboss.security.xacml.sunxacml.attr.AttributeDesignator;
+import org.jboss.security.xacml.sunxacml.attr.AttributeValue;
+import org.jboss.security.xacml.sunxacml.ctx.Attribute;
+import org.jboss.security.xacml.sunxacml.ctx.RequestCtx;
+import org.jboss.security.xacml.sunxacml.ctx.Subject;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * A canonical 128 bit fingerprint of a XACML request.
+ * <p>
+ * Attributes are sorted by category, id, type and issuer, and their values
+ * are encoded in their canonical string form, so two requests that carry the
+ * same attributes in a different order have the same fingerprint. The issue
+ * instant of an attribute is not part of the fingerprint. The fingerprint of the
+ * whole request covers the resource content too, which attribute selectors may query.
+ * Every variable length field of the canonical form is prefixed with its length,
+ * so two different requests never have the same canonical form, and the fingerprint
+ * is the first 128 bits of its SHA-256 digest.
+ * </p>
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since Oct 18, 2026
+ */
+public final class RequestFingerprint implements Serializable
+{
+   private static final long serialVersionUID = 1L;
+
+   private static final Charset UTF8 = Charset.forName("UTF-8");
+
+   private static final String RESOURCE_CATEGORY = "resource";
+
+   private static final String ACTION_CATEGORY = "action";
+
+   private static final String ENVIRONMENT_CATEGORY = "environment";
+
+   private static final ThreadLocal<MessageDigest> digests = new ThreadLocal<MessageDigest>()
+   {
+      @Override
+      protected MessageDigest initialValue()
+      {
+         try
+         {
+            return MessageDigest.getInstance("SHA-256");
+         }
+         catch (NoSuchAlgorithmException e)
+         {
+            throw new RuntimeException(e);
+         }
+      }
+   };
+
+   private final long high;
+
+   private final long low;
+
+   public RequestFingerprint(long high, long low)
+   {
+      this.high = high;
+      this.low = low;
+   }
+
+   /**
+    * Compute the fingerprint of a request
+    * @param request
+    * @param ignoreSubjectIDs subject attribute ids that are not part of the fingerprint
+    * @param ignoreResourceIDs resource attribute ids that are not part of the fingerprint
+    * @param ignoreActionIDs action attribute ids that are not part of the fingerprint
+    * @param ignoreEnvIDs environment attribute ids that are not part of the fingerprint
+    * @return
+    */
+   @SuppressWarnings("rawtypes")
+   public static RequestFingerprint from(RequestCtx request, Set<String> ignoreSubjectIDs,
+         Set<String> ignoreResourceIDs, Set<String> ignoreActionIDs, Set<String> ignoreEnvIDs)
+   {
+      List<String> canonical = new ArrayList<String>();
+
+      List subjects = request.getSubjectsAsList();
+      if (subjects != null)
+      {
+         for (Object object : subjects)
+         {
+            Subject subject = (Subject) object;
+            String category = String.valueOf(subject.getCategory());
+            addAttributes(canonical, category, subject.getAttributesAsList(), ignoreSubjectIDs);
+         }
+      }
+      addAttributes(canonical, RESOURCE_CATEGORY, request.getResourceAsList(), ignoreResourceIDs);
+      addAttributes(canonical, ACTION_CATEGORY, request.getActionAsList(), ignoreActionIDs);
+      addAttributes(canonical, ENVIRONMENT_CATEGORY, request.getEnvironmentAttributesAsList(), ignoreEnvIDs);
+      addResourceContent(canonical, request);
+
+      return digest(canonical);
+   }
+
+   /**
+    * Compute the fingerprint of the subjects of a request only
+    * @param request
+    * @return
+    */
+   @SuppressWarnings("rawtypes")
+   public static RequestFingerprint fromSubjects(RequestCtx request)
+   {
+      List<String> canonical = new ArrayList<String>();
+
+      List subjects = request.getSubjectsAsList();
+      if (subjects != null)
+      {
+         for (Object object : subjects)
+         {
+            Subject subject = (Subject) object;
+            String category = String.valueOf(subject.getCategory());
+            addAttributes(canonical, category, subject.getAttributesAsList(), null);
+         }
+      }
+      return digest(canonical);
+   }
+
+   /**
+    * Compute the fingerprint of the values that a request has for some designators.
+    * All the attributes with the id of a designator are part of the fingerprint, 
+    * whatever their type and issuer, and so are the designators themselves. 
+    * @param request
+    * @param designators
+    * @return
+    */
+   @SuppressWarnings("rawtypes")
+   public static RequestFingerprint from(RequestCtx request, Collection<AttributeDependencies.Designator> designators)
+   {
+      List<String> canonical = new ArrayList<String>();
+      canonical.add("#dependencies");
+      for (AttributeDependencies.Designator designator : designators)
+      {
+         StringBuilder builder = new StringBuilder("#");
+         builder.append(designator.getDesignatorType());
+         appendField(builder, designator.getCategory());
+         appendField(builder, designator.getId());
+         appendField(builder, designator.getType());
+         appendField(builder, designator.getIssuer());
+         canonical.add(builder.toString());
+         String id = designator.getId().toString();
+         switch (designator.getDesignatorType())
+         {
+            case AttributeDesignator.SUBJECT_TARGET :
+               List subjects = request.getSubjectsAsList();
+               if (subjects == null)
+                  break;
+               for (Object object : subjects)
+               {
+                  Subject subject = (Subject) object;
+                  String category = String.valueOf(subject.getCategory());
+                  if (category.equals(String.valueOf(designator.getCategory())))
+                     addAttributes(canonical, category, subject.getAttributesAsList(), null, id);
+               }
+               break;
+            case AttributeDesignator.RESOURCE_TARGET :
+               addAttributes(canonical, RESOURCE_CATEGORY, request.getResourceAsList(), null, id);
+               break;
+            case AttributeDesignator.ACTION_TARGET :
+               addAttributes(canonical, ACTION_CATEGORY, request.getActionAsList(), null, id);
+               break;
+            default :
+               addAttributes(canonical, ENVIRONMENT_CATEGORY, request.getEnvironmentAttributesAsList(), null, id);
+         }
+      }
+      return digest(canonical);
+   }
+
+   private static RequestFingerprint digest(List<String> canonical)
+   {
+      Collections.sort(canonical);
+
+      MessageDigest digest = digests.get();
+      digest.reset();
+      for (String attribute : canonical)
+      {
+         byte[] bytes = attribute.getBytes(UTF8);
+         digest.update(String.valueOf(bytes.length).getBytes(UTF8));
+         digest.update((byte) ':');
+         digest.update(bytes);
+      }
+      byte[] bytes = digest.digest();
+      return new RequestFingerprint(toLong(bytes, 0), toLong(bytes, 8));
+   }
+
+   public long getHigh()
+   {
+      return high;
+   }
+
+   public long getLow()
+   {
+      return low;
+   }
+
+   @Override
+   public int hashCode()
+   {
+      return (int) (low ^ (low >>> 32));
+   }
+
+   @Override
+   public boolean equals(Object obj)
+   {
+      if (this == obj)
+         return true;
+      if (!(obj instanceof RequestFingerprint))
+         return false;
+      RequestFingerprint other = (RequestFingerprint) obj;
+      return high == other.high && low == other.low;
+   }
+
+   @Override
+   public String toString()
+   {
+      return String.format("%016x%016x", high, low);
+   }
+
+   @SuppressWarnings("rawtypes")
+   private static void addAttributes(List<String> canonical, String category, List attributes,
+         Set<String> ignoreIDs)
+   {
+      addAttributes(canonical, category, attributes, ignoreIDs, null);
+   }
+
+   /**
+    * Add the canonical form of the attributes, leaving out the ignored ones,
+    * or keeping only those of an id if it is not null
+    */
+   @SuppressWarnings("rawtypes")
+   private static void addAttributes(List<String> canonical, String category, List attributes,
+         Set<String> ignoreIDs, String onlyID)
+   {
+      if (attributes == null)
+         return;
+      for (Object object : attributes)
+      {
+         Attribute attribute = (Attribute) object;
+         String id = attribute.getId().toString();
+         if (ignoreIDs != null && ignoreIDs.contains(id))
+            continue;
+         if (onlyID != null && !onlyID.equals(id))
+            continue;
+
+         List<String> values = new ArrayList<String>();
+         for (AttributeValue value : attribute.getValues())
+         {
+            values.add(value.encode());
+         }
+         Collections.sort(values);
+
+         StringBuilder builder = new StringBuilder();
+         appendField(builder, category);
+         appendField(builder, id);
+         appendField(builder, attribute.getType());
+         appendField(builder, attribute.getIssuer());
+         for (String value : values)
+         {
+            appendField(builder, value);
+         }
+         canonical.add(builder.toString());
+      }
+   }
+
+   /**
+    * Add the canonical form of the resource content of the request, if any
+    */
+   private static void addResourceContent(List<String> canonical, RequestCtx request)
+   {
+      Node root = request.getDocumentRoot();
+      if (!(root instanceof Element))
+         return;
+      NodeList contents = ((Element) root).getElementsByTagNameNS("*", "ResourceContent");
+      for (int i = 0; i < contents.getLength(); i++)
+      {
+         StringBuilder builder = new StringBuilder("#content");
+         appendNode(builder, contents.item(i));
+         canonical.add(builder.toString());
+      }
+   }
+
+   /**
+    * Append the elements and text of a node, with the attributes of
+    * an element sorted, leaving out comments and processing instructions
+    */
+   private static void appendNode(StringBuilder builder, Node node)
+   {
+      switch (node.getNodeType())
+      {
+         case Node.ELEMENT_NODE :
+            String name = node.getLocalName() != null ? node.getLocalName() : node.getNodeName();
+            builder.append('<');
+            appendField(builder, node.getNamespaceURI());
+            appendField(builder, name);
+
+            NamedNodeMap attributes = node.getAttributes();
+            List<String> sorted = new ArrayList<String>();
+            for (int i = 0; i < attributes.getLength(); i++)
+            {
+               Node attribute = attributes.item(i);
+               String attributeName = attribute.getLocalName() != null ? attribute.getLocalName() : attribute
+                     .getNodeName();
+               StringBuilder field = new StringBuilder();
+               appendField(field, attribute.getNamespaceURI());
+               appendField(field, attributeName);
+               appendField(field, attribute.getNodeValue());
+               sorted.add(field.toString());
+            }
+            Collections.sort(sorted);
+            for (String attribute : sorted)
+            {
+               builder.append('@').append(attribute);
+            }
+            builder.append('>');
+
+            for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling())
+            {
+               appendNode(builder, child);
+            }
+            builder.append("</>");
+            break;
+         case Node.TEXT_NODE :
+         case Node.CDATA_SECTION_NODE :
+            appendField(builder, node.getNodeValue());
+            break;
+         default :
+            break;
+      }
+   }
+
+   /**
+    * Append a field prefixed with its length, or a single '-' if it is null
+    */
+   private static void appendField(StringBuilder builder, Object field)
+   {
+      if (field == null)
+      {
+         builder.append('-');
+         return;
+      }
+      String value = field.toString();
+      builder.append(value.length()).append(':').append(value);
+   }
+
+   private static long toLong(byte[] bytes, int offset)
+   {
+      long value = 0;
+      for (int i = offset; i < offset + 8; i++)
+      {
+         value = (value << 8) | (bytes[i] & 0xFF);
+      }
+      return value;
+   }
+}
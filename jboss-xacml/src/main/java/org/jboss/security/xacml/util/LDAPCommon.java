@@ -21,17 +21,27 @@
  */
 package org.jboss.security.xacml.util;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.crypto.SecretKey;
 import javax.crypto.SecretKeyFactory;
 import javax.crypto.spec.PBEKeySpec;
 import javax.crypto.spec.PBEParameterSpec;
+import javax.naming.CommunicationException;
 import javax.naming.Context;
 import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
+import javax.naming.ServiceUnavailableException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.DirContext;
 import javax.naming.directory.SearchControls;
 import javax.naming.directory.SearchResult;
 import javax.naming.ldap.InitialLdapContext;
@@ -41,6 +51,14 @@ import org.picketbox.commons.cipher.PBEUtils;
 
 /**
  * Common Utility class for LDAP integration
+ * <p>
+ * {@link #searchAttribute(Object[])} uses a bounded pool of authenticated contexts, sized
+ * with the poolSize option (default 10). A caller waits at most poolTimeout milliseconds
+ * (default 30000) for a context. A context that has been idle for more than
+ * validationInterval milliseconds (default 60000) is checked before it is used again, and a
+ * context whose connection failed is replaced by a new one. {@link #closePool()} closes the
+ * pooled contexts for good.
+ * </p>
  * 
  * @author <a href="mmoyses@redhat.com">Marcus Moyses</a>
  * @author Anil.Saldhana@redhat.com
@@ -107,7 +125,24 @@ public class LDAPCommon
    private static final String XACML_LDAP_VALUE_DATA_TYPE = "valueDataType";
    private String valueDataType;
    
+   private static final String XACML_LDAP_POOL_SIZE = "poolSize";
+   private int poolSize = 10;
+   
+   private static final String XACML_LDAP_POOL_TIMEOUT = "poolTimeout";
+   private long poolTimeout = 30000;
+   
+   private static final String XACML_LDAP_VALIDATION_INTERVAL = "validationInterval";
+   private long validationInterval = 60000;
+   
    private Properties env = new Properties();
+   
+   private boolean envConstructed = false;
+   
+   private volatile Semaphore poolPermits = null;
+   
+   private final LinkedBlockingDeque<PooledContext> idleContexts = new LinkedBlockingDeque<PooledContext>();
+   
+   private volatile boolean poolClosed = false;
 
    private InitialLdapContext ctx = null;
 
@@ -175,6 +210,12 @@ public class LDAPCommon
          substituteValue = optionValue;
       else if (name.equals( XACML_LDAP_VALUE_DATA_TYPE ))
             valueDataType = optionValue;
+      else if (name.equals( XACML_LDAP_POOL_SIZE ))
+         poolSize = Integer.parseInt( optionValue.trim() );
+      else if (name.equals( XACML_LDAP_POOL_TIMEOUT ))
+         poolTimeout = Long.parseLong( optionValue.trim() );
+      else if (name.equals( XACML_LDAP_VALIDATION_INTERVAL ))
+         validationInterval = Long.parseLong( optionValue.trim() );
       else if( name.equals( "java.naming.factory.initial" ))
          factory = optionValue ;
       else if( name.equals( "java.naming.provider.url" ))
@@ -250,54 +291,243 @@ public class LDAPCommon
     */
    public NamingEnumeration<SearchResult> search( Object[] filterArgs ) throws NamingException
    {
-      InitialLdapContext ctx = new InitialLdapContext(env, null);
+      if( ctx == null )
+         constructJNDIContext();
+      return search( ctx, filterArgs ); 
+   }
+
+   /**
+    * Perform a search with a pooled context, and get the values of the attribute
+    * we are interested in. If the connection of the context fails, the search is
+    * tried once more with a new context.
+    * 
+    * @param filterArgs can be null. Contains the wildcard substitution for the filter
+    * @return the attribute of each entry that has it
+    * @throws NamingException
+    */
+   public List<Attribute> searchAttribute( Object[] filterArgs ) throws NamingException
+   {
+      NamingException failure = null;
+      for( int attempt = 0; attempt < 2; attempt++ )
+      {
+         PooledContext pooled = borrowContext();
+         boolean reusable = false;
+         NamingEnumeration<SearchResult> results = null;
+         try
+         {
+            List<Attribute> values = new ArrayList<Attribute>();
+            results = search( pooled.context, filterArgs );
+            while (results.hasMore())
+            {
+               Attributes attributes = results.next().getAttributes();
+               if( attributes != null && attributes.get( attribute ) != null )
+                  values.add( attributes.get( attribute ) );
+            }
+            reusable = true;
+            return values;
+         }
+         catch( NamingException e )
+         {
+            if( !isConnectionFailure( e ) )
+            {
+               reusable = true;
+               throw e;
+            }
+            log.fine( "LDAP connection failed, reconnecting: " + e.getMessage() );
+            failure = e;
+         }
+         finally
+         {
+            if( results != null )
+            {
+               try {   results.close(); } catch ( NamingException ignore ) {}
+            }
+            releaseContext( pooled, reusable );
+         }
+      }
+      throw failure;
+   }
+
+   /**
+    * Construct the JNDI Context. Must always be in a try/catch/finally
+    * @see {@link #closeJNDIContext()}
+    * @throws NamingException
+    */
+   public void constructJNDIContext() throws NamingException
+   {
+      ctx = new InitialLdapContext( getEnvironment(), null );
+   }
+
+   /**
+    * Close the JNDI Context
+    * @throws NamingException
+    */
+   public void closeJNDIContext() throws NamingException
+   {
+      if( ctx != null )
+         ctx.close(); 
+   }
 
+   private NamingEnumeration<SearchResult> search( DirContext context, Object[] filterArgs ) throws NamingException
+   {
       SearchControls constraints = new SearchControls();
       constraints.setSearchScope(searchScope);
       constraints.setTimeLimit(searchTimeLimit);
       constraints.setReturningAttributes(new String[] { attribute }); //The attribute we are looking for 
 
       if( filterArgs != null )
-         return ctx.search( baseDN, filter, filterArgs, constraints );
+         return context.search( baseDN, filter, filterArgs, constraints );
          
-      return  ctx.search(baseDN, filter, constraints); 
+      return  context.search(baseDN, filter, constraints); 
    }
 
    /**
-    * Construct the JNDI Context. Must always be in a try/catch/finally
-    * @see {@link #closeJNDIContext()}
+    * Get the environment of the contexts, decoding the password the first time
+    * @return
+    */
+   private synchronized Properties getEnvironment()
+   {
+      if( !envConstructed )
+      {
+         if (password != null && password.startsWith(XACML_LDAP_PASSWORD_PREFIX))
+         {
+            // try to decode password
+            if (salt == null || salt.equals("") || salt.length() != 8)
+               throw new IllegalArgumentException("Option " + XACML_LDAP_SALT + " is not set correctly");
+            if (iterationCount == 0)
+               throw new IllegalArgumentException("Option " + XACML_LDAP_COUNT + " must be a positive integer");
+            password = decodePassword(password);
+         }
+
+         env.put(Context.INITIAL_CONTEXT_FACTORY, factory );
+         env.put(Context.PROVIDER_URL, url);
+         if (username != null)
+            env.put(Context.SECURITY_PRINCIPAL, username);
+         if (password != null)
+            env.put(Context.SECURITY_CREDENTIALS, password);
+         envConstructed = true;
+      }
+      return env;
+   }
+
+   /**
+    * Get a context from the pool, opening a new one if there is no healthy idle context
+    * @return
     * @throws NamingException
     */
-   public void constructJNDIContext() throws NamingException
+   private PooledContext borrowContext() throws NamingException
    {
-      if (password != null && password.startsWith(XACML_LDAP_PASSWORD_PREFIX))
+      if( poolClosed )
+         throw new ServiceUnavailableException( "The pool of LDAP contexts to " + url + " is closed" );
+      Semaphore permits = getPoolPermits();
+      try
+      {
+         if( !permits.tryAcquire( poolTimeout, TimeUnit.MILLISECONDS ))
+            throw new ServiceUnavailableException( "Timed out waiting for a pooled LDAP context to " + url );
+      }
+      catch( InterruptedException e )
       {
-         // try to decode password
-         if (salt == null || salt.equals("") || salt.length() != 8)
-            throw new IllegalArgumentException("Option " + XACML_LDAP_SALT + " is not set correctly");
-         if (iterationCount == 0)
-            throw new IllegalArgumentException("Option " + XACML_LDAP_COUNT + " must be a positive integer");
-         password = decodePassword(password);
+         Thread.currentThread().interrupt();
+         throw new ServiceUnavailableException( "Interrupted while waiting for a pooled LDAP context" );
       }
 
-      env.put(Context.INITIAL_CONTEXT_FACTORY, factory );
-      env.put(Context.PROVIDER_URL, url);
-      if (username != null)
-         env.put(Context.SECURITY_PRINCIPAL, username);
-      if (password != null)
-         env.put(Context.SECURITY_CREDENTIALS, password);
+      boolean borrowed = false;
+      try
+      {
+         PooledContext pooled;
+         while( (pooled = idleContexts.pollFirst()) != null )
+         {
+            if( isHealthy( pooled ))
+            {
+               borrowed = true;
+               return pooled;
+            }
+            pooled.close();
+         }
+         pooled = new PooledContext( new InitialLdapContext( getEnvironment(), null ));
+         borrowed = true;
+         return pooled;
+      }
+      finally
+      {
+         if( !borrowed )
+            permits.release();
+      }
+   }
 
-      ctx = new InitialLdapContext( env, null );
+   private void releaseContext( PooledContext pooled, boolean reusable )
+   {
+      if( reusable && !poolClosed )
+      {
+         pooled.lastUsed = System.currentTimeMillis();
+         idleContexts.offerFirst( pooled );
+         //the pool may have been closed while the context was given back
+         if( poolClosed )
+            closeIdleContexts();
+      }
+      else
+      {
+         pooled.close();
+      }
+      poolPermits.release();
    }
 
    /**
-    * Close the JNDI Context
-    * @throws NamingException
+    * Close the idle pooled contexts, and the ones in use once they are given back.
+    * Later searches with {@link #searchAttribute(Object[])} fail.
     */
-   public void closeJNDIContext() throws NamingException
+   public void closePool()
    {
-      if( ctx != null )
-         ctx.close(); 
+      poolClosed = true;
+      closeIdleContexts();
+   }
+
+   private void closeIdleContexts()
+   {
+      PooledContext pooled;
+      while( (pooled = idleContexts.pollFirst()) != null )
+         pooled.close();
+   }
+
+   private Semaphore getPoolPermits()
+   {
+      Semaphore permits = poolPermits;
+      if( permits == null )
+      {
+         synchronized( this )
+         {
+            permits = poolPermits;
+            if( permits == null )
+            {
+               permits = new Semaphore( poolSize, true );
+               poolPermits = permits;
+            }
+         }
+      }
+      return permits;
+   }
+
+   /**
+    * A context that has been idle for a while is checked with a lookup of the base entry
+    */
+   private boolean isHealthy( PooledContext pooled )
+   {
+      if( System.currentTimeMillis() - pooled.lastUsed < validationInterval )
+         return true;
+      try
+      {
+         pooled.context.getAttributes( "", new String[] { "objectClass" } );
+         return true;
+      }
+      catch( NamingException e )
+      {
+         return !isConnectionFailure( e );
+      }
+   }
+
+   private boolean isConnectionFailure( NamingException e )
+   {
+      return e instanceof CommunicationException || e instanceof ServiceUnavailableException;
    }
 
    /**
@@ -330,4 +560,29 @@ public class LDAPCommon
          throw new IllegalStateException(e);
       }
    }
-}
\ No newline at end of file
+
+   private static class PooledContext
+   {
+      private final InitialLdapContext context;
+
+      private long lastUsed = System.currentTimeMillis();
+
+      private PooledContext( InitialLdapContext context )
+      {
+         this.context = context;
+      }
+
+      private void close()
+      {
+         try
+         {
+            context.close();
+         }
+         catch( NamingException e )
+         {
+            if( log.isLoggable( Level.FINE ))
+               log.fine( "Error closing pooled LDAP context:" + e.getMessage() );
+         }
+      }
+   }
+}
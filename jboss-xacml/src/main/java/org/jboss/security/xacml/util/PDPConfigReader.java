@@ -0,0 +1,281 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.security.xacml.util;
+
+import java.io.ByteArrayInputStream;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.jboss.security.xacml.jaxb.LocatorType;
+import org.jboss.security.xacml.jaxb.LocatorsType;
+import org.jboss.security.xacml.jaxb.Option;
+import org.jboss.security.xacml.jaxb.PDP;
+import org.jboss.security.xacml.jaxb.PoliciesType;
+import org.jboss.security.xacml.jaxb.PolicySetType;
+import org.jboss.security.xacml.jaxb.PolicyType;
+
+/**
+ * Reads the JBossXACML configuration with StAX, without going through JAXB.
+ * <p>
+ * Only the configurations made of the elements of the schema in the order it
+ * gives, with text options, are read. Anything else, such as an option holding 
+ * an element, a missing required element or a DTD, makes {@link #read(byte[])}
+ * return null, and the configuration is then left to the JAXB unmarshaller,
+ * which reports the errors of the invalid ones.
+ * </p>
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since Oct 18, 2026
+ */
+public class PDPConfigReader
+{
+   private static Logger log = Logger.getLogger(PDPConfigReader.class.getName());
+
+   private static final String NS = "urn:jboss:xacml:2.0";
+
+   private static final XMLInputFactory factory = createFactory();
+
+   private static XMLInputFactory createFactory()
+   {
+      XMLInputFactory factory = XMLInputFactory.newInstance();
+      factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+      factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+      factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+      factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+      return factory;
+   }
+
+   /**
+    * Read a configuration
+    * @param config the configuration file
+    * @return the configuration, or null if it has to be read by JAXB
+    */
+   public static PDP read(byte[] config)
+   {
+      try
+      {
+         XMLStreamReader reader;
+         synchronized (factory)
+         {
+            reader = factory.createXMLStreamReader(new ByteArrayInputStream(config));
+         }
+         try
+         {
+            return readDocument(reader);
+         }
+         finally
+         {
+            reader.close();
+         }
+      }
+      catch (XMLStreamException e)
+      {
+         if (log.isLoggable(Level.FINE))
+            log.fine("Configuration left to JAXB:" + e.getLocalizedMessage());
+         return null;
+      }
+      catch (RuntimeException e)
+      {
+         //such as a StAX implementation failing on what it does not support
+         if (log.isLoggable(Level.FINE))
+            log.fine("Configuration left to JAXB:" + e);
+         return null;
+      }
+   }
+
+   private static PDP readDocument(XMLStreamReader reader) throws XMLStreamException
+   {
+      if (reader.nextTag() != XMLStreamConstants.START_ELEMENT || !isElement(reader, "jbosspdp"))
+         throw unsupported(reader);
+      for (int i = 0; i < reader.getAttributeCount(); i++)
+      {
+         if (!XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI.equals(reader.getAttributeNamespace(i)))
+            throw unsupported(reader);
+      }
+
+      PDP pdp = new PDP();
+      int event = reader.nextTag();
+      if (event == XMLStreamConstants.START_ELEMENT && isElement(reader, "Policies"))
+      {
+         pdp.setPolicies(readPolicies(reader));
+         event = reader.nextTag();
+      }
+      if (event != XMLStreamConstants.START_ELEMENT || !isElement(reader, "Locators"))
+         throw unsupported(reader);
+      pdp.setLocators(readLocators(reader));
+      if (reader.nextTag() != XMLStreamConstants.END_ELEMENT)
+         throw unsupported(reader);
+
+      while (reader.hasNext())
+      {
+         event = reader.next();
+         if (event == XMLStreamConstants.START_ELEMENT || event == XMLStreamConstants.CHARACTERS && !reader.isWhiteSpace())
+            throw unsupported(reader);
+      }
+      return pdp;
+   }
+
+   private static PoliciesType readPolicies(XMLStreamReader reader) throws XMLStreamException
+   {
+      checkNoAttributes(reader);
+      PoliciesType policies = new PoliciesType();
+      int event = reader.nextTag();
+      while (event == XMLStreamConstants.START_ELEMENT && isElement(reader, "PolicySet"))
+      {
+         policies.getPolicySet().add(readPolicySet(reader));
+         event = reader.nextTag();
+      }
+      while (event == XMLStreamConstants.START_ELEMENT && isElement(reader, "Policy"))
+      {
+         policies.getPolicy().add(readPolicy(reader));
+         event = reader.nextTag();
+      }
+      if (event != XMLStreamConstants.END_ELEMENT)
+         throw unsupported(reader);
+      return policies;
+   }
+
+   private static PolicySetType readPolicySet(XMLStreamReader reader) throws XMLStreamException
+   {
+      checkNoAttributes(reader);
+      PolicySetType policySet = new PolicySetType();
+      int event = reader.nextTag();
+      if (event == XMLStreamConstants.START_ELEMENT && isElement(reader, "Location"))
+      {
+         policySet.setLocation(readLocation(reader));
+         event = reader.nextTag();
+      }
+      while (event == XMLStreamConstants.START_ELEMENT && isElement(reader, "Policy"))
+      {
+         policySet.getPolicy().add(readPolicy(reader));
+         event = reader.nextTag();
+      }
+      while (event == XMLStreamConstants.START_ELEMENT && isElement(reader, "PolicySet"))
+      {
+         policySet.getPolicySet().add(readPolicySet(reader));
+         event = reader.nextTag();
+      }
+      if (event != XMLStreamConstants.END_ELEMENT)
+         throw unsupported(reader);
+      return policySet;
+   }
+
+   private static PolicyType readPolicy(XMLStreamReader reader) throws XMLStreamException
+   {
+      checkNoAttributes(reader);
+      PolicyType policy = new PolicyType();
+      if (reader.nextTag() != XMLStreamConstants.START_ELEMENT || !isElement(reader, "Location"))
+         throw unsupported(reader);
+      policy.setLocation(readLocation(reader));
+      if (reader.nextTag() != XMLStreamConstants.END_ELEMENT)
+         throw unsupported(reader);
+      return policy;
+   }
+
+   private static String readLocation(XMLStreamReader reader) throws XMLStreamException
+   {
+      checkNoAttributes(reader);
+      return reader.getElementText();
+   }
+
+   private static LocatorsType readLocators(XMLStreamReader reader) throws XMLStreamException
+   {
+      checkNoAttributes(reader);
+      LocatorsType locators = new LocatorsType();
+      int event = reader.nextTag();
+      while (event == XMLStreamConstants.START_ELEMENT && isElement(reader, "Locator"))
+      {
+         LocatorType locator = new LocatorType();
+         locator.setName(readNameAttribute(reader));
+         event = reader.nextTag();
+         while (event == XMLStreamConstants.START_ELEMENT && isElement(reader, "Option"))
+         {
+            locator.getOption().add(readOption(reader));
+            event = reader.nextTag();
+         }
+         if (event != XMLStreamConstants.END_ELEMENT)
+            throw unsupported(reader);
+         locators.getLocator().add(locator);
+         event = reader.nextTag();
+      }
+      if (event != XMLStreamConstants.END_ELEMENT)
+         throw unsupported(reader);
+      return locators;
+   }
+
+   private static Option readOption(XMLStreamReader reader) throws XMLStreamException
+   {
+      Option option = new Option();
+      option.setName(readNameAttribute(reader));
+      StringBuilder text = new StringBuilder();
+      while (true)
+      {
+         int event = reader.next();
+         if (event == XMLStreamConstants.END_ELEMENT)
+            break;
+         if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA
+               || event == XMLStreamConstants.SPACE)
+            text.append(reader.getText());
+         else
+            //elements are left to JAXB, and so are comments, which split the mixed content
+            throw unsupported(reader);
+      }
+      if (text.length() > 0)
+         option.getContent().add(text.toString());
+      return option;
+   }
+
+   private static String readNameAttribute(XMLStreamReader reader) throws XMLStreamException
+   {
+      String name = null;
+      for (int i = 0; i < reader.getAttributeCount(); i++)
+      {
+         String ns = reader.getAttributeNamespace(i);
+         if ((ns == null || ns.length() == 0) && "Name".equals(reader.getAttributeLocalName(i)))
+            name = reader.getAttributeValue(i);
+         else
+            throw unsupported(reader);
+      }
+      return name;
+   }
+
+   private static void checkNoAttributes(XMLStreamReader reader) throws XMLStreamException
+   {
+      if (reader.getAttributeCount() > 0)
+         throw unsupported(reader);
+   }
+
+   private static boolean isElement(XMLStreamReader reader, String localName)
+   {
+      return NS.equals(reader.getNamespaceURI()) && localName.equals(reader.getLocalName());
+   }
+
+   private static XMLStreamException unsupported(XMLStreamReader reader)
+   {
+      return new XMLStreamException("Unsupported configuration shape", reader.getLocation());
+   }
+}
@@ -39,12 +39,25 @@ import org.xml.sax.SAXException;
 
 /**
  * Create an XACML Policy Object from the url for the policy xml
+ * <p>
+ * Each thread reuses its own document builder, so that policy files can be
+ * parsed concurrently without creating a parser per file.
+ * </p>
  * @author Anil.Saldhana@redhat.com
  *  @since  Jul 6, 2007 
  *  @version $Revision$
  */
 public class XACMLPolicyUtil
 {
+   private static final DocumentBuilderFactory docBuilderFactory = DocumentBuilderFactory.newInstance();
+
+   static
+   {
+      docBuilderFactory.setNamespaceAware(true);
+   }
+
+   private static final ThreadLocal<DocumentBuilder> docBuilders = new ThreadLocal<DocumentBuilder>();
+
    /**
     * Construct {@link AbstractPolicy}
     * @param is inputstream to a policy or policyset
@@ -116,9 +129,19 @@ public class XACMLPolicyUtil
 
    private Document getDocument(InputStream is) throws ParserConfigurationException, SAXException, IOException
    {
-      DocumentBuilderFactory docBuilderFactory = DocumentBuilderFactory.newInstance();
-      docBuilderFactory.setNamespaceAware(true);
-      DocumentBuilder docBuilder = docBuilderFactory.newDocumentBuilder();
+      DocumentBuilder docBuilder = docBuilders.get();
+      if (docBuilder == null)
+      {
+         synchronized (docBuilderFactory)
+         {
+            docBuilder = docBuilderFactory.newDocumentBuilder();
+         }
+         docBuilders.set(docBuilder);
+      }
+      else
+      {
+         docBuilder.reset();
+      }
       Document doc = docBuilder.parse(is);
       return doc;
    }
@@ -152,4 +152,73 @@ public class DatabaseAttributeLocatorUnitTestCase extends TestCase
       int decision = response.getDecision();
       assertEquals("PERMIT?", XACMLConstants.DECISION_PERMIT,decision);
    }
+   
+   public void testPDPReusesPooledConnections() throws Exception
+   { 
+      ClassLoader tcl = Thread.currentThread().getContextClassLoader();
+
+      InputStream is = tcl.getResourceAsStream("locators/attrib/db_subject_attrib_locator-config.xml");
+      assertNotNull("Inputstream is not null?", is);
+      PolicyDecisionPoint pdp = new JBossPDP(is);
+      //The pooled connection and its prepared statement are used again for each request
+      for(int i = 0; i < 5; i++)
+      {
+         ResponseContext response = XACMLTestUtil.getResponse(pdp,"locators/attrib/attribLocatorSubjectAttribute-request.xml"); 
+         assertEquals("PERMIT?", XACMLConstants.DECISION_PERMIT,response.getDecision());
+      }
+   }
+   
+   public void testClosingPDPClosesPooledConnections() throws Exception
+   { 
+      ClassLoader tcl = Thread.currentThread().getContextClassLoader();
+
+      InputStream is = tcl.getResourceAsStream("locators/attrib/db_subject_attrib_locator-config.xml");
+      assertNotNull("Inputstream is not null?", is);
+      JBossPDP pdp = new JBossPDP(is);
+      ResponseContext response = XACMLTestUtil.getResponse(pdp,"locators/attrib/attribLocatorSubjectAttribute-request.xml"); 
+      assertEquals("PERMIT?", XACMLConstants.DECISION_PERMIT,response.getDecision());
+      
+      //The pool is closed along with the PDP, so the DB is no longer queried
+      pdp.close();
+      try
+      {
+         XACMLTestUtil.getResponse(pdp,"locators/attrib/attribLocatorSubjectAttribute-request.xml");
+         fail("The closed pool should not hand out connections");
+      }
+      catch(RuntimeException e)
+      {
+         assertTrue(e.getCause() instanceof SQLException);
+      }
+   }
+   
+   public void testPDPUsingCachedDatabaseSubjectAttributeLocator() throws Exception
+   { 
+      ClassLoader tcl = Thread.currentThread().getContextClassLoader();
+
+      InputStream is = tcl.getResourceAsStream("locators/attrib/db_subject_attrib_locator-cache-config.xml");
+      assertNotNull("Inputstream is not null?", is);
+      JBossPDP pdp = new JBossPDP(is);
+      ResponseContext response = XACMLTestUtil.getResponse(pdp,"locators/attrib/attribLocatorSubjectAttribute-request.xml"); 
+      assertEquals("PERMIT?", XACMLConstants.DECISION_PERMIT,response.getDecision());
+      
+      //The subject id of John Smith changes in the DB, but the cached value is still used
+      Connection connection = DriverManager.getConnection("jdbc:hsqldb:target/XACMLDBAttributeLocator");
+      try
+      {
+         Statement statement = connection.createStatement();
+         statement.executeUpdate("UPDATE subject SET subject_id = '999999' WHERE name = 'John Smith'");
+         statement.close();
+      }
+      finally
+      {
+         connection.close();
+      }
+      response = XACMLTestUtil.getResponse(pdp,"locators/attrib/attribLocatorSubjectAttribute-request.xml"); 
+      assertEquals("PERMIT?", XACMLConstants.DECISION_PERMIT,response.getDecision());
+      
+      //Once invalidated, the new subject id is looked up
+      pdp.invalidateAttributeCaches("John Smith");
+      response = XACMLTestUtil.getResponse(pdp,"locators/attrib/attribLocatorSubjectAttribute-request.xml"); 
+      assertTrue("Not PERMIT?", XACMLConstants.DECISION_PERMIT != response.getDecision());
+   }
 }
\ No newline at end of file
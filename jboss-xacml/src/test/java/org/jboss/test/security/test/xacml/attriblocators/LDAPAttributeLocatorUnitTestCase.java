@@ -23,6 +23,14 @@ package org.jboss.test.security.test.xacml.attriblocators;
 
 import java.io.File;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.naming.NamingException;
 
 import org.jboss.security.xacml.core.JBossPDP;
 import org.jboss.security.xacml.interfaces.PolicyDecisionPoint;
@@ -79,4 +87,62 @@ public class LDAPAttributeLocatorUnitTestCase extends OpenDSUnitTestAdapter
       int decision = response.getDecision();
       assertEquals("PERMIT?", XACMLConstants.DECISION_PERMIT,decision);
    }
+   
+   @Test
+   public void testClosingPDPClosesPooledConnections() throws Exception
+   { 
+      ClassLoader tcl = Thread.currentThread().getContextClassLoader();
+
+      InputStream is = tcl.getResourceAsStream("locators/attrib/ldap_subject_attrib_locator-config.xml");
+      assertNotNull("Inputstream is not null?", is);
+      JBossPDP pdp = new JBossPDP(is);
+      ResponseContext response = XACMLTestUtil.getResponse(pdp,"locators/attrib/attribLocatorSubjectAttribute-request.xml"); 
+      assertEquals("PERMIT?", XACMLConstants.DECISION_PERMIT,response.getDecision());
+      
+      //The pool is closed along with the PDP, so the directory is no longer searched
+      pdp.close();
+      try
+      {
+         XACMLTestUtil.getResponse(pdp,"locators/attrib/attribLocatorSubjectAttribute-request.xml");
+         fail("The closed pool should not hand out contexts");
+      }
+      catch(RuntimeException e)
+      {
+         assertTrue(e.getCause() instanceof NamingException);
+      }
+   }
+   
+   @Test
+   public void testConcurrentLookupsSharePooledConnections() throws Exception
+   { 
+      ClassLoader tcl = Thread.currentThread().getContextClassLoader();
+
+      InputStream is = tcl.getResourceAsStream("locators/attrib/ldap_subject_attrib_locator-config.xml");
+      assertNotNull("Inputstream is not null?", is);
+      final PolicyDecisionPoint pdp = new JBossPDP(is);
+      
+      ExecutorService executor = Executors.newFixedThreadPool(4);
+      try
+      {
+         List<Future<Integer>> decisions = new ArrayList<Future<Integer>>();
+         for(int i = 0; i < 20; i++)
+         {
+            decisions.add(executor.submit(new Callable<Integer>()
+            {
+               public Integer call() throws Exception
+               {
+                  return XACMLTestUtil.getResponse(pdp,"locators/attrib/attribLocatorSubjectAttribute-request.xml").getDecision();
+               }
+            }));
+         }
+         for(Future<Integer> decision : decisions)
+         {
+            assertEquals("PERMIT?", XACMLConstants.DECISION_PERMIT, decision.get().intValue());
+         }
+      }
+      finally
+      {
+         executor.shutdown();
+      }
+   }
 }
\ No newline at end of file
@@ -22,14 +22,37 @@
 package org.jboss.test.security.test.xacml.rbac;
 
 import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
+import org.jboss.security.xacml.bridge.JBossPolicyFinder;
+import org.jboss.security.xacml.bridge.PPSPolicySetFinderModule;
 import org.jboss.security.xacml.core.JBossPDP;
+import org.jboss.security.xacml.factories.PolicyFactory;
 import org.jboss.security.xacml.interfaces.PolicyDecisionPoint;
 import org.jboss.security.xacml.interfaces.ResponseContext;
 import org.jboss.security.xacml.interfaces.XACMLConstants;
+import org.jboss.security.xacml.interfaces.XACMLPolicy;
+import org.jboss.security.xacml.locators.JBossRBACPolicySetLocator;
+import org.jboss.security.xacml.sunxacml.EvaluationCtx;
+import org.jboss.security.xacml.sunxacml.PDP;
+import org.jboss.security.xacml.sunxacml.PDPConfig;
+import org.jboss.security.xacml.sunxacml.PolicyMetaData;
+import org.jboss.security.xacml.sunxacml.Target;
+import org.jboss.security.xacml.sunxacml.VersionConstraints;
+import org.jboss.security.xacml.sunxacml.ctx.RequestCtx;
+import org.jboss.security.xacml.sunxacml.ctx.Result;
+import org.jboss.security.xacml.sunxacml.finder.PolicyFinder;
+import org.jboss.security.xacml.sunxacml.finder.PolicyFinderModule;
+import org.jboss.security.xacml.sunxacml.finder.PolicyFinderResult;
 import org.jboss.test.security.xacml.factories.util.XACMLTestUtil;
 import org.junit.Test;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 import static org.junit.Assert.assertEquals; 
 
@@ -82,6 +105,184 @@ public class RbacUnitTestCase
    }
    
    
+   @Test
+   public void testSubDecisionCache() throws Exception
+   {
+      JBossPolicyFinder finder = new JBossPolicyFinder();
+      PDP memoPDP = getPDP(finder, getPolicies(finder), 16);
+      JBossPolicyFinder plainFinder = new JBossPolicyFinder();
+      PDP plainPDP = getPDP(plainFinder, getPolicies(plainFinder), 0);
+      
+      //The role policy sets refer to the permission policy sets
+      String[] requests = {"rbac-manager-create.xml", "rbac-manager-sign.xml", "rbac-employee-create.xml", 
+            "rbac-employee-sign.xml", "rbac-request.xml", "rbac-request-nopriv.xml"};
+      for(int i = 0; i < 2; i++)
+      {
+         for(String request : requests)
+         {
+            assertEquals(request, getDecision(plainPDP, request), getDecision(memoPDP, request));
+         }
+      }
+      assertEquals(XACMLConstants.DECISION_PERMIT, getDecision(memoPDP, "rbac-manager-sign.xml"));
+      
+      assertTrue("Reused the manager permissions", memoPDP.getSubDecisionHitCount() > 0);
+      
+      //Results are not reused for other policies with the same id and version
+      long hits = memoPDP.getSubDecisionHitCount();
+      getPDP(finder, getPolicies(finder), 0);
+      finder.policiesChanged();
+      assertEquals(XACMLConstants.DECISION_PERMIT, getDecision(memoPDP, "rbac-manager-sign.xml"));
+      assertEquals(hits, memoPDP.getSubDecisionHitCount());
+      
+      //Nor once they expire
+      JBossPolicyFinder expiringFinder = new JBossPolicyFinder();
+      PDP expiringPDP = getPDP(expiringFinder, getPolicies(expiringFinder), 16, 1);
+      assertEquals(XACMLConstants.DECISION_PERMIT, getDecision(expiringPDP, "rbac-manager-sign.xml"));
+      Thread.sleep(10);
+      assertEquals(XACMLConstants.DECISION_PERMIT, getDecision(expiringPDP, "rbac-manager-sign.xml"));
+      assertEquals(0, expiringPDP.getSubDecisionHitCount());
+   }
+   
+   @Test
+   public void testPolicyReferenceLinks() throws Exception
+   {
+      JBossPolicyFinder finder = new JBossPolicyFinder();
+      PDP pdp = getPDP(finder, getPolicies(finder), 0);
+      Set<PolicyFinderModule> modules = finder.getModules();
+      Set<PolicyFinderModule> roleModules = new HashSet<PolicyFinderModule>();
+      Set<PolicyFinderModule> hidingModules = new HashSet<PolicyFinderModule>();
+      List<HidingFinderModule> permissionModules = new ArrayList<HidingFinderModule>();
+      for(PolicyFinderModule module : modules)
+      {
+         if(module instanceof PPSPolicySetFinderModule)
+         {
+            HidingFinderModule hiding = new HidingFinderModule(module);
+            permissionModules.add(hiding);
+            hidingModules.add(hiding);
+         }
+         else
+         {
+            roleModules.add(module);
+            hidingModules.add(module);
+         }
+      }
+      finder.setModules(hidingModules);
+      assertEquals(XACMLConstants.DECISION_PERMIT, getDecision(pdp, "rbac-manager-create.xml"));
+      
+      //The references keep their links when the permission sets can no longer be found...
+      for(HidingFinderModule module : permissionModules)
+         module.hidden = true;
+      assertEquals(XACMLConstants.DECISION_PERMIT, getDecision(pdp, "rbac-manager-create.xml"));
+      
+      //...a change to another id leaves them alone...
+      finder.policiesChanged(Collections.singleton(new URI("RPS:employee:role")));
+      assertEquals(XACMLConstants.DECISION_PERMIT, getDecision(pdp, "rbac-manager-create.xml"));
+      
+      //...until a change to the referenced ids is published
+      Set<URI> changed = new HashSet<URI>();
+      changed.add(new URI("PPS:manager:role"));
+      changed.add(new URI("PPS:employee:role"));
+      finder.policiesChanged(changed);
+      assertTrue(XACMLConstants.DECISION_PERMIT != getDecision(pdp, "rbac-manager-create.xml"));
+      
+      //Policies that were not found are looked up again
+      for(HidingFinderModule module : permissionModules)
+         module.hidden = false;
+      assertEquals(XACMLConstants.DECISION_PERMIT, getDecision(pdp, "rbac-manager-create.xml"));
+      
+      //Replacing the modules is a change to all the policies
+      finder.setModules(roleModules);
+      assertTrue(XACMLConstants.DECISION_PERMIT != getDecision(pdp, "rbac-manager-create.xml"));
+      finder.setModules(modules);
+      assertEquals(XACMLConstants.DECISION_PERMIT, getDecision(pdp, "rbac-manager-create.xml"));
+   }
+   
+   /**
+    * Finds the policies of another module unless they are hidden
+    */
+   private static class HidingFinderModule extends PolicyFinderModule
+   {
+      private final PolicyFinderModule module;
+      
+      private volatile boolean hidden = false;
+      
+      private HidingFinderModule(PolicyFinderModule module)
+      {
+         this.module = module;
+      }
+      
+      public void init(PolicyFinder finder)
+      {
+         module.init(finder);
+      }
+      
+      public boolean isRequestSupported()
+      {
+         return module.isRequestSupported();
+      }
+      
+      public boolean isIdReferenceSupported()
+      {
+         return module.isIdReferenceSupported();
+      }
+      
+      public Target getTarget()
+      {
+         return module.getTarget();
+      }
+      
+      public PolicyFinderResult findPolicy(EvaluationCtx context)
+      {
+         if(hidden)
+            return new PolicyFinderResult();
+         return module.findPolicy(context);
+      }
+      
+      public PolicyFinderResult findPolicy(URI idReference, int type, VersionConstraints constraints,
+            PolicyMetaData parentMetaData)
+      {
+         if(hidden)
+            return new PolicyFinderResult();
+         return module.findPolicy(idReference, type, constraints, parentMetaData);
+      }
+   }
+   
+   private PDP getPDP(JBossPolicyFinder finder, Set<XACMLPolicy> policies, int subDecisionCacheSize)
+   {
+      return getPDP(finder, policies, subDecisionCacheSize, PDPConfig.DEFAULT_SUB_DECISION_TIME_TO_LIVE);
+   }
+   
+   private PDP getPDP(JBossPolicyFinder finder, Set<XACMLPolicy> policies, int subDecisionCacheSize,
+         long subDecisionTimeToLive)
+   {
+      JBossRBACPolicySetLocator locator = new JBossRBACPolicySetLocator();
+      locator.setPolicies(policies);
+      List<PolicyFinderModule> modules = locator.get(XACMLConstants.POLICY_FINDER_MODULE);
+      finder.setModules(new HashSet<PolicyFinderModule>(modules));
+      return new PDP(new PDPConfig(null, finder, null, subDecisionCacheSize, subDecisionTimeToLive, null));
+   }
+   
+   private Set<XACMLPolicy> getPolicies(JBossPolicyFinder finder) throws Exception
+   {
+      ClassLoader tcl = Thread.currentThread().getContextClassLoader();
+      Set<XACMLPolicy> policies = new HashSet<XACMLPolicy>();
+      String[] files = {"employee-PPS-policyset.xml", "employee-RPS-policyset.xml", 
+            "manager-PPS-policyset.xml", "manager-RPS-policyset.xml"};
+      for(String file : files)
+      {
+         InputStream is = tcl.getResourceAsStream("test/policies/rbac/" + file);
+         policies.add(PolicyFactory.createPolicySet(is, finder));
+      }
+      return policies;
+   }
+   
+   private int getDecision(PDP pdp, String loc) throws Exception
+   {
+      RequestCtx request = XACMLTestUtil.getRequest("test/requests/rbac/" + loc).get(XACMLConstants.REQUEST_CTX);
+      Result result = (Result) pdp.evaluate(request).getResults().iterator().next();
+      return result.getDecision();
+   }
+   
    private PolicyDecisionPoint getPDP()
    {
       ClassLoader tcl = Thread.currentThread().getContextClassLoader();
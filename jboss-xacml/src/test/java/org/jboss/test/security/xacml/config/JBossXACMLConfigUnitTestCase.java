@@ -21,6 +21,9 @@
   */
 package org.jboss.test.security.xacml.config;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
 import java.net.URL;
 import java.util.List;
 
@@ -38,9 +41,12 @@ import org.jboss.security.xacml.interfaces.PolicyDecisionPoint;
 import org.jboss.security.xacml.interfaces.XACMLConstants;
 import org.jboss.security.xacml.jaxb.LocatorType;
 import org.jboss.security.xacml.jaxb.LocatorsType;
+import org.jboss.security.xacml.jaxb.Option;
 import org.jboss.security.xacml.jaxb.PDP;
 import org.jboss.security.xacml.jaxb.PoliciesType;
 import org.jboss.security.xacml.jaxb.PolicySetType;
+import org.jboss.security.xacml.jaxb.PolicyType;
+import org.jboss.security.xacml.util.PDPConfigReader;
 import org.jboss.test.security.xacml.core.AbstractJBossXACMLInteropTestBase;
 import org.jboss.test.security.xacml.factories.util.XACMLTestUtil;
 
@@ -174,4 +180,109 @@ public class JBossXACMLConfigUnitTestCase extends AbstractJBossXACMLInteropTestB
       PolicyDecisionPoint pdp = new JBossPDP(j);
       assertNotNull(pdp); 
    }
+
+   /**
+    * The StAX reader gives the same model as JAXB for the configuration files
+    * @throws Exception
+    */
+   public void testConfigReaderMatchesJAXB() throws Exception
+   {
+      String[] fileNames = {"test/config/basicPolicySetConfig.xml", "test/config/himss09-interop-config.xml",
+            "test/config/interopPolicySetConfig.xml", "test/config/interopPolicySetConfig_additional_testlocators.xml",
+            "test/config/rsaConferencePolicySetConfig.xml", "test/config/webConfig.xml",
+            "test/config/cache/DecisionCacheLocatorConfig.xml", "test/config/locator/justLocatorConfig.xml",
+            "locators/attrib/db_subject_attrib_locator-cache-config.xml"};
+      JAXBContext jc = JAXBContext.newInstance("org.jboss.security.xacml.jaxb");
+      ClassLoader tcl = Thread.currentThread().getContextClassLoader();
+      for (String fileName : fileNames)
+      {
+         byte[] config = readResource(fileName);
+         PDP read = PDPConfigReader.read(config);
+         assertNotNull(fileName + " read with StAX", read);
+         JAXBElement<?> j = (JAXBElement<?>) jc.createUnmarshaller().unmarshal(tcl.getResource(fileName));
+         assertEquals(fileName, describe((PDP) j.getValue()), describe(read));
+      }
+   }
+
+   /**
+    * Options holding comments and invalid configurations are left to JAXB
+    * @throws Exception
+    */
+   public void testConfigReaderLeavesOtherShapesToJAXB() throws Exception
+   {
+      String config = "<ns:jbosspdp xmlns:ns=\"urn:jboss:xacml:2.0\"><ns:Policies><ns:PolicySet>"
+            + "<ns:Location>test/policies/interop/xacml-policySet.xml</ns:Location>"
+            + "<ns:Policy><ns:Location>test/policies/interop/xacml-policy2.xml</ns:Location></ns:Policy>"
+            + "<ns:Policy><ns:Location>test/policies/interop/xacml-policy3.xml</ns:Location></ns:Policy>"
+            + "<ns:Policy><ns:Location>test/policies/interop/xacml-policy4.xml</ns:Location></ns:Policy>"
+            + "<ns:Policy><ns:Location>test/policies/interop/xacml-policy5.xml</ns:Location></ns:Policy>"
+            + "</ns:PolicySet></ns:Policies><ns:Locators>"
+            + "<ns:Locator Name=\"org.jboss.security.xacml.locators.JBossPolicySetLocator\">"
+            + "<ns:Option Name=\"extension\">first<!-- comment -->second</ns:Option></ns:Locator>"
+            + "</ns:Locators></ns:jbosspdp>";
+      assertNull(PDPConfigReader.read(config.getBytes("UTF-8")));
+      validateInteropCases(new JBossPDP(new ByteArrayInputStream(config.getBytes("UTF-8"))));
+
+      String invalid = "<ns:jbosspdp xmlns:ns=\"urn:jboss:xacml:2.0\"><ns:Policies><ns:Policy/></ns:Policies>"
+            + "</ns:jbosspdp>";
+      assertNull(PDPConfigReader.read(invalid.getBytes("UTF-8")));
+      try
+      {
+         new JBossPDP(new ByteArrayInputStream(invalid.getBytes("UTF-8")));
+         fail("Invalid configuration");
+      }
+      catch (RuntimeException e)
+      {
+         //the schema validation fails
+      }
+   }
+
+   private byte[] readResource(String fileName) throws Exception
+   {
+      InputStream is = Thread.currentThread().getContextClassLoader().getResourceAsStream(fileName);
+      assertNotNull(fileName, is);
+      try
+      {
+         ByteArrayOutputStream baos = new ByteArrayOutputStream();
+         byte[] buf = new byte[1024];
+         int n;
+         while ((n = is.read(buf)) != -1)
+            baos.write(buf, 0, n);
+         return baos.toByteArray();
+      }
+      finally
+      {
+         is.close();
+      }
+   }
+
+   private String describe(PDP pdp)
+   {
+      StringBuilder builder = new StringBuilder();
+      if (pdp.getPolicies() != null)
+      {
+         for (PolicySetType pst : pdp.getPolicies().getPolicySet())
+            describe(pst, builder);
+         for (PolicyType pt : pdp.getPolicies().getPolicy())
+            builder.append("[Policy ").append(pt.getLocation()).append("]");
+      }
+      for (LocatorType lt : pdp.getLocators().getLocator())
+      {
+         builder.append("[Locator ").append(lt.getName());
+         for (Option option : lt.getOption())
+            builder.append("[Option ").append(option.getName()).append(option.getContent()).append("]");
+         builder.append("]");
+      }
+      return builder.toString();
+   }
+
+   private void describe(PolicySetType pst, StringBuilder builder)
+   {
+      builder.append("[PolicySet ").append(pst.getLocation());
+      for (PolicyType pt : pst.getPolicy())
+         builder.append("[Policy ").append(pt.getLocation()).append("]");
+      for (PolicySetType child : pst.getPolicySet())
+         describe(child, builder);
+      builder.append("]");
+   }
 }
\ No newline at end of file
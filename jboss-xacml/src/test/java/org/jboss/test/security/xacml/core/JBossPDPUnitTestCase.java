@@ -21,7 +21,22 @@
   */
 package org.jboss.test.security.xacml.core;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 import org.jboss.security.xacml.core.JBossPDP;
 import org.jboss.security.xacml.core.model.context.ActionType;
@@ -30,11 +45,16 @@ import org.jboss.security.xacml.core.model.context.EnvironmentType;
 import org.jboss.security.xacml.core.model.context.RequestType;
 import org.jboss.security.xacml.core.model.context.ResourceType;
 import org.jboss.security.xacml.core.model.context.SubjectType;
+import org.jboss.security.xacml.factories.PolicyFactory;
 import org.jboss.security.xacml.factories.RequestAttributeFactory;
 import org.jboss.security.xacml.factories.RequestResponseContextFactory;
 import org.jboss.security.xacml.interfaces.PolicyDecisionPoint;
+import org.jboss.security.xacml.interfaces.PolicyLocator;
 import org.jboss.security.xacml.interfaces.RequestContext;
+import org.jboss.security.xacml.interfaces.ResponseContext;
 import org.jboss.security.xacml.interfaces.XACMLConstants;
+import org.jboss.security.xacml.interfaces.XACMLPolicy;
+import org.jboss.security.xacml.locators.JBossPolicySetLocator;
 import org.jboss.test.security.xacml.factories.util.XACMLTestUtil;
 
 
@@ -51,6 +71,11 @@ public class JBossPDPUnitTestCase extends AbstractJBossXACMLInteropTestBase
    private boolean debug = "true".equals(System.getProperty("debug", "false"));
    
    
+   /**
+    * A configuration that reads policy files, which the locators only configurations do not
+    */
+   private static final String POLICY_SET_CONFIG = "test/config/interopPolicySetConfig.xml";
+
    public  String getConfigFileName()
    {
       return "test/config/interopPolicySetConfig.xml";
@@ -102,6 +127,544 @@ public class JBossPDPUnitTestCase extends AbstractJBossXACMLInteropTestBase
             getRequestContext("true", "true", 10)));
    }
 
+   public void testInteropTestWithSnapshotLockStrategy() throws Exception
+   {
+      System.setProperty("picketbox.xacml.pdp.lockstrategy", "snapshot");
+      try
+      {
+         ClassLoader tcl = Thread.currentThread().getContextClassLoader();
+         InputStream is = tcl.getResourceAsStream(getConfigFileName());
+         assertNotNull("InputStream != null", is);
+         final PolicyDecisionPoint pdp = new JBossPDP(is);
+         
+         final List<Throwable> failures = new ArrayList<Throwable>();
+         List<Thread> threads = new ArrayList<Thread>();
+         for (int i = 0; i < 8; i++)
+         {
+            Thread t = new Thread(new Runnable()
+            {
+               public void run()
+               {
+                  try
+                  {
+                     validateInteropCases(pdp);
+                  }
+                  catch (Throwable e)
+                  {
+                     synchronized (failures)
+                     {
+                        failures.add(e);
+                     }
+                  }
+               }
+            });
+            threads.add(t);
+            t.start();
+         }
+         for (Thread t : threads)
+            t.join();
+         assertTrue("Concurrent evaluations failed:" + failures, failures.isEmpty());
+      }
+      finally
+      {
+         System.clearProperty("picketbox.xacml.pdp.lockstrategy");
+      }
+   }
+
+   public void testEvaluateAll() throws Exception
+   {
+      ClassLoader tcl = Thread.currentThread().getContextClassLoader();
+      InputStream is = tcl.getResourceAsStream(getConfigFileName());
+      assertNotNull("InputStream != null", is);
+      validateEvaluateAll(new JBossPDP(is));
+   }
+
+   public void testEvaluateAllWithSnapshotLockStrategy() throws Exception
+   {
+      System.setProperty("picketbox.xacml.pdp.lockstrategy", "snapshot");
+      try
+      {
+         ClassLoader tcl = Thread.currentThread().getContextClassLoader();
+         InputStream is = tcl.getResourceAsStream(getConfigFileName());
+         assertNotNull("InputStream != null", is);
+         validateEvaluateAll(new JBossPDP(is));
+      }
+      finally
+      {
+         System.clearProperty("picketbox.xacml.pdp.lockstrategy");
+      }
+   }
+
+   public void testEvaluateAllWithBatchExecutor() throws Exception
+   {
+      System.setProperty("picketbox.xacml.pdp.lockstrategy", "snapshot");
+      try
+      {
+         ClassLoader tcl = Thread.currentThread().getContextClassLoader();
+         InputStream is = tcl.getResourceAsStream(getConfigFileName());
+         assertNotNull("InputStream != null", is);
+         JBossPDP pdp = new JBossPDP(is);
+         
+         //A configured executor helps the calling thread
+         final AtomicInteger executions = new AtomicInteger();
+         pdp.setBatchExecutor(new Executor()
+         {
+            public void execute(Runnable command)
+            {
+               executions.incrementAndGet();
+               new Thread(command).start();
+            }
+         });
+         validateEvaluateAll(pdp);
+         if (Runtime.getRuntime().availableProcessors() > 1)
+            assertTrue("Batch executor used", executions.get() > 0);
+         
+         //Once closed, the PDP evaluates the batches on the calling thread
+         pdp.setBatchExecutor(null);
+         pdp.close();
+         validateEvaluateAll(pdp);
+      }
+      finally
+      {
+         System.clearProperty("picketbox.xacml.pdp.lockstrategy");
+      }
+   }
+
+   public void testEvaluateAsync() throws Exception
+   {
+      ClassLoader tcl = Thread.currentThread().getContextClassLoader();
+      InputStream is = tcl.getResourceAsStream(getConfigFileName());
+      assertNotNull("InputStream != null", is);
+      JBossPDP pdp = new JBossPDP(is);
+
+      Future<ResponseContext> deny = pdp.evaluateAsync(XACMLTestUtil
+            .getRequest("test/requests/interop/scenario2-testcase1-request.xml"));
+      Future<ResponseContext> permit = pdp.evaluateAsync(XACMLTestUtil
+            .getRequest("test/requests/interop/scenario2-testcase2-request.xml"));
+      assertEquals(XACMLConstants.DECISION_DENY, deny.get(30, TimeUnit.SECONDS).getDecision());
+      assertEquals(XACMLConstants.DECISION_PERMIT, permit.get(30, TimeUnit.SECONDS).getDecision());
+
+      //A callback gets the decision once it is made
+      final CountDownLatch called = new CountDownLatch(1);
+      final AtomicInteger decision = new AtomicInteger(-1);
+      pdp.evaluateAsync(XACMLTestUtil.getRequest("test/requests/interop/scenario2-testcase2-request.xml"))
+            .thenAccept(new Consumer<ResponseContext>()
+            {
+               public void accept(ResponseContext response)
+               {
+                  decision.set(response.getDecision());
+                  called.countDown();
+               }
+            });
+      assertTrue("Callback called", called.await(30, TimeUnit.SECONDS));
+      assertEquals(XACMLConstants.DECISION_PERMIT, decision.get());
+
+      //A configured executor runs the evaluations
+      final AtomicInteger executions = new AtomicInteger();
+      pdp.setExecutor(new Executor()
+      {
+         public void execute(Runnable command)
+         {
+            executions.incrementAndGet();
+            command.run();
+         }
+      });
+      Future<ResponseContext> response = pdp.evaluateAsync(XACMLTestUtil
+            .getRequest("test/requests/interop/scenario2-testcase7-request.xml"));
+      assertTrue(response.isDone());
+      assertEquals(XACMLConstants.DECISION_PERMIT, response.get().getDecision());
+      assertEquals(1, executions.get());
+      
+      //Once closed, the default executor is replaced by the calling thread
+      pdp.setExecutor(null);
+      pdp.close();
+      response = pdp.evaluateAsync(XACMLTestUtil
+            .getRequest("test/requests/interop/scenario2-testcase7-request.xml"));
+      assertTrue(response.isDone());
+      assertEquals(XACMLConstants.DECISION_PERMIT, response.get().getDecision());
+   }
+
+   public void testInteropTestWithSequentialBootstrap() throws Exception
+   {
+      System.setProperty("picketbox.xacml.pdp.bootstrap.threads", "1");
+      try
+      {
+         ClassLoader tcl = Thread.currentThread().getContextClassLoader();
+         InputStream is = tcl.getResourceAsStream(getConfigFileName());
+         assertNotNull("InputStream != null", is);
+         validateInteropCases(new JBossPDP(is));
+      }
+      finally
+      {
+         System.clearProperty("picketbox.xacml.pdp.bootstrap.threads");
+      }
+   }
+
+   public void testInteropTestWithPolicySnapshot() throws Exception
+   {
+      File snapshot = File.createTempFile("policies", ".snapshot");
+      assertTrue(snapshot.delete());
+      System.setProperty("picketbox.xacml.pdp.policysnapshot", snapshot.getAbsolutePath());
+      try
+      {
+         ClassLoader tcl = Thread.currentThread().getContextClassLoader();
+         validateInteropCases(new JBossPDP(tcl.getResourceAsStream(POLICY_SET_CONFIG)));
+         assertTrue("Snapshot saved", snapshot.isFile());
+         byte[] saved = readFile(snapshot);
+
+         //the second start decodes the policies from the snapshot, which is left as it is
+         validateInteropCases(new JBossPDP(tcl.getResourceAsStream(POLICY_SET_CONFIG)));
+         assertTrue("Snapshot unchanged", Arrays.equals(saved, readFile(snapshot)));
+      }
+      finally
+      {
+         System.clearProperty("picketbox.xacml.pdp.policysnapshot");
+         snapshot.delete();
+      }
+   }
+
+   public void testCorruptPolicySnapshotFallsBackToXML() throws Exception
+   {
+      File snapshot = File.createTempFile("policies", ".snapshot");
+      OutputStream os = new FileOutputStream(snapshot);
+      try
+      {
+         os.write("not a policy snapshot".getBytes("UTF-8"));
+      }
+      finally
+      {
+         os.close();
+      }
+      System.setProperty("picketbox.xacml.pdp.policysnapshot", snapshot.getAbsolutePath());
+      try
+      {
+         ClassLoader tcl = Thread.currentThread().getContextClassLoader();
+         validateInteropCases(new JBossPDP(tcl.getResourceAsStream(POLICY_SET_CONFIG)));
+         //the snapshot has been replaced by a valid one
+         assertEquals("JBXS", new String(readFile(snapshot), 0, 4, "UTF-8"));
+      }
+      finally
+      {
+         System.clearProperty("picketbox.xacml.pdp.policysnapshot");
+         snapshot.delete();
+      }
+   }
+
+   public void testBootstrapReportsFirstUnreadablePolicy() throws Exception
+   {
+      String config = "<ns:jbosspdp xmlns:ns=\"urn:jboss:xacml:2.0\"><ns:Policies><ns:PolicySet>"
+            + "<ns:Location>test/policies/interop/xacml-policySet.xml</ns:Location>"
+            + "<ns:Policy><ns:Location>test/policies/interop/xacml-policy2.xml</ns:Location></ns:Policy>"
+            + "<ns:Policy><ns:Location>test/policies/interop/missing-policy-a.xml</ns:Location></ns:Policy>"
+            + "<ns:Policy><ns:Location>test/policies/interop/missing-policy-b.xml</ns:Location></ns:Policy>"
+            + "</ns:PolicySet></ns:Policies><ns:Locators>"
+            + "<ns:Locator Name=\"org.jboss.security.xacml.locators.JBossPolicySetLocator\"/>"
+            + "</ns:Locators></ns:jbosspdp>";
+      try
+      {
+         new JBossPDP(new ByteArrayInputStream(config.getBytes("UTF-8")));
+         fail("Missing policy files should fail the bootstrap");
+      }
+      catch (RuntimeException e)
+      {
+         assertTrue(e.getMessage(), e.getMessage().contains("missing-policy-a.xml"));
+      }
+   }
+
+   public void testWatchPolicyDirectories() throws Exception
+   {
+      watchPolicyDirectory("");
+   }
+
+   public void testWatchPolicyDirectoriesWithDecisionCache() throws Exception
+   {
+      watchPolicyDirectory("<ns:Locator Name=\"org.jboss.security.xacml.locators.cache.DecisionCacheLocator\"/>");
+   }
+
+   private void watchPolicyDirectory(String cacheLocators) throws Exception
+   {
+      File dir = File.createTempFile("policies", "");
+      assertTrue(dir.delete());
+      assertTrue(dir.mkdir());
+      File policyFile = new File(dir, "watched-policy.xml");
+      try
+      {
+         writePolicy(policyFile, "Permit");
+         String config = "<ns:jbosspdp xmlns:ns=\"urn:jboss:xacml:2.0\"><ns:Policies><ns:PolicySet><ns:Location>"
+               + dir.getAbsolutePath() + "</ns:Location></ns:PolicySet></ns:Policies><ns:Locators>"
+               + "<ns:Locator Name=\"org.jboss.security.xacml.locators.JBossPolicySetLocator\"/>"
+               + cacheLocators + "</ns:Locators></ns:jbosspdp>";
+         JBossPDP pdp = new JBossPDP(new ByteArrayInputStream(config.getBytes("UTF-8")));
+         String request = "test/requests/interop/scenario2-testcase1-request.xml";
+         assertEquals(XACMLConstants.DECISION_PERMIT, XACMLTestUtil.getDecision(pdp, XACMLTestUtil.getRequest(request)));
+
+         pdp.watchPolicyDirectories(50);
+         try
+         {
+            writePolicy(policyFile, "Deny");
+            assertDecisionBecomes(XACMLConstants.DECISION_DENY, pdp, request);
+
+            assertTrue(policyFile.delete());
+            assertDecisionBecomes(XACMLConstants.DECISION_NOT_APPLICABLE, pdp, request);
+         }
+         finally
+         {
+            pdp.stopWatchingPolicyDirectories();
+         }
+      }
+      finally
+      {
+         policyFile.delete();
+         dir.delete();
+      }
+   }
+
+   public void testSetPoliciesWhileEvaluating() throws Exception
+   {
+      System.setProperty("picketbox.xacml.pdp.lockstrategy", "snapshot");
+      File dir = File.createTempFile("policies", "");
+      assertTrue(dir.delete());
+      assertTrue(dir.mkdir());
+      File policyFile = new File(dir, "watched-policy.xml");
+      try
+      {
+         writePolicy(policyFile, "Permit");
+         String config = "<ns:jbosspdp xmlns:ns=\"urn:jboss:xacml:2.0\"><ns:Policies><ns:PolicySet><ns:Location>"
+               + dir.getAbsolutePath() + "</ns:Location></ns:PolicySet></ns:Policies><ns:Locators>"
+               + "<ns:Locator Name=\"org.jboss.security.xacml.locators.JBossPolicySetLocator\"/>"
+               + "</ns:Locators></ns:jbosspdp>";
+         final JBossPDP pdp = new JBossPDP(new ByteArrayInputStream(config.getBytes("UTF-8")));
+         final String request = "test/requests/interop/scenario2-testcase1-request.xml";
+         assertEquals(XACMLConstants.DECISION_PERMIT, XACMLTestUtil.getDecision(pdp, XACMLTestUtil.getRequest(request)));
+
+         XACMLPolicy permit = PolicyFactory.createPolicy(new ByteArrayInputStream(getPolicy("Permit").getBytes("UTF-8")));
+         XACMLPolicy deny = PolicyFactory.createPolicy(new ByteArrayInputStream(getPolicy("Deny").getBytes("UTF-8")));
+
+         //Every evaluation sees one of the published policies, never a mix or none
+         final List<Throwable> failures = new ArrayList<Throwable>();
+         final AtomicInteger running = new AtomicInteger(1);
+         List<Thread> threads = new ArrayList<Thread>();
+         for (int i = 0; i < 4; i++)
+         {
+            Thread t = new Thread(new Runnable()
+            {
+               public void run()
+               {
+                  try
+                  {
+                     while (running.get() > 0)
+                     {
+                        int decision = XACMLTestUtil.getDecision(pdp, XACMLTestUtil.getRequest(request));
+                        assertTrue("Unexpected decision " + decision, decision == XACMLConstants.DECISION_PERMIT
+                              || decision == XACMLConstants.DECISION_DENY);
+                     }
+                  }
+                  catch (Throwable e)
+                  {
+                     synchronized (failures)
+                     {
+                        failures.add(e);
+                     }
+                  }
+               }
+            });
+            threads.add(t);
+            t.start();
+         }
+         for (int i = 0; i < 50; i++)
+         {
+            pdp.setPolicies(Collections.singleton(i % 2 == 0 ? deny : permit));
+            Thread.sleep(2);
+         }
+         pdp.setPolicies(Collections.singleton(deny));
+         running.set(0);
+         for (Thread t : threads)
+            t.join();
+         assertTrue("Concurrent evaluations failed:" + failures, failures.isEmpty());
+
+         //The last published policies make the decisions
+         assertEquals(XACMLConstants.DECISION_DENY, XACMLTestUtil.getDecision(pdp, XACMLTestUtil.getRequest(request)));
+         pdp.setPolicies(Collections.singleton(permit));
+         assertEquals(XACMLConstants.DECISION_PERMIT, XACMLTestUtil.getDecision(pdp, XACMLTestUtil.getRequest(request)));
+      }
+      finally
+      {
+         System.clearProperty("picketbox.xacml.pdp.lockstrategy");
+         policyFile.delete();
+         dir.delete();
+      }
+   }
+
+   public void testChangingTheTargetOfAPolicySetDropsCachedDecisions() throws Exception
+   {
+      File dir = File.createTempFile("policies", "");
+      assertTrue(dir.delete());
+      assertTrue(dir.mkdir());
+      File policyFile = new File(dir, "indexed-policy-set.xml");
+      try
+      {
+         OutputStream os = new FileOutputStream(policyFile);
+         try
+         {
+            os.write(getPolicySet("OtherAccount").getBytes("UTF-8"));
+         }
+         finally
+         {
+            os.close();
+         }
+         String config = "<ns:jbosspdp xmlns:ns=\"urn:jboss:xacml:2.0\"><ns:Policies><ns:PolicySet><ns:Location>"
+               + dir.getAbsolutePath() + "</ns:Location></ns:PolicySet></ns:Policies><ns:Locators>"
+               + "<ns:Locator Name=\"org.jboss.security.xacml.locators.JBossPolicySetLocator\"/>"
+               + "<ns:Locator Name=\"org.jboss.security.xacml.locators.cache.DecisionCacheLocator\"/>"
+               + "</ns:Locators></ns:jbosspdp>";
+         JBossPDP pdp = new JBossPDP(new ByteArrayInputStream(config.getBytes("UTF-8")));
+         String request = "test/requests/interop/scenario2-testcase1-request.xml";
+         assertEquals(XACMLConstants.DECISION_NOT_APPLICABLE, XACMLTestUtil.getDecision(pdp, 
+               XACMLTestUtil.getRequest(request)));
+         
+         //The policy set was skipped on its target, the decision does not record it
+         XACMLPolicy retargeted = PolicyFactory.createPolicySet(new ByteArrayInputStream(
+               getPolicySet("CustomerAccount").getBytes("UTF-8")));
+         pdp.setPolicies(Collections.singleton(retargeted));
+         assertEquals(XACMLConstants.DECISION_PERMIT, XACMLTestUtil.getDecision(pdp, 
+               XACMLTestUtil.getRequest(request)));
+      }
+      finally
+      {
+         policyFile.delete();
+         dir.delete();
+      }
+   }
+
+   public void testSettingLocatorsDropsCachedDecisions() throws Exception
+   {
+      File dir = File.createTempFile("policies", "");
+      assertTrue(dir.delete());
+      assertTrue(dir.mkdir());
+      File policyFile = new File(dir, "indexed-policy-set.xml");
+      try
+      {
+         OutputStream os = new FileOutputStream(policyFile);
+         try
+         {
+            os.write(getPolicySet("OtherAccount").getBytes("UTF-8"));
+         }
+         finally
+         {
+            os.close();
+         }
+         String config = "<ns:jbosspdp xmlns:ns=\"urn:jboss:xacml:2.0\"><ns:Policies><ns:PolicySet><ns:Location>"
+               + dir.getAbsolutePath() + "</ns:Location></ns:PolicySet></ns:Policies><ns:Locators>"
+               + "<ns:Locator Name=\"org.jboss.security.xacml.locators.JBossPolicySetLocator\"/>"
+               + "<ns:Locator Name=\"org.jboss.security.xacml.locators.cache.DecisionCacheLocator\"/>"
+               + "</ns:Locators></ns:jbosspdp>";
+         JBossPDP pdp = new JBossPDP(new ByteArrayInputStream(config.getBytes("UTF-8")));
+         String request = "test/requests/interop/scenario2-testcase1-request.xml";
+         assertEquals(XACMLConstants.DECISION_NOT_APPLICABLE, XACMLTestUtil.getDecision(pdp, 
+               XACMLTestUtil.getRequest(request)));
+         
+         //The decision made with the policies of the previous locators is dropped
+         XACMLPolicy retargeted = PolicyFactory.createPolicySet(new ByteArrayInputStream(
+               getPolicySet("CustomerAccount").getBytes("UTF-8")));
+         PolicyLocator locator = new JBossPolicySetLocator();
+         locator.setPolicies(Collections.singleton(retargeted));
+         pdp.setLocators(Collections.singleton(locator));
+         assertEquals(XACMLConstants.DECISION_PERMIT, XACMLTestUtil.getDecision(pdp, 
+               XACMLTestUtil.getRequest(request)));
+      }
+      finally
+      {
+         policyFile.delete();
+         dir.delete();
+      }
+   }
+
+   private String getPolicySet(String resourceId)
+   {
+      return "<PolicySet xmlns=\"urn:oasis:names:tc:xacml:2.0:policy:schema:os\" PolicySetId=\"indexed-policy-set\" "
+            + "PolicyCombiningAlgId=\"urn:oasis:names:tc:xacml:1.0:policy-combining-algorithm:first-applicable\">"
+            + "<Target><Resources><Resource><ResourceMatch MatchId=\"urn:oasis:names:tc:xacml:1.0:function:string-equal\">"
+            + "<AttributeValue DataType=\"http://www.w3.org/2001/XMLSchema#string\">" + resourceId + "</AttributeValue>"
+            + "<ResourceAttributeDesignator AttributeId=\"urn:oasis:names:tc:xacml:1.0:resource:resource-id\" "
+            + "DataType=\"http://www.w3.org/2001/XMLSchema#string\"/></ResourceMatch></Resource></Resources></Target>"
+            + getPolicy("Permit") + "</PolicySet>";
+   }
+
+   private String getPolicy(String effect)
+   {
+      return "<Policy xmlns=\"urn:oasis:names:tc:xacml:2.0:policy:schema:os\" PolicyId=\"watched-policy\" "
+            + "RuleCombiningAlgId=\"urn:oasis:names:tc:xacml:1.0:rule-combining-algorithm:first-applicable\">"
+            + "<Target/><Rule RuleId=\"watched-rule\" Effect=\"" + effect + "\"/></Policy>";
+   }
+
+   private void writePolicy(File file, String effect) throws Exception
+   {
+      String policy = getPolicy(effect);
+      OutputStream os = new FileOutputStream(file);
+      try
+      {
+         os.write(policy.getBytes("UTF-8"));
+      }
+      finally
+      {
+         os.close();
+      }
+   }
+
+   private byte[] readFile(File file) throws Exception
+   {
+      InputStream is = new FileInputStream(file);
+      try
+      {
+         byte[] bytes = new byte[(int) file.length()];
+         int read = 0;
+         while (read < bytes.length)
+            read += is.read(bytes, read, bytes.length - read);
+         return bytes;
+      }
+      finally
+      {
+         is.close();
+      }
+   }
+
+   private void assertDecisionBecomes(int expected, PolicyDecisionPoint pdp, String request) throws Exception
+   {
+      long deadline = System.currentTimeMillis() + 30000;
+      int decision = XACMLTestUtil.getDecision(pdp, XACMLTestUtil.getRequest(request));
+      while (decision != expected && System.currentTimeMillis() < deadline)
+      {
+         Thread.sleep(50);
+         decision = XACMLTestUtil.getDecision(pdp, XACMLTestUtil.getRequest(request));
+      }
+      assertEquals(expected, decision);
+   }
+
+   private void validateEvaluateAll(JBossPDP pdp) throws Exception
+   {
+      int[] expected = {XACMLConstants.DECISION_DENY, XACMLConstants.DECISION_PERMIT,
+            XACMLConstants.DECISION_PERMIT, XACMLConstants.DECISION_DENY, XACMLConstants.DECISION_DENY,
+            XACMLConstants.DECISION_DENY, XACMLConstants.DECISION_PERMIT};
+
+      //Every case twice, with the duplicates in reverse order
+      List<RequestContext> requests = new ArrayList<RequestContext>();
+      List<Integer> cases = new ArrayList<Integer>();
+      for (int i = 1; i <= 7; i++)
+         cases.add(i);
+      for (int i = 7; i >= 1; i--)
+         cases.add(i);
+      for (int testCase : cases)
+         requests.add(XACMLTestUtil.getRequest("test/requests/interop/scenario2-testcase" + testCase + "-request.xml"));
+
+      List<ResponseContext> responses = pdp.evaluateAll(requests);
+      assertEquals(requests.size(), responses.size());
+      for (int i = 0; i < responses.size(); i++)
+      {
+         int testCase = cases.get(i);
+         assertEquals("Case " + testCase, expected[testCase - 1], responses.get(i).getDecision());
+      }
+   }
+
    private RequestContext getRequestContext(String reqTradeAppr, String reqCreditAppr, int buyPrice) throws Exception
    {
       RequestType request = new RequestType();
@@ -22,20 +22,42 @@
 package org.jboss.test.security.xacml.core.cache;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.InputStream;
+import java.net.URI;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
 
 import junit.framework.TestCase;
 
 import org.jboss.security.xacml.core.JBossPDP;
+import org.jboss.security.xacml.factories.RequestResponseContextFactory;
 import org.jboss.security.xacml.interfaces.PolicyDecisionPoint;
 import org.jboss.security.xacml.interfaces.RequestContext;
 import org.jboss.security.xacml.interfaces.XACMLConstants;
+import org.jboss.security.xacml.jaxb.Option;
+import org.jboss.security.xacml.locators.cache.BoundedCache;
+import org.jboss.security.xacml.locators.cache.DecisionCacheLocator;
 import org.jboss.security.xacml.locators.cache.DecisionCacheLocator.DecisionCacheLocatorRequest;
+import org.jboss.security.xacml.locators.cache.OffHeapDecisionCacheLocator;
+import org.jboss.security.xacml.locators.cache.RequestFingerprint;
+import org.jboss.security.xacml.sunxacml.AttributeDependencies.PolicyDependency;
+import org.jboss.security.xacml.sunxacml.Obligation;
 import org.jboss.security.xacml.sunxacml.ctx.RequestCtx;
+import org.jboss.security.xacml.sunxacml.ctx.ResponseCtx;
+import org.jboss.security.xacml.sunxacml.ctx.Result;
+import org.jboss.security.xacml.sunxacml.ctx.Status;
 import org.jboss.security.xacml.sunxacml.ctx.Subject;
 import org.jboss.test.security.xacml.factories.util.XACMLTestUtil;
 import org.junit.BeforeClass;
@@ -52,6 +74,8 @@ public class DecisionCacheLocatorUnitTestCase
    private static String CONFIG_FILE_NO_CACHING = "test/config/interopPolicySetConfig.xml";
    private static String CONFIG_FILE_CACHING = "test/config/cache/DecisionCacheLocatorConfig.xml";
    private static String CONFIG_FILE_CACHING_WITH_SPEED = "test/config/cache/DecisionCacheLocatorConfig_WithSpeed.xml";
+   private static String CONFIG_FILE_CACHING_OFF_HEAP = "test/config/cache/OffHeapDecisionCacheLocatorConfig.xml";
+   private static String CONFIG_FILE_CACHING_WITH_DEPENDENCIES = "test/config/cache/DecisionCacheLocatorConfig_WithDependencies.xml";
 
    private static PolicyDecisionPoint non_cached_pdp = null;
    private static PolicyDecisionPoint cached_pdp = null;
@@ -178,6 +202,576 @@ public class DecisionCacheLocatorUnitTestCase
             + " iterations = " + elapsedTimeMillis + " ms or " + elapsedTimeMillis/1000F + " secs");
    }
 
+   @Test
+   public void testBoundedCache() throws Exception
+   {
+      BoundedCache<String, String> cache = new BoundedCache<String, String>( 4, 0, 1, 4, 0.75F, false );
+      for( int i = 0 ; i < 10; i++ )
+      {
+         cache.put( "key" + i, "value" + i );
+      }
+      assertEquals( "Cache is bounded", 4, cache.size() );
+      assertNull( "Eldest entry was evicted", cache.get( "key0" ));
+      assertEquals( "value9", cache.get( "key9" ));
+      assertEquals( 6, cache.getEvictionCount() );
+   }
+
+   @Test
+   public void testFrequencyAdmission() throws Exception
+   {
+      BoundedCache<String, String> cache = new BoundedCache<String, String>( 2, 0, 1, 2, 0.75F, true );
+      cache.put( "hot1", "v" );
+      cache.put( "hot2", "v" );
+      for( int i = 0 ; i < 5; i++ )
+      {
+         cache.get( "hot1" );
+         cache.get( "hot2" );
+      }
+      assertTrue( "A one-off request is not admitted", !cache.put( "cold", "v" ));
+      assertEquals( "v", cache.get( "hot1" ));
+      assertEquals( "v", cache.get( "hot2" ));
+      assertEquals( 1, cache.getRejectionCount() );
+   }
+
+   @Test
+   public void testDecisionCacheTimeToLive() throws Exception
+   {
+      DecisionCacheLocator locator = new DecisionCacheLocator();
+      List<Option> options = new ArrayList<Option>();
+      options.add( createOption( DecisionCacheLocator.MAX_ENTRIES, "10" ));
+      options.add( createOption( DecisionCacheLocator.TIME_TO_LIVE, "50" ));
+      locator.setOptions( options );
+
+      RequestContext request = XACMLTestUtil.getRequest( REQUEST1 );
+      RequestCtx xacmlRequest = (RequestCtx) request.get( XACMLConstants.REQUEST_CTX );
+      ResponseCtx response = new ResponseCtx( new Result( Result.DECISION_DENY ));
+
+      locator.add( xacmlRequest, response );
+      assertSame( "Decision is cached", response, locator.get( xacmlRequest ));
+
+      Thread.sleep( 100 );
+      assertNull( "Decision has expired", locator.get( xacmlRequest ));
+   }
+
+   @Test
+   public void testRefreshAhead() throws Exception
+   {
+      BoundedCache<String, String> cache = new BoundedCache<String, String>( 4, 200, 1, 4, 0.75F, false, 0.5F );
+      final List<String> refreshed = new ArrayList<String>();
+      BoundedCache.RefreshListener<String, String> listener = new BoundedCache.RefreshListener<String, String>()
+      {
+         public void refreshDue( String key, String value )
+         {
+            refreshed.add( key );
+         }
+      };
+      cache.put( "key", "v1" );
+      assertEquals( "v1", cache.get( "key", listener ));
+      assertTrue( "Not due yet", refreshed.isEmpty() );
+
+      Thread.sleep( 120 );
+      assertEquals( "The decision is still served", "v1", cache.get( "key", listener ));
+      assertEquals( "v1", cache.get( "key", listener ));
+      assertEquals( "Refreshed once", Collections.singletonList( "key" ), refreshed );
+
+      cache.put( "key", "v2" );
+      assertEquals( "v2", cache.get( "key", listener ));
+      assertEquals( 1, refreshed.size() );
+      assertEquals( 1, cache.getRefreshCount() );
+   }
+
+   @Test
+   public void testRefreshAheadWithPDP() throws Exception
+   {
+      String config = "<ns:jbosspdp xmlns:ns=\"urn:jboss:xacml:2.0\"><ns:Policies><ns:PolicySet>"
+            + "<ns:Location>test/policies/interop/xacml-policySet.xml</ns:Location>"
+            + "<ns:Policy><ns:Location>test/policies/interop/xacml-policy2.xml</ns:Location></ns:Policy>"
+            + "<ns:Policy><ns:Location>test/policies/interop/xacml-policy3.xml</ns:Location></ns:Policy>"
+            + "<ns:Policy><ns:Location>test/policies/interop/xacml-policy4.xml</ns:Location></ns:Policy>"
+            + "<ns:Policy><ns:Location>test/policies/interop/xacml-policy5.xml</ns:Location></ns:Policy>"
+            + "</ns:PolicySet></ns:Policies><ns:Locators>"
+            + "<ns:Locator Name=\"org.jboss.security.xacml.locators.JBossPolicySetLocator\"/>"
+            + "<ns:Locator Name=\"org.jboss.security.xacml.locators.cache.DecisionCacheLocator\">"
+            + "<ns:Option Name=\"timeToLive\">2000</ns:Option>"
+            + "<ns:Option Name=\"refreshAhead\">0.5</ns:Option></ns:Locator>"
+            + "</ns:Locators></ns:jbosspdp>";
+      JBossPDP pdp = new JBossPDP( new ByteArrayInputStream( config.getBytes( "UTF-8" )));
+      long start = System.currentTimeMillis();
+      ResponseCtx response = (ResponseCtx) pdp.evaluate( XACMLTestUtil.getRequest( REQUEST1 )).get( XACMLConstants.RESPONSE_CTX );
+
+      Thread.sleep( 1100 );
+      assertSame( "Past the refresh point, the cached decision is served", response, 
+            pdp.evaluate( XACMLTestUtil.getRequest( REQUEST1 )).get( XACMLConstants.RESPONSE_CTX ));
+
+      //the refreshed decision replaces the cached one before it would have expired
+      ResponseCtx refreshed = response;
+      while( refreshed == response && System.currentTimeMillis() - start < 1900 )
+      {
+         Thread.sleep( 20 );
+         refreshed = (ResponseCtx) pdp.evaluate( XACMLTestUtil.getRequest( REQUEST1 )).get( XACMLConstants.RESPONSE_CTX );
+      }
+      assertFalse( "The decision was refreshed in the background", refreshed == response );
+      assertEquals( Result.DECISION_DENY, ((Result) refreshed.getResults().iterator().next()).getDecision() );
+      assertEquals( 0, pdp.getDroppedRefreshCount() );
+      
+      //once closed, the PDP no longer refreshes decisions but still serves them
+      pdp.close();
+      Thread.sleep( 1100 );
+      assertSame( refreshed, pdp.evaluate( XACMLTestUtil.getRequest( REQUEST1 )).get( XACMLConstants.RESPONSE_CTX ));
+   }
+
+   @SuppressWarnings({"rawtypes", "unchecked"})
+   @Test
+   public void testRequestFingerprint() throws Exception
+   {
+      DecisionCacheLocator locator = new DecisionCacheLocator();
+      List<Option> options = new ArrayList<Option>();
+      options.add( createOption( DecisionCacheLocator.IGNORE_ENVIRONMENT_ID, 
+            "urn:oasis:names:tc:xacml:1.0:environment:current-time" ));
+      locator.setOptions( options );
+
+      RequestContext request = XACMLTestUtil.getRequest( "test/requests/env/DateTimeRequest.xml" );
+      RequestCtx xacmlRequest = (RequestCtx) request.get( XACMLConstants.REQUEST_CTX );
+      RequestFingerprint fingerprint = locator.getFingerprint( xacmlRequest );
+      assertEquals( "Fingerprint is stable", fingerprint, locator.getFingerprint( xacmlRequest ));
+
+      //Reordered resource attributes and no environment
+      List resource = new ArrayList( xacmlRequest.getResourceAsList() );
+      Collections.reverse( resource );
+      RequestCtx reordered = new DecisionCacheLocatorRequest( xacmlRequest.getSubjectsAsList(), resource, 
+            xacmlRequest.getActionAsList(), new ArrayList() );
+      assertEquals( "Order and ignored attributes do not matter", fingerprint, locator.getFingerprint( reordered ));
+
+      //Fewer resource attributes
+      resource.remove( 0 );
+      RequestCtx different = new DecisionCacheLocatorRequest( xacmlRequest.getSubjectsAsList(), resource, 
+            xacmlRequest.getActionAsList(), xacmlRequest.getEnvironmentAttributesAsList() );
+      assertFalse( "Different requests have different fingerprints", fingerprint.equals( 
+            locator.getFingerprint( different )));
+   }
+
+   @Test
+   public void testResourceContentIsPartOfFingerprint() throws Exception
+   {
+      DecisionCacheLocator locator = new DecisionCacheLocator();
+      RequestFingerprint fingerprint = locator.getFingerprint( getContentRequest( "<record owner='a' id='1'/>" ));
+      assertEquals( "Attribute order does not matter", fingerprint, 
+            locator.getFingerprint( getContentRequest( "<record id='1' owner='a'/>" )));
+      assertFalse( "Selectors may read the resource content", fingerprint.equals( 
+            locator.getFingerprint( getContentRequest( "<record owner='b' id='1'/>" ))));
+   }
+
+   @Test
+   public void testFieldsOfFingerprintAreDelimited() throws Exception
+   {
+      DecisionCacheLocator locator = new DecisionCacheLocator();
+      String x = "<AttributeValue>x</AttributeValue>";
+      String y = "<AttributeValue>y</AttributeValue>";
+      RequestFingerprint fingerprint = locator.getFingerprint( getResourceRequest( "a", x + y ));
+      assertFalse( "An issuer cannot take the place of values", fingerprint.equals( 
+            locator.getFingerprint( getResourceRequest( "a|1:x", y ))));
+   }
+
+   @SuppressWarnings({"rawtypes", "unchecked"})
+   @Test
+   public void testPolicyInvalidation() throws Exception
+   {
+      DecisionCacheLocator locator = new DecisionCacheLocator();
+      locator.setOptions( new ArrayList<Option>() );
+
+      RequestContext request = XACMLTestUtil.getRequest( REQUEST1 );
+      RequestCtx xacmlRequest = (RequestCtx) request.get( XACMLConstants.REQUEST_CTX );
+      List resource = new ArrayList( xacmlRequest.getResourceAsList() );
+      RequestFingerprint[] fingerprints = new RequestFingerprint[4];
+      for( int i = 0; i < fingerprints.length; i++ )
+      {
+         resource.remove( 0 );
+         fingerprints[i] = locator.getFingerprint( new DecisionCacheLocatorRequest( xacmlRequest.getSubjectsAsList(), 
+               new ArrayList( resource ), xacmlRequest.getActionAsList(), xacmlRequest.getEnvironmentAttributesAsList() ));
+      }
+
+      URI policyA = new URI( "urn:test:policy:a" );
+      URI policyB = new URI( "urn:test:policy:b" );
+      ResponseCtx response = new ResponseCtx( new Result( Result.DECISION_PERMIT ));
+      locator.add( fingerprints[0], response, Collections.singleton( new PolicyDependency( policyA, "1.0" )));
+      locator.add( fingerprints[1], response, Collections.singleton( new PolicyDependency( policyB, "1.0" )));
+      locator.add( fingerprints[2], response, Collections.singleton( new PolicyDependency( policyB, null )));
+      locator.add( fingerprints[3], response );
+      assertEquals( 4, locator.size() );
+
+      //Another version of b does not matter to the decisions made with b 1.0
+      assertEquals( 2, locator.invalidate( Collections.singleton( new PolicyDependency( policyB, "2.0" ))));
+      assertSame( response, locator.get( fingerprints[0] ));
+      assertSame( response, locator.get( fingerprints[1] ));
+      assertNull( "References resolve to any version", locator.get( fingerprints[2] ));
+      assertNull( "Untagged decisions depend on every policy", locator.get( fingerprints[3] ));
+
+      assertEquals( 1, locator.invalidate( Collections.singleton( new PolicyDependency( policyB, "1.0" ))));
+      assertSame( response, locator.get( fingerprints[0] ));
+      assertNull( locator.get( fingerprints[1] ));
+   }
+
+   @Test
+   public void testConcurrentMissesAreCoalesced() throws Exception
+   {
+      final int threads = 8;
+      String config = "<ns:jbosspdp xmlns:ns=\"urn:jboss:xacml:2.0\"><ns:Policies><ns:PolicySet>"
+            + "<ns:Location>test/policies/interop/xacml-policySet.xml</ns:Location>"
+            + "<ns:Policy><ns:Location>test/policies/interop/xacml-policy2.xml</ns:Location></ns:Policy>"
+            + "<ns:Policy><ns:Location>test/policies/interop/xacml-policy3.xml</ns:Location></ns:Policy>"
+            + "<ns:Policy><ns:Location>test/policies/interop/xacml-policy4.xml</ns:Location></ns:Policy>"
+            + "<ns:Policy><ns:Location>test/policies/interop/xacml-policy5.xml</ns:Location></ns:Policy>"
+            + "</ns:PolicySet></ns:Policies><ns:Locators>"
+            + "<ns:Locator Name=\"org.jboss.security.xacml.locators.JBossPolicySetLocator\"/>"
+            + "<ns:Locator Name=\"" + SlowDecisionCacheLocator.class.getName() + "\"/>"
+            + "</ns:Locators></ns:jbosspdp>";
+      System.setProperty( "picketbox.xacml.pdp.lockstrategy", "lockfree" );
+      try
+      {
+         final PolicyDecisionPoint pdp = new JBossPDP( new ByteArrayInputStream( config.getBytes( "UTF-8" )));
+         SlowDecisionCacheLocator.adds.set( 0 );
+         SlowDecisionCacheLocator.misses = new CyclicBarrier( threads );
+
+         final ResponseCtx[] responses = new ResponseCtx[threads];
+         final List<Throwable> failures = Collections.synchronizedList( new ArrayList<Throwable>() );
+         List<Thread> started = new ArrayList<Thread>();
+         for( int i = 0; i < threads; i++ )
+         {
+            final int index = i;
+            Thread t = new Thread( new Runnable()
+            {
+               public void run()
+               {
+                  try
+                  {
+                     RequestContext request = XACMLTestUtil.getRequest( REQUEST1 );
+                     responses[index] = (ResponseCtx) pdp.evaluate( request ).get( XACMLConstants.RESPONSE_CTX );
+                  }
+                  catch( Throwable e )
+                  {
+                     failures.add( e );
+                  }
+               }
+            });
+            started.add( t );
+            t.start();
+         }
+         for( Thread t : started )
+            t.join();
+         assertTrue( "Concurrent evaluations failed:" + failures, failures.isEmpty() );
+
+         assertEquals( "The misses were evaluated once", 1, SlowDecisionCacheLocator.adds.get() );
+         for( ResponseCtx response : responses )
+         {
+            assertSame( responses[0], response );
+            assertEquals( Result.DECISION_DENY, ((Result) response.getResults().iterator().next()).getDecision() );
+         }
+      }
+      finally
+      {
+         SlowDecisionCacheLocator.misses = null;
+         System.clearProperty( "picketbox.xacml.pdp.lockstrategy" );
+      }
+   }
+
+   @Test
+   public void testOffHeapDecisionCache() throws Exception
+   {
+      OffHeapDecisionCacheLocator locator = new OffHeapDecisionCacheLocator();
+      List<Option> options = new ArrayList<Option>();
+      options.add( createOption( DecisionCacheLocator.MAX_ENTRIES, "2" ));
+      options.add( createOption( OffHeapDecisionCacheLocator.OFF_HEAP_ENTRIES, "64" ));
+      options.add( createOption( DecisionCacheLocator.CONCURRENCY_LEVEL, "1" ));
+      locator.setOptions( options );
+
+      Obligation obligation = new Obligation( new URI( "urn:test:obligation" ), Result.DECISION_PERMIT, 
+            new ArrayList<Object>() );
+      URI policyA = new URI( "urn:test:policy:a" );
+      URI policyB = new URI( "urn:test:policy:b" );
+      for( int i = 0; i < 20; i++ )
+      {
+         Result result = new Result( i % 2 == 0 ? Result.DECISION_PERMIT : Result.DECISION_DENY,
+               Collections.singleton( obligation ));
+         PolicyDependency policy = new PolicyDependency( i < 10 ? policyA : policyB, "1.0" );
+         locator.add( new RequestFingerprint( i, i ), new ResponseCtx( result ), Collections.singleton( policy ));
+      }
+      assertEquals( "The heap only holds the recent decisions", 2, locator.size() );
+      assertEquals( 20, locator.getOffHeapSize() );
+
+      for( int i = 0; i < 20; i++ )
+      {
+         ResponseCtx response = locator.get( new RequestFingerprint( i, i ));
+         assertNotNull( "Decision " + i + " is cached", response );
+         Result result = (Result) response.getResults().iterator().next();
+         assertEquals( i % 2 == 0 ? Result.DECISION_PERMIT : Result.DECISION_DENY, result.getDecision() );
+         assertEquals( Collections.singleton( obligation ), result.getObligations() );
+         assertEquals( Status.getOkInstance(), result.getStatus() );
+      }
+      assertNull( locator.get( new RequestFingerprint( 20, 20 )));
+
+      //the decisions of policy a are dropped from both tiers
+      locator.invalidate( Collections.singleton( new PolicyDependency( policyA, "1.0" )));
+      assertNull( locator.get( new RequestFingerprint( 9, 9 )));
+      assertNotNull( locator.get( new RequestFingerprint( 10, 10 )));
+      assertEquals( 10, locator.getOffHeapSize() );
+
+      locator.clear();
+      assertNull( locator.get( new RequestFingerprint( 10, 10 )));
+      assertEquals( 0, locator.getOffHeapSize() );
+   }
+
+   @Test
+   public void testOffHeapEviction() throws Exception
+   {
+      OffHeapDecisionCacheLocator locator = new OffHeapDecisionCacheLocator();
+      List<Option> options = new ArrayList<Option>();
+      options.add( createOption( DecisionCacheLocator.MAX_ENTRIES, "1" ));
+      options.add( createOption( OffHeapDecisionCacheLocator.OFF_HEAP_ENTRIES, "8" ));
+      options.add( createOption( DecisionCacheLocator.CONCURRENCY_LEVEL, "1" ));
+      locator.setOptions( options );
+
+      ResponseCtx response = new ResponseCtx( new Result( Result.DECISION_DENY ));
+      for( int i = 0; i < 8; i++ )
+         locator.add( new RequestFingerprint( i, i ), response );
+      //use the first decision so that it is not the least recently used
+      assertNotNull( locator.get( new RequestFingerprint( 0, 0 )));
+      locator.add( new RequestFingerprint( 8, 8 ), response );
+
+      assertEquals( "The off-heap tier is bounded", 8, locator.getOffHeapSize() );
+      assertNotNull( locator.get( new RequestFingerprint( 0, 0 )));
+      assertNull( "The least recently used decision was evicted", locator.get( new RequestFingerprint( 1, 1 )));
+      assertNotNull( locator.get( new RequestFingerprint( 8, 8 )));
+   }
+
+   @Test
+   public void testOffHeapDecisionCacheSharesEqualObligations() throws Exception
+   {
+      OffHeapDecisionCacheLocator locator = new OffHeapDecisionCacheLocator();
+      List<Option> options = new ArrayList<Option>();
+      options.add( createOption( DecisionCacheLocator.MAX_ENTRIES, "1" ));
+      options.add( createOption( OffHeapDecisionCacheLocator.OFF_HEAP_ENTRIES, "8192" ));
+      options.add( createOption( DecisionCacheLocator.CONCURRENCY_LEVEL, "1" ));
+      locator.setOptions( options );
+
+      //more decisions than the obligation dictionary holds, each with its own copy of the obligation
+      for( int i = 0; i < 5000; i++ )
+      {
+         Obligation obligation = new Obligation( new URI( "urn:test:obligation" ), Result.DECISION_PERMIT, 
+               new ArrayList<Object>() );
+         Result result = new Result( Result.DECISION_PERMIT, Collections.singleton( obligation ));
+         locator.add( new RequestFingerprint( i, i ), new ResponseCtx( result ));
+      }
+      assertEquals( 5000, locator.getOffHeapSize() );
+      assertNotNull( "The first decision was not dropped with a new generation", 
+            locator.get( new RequestFingerprint( 0, 0 )));
+   }
+
+   @Test
+   public void testOffHeapDecisionCacheWithPDP() throws Exception
+   {
+      ClassLoader tcl = Thread.currentThread().getContextClassLoader();
+      InputStream is = tcl.getResourceAsStream( CONFIG_FILE_CACHING_OFF_HEAP );
+      assertNotNull( "InputStream != null", is );
+      PolicyDecisionPoint pdp = new JBossPDP( is );
+      for( int i = 0 ; i < 3; i++ )
+         runTests( pdp );
+   }
+
+   @Test
+   public void testDependencyTracking() throws Exception
+   {
+      ClassLoader tcl = Thread.currentThread().getContextClassLoader();
+      InputStream is = tcl.getResourceAsStream( CONFIG_FILE_CACHING_WITH_DEPENDENCIES );
+      assertNotNull( "InputStream != null", is );
+      PolicyDecisionPoint pdp = new JBossPDP( is );
+      runTests( pdp );
+      runTests( pdp );
+
+      String xml = new String( readFully( tcl.getResourceAsStream( REQUEST1 )), "UTF-8" );
+      ResponseCtx response = getResponseCtx( pdp, xml );
+      assertSame( "Decision is cached", response, getResponseCtx( pdp, xml ));
+
+      //The policies do not read the user name
+      String unread = xml.replace( "John Smith", "Jane Doe" );
+      assertSame( "Attributes that were not read do not matter", response, getResponseCtx( pdp, unread ));
+
+      //but they read the number of shares
+      String read = xml.replace( "<AttributeValue>1000</AttributeValue>", "<AttributeValue>1001</AttributeValue>" );
+      assertFalse( "Attributes that were read matter", response == getResponseCtx( pdp, read ));
+   }
+
+   @Test
+   public void testDecisionCacheSnapshot() throws Exception
+   {
+      File file = File.createTempFile( "decisions", ".snapshot" );
+      file.delete();
+      try
+      {
+         List<Option> options = new ArrayList<Option>();
+         options.add( createOption( DecisionCacheLocator.SNAPSHOT_FILE, file.getPath() ));
+         options.add( createOption( DecisionCacheLocator.SNAPSHOT_ENTRIES, "2" ));
+         DecisionCacheLocator locator = new DecisionCacheLocator();
+         locator.setOptions( options );
+
+         Obligation obligation = new Obligation( new URI( "urn:test:obligation" ), Result.DECISION_PERMIT, 
+               new ArrayList<Object>() );
+         PolicyDependency policy = new PolicyDependency( new URI( "urn:test:policy:a" ), "1.0" );
+         for( int i = 0; i < 3; i++ )
+         {
+            Result result = new Result( Result.DECISION_PERMIT, Collections.singleton( obligation ));
+            locator.add( new RequestFingerprint( i, i ), new ResponseCtx( result ), Collections.singleton( policy ));
+         }
+         //the decisions that are asked for are the hottest
+         for( int i = 0; i < 3; i++ )
+            locator.get( new RequestFingerprint( 1, 1 ));
+         locator.get( new RequestFingerprint( 2, 2 ));
+         assertEquals( 2, locator.saveSnapshot( "v1" ));
+
+         DecisionCacheLocator restarted = new DecisionCacheLocator();
+         restarted.setOptions( options );
+         assertEquals( "Other policies", 0, restarted.loadSnapshot( "v2" ));
+         assertEquals( 0, restarted.size() );
+         assertEquals( 2, restarted.loadSnapshot( "v1" ));
+         assertNull( restarted.get( new RequestFingerprint( 0, 0 )));
+         ResponseCtx response = restarted.get( new RequestFingerprint( 1, 1 ));
+         assertNotNull( response );
+         Result result = (Result) response.getResults().iterator().next();
+         assertEquals( Result.DECISION_PERMIT, result.getDecision() );
+         assertEquals( 1, result.getObligations().size() );
+         Obligation loaded = (Obligation) result.getObligations().iterator().next();
+         assertEquals( obligation.getId(), loaded.getId() );
+         assertEquals( obligation.getFulfillOn(), loaded.getFulfillOn() );
+
+         //the policy tags are kept
+         restarted.invalidate( Collections.singleton( policy ));
+         assertEquals( 0, restarted.size() );
+      }
+      finally
+      {
+         file.delete();
+      }
+   }
+
+   @Test
+   public void testDecisionCacheSnapshotKeepsTheLifetimeOfDecisions() throws Exception
+   {
+      File file = File.createTempFile( "decisions", ".snapshot" );
+      file.delete();
+      try
+      {
+         List<Option> options = new ArrayList<Option>();
+         options.add( createOption( DecisionCacheLocator.SNAPSHOT_FILE, file.getPath() ));
+         options.add( createOption( DecisionCacheLocator.TIME_TO_LIVE, "2000" ));
+         DecisionCacheLocator locator = new DecisionCacheLocator();
+         locator.setOptions( options );
+
+         ResponseCtx response = new ResponseCtx( new Result( Result.DECISION_PERMIT ));
+         locator.add( new RequestFingerprint( 0, 0 ), response );
+         Thread.sleep( 1200 );
+         locator.add( new RequestFingerprint( 1, 1 ), response );
+         assertEquals( 2, locator.saveSnapshot( "v1" ));
+
+         DecisionCacheLocator restarted = new DecisionCacheLocator();
+         restarted.setOptions( options );
+         assertEquals( 2, restarted.loadSnapshot( "v1" ));
+         Thread.sleep( 1000 );
+         assertNull( "A restored decision expires when it would have", restarted.get( new RequestFingerprint( 0, 0 )));
+         assertNotNull( restarted.get( new RequestFingerprint( 1, 1 )));
+      }
+      finally
+      {
+         file.delete();
+      }
+   }
+
+   @Test
+   public void testDecisionCacheSnapshotWithPDP() throws Exception
+   {
+      File file = File.createTempFile( "decisions", ".snapshot" );
+      file.delete();
+      String locators = "<ns:Locator Name=\"org.jboss.security.xacml.locators.JBossPolicySetLocator\"/>"
+            + "<ns:Locator Name=\"" + SnapshotDecisionCacheLocator.class.getName() + "\">"
+            + "<ns:Option Name=\"snapshotFile\">" + file.getPath() + "</ns:Option></ns:Locator>"
+            + "</ns:Locators></ns:jbosspdp>";
+      String policies = "<ns:jbosspdp xmlns:ns=\"urn:jboss:xacml:2.0\"><ns:Policies><ns:PolicySet>"
+            + "<ns:Location>test/policies/interop/xacml-policySet.xml</ns:Location>"
+            + "<ns:Policy><ns:Location>test/policies/interop/xacml-policy2.xml</ns:Location></ns:Policy>"
+            + "<ns:Policy><ns:Location>test/policies/interop/xacml-policy3.xml</ns:Location></ns:Policy>"
+            + "<ns:Policy><ns:Location>test/policies/interop/xacml-policy4.xml</ns:Location></ns:Policy>";
+      String config = policies 
+            + "<ns:Policy><ns:Location>test/policies/interop/xacml-policy5.xml</ns:Location></ns:Policy>"
+            + "</ns:PolicySet></ns:Policies><ns:Locators>" + locators;
+      String otherConfig = policies + "</ns:PolicySet></ns:Policies><ns:Locators>" + locators;
+      try
+      {
+         SnapshotDecisionCacheLocator.loaded.clear();
+         JBossPDP pdp = new JBossPDP( new ByteArrayInputStream( config.getBytes( "UTF-8" )));
+         assertEquals( "Nothing to load", Integer.valueOf( 0 ), SnapshotDecisionCacheLocator.loaded.poll( 10, TimeUnit.SECONDS ));
+         runTests( pdp );
+         pdp.saveDecisionCaches();
+         assertTrue( file.isFile() );
+
+         JBossPDP restarted = new JBossPDP( new ByteArrayInputStream( config.getBytes( "UTF-8" )));
+         assertEquals( Integer.valueOf( 7 ), SnapshotDecisionCacheLocator.loaded.poll( 10, TimeUnit.SECONDS ));
+         runTests( restarted );
+
+         new JBossPDP( new ByteArrayInputStream( otherConfig.getBytes( "UTF-8" )));
+         assertEquals( "The policies have changed", Integer.valueOf( 0 ), 
+               SnapshotDecisionCacheLocator.loaded.poll( 10, TimeUnit.SECONDS ));
+      }
+      finally
+      {
+         file.delete();
+      }
+   }
+
+   private ResponseCtx getResponseCtx( PolicyDecisionPoint pdp, String xml ) throws Exception
+   {
+      RequestContext request = RequestResponseContextFactory.createRequestCtx();
+      request.readRequest( new ByteArrayInputStream( xml.getBytes( "UTF-8" )));
+      return (ResponseCtx) pdp.evaluate( request ).get( XACMLConstants.RESPONSE_CTX );
+   }
+
+   private RequestCtx getContentRequest( String content ) throws Exception
+   {
+      String xml = "<Request xmlns='urn:oasis:names:tc:xacml:2.0:context:schema:os'><Subject/>"
+            + "<Resource><ResourceContent>" + content + "</ResourceContent></Resource><Action/>"
+            + "<Environment/></Request>";
+      RequestContext request = RequestResponseContextFactory.createRequestCtx();
+      request.readRequest( new ByteArrayInputStream( xml.getBytes( "UTF-8" )));
+      return (RequestCtx) request.get( XACMLConstants.REQUEST_CTX );
+   }
+
+   private RequestCtx getResourceRequest( String issuer, String values ) throws Exception
+   {
+      String xml = "<Request xmlns='urn:oasis:names:tc:xacml:2.0:context:schema:os'><Subject/>"
+            + "<Resource><Attribute AttributeId='urn:oasis:names:tc:xacml:1.0:resource:resource-id' "
+            + "DataType='http://www.w3.org/2001/XMLSchema#string' Issuer='" + issuer + "'>" + values 
+            + "</Attribute></Resource><Action/><Environment/></Request>";
+      RequestContext request = RequestResponseContextFactory.createRequestCtx();
+      request.readRequest( new ByteArrayInputStream( xml.getBytes( "UTF-8" )));
+      return (RequestCtx) request.get( XACMLConstants.REQUEST_CTX );
+   }
+
+   private byte[] readFully( InputStream is ) throws Exception
+   {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      byte[] buffer = new byte[4096];
+      int n;
+      while( ( n = is.read( buffer )) != -1 )
+         baos.write( buffer, 0, n );
+      is.close();
+      return baos.toByteArray();
+   }
+
+   private Option createOption( String name, String value )
+   {
+      Option option = new Option();
+      option.setName( name );
+      option.getContent().add( value );
+      return option;
+   }
+
    private void runTests( PolicyDecisionPoint pdp) throws Exception
    {
       TestCase.assertEquals("Case 1 should be deny", XACMLConstants.DECISION_DENY, XACMLTestUtil.getDecision (pdp,REQUEST1 ));
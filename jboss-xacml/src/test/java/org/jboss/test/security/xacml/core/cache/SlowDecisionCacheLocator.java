@@ -0,0 +1,80 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors. 
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.test.security.xacml.core.cache;
+
+import java.util.Set;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.security.xacml.locators.cache.DecisionCacheLocator;
+import org.jboss.security.xacml.locators.cache.RequestFingerprint;
+import org.jboss.security.xacml.sunxacml.AttributeDependencies.PolicyDependency;
+import org.jboss.security.xacml.sunxacml.ctx.ResponseCtx;
+
+/**
+ * Decision cache that holds back its misses until a number of threads have 
+ * missed, and is slow to add decisions, so that the misses overlap
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since Oct 18, 2026
+ */
+@org.junit.Ignore
+public class SlowDecisionCacheLocator extends DecisionCacheLocator
+{
+   static final AtomicInteger adds = new AtomicInteger();
+
+   static volatile CyclicBarrier misses;
+
+   @Override
+   public ResponseCtx get( RequestFingerprint fingerprint, Runnable refresh )
+   {
+      ResponseCtx response = super.get( fingerprint, refresh );
+      CyclicBarrier barrier = misses;
+      if( response == null && barrier != null )
+      {
+         try
+         {
+            barrier.await( 10, TimeUnit.SECONDS );
+         }
+         catch( Exception e )
+         {
+            throw new RuntimeException( e );
+         }
+      }
+      return response;
+   }
+
+   @Override
+   public void add( RequestFingerprint fingerprint, ResponseCtx response, Set<PolicyDependency> policies )
+   {
+      try
+      {
+         Thread.sleep( 200 );
+      }
+      catch( InterruptedException e )
+      {
+         Thread.currentThread().interrupt();
+      }
+      adds.incrementAndGet();
+      super.add( fingerprint, response, policies );
+   }
+}